@@ -3,6 +3,7 @@ module no.ntnu.mappe2.marko19907.patientregister {
     requires commons.csv;
     requires java.sql;
     requires jakarta.persistence;
+    requires jdk.httpserver;
 
     // Open the package to "anyone" to enable access by reflection for the Jupiter test engine
     opens no.ntnu.mappe2.marko19907.patientregister.model;
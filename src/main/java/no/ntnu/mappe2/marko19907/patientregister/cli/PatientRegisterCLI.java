@@ -0,0 +1,454 @@
+package no.ntnu.mappe2.marko19907.patientregister.cli;
+
+import no.ntnu.mappe2.marko19907.patientregister.exception.DuplicateKeyException;
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegister;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterColumnar;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterDB;
+import no.ntnu.mappe2.marko19907.patientregister.server.PatientRegisterServer;
+import no.ntnu.mappe2.marko19907.patientregister.utility.CSVHandler;
+import no.ntnu.mappe2.marko19907.patientregister.utility.ImportReport;
+import no.ntnu.mappe2.marko19907.patientregister.utility.ParallelCSVReader;
+import no.ntnu.mappe2.marko19907.patientregister.utility.PatientImporter;
+import no.ntnu.mappe2.marko19907.patientregister.utility.PatientSnapshotFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+/**
+ * Class PatientRegisterCLI is the headless entry point of the patient register, for scheduled jobs
+ * and servers without a display. It runs a single command against the database register and exits
+ * with an exit code that tells how the command went, the JavaFX toolkit is never started.
+ * The commands that only read the register can instead be run against a patient snapshot,
+ * that is loaded into an in-memory register.
+ * The results are printed to standard out and the timing and the errors to standard error.
+ * It is started as the main class of the module, for example:
+ * java -p &lt;module path&gt; -m &lt;module&gt;/&lt;this class&gt; import patients.csv
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public class PatientRegisterCLI
+{
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_FAILURE = 1;
+    public static final int EXIT_USAGE = 2;
+    public static final int EXIT_INVALID_DATA = 3;
+
+    private static final String DATABASE_OPTION = "--database";
+    private static final String SKIP_ERRORS_OPTION = "--skip-errors";
+    private static final String SNAPSHOT_OPTION = "--snapshot";
+    private static final String JDBC_URL_PROPERTY = "jakarta.persistence.jdbc.url";
+    private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+    private static final int COMPRESSED_IMPORT_BATCH_SIZE = 1000;
+    private static final int SNAPSHOT_LOAD_BATCH_SIZE = 10_000;
+    private static final String ERROR_REPORT_SUFFIX = ".errors.csv";
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: PatientRegisterCLI <command> [" + DATABASE_OPTION + " <JDBC url> | " + SNAPSHOT_OPTION
+                    + " <file>]",
+            SNAPSHOT_OPTION + " runs the count, export and serve commands against a "
+                    + PatientSnapshotFile.EXTENSION + " snapshot instead of the database",
+            "Commands:",
+            "  import [" + SKIP_ERRORS_OPTION + "] <file>  Adds the patients of a .csv, .csv.gz or "
+                    + PatientSnapshotFile.EXTENSION + " file to the register,",
+            "                                 " + SKIP_ERRORS_OPTION + " skips the invalid and duplicate records",
+            "                                 and reports them to <file>" + ERROR_REPORT_SUFFIX,
+            "  export <file>                  Writes the patients of the register to a .csv or .csv.gz file",
+            "  dedupe <input> <output>        Copies a CSV file, keeping only the first record"
+                    + " of each social security number",
+            "  convert <input> <output>       Converts a CSV file to a " + PatientSnapshotFile.EXTENSION
+                    + " snapshot, or a snapshot to a CSV file",
+            "  count                          Prints the number of patients in the register",
+            "  serve <port>                   Serves the register as a JSON API on the loopback interface"
+                    + " until stopped",
+            "  compact                        Gives the space of the deleted patients back to the file system",
+            "Exit codes: " + EXIT_OK + " done, " + EXIT_FAILURE + " failed, " + EXIT_USAGE + " invalid arguments, "
+                    + EXIT_INVALID_DATA + " invalid or duplicate records");
+
+    private final PrintStream out;
+    private final PrintStream err;
+
+    /**
+     * Constructor for PatientRegisterCLI objects
+     * @param out The stream to print the results to, can not be null
+     * @param err The stream to print the timing and the errors to, can not be null
+     * @throws IllegalArgumentException If any of the streams is null
+     */
+    public PatientRegisterCLI(PrintStream out, PrintStream err)
+    {
+        if (out == null || err == null) {
+            throw new IllegalArgumentException("The streams can not be null!");
+        }
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Runs the command given in the arguments and exits with its exit code
+     * @param args The command and its arguments
+     */
+    public static void main(String[] args)
+    {
+        System.exit(new PatientRegisterCLI(System.out, System.err).run(args));
+    }
+
+    /**
+     * Runs the command given in the arguments and prints how long it took
+     * @param args The command and its arguments, not null
+     * @return The exit code of the command
+     */
+    public int run(String[] args)
+    {
+        long start = System.nanoTime();
+        int exitCode;
+        try {
+            exitCode = this.runCommand(args);
+        }
+        catch (DuplicateKeyException e) {
+            this.err.println("Error: a patient in the file is already in the register or in the file twice, "
+                    + "no patients of that batch were added (" + e.getMessage() + ")");
+            exitCode = EXIT_INVALID_DATA;
+        }
+        catch (IllegalArgumentException e) {
+            this.err.println("Error: " + e.getMessage());
+            exitCode = EXIT_INVALID_DATA;
+        }
+        catch (IOException | UncheckedIOException e) {
+            this.err.println("Error: could not read or write the file, " + e.getMessage());
+            exitCode = EXIT_FAILURE;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.err.println("Error: interrupted");
+            exitCode = EXIT_FAILURE;
+        }
+        catch (RuntimeException e) {
+            // Database errors are thrown as unchecked persistence exceptions
+            this.err.println("Error: " + e);
+            exitCode = EXIT_FAILURE;
+        }
+        this.err.printf("Finished in %d ms with exit code %d%n", (System.nanoTime() - start) / 1_000_000, exitCode);
+        return exitCode;
+    }
+
+    /**
+     * Parses the arguments and runs the command they give
+     * @param args The command and its arguments, not null
+     * @return The exit code of the command
+     * @throws IllegalArgumentException If a file has an invalid CSV header or invalid records
+     * @throws IOException If an IO error is encountered
+     * @throws InterruptedException If the thread is interrupted while importing
+     */
+    private int runCommand(String[] args) throws IOException, InterruptedException
+    {
+        Map<String, String> properties = new HashMap<>();
+        boolean skipErrors = false;
+        File snapshotFile = null;
+        List<String> operands = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals(DATABASE_OPTION) && i + 1 < args.length) {
+                properties.put(JDBC_URL_PROPERTY, args[++i]);
+            }
+            else if (args[i].equals(SNAPSHOT_OPTION) && i + 1 < args.length) {
+                snapshotFile = new File(args[++i]);
+            }
+            else if (args[i].equals(SKIP_ERRORS_OPTION)) {
+                skipErrors = true;
+            }
+            else if (args[i].startsWith("--")) {
+                return this.printUsage("Unknown option " + args[i]);
+            }
+            else {
+                operands.add(args[i]);
+            }
+        }
+        if (operands.isEmpty()) {
+            return this.printUsage("No command given");
+        }
+
+        String command = operands.remove(0);
+        int expectedOperands;
+        switch (command) {
+            case "import":
+            case "export":
+            case "serve":
+                expectedOperands = 1;
+                break;
+            case "dedupe":
+            case "convert":
+                expectedOperands = 2;
+                break;
+            case "count":
+            case "compact":
+                expectedOperands = 0;
+                break;
+            default:
+                return this.printUsage("Unknown command " + command);
+        }
+        if (operands.size() != expectedOperands) {
+            return this.printUsage("The " + command + " command takes " + expectedOperands + " arguments");
+        }
+        if (skipErrors && !command.equals("import")) {
+            return this.printUsage(SKIP_ERRORS_OPTION + " is only valid for the import command");
+        }
+        if (snapshotFile != null && (!properties.isEmpty()
+                || !(command.equals("count") || command.equals("export") || command.equals("serve")))) {
+            return this.printUsage(SNAPSHOT_OPTION + " is only valid for the count, export and serve commands,"
+                    + " without " + DATABASE_OPTION);
+        }
+
+        int port = 0;
+        if (command.equals("serve")) {
+            try {
+                port = Integer.parseInt(operands.get(0));
+            }
+            catch (NumberFormatException e) {
+                return this.printUsage("The port must be a number");
+            }
+        }
+
+        if (command.equals("dedupe")) {
+            // Only works on files, so the database is not started
+            return this.dedupe(new File(operands.get(0)), new File(operands.get(1)));
+        }
+        if (command.equals("convert")) {
+            return this.convert(new File(operands.get(0)), new File(operands.get(1)));
+        }
+
+        if (snapshotFile != null) {
+            if (!snapshotFile.isFile()) {
+                this.err.println("Error: the file " + snapshotFile + " does not exist");
+                return EXIT_FAILURE;
+            }
+            PatientRegister register = new PatientRegisterColumnar();
+            try {
+                new PatientSnapshotFile(snapshotFile).addPatientsTo(register, SNAPSHOT_LOAD_BATCH_SIZE,
+                        progress -> { });
+                return this.runReadCommand(register, command, operands, port);
+            }
+            finally {
+                register.close();
+            }
+        }
+
+        PatientRegisterDB register = new PatientRegisterDB(properties);
+        try {
+            switch (command) {
+                case "import":
+                    return this.importFile(register, new File(operands.get(0)), skipErrors);
+                case "compact":
+                    long freedBytes = register.compact();
+                    this.out.printf("Compacted the patients to %d KB, freed %d KB%n",
+                            register.getStorageSize() / 1024, freedBytes / 1024);
+                    return EXIT_OK;
+                default:
+                    return this.runReadCommand(register, command, operands, port);
+            }
+        }
+        finally {
+            register.close();
+        }
+    }
+
+    /**
+     * Runs one of the commands that only read the register, which can be run against a database or a snapshot
+     * @param register The register to read, not null
+     * @param command The count, export or serve command, not null
+     * @param operands The operands of the command, not null
+     * @param port The port to serve the register on, only used by the serve command
+     * @return The exit code of the command
+     * @throws IOException If an IO error is encountered
+     * @throws InterruptedException If the thread is interrupted while serving
+     */
+    private int runReadCommand(PatientRegister register, String command, List<String> operands, int port)
+            throws IOException, InterruptedException
+    {
+        switch (command) {
+            case "export":
+                return this.exportFile(register, new File(operands.get(0)));
+            case "serve":
+                return this.serve(register, port);
+            default:
+                this.out.println(register.getNumberOfPatients());
+                return EXIT_OK;
+        }
+    }
+
+    /**
+     * Prints the given problem with the arguments followed by the usage
+     * @param problem The problem with the arguments, not null
+     * @return The exit code of invalid arguments
+     */
+    private int printUsage(String problem)
+    {
+        this.err.println(problem);
+        this.err.println(USAGE);
+        return EXIT_USAGE;
+    }
+
+    /**
+     * Adds the patients of the given file to the register, as the import actions of the GUI do
+     * @param register The register to add the patients to, not null
+     * @param file The CSV file or patient snapshot to import, not null
+     * @param skipErrors True to skip the invalid and duplicate records of a CSV file and report them to an error report
+     * @return The exit code of the import
+     * @throws IllegalArgumentException If the CSV header of the file is invalid
+     * @throws DuplicateKeyException If a patient of the file is already in the register, without skipErrors
+     * @throws IOException If an IO error is encountered
+     * @throws InterruptedException If the thread is interrupted while importing
+     */
+    private int importFile(PatientRegisterDB register, File file, boolean skipErrors)
+            throws IOException, InterruptedException
+    {
+        if (!file.isFile()) {
+            this.err.println("Error: the file " + file + " does not exist");
+            return EXIT_FAILURE;
+        }
+
+        boolean snapshot = file.getName().endsWith(PatientSnapshotFile.EXTENSION);
+        if (skipErrors && snapshot) {
+            return this.printUsage(SKIP_ERRORS_OPTION + " is only valid for CSV files");
+        }
+        if (skipErrors) {
+            ImportReport report = new PatientImporter().importPatients(file, register,
+                    new File(file.getAbsolutePath() + ERROR_REPORT_SUFFIX));
+            this.out.println(report);
+            return (report.getSkippedRecords() == 0) ? EXIT_OK : EXIT_INVALID_DATA;
+        }
+
+        long importedPatients;
+        if (snapshot) {
+            importedPatients = new PatientSnapshotFile(file).addPatientsTo(register, COMPRESSED_IMPORT_BATCH_SIZE,
+                    progress -> { });
+        }
+        else if (CSVHandler.isCompressed(file)) {
+            importedPatients = new CSVHandler().importPatients(file, COMPRESSED_IMPORT_BATCH_SIZE,
+                    register::addPatients);
+        }
+        else {
+            importedPatients = new ParallelCSVReader().readPatients(file, true, register::addPatients);
+        }
+        this.out.println("Imported " + importedPatients + " patients");
+        return EXIT_OK;
+    }
+
+    /**
+     * Writes the patients of the register to the given file as they are read from the register
+     * @param register The register to export, not null
+     * @param file The CSV file to write, not null
+     * @return The exit code of the export
+     * @throws IOException If an IO error is encountered
+     */
+    private int exportFile(PatientRegister register, File file) throws IOException
+    {
+        long exportedPatients;
+        try (Stream<Patient> patients = register.streamPatients()) {
+            exportedPatients = new CSVHandler().writePatients(file, patients);
+        }
+        this.out.println("Exported " + exportedPatients + " patients");
+        return EXIT_OK;
+    }
+
+    /**
+     * Serves the register as a JSON API on the given port until the process is stopped,
+     * a shutdown hook stops the server and closes the register
+     * @param register The register to serve, not null
+     * @param port The port on the loopback interface to listen on, 0 to pick a free port
+     * @return Never returns normally, the process is stopped with a signal
+     * @throws IllegalArgumentException If the port is out of range
+     * @throws IOException If the server can not listen on the port
+     * @throws InterruptedException If the thread is interrupted while serving
+     */
+    private int serve(PatientRegister register, int port) throws IOException, InterruptedException
+    {
+        // The JDK server leaves Nagle's algorithm on by default, which holds the body of each response back
+        // until the client acknowledges the headers and adds about 40 ms to every request.
+        // The property is read when the first server is created
+        if (System.getProperty(NO_DELAY_PROPERTY) == null) {
+            System.setProperty(NO_DELAY_PROPERTY, "true");
+        }
+        PatientRegisterServer server = new PatientRegisterServer(register, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            register.close();
+        }, "patient-register-shutdown"));
+        server.start();
+        this.out.println("Serving the register on http://127.0.0.1:" + server.getPort() + ", stop with Ctrl+C");
+        new CountDownLatch(1).await();
+        return EXIT_OK;
+    }
+
+    /**
+     * Copies the given CSV file to the output file as it is read, leaving out the records
+     * with a social security number that an earlier record of the file has, so that the copy can be imported
+     * @param input The CSV file to copy, not null
+     * @param output The CSV file to write, not null
+     * @return The exit code of the copy
+     * @throws IllegalArgumentException If the CSV header of the input file is invalid
+     * @throws IOException If an IO error is encountered
+     */
+    private int dedupe(File input, File output) throws IOException
+    {
+        if (!input.isFile()) {
+            this.err.println("Error: the file " + input + " does not exist");
+            return EXIT_FAILURE;
+        }
+        if (output.exists() && input.getCanonicalFile().equals(output.getCanonicalFile())) {
+            return this.printUsage("The output file can not be the input file");
+        }
+
+        CSVHandler csvHandler = new CSVHandler();
+        Set<String> socialSecurityNumbers = new HashSet<>();
+        long[] records = new long[1];
+        long writtenPatients;
+        try (Stream<Patient> patients = csvHandler.streamPatients(input)) {
+            writtenPatients = csvHandler.writePatients(output, patients
+                    .peek(patient -> records[0]++)
+                    .filter(patient -> socialSecurityNumbers.add(patient.getSocialSecurityNumber())));
+        }
+        this.out.println("Kept " + writtenPatients + " patients, removed "
+                + (records[0] - writtenPatients) + " duplicate records");
+        return EXIT_OK;
+    }
+
+    /**
+     * Converts the given CSV file to a snapshot file, or the given snapshot file to a CSV file,
+     * depending on whether the input file has the snapshot extension
+     * @param input The file to convert, not null
+     * @param output The file to write, not null
+     * @return The exit code of the conversion
+     * @throws IllegalArgumentException If the CSV header or the records of the input file are invalid
+     * @throws DuplicateKeyException If two records of the CSV file have the same social security number
+     * @throws IOException If an IO error is encountered, or the snapshot is damaged
+     */
+    private int convert(File input, File output) throws IOException
+    {
+        if (!input.isFile()) {
+            this.err.println("Error: the file " + input + " does not exist");
+            return EXIT_FAILURE;
+        }
+        if (output.exists() && input.getCanonicalFile().equals(output.getCanonicalFile())) {
+            return this.printUsage("The output file can not be the input file");
+        }
+
+        long convertedPatients;
+        if (input.getName().endsWith(PatientSnapshotFile.EXTENSION)) {
+            convertedPatients = new PatientSnapshotFile(input).convertToCSV(output);
+        }
+        else {
+            convertedPatients = PatientSnapshotFile.convertFromCSV(input, output);
+        }
+        this.out.println("Converted " + convertedPatients + " patients");
+        return EXIT_OK;
+    }
+}
@@ -0,0 +1,216 @@
+package no.ntnu.mappe2.marko19907.patientregister.controller;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegister;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class AsyncPatientRegister runs the operations of a PatientRegister as JavaFX Tasks
+ * on a dedicated background thread, so that they never block the JavaFX Application Thread.
+ * A single worker thread is used as neither of the registers is safe to use from several threads,
+ * the tasks are therefore run one at a time, in the order they were submitted.
+ * The methods of this class must be called from the JavaFX Application Thread.
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public class AsyncPatientRegister
+{
+    private static final int MAX_QUEUED_TASKS = 32;
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final PatientRegister patientRegister;
+    private final ThreadPoolExecutor executor;
+    private final ObservableList<Task<?>> runningTasks;
+
+    /**
+     * Constructor for AsyncPatientRegister objects
+     * @param patientRegister The register to run the operations on, can not be null
+     */
+    public AsyncPatientRegister(PatientRegister patientRegister)
+    {
+        if (patientRegister == null) {
+            throw new IllegalArgumentException("The patientRegister can not be null!");
+        }
+        this.patientRegister = patientRegister;
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED_TASKS), runnable -> {
+                    Thread thread = new Thread(runnable, "patient-register-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.runningTasks = FXCollections.observableArrayList();
+    }
+
+    /**
+     * Returns the register the operations are run on.
+     * It may only be used from within the tasks that are submitted to this AsyncPatientRegister.
+     * @return The register the operations are run on
+     */
+    public PatientRegister getPatientRegister()
+    {
+        return this.patientRegister;
+    }
+
+    /**
+     * Returns an unmodifiable ObservableList of the tasks that are queued or running
+     * @return An unmodifiable ObservableList of the tasks that are queued or running
+     */
+    public ObservableList<Task<?>> getRunningTasks()
+    {
+        return FXCollections.unmodifiableObservableList(this.runningTasks);
+    }
+
+    /**
+     * Adds the given patient to the register in the background
+     * @param patient The patient to add, can not be null
+     * @return The Task that adds the patient, fails with a DuplicateKeyException
+     * if a patient with the same social security number exists
+     */
+    public Task<Void> addPatient(Patient patient)
+    {
+        return this.submit("Adding patient", () -> {
+            this.patientRegister.addPatient(patient);
+            return null;
+        });
+    }
+
+    /**
+     * Removes the given patient from the register in the background
+     * @param patient The patient to remove, can not be null
+     * @return The Task that removes the patient, succeeds with true if the patient was removed
+     */
+    public Task<Boolean> removePatient(Patient patient)
+    {
+        return this.submit("Removing patient", () -> this.patientRegister.removePatient(patient));
+    }
+
+    /**
+     * Updates the given patient in the register in the background
+     * @param newPatient The patient that replaces the oldPatient
+     * @param oldPatient The patient that is to be replaced with the newPatient
+     * @return The Task that updates the patient, succeeds with true if the patient was updated
+     * and fails with a DuplicateKeyException if a patient with the same social security number exists
+     */
+    public Task<Boolean> updatePatient(Patient newPatient, Patient oldPatient)
+    {
+        return this.submit("Updating patient", () -> this.patientRegister.updatePatient(newPatient, oldPatient));
+    }
+
+    /**
+     * Returns the List of patients in the register sorted by their social security number in the background
+     * @return The Task that returns the sorted List of patients in the register
+     */
+    public Task<List<Patient>> getSortedPatientList()
+    {
+        return this.submit("Loading patients", () -> {
+            List<Patient> patients = new ArrayList<>(this.patientRegister.getPatientList());
+            patients.sort(Comparator.comparing(Patient::getSocialSecurityNumber));
+            return patients;
+        });
+    }
+
+    /**
+     * Searches the register for the patients that best match the given query in the background
+     * @param query The query to search for, can not be null
+     * @param limit The maximum number of patients to return, must be positive
+     * @return The Task that returns the patients that best match the query, the best match first
+     */
+    public Task<List<Patient>> searchPatients(String query, int limit)
+    {
+        return this.submit("Searching", () -> this.patientRegister.searchPatients(query, limit));
+    }
+
+    /**
+     * Submits the given callable to be run in the background as a Task with the given title
+     * @param title The title of the task, shown to the user while the task is running
+     * @param callable The work to run in the background, can not be null
+     * @param <T> The type of the result of the task
+     * @return The submitted Task
+     * @throws RejectedExecutionException If too many tasks are already queued
+     */
+    public <T> Task<T> submit(String title, Callable<T> callable)
+    {
+        Task<T> task = new Task<>()
+        {
+            {
+                this.updateTitle(title);
+            }
+
+            @Override
+            protected T call() throws Exception
+            {
+                return callable.call();
+            }
+        };
+        return this.submit(task);
+    }
+
+    /**
+     * Submits the given task to be run in the background.
+     * Tasks that report progress or check if they are cancelled should be submitted with this method.
+     * @param task The task to run in the background, can not be null
+     * @param <T> The type of the result of the task
+     * @return The submitted Task
+     * @throws RejectedExecutionException If too many tasks are already queued
+     */
+    public <T> Task<T> submit(Task<T> task)
+    {
+        this.runningTasks.add(task);
+        task.stateProperty().addListener((observable, oldState, newState) -> {
+            if (newState == Worker.State.SUCCEEDED || newState == Worker.State.FAILED
+                    || newState == Worker.State.CANCELLED) {
+                this.runningTasks.remove(task);
+            }
+        });
+
+        try {
+            this.executor.execute(task);
+        }
+        catch (RejectedExecutionException e) {
+            this.runningTasks.remove(task);
+            throw e;
+        }
+        return task;
+    }
+
+    /**
+     * Cancels all the tasks that are queued or running.
+     * The running task is not interrupted, so that the write it is doing finishes or is rolled back cleanly,
+     * a ProgressTask stops the next time it reports its progress.
+     */
+    public void cancelAll()
+    {
+        new ArrayList<>(this.runningTasks).forEach(task -> task.cancel(false));
+    }
+
+    /**
+     * Cancels all the queued and running tasks, closes the register and stops the background thread.
+     * Waits for the register to be closed, so that no work is lost when the application exits.
+     */
+    public void close()
+    {
+        this.cancelAll();
+        this.executor.getQueue().clear();
+        this.executor.execute(this.patientRegister::close);
+        this.executor.shutdown();
+        try {
+            this.executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
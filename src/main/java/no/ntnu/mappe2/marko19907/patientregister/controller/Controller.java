@@ -1,9 +1,12 @@
 package no.ntnu.mappe2.marko19907.patientregister.controller;
 
+import javafx.animation.Animation;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.beans.binding.BooleanBinding;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.event.Event;
 import javafx.geometry.Insets;
 import javafx.scene.control.Alert;
@@ -13,46 +16,91 @@ import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.GridPane;
 import javafx.stage.FileChooser;
+import javafx.util.Duration;
 import no.ntnu.mappe2.marko19907.patientregister.utility.CSVHandler;
 import no.ntnu.mappe2.marko19907.patientregister.exception.DuplicateKeyException;
+import no.ntnu.mappe2.marko19907.patientregister.utility.ImportReport;
 import no.ntnu.mappe2.marko19907.patientregister.utility.NodeFactory;
+import no.ntnu.mappe2.marko19907.patientregister.utility.ParallelCSVReader;
+import no.ntnu.mappe2.marko19907.patientregister.utility.PatientImporter;
+import no.ntnu.mappe2.marko19907.patientregister.utility.PatientSnapshotFile;
+import no.ntnu.mappe2.marko19907.patientregister.utility.PatientSynchronizer;
+import no.ntnu.mappe2.marko19907.patientregister.model.CachedPatientRegister;
 import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
 import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegister;
 import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterDB;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterEvent;
+import no.ntnu.mappe2.marko19907.patientregister.model.UpsertResult;
 
 import java.io.File;
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
 
 /**
  * Class Controller represents the main controller for the application.
  * It is responsible for handling the events from the GUI.
  *
  * @author Marko
- * @version 05-05-2021
+ * @version 17-10-2026
  */
 public class Controller
 {
-    private final PatientRegister patientRegister;
+    private static final Comparator<Patient> SOCIAL_SECURITY_NUMBER_ORDER =
+            Comparator.comparing(Patient::getSocialSecurityNumber);
+    private static final int MAX_SEPARATE_INSERTS = 64;
+    private static final Duration REFRESH_DELAY = Duration.millis(200);
+    private static final int SEARCH_RESULT_LIMIT = 100;
+    private static final int COMPRESSED_IMPORT_BATCH_SIZE = 1000;
+    private static final String ERROR_REPORT_SUFFIX = ".errors.csv";
+
+    private final AsyncPatientRegister patientRegister;
     private final CSVHandler csvHandler;
+    private final ParallelCSVReader parallelCSVReader;
+    private final PatientImporter patientImporter;
+    private final PatientSynchronizer patientSynchronizer;
     private final NodeFactory nodeFactory;
     private final ObservableList<Patient> patientObservableList;
+    private final ObservableList<Patient> searchResultList;
+    private final List<Patient> pendingAddedPatients;
+    private final PauseTransition refreshDelay;
     private Patient currentlySelectedPatient;
+    private String searchQuery;
+    private Task<List<Patient>> searchTask;
+    private boolean searchRefreshPending;
 
     /**
      * Instantiates the controller.
      */
     public Controller()
     {
-        //this.patientRegister = new PatientRegisterPlain();
-        this.patientRegister = new PatientRegisterDB();
+        //this.patientRegister = new AsyncPatientRegister(new PatientRegisterPlain());
+        this.patientRegister = new AsyncPatientRegister(new CachedPatientRegister(new PatientRegisterDB()));
         this.csvHandler = new CSVHandler();
+        this.parallelCSVReader = new ParallelCSVReader();
+        this.patientImporter = new PatientImporter();
+        this.patientSynchronizer = new PatientSynchronizer();
         this.nodeFactory = new NodeFactory();
 
-        this.patientObservableList = FXCollections.observableArrayList(this.patientRegister.getPatientList());
+        this.patientObservableList = FXCollections.observableArrayList();
+        this.searchResultList = FXCollections.observableArrayList();
         this.currentlySelectedPatient = null;
+        this.searchQuery = "";
+        this.searchTask = null;
+        this.pendingAddedPatients = new ArrayList<>();
+        this.refreshDelay = new PauseTransition(REFRESH_DELAY);
+        this.refreshDelay.setOnFinished(event -> this.applyPendingChanges());
+        this.searchRefreshPending = false;
+
+        this.patientRegister.getPatientRegister().addListener(
+                event -> Platform.runLater(() -> this.applyRegisterEvent(event)));
+        this.updateObservableList();
 
         //this.fillWithDemoPatients();
     }
@@ -61,37 +109,221 @@ public class Controller
      * Fills the register with demo data
      */
     private void fillWithDemoPatients()
+    {
+        this.patientRegister.submit("Adding demo patients", () -> {
+            PatientRegister register = this.patientRegister.getPatientRegister();
+            try {
+                register.addPatient(new Patient("Name1", "LastName1", "123"));
+
+                register.addPatient(new Patient
+                        .PatientBuilder("Name2", "LastName2", "321")
+                        .withGeneralPractitioner("SpongeBob")
+                        .build());
+
+                register.addPatient(new Patient
+                        .PatientBuilder("Name3", "LastName3", "987")
+                        .withGeneralPractitioner("Doc3")
+                        .withDiagnosis("Diag3")
+                        .build());
+            }
+            catch (DuplicateKeyException ignored) {
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Updates the observable list of patients with fresh values from the register,
+     * the values are loaded in the background.
+     * Only used when the list is first shown, the list is then kept up to date
+     * by applying the events from the register.
+     */
+    private void updateObservableList()
     {
         try {
-            this.patientRegister.addPatient(new Patient("Name1", "LastName1", "123"));
-
-            this.patientRegister.addPatient(new Patient
-                    .PatientBuilder("Name2", "LastName2", "321")
-                    .withGeneralPractitioner("SpongeBob")
-                    .build());
-
-            this.patientRegister.addPatient(new Patient
-                    .PatientBuilder("Name3", "LastName3", "987")
-                    .withGeneralPractitioner("Doc3")
-                    .withDiagnosis("Diag3")
-                    .build());
+            Task<List<Patient>> loadTask = this.patientRegister.getSortedPatientList();
+            loadTask.setOnSucceeded(event -> this.patientObservableList.setAll(loadTask.getValue()));
         }
-        catch (DuplicateKeyException ignored) {
+        catch (RejectedExecutionException e) {
+            this.showTooManyOperationsDialog();
         }
+    }
 
-        this.updateObservableList();
+    /**
+     * Applies the given change to the observable list, called on the JavaFX Application Thread.
+     * Many added patients, like the batches of an import, are collected and inserted together
+     * at most REFRESH_DELAY later, and the search is run again at most once per REFRESH_DELAY,
+     * so that an import does not rebuild the list and search the register once per batch
+     * @param event The event that describes the change to the register, can not be null
+     */
+    private void applyRegisterEvent(PatientRegisterEvent event)
+    {
+        switch (event.getType()) {
+            case ADDED:
+            case BULK_LOADED:
+                if (event.getNewPatients().size() <= MAX_SEPARATE_INSERTS && this.pendingAddedPatients.isEmpty()) {
+                    this.applyAddedPatients(event.getNewPatients());
+                }
+                else {
+                    this.pendingAddedPatients.addAll(event.getNewPatients());
+                }
+                break;
+            case REMOVED:
+                this.applyPendingAddedPatients();
+                event.getOldPatients().forEach(this::applyRemovedPatient);
+                break;
+            case UPDATED:
+                this.applyPendingAddedPatients();
+                for (int i = 0; i < event.getOldPatients().size(); i++) {
+                    this.applyUpdatedPatient(event.getNewPatients().get(i), event.getOldPatients().get(i));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unexpected event type: " + event.getType());
+        }
+
+        // The changed patients may now match the search, or no longer match it
+        this.searchRefreshPending = !this.searchQuery.isEmpty();
+        // The delay is not restarted while it runs, so a steady stream of events can not hold the changes back
+        if ((this.searchRefreshPending || !this.pendingAddedPatients.isEmpty())
+                && this.refreshDelay.getStatus() != Animation.Status.RUNNING) {
+            this.refreshDelay.playFromStart();
+        }
     }
 
     /**
-     * Updates the observable list of patients with fresh values from the register
+     * Inserts the collected added patients into the observable list and runs the search again if it is needed
      */
-    private void updateObservableList()
+    private void applyPendingChanges()
     {
-        this.patientObservableList.setAll(this.patientRegister.getPatientList());
+        this.applyPendingAddedPatients();
+        if (this.searchRefreshPending) {
+            this.searchRefreshPending = false;
+            if (!this.searchQuery.isEmpty()) {
+                this.doSearch(this.searchQuery);
+            }
+        }
     }
 
     /**
-     * Returns an ObservableList of patients to show
+     * Inserts the collected added patients into the observable list,
+     * before a removal or an update is applied so that the changes are applied in order
+     */
+    private void applyPendingAddedPatients()
+    {
+        if (!this.pendingAddedPatients.isEmpty()) {
+            List<Patient> addedPatients = new ArrayList<>(this.pendingAddedPatients);
+            this.pendingAddedPatients.clear();
+            this.applyAddedPatients(addedPatients);
+        }
+    }
+
+    /**
+     * Returns the position of the patient with the given social security number in the observable list,
+     * which is kept sorted by the social security number
+     * @param patient The patient to look for, can not be null
+     * @return The index of the patient if the list contains it,
+     * otherwise (-(insertion point) - 1) as in Collections.binarySearch()
+     */
+    private int findInObservableList(Patient patient)
+    {
+        return Collections.binarySearch(this.patientObservableList, patient, SOCIAL_SECURITY_NUMBER_ORDER);
+    }
+
+    /**
+     * Inserts the given patients into the observable list at their sorted positions, skipping the patients
+     * that are already in the list. The patients that go between the same two patients of the list are
+     * inserted together, so patients that are added in order, like an import of a sorted file,
+     * are inserted as a single run. If the patients go in many places, they are merged with the list
+     * in a single change instead.
+     * @param patients The patients that were added to the register, can not be null
+     */
+    private void applyAddedPatients(List<Patient> patients)
+    {
+        List<Patient> sortedPatients = new ArrayList<>(patients);
+        sortedPatients.sort(SOCIAL_SECURITY_NUMBER_ORDER);
+
+        List<Patient> addedPatients = new ArrayList<>(sortedPatients.size());
+        List<Integer> insertionPoints = new ArrayList<>();
+        List<Integer> runEnds = new ArrayList<>();
+        for (Patient patient : sortedPatients) {
+            int index = this.findInObservableList(patient);
+            if (index < 0) {
+                int insertionPoint = -index - 1;
+                addedPatients.add(patient);
+                if (insertionPoints.isEmpty() || insertionPoints.get(insertionPoints.size() - 1) != insertionPoint) {
+                    insertionPoints.add(insertionPoint);
+                    runEnds.add(addedPatients.size());
+                }
+                else {
+                    runEnds.set(runEnds.size() - 1, addedPatients.size());
+                }
+            }
+        }
+
+        if (insertionPoints.size() <= MAX_SEPARATE_INSERTS) {
+            // The runs are inserted from the last to the first, so the insertion points of the others stay valid
+            for (int run = insertionPoints.size() - 1; run >= 0; run--) {
+                int runStart = (run == 0) ? 0 : runEnds.get(run - 1);
+                this.patientObservableList.addAll(insertionPoints.get(run),
+                        addedPatients.subList(runStart, runEnds.get(run)));
+            }
+        }
+        else {
+            List<Patient> mergedPatients = new ArrayList<>(this.patientObservableList.size() + addedPatients.size());
+            Iterator<Patient> existing = this.patientObservableList.iterator();
+            Iterator<Patient> added = addedPatients.iterator();
+            Patient nextExisting = existing.hasNext() ? existing.next() : null;
+            Patient nextAdded = added.hasNext() ? added.next() : null;
+            while (nextExisting != null || nextAdded != null) {
+                if (nextAdded == null || (nextExisting != null
+                        && SOCIAL_SECURITY_NUMBER_ORDER.compare(nextExisting, nextAdded) <= 0)) {
+                    mergedPatients.add(nextExisting);
+                    nextExisting = existing.hasNext() ? existing.next() : null;
+                }
+                else {
+                    mergedPatients.add(nextAdded);
+                    nextAdded = added.hasNext() ? added.next() : null;
+                }
+            }
+            this.patientObservableList.setAll(mergedPatients);
+        }
+    }
+
+    /**
+     * Removes the given patient from the observable list
+     * @param patient The patient that was removed from the register, can not be null
+     */
+    private void applyRemovedPatient(Patient patient)
+    {
+        int index = this.findInObservableList(patient);
+        if (index >= 0) {
+            this.patientObservableList.remove(index);
+        }
+    }
+
+    /**
+     * Replaces the given old patient with the given new patient in the observable list,
+     * in place if the social security number did not change
+     * @param newPatient The patient that replaced the oldPatient in the register, can not be null
+     * @param oldPatient The patient that was replaced in the register, can not be null
+     */
+    private void applyUpdatedPatient(Patient newPatient, Patient oldPatient)
+    {
+        int index = this.findInObservableList(oldPatient);
+        if (index >= 0 && oldPatient.getSocialSecurityNumber().equals(newPatient.getSocialSecurityNumber())) {
+            this.patientObservableList.set(index, newPatient);
+        }
+        else {
+            this.applyRemovedPatient(oldPatient);
+            this.applyAddedPatients(List.of(newPatient));
+        }
+    }
+
+    /**
+     * Returns an ObservableList of patients to show, sorted by their social security number.
+     * The list is updated in place as the register changes, it should be wrapped in a SortedList
+     * rather than sorted directly to show it in a different order.
      * @return An ObservableList of patients to show
      */
     public ObservableList<Patient> getPatientObservableList()
@@ -99,6 +331,60 @@ public class Controller
         return this.patientObservableList;
     }
 
+    /**
+     * Returns an ObservableList of the patients that best match the last search, the best match first
+     * @return An ObservableList of the patients that best match the last search
+     */
+    public ObservableList<Patient> getSearchResultList()
+    {
+        return this.searchResultList;
+    }
+
+    /**
+     * Searches the register for the patients that best match the given query in the background,
+     * the results replace the contents of the search result list.
+     * A search that is still queued is cancelled, as its results are no longer wanted.
+     * A search that is already running is not interrupted, as that could interrupt the register
+     * in the middle of a query, it is left to finish and its results are dropped.
+     * @param query The query to search for, a blank query clears the search results
+     */
+    public void doSearch(String query)
+    {
+        this.searchQuery = (query == null) ? "" : query.strip();
+        if (this.searchTask != null) {
+            this.searchTask.cancel(false);
+            this.searchTask = null;
+        }
+
+        if (this.searchQuery.isEmpty()) {
+            this.searchResultList.clear();
+        }
+        else {
+            try {
+                Task<List<Patient>> task = this.patientRegister.searchPatients(
+                        this.searchQuery, SEARCH_RESULT_LIMIT);
+                task.setOnSucceeded(event -> {
+                    if (this.searchTask == task) {
+                        this.searchResultList.setAll(task.getValue());
+                    }
+                });
+                this.searchTask = task;
+            }
+            catch (RejectedExecutionException e) {
+                // The worker is busy, the search is run again on the next key stroke or change
+            }
+        }
+    }
+
+    /**
+     * Returns an ObservableList of the operations that are queued or running in the background
+     * @return An ObservableList of the operations that are queued or running in the background
+     */
+    public ObservableList<Task<?>> getRunningTasks()
+    {
+        return this.patientRegister.getRunningTasks();
+    }
+
     /**
      * Deletes the currentlySelectedPatient Patient from the register if one is selected,
      * shows a showPleaseSelectItemDialog() dialog otherwise
@@ -111,10 +397,13 @@ public class Controller
         else {
             boolean deleteConfirmed = this.showDeleteConfirmationDialog();
             if (deleteConfirmed) {
-                this.patientRegister.removePatient(this.currentlySelectedPatient);
-                this.clearSelection();
-
-                this.updateObservableList();
+                try {
+                    this.patientRegister.removePatient(this.currentlySelectedPatient);
+                    this.clearSelection();
+                }
+                catch (RejectedExecutionException e) {
+                    this.showTooManyOperationsDialog();
+                }
             }
         }
     }
@@ -160,60 +449,182 @@ public class Controller
     }
 
     /**
-     * Adds the contents of the selected CSV file to the register
-     * @return True if the import was successful, false otherwise
-     * @throws IOException If an IO error is encountered
+     * Adds the contents of the selected CSV file to the register in the background.
+     * The file is parsed in parallel and streamed into the register one chunk at a time in the order
+     * of the file, so files of any size can be imported, the chunks that were added before an error
+     * stay in the register. A compressed file can not be split into chunks,
+     * so it is decompressed and streamed into the register in batches instead.
+     * A patient snapshot is read in place and added in batches, without parsing any CSV.
+     * The progress of the Task follows the bytes of the file that are imported. If the Task is cancelled,
+     * the import stops once the chunk that is being added is done, each chunk is added in full or not at all.
+     * The returned Task succeeds with true once the file is imported
+     * and fails with an IOException if an IO error is encountered,
+     * an IllegalArgumentException if the CSV header of the chosen file is invalid
+     * or a DuplicateKeyException if the CSV file contains a duplicate entry
+     * @return The Task that imports the selected CSV file
      * @throws CancellationException If the user cancels the open action
-     * @throws IllegalArgumentException If the CSV header of the chosen file is invalid
-     * @throws DuplicateKeyException If the CSV file contains a duplicate entry
      */
-    public boolean doImportCSVFile() throws IOException, CancellationException,
-            IllegalArgumentException, DuplicateKeyException
+    public Task<Boolean> doImportCSVFile() throws CancellationException
     {
-        boolean success = false;
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Open CSV File");
-        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Files", "*.csv"));
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV Files", "*.csv", "*.csv.gz"),
+                new FileChooser.ExtensionFilter("Patient Snapshots", "*" + PatientSnapshotFile.EXTENSION));
         File selectedFile = fileChooser.showOpenDialog(null);
 
         if (selectedFile == null) {
             throw new CancellationException("The file chooser was dismissed");
         }
 
-        List<Patient> importedPatients = this.csvHandler.readPatientList(selectedFile);
-        if (importedPatients != null) {
-            if (!importedPatients.isEmpty()) {
+        Task<Boolean> importTask = this.patientRegister.submit(new ProgressTask<>("Importing " + selectedFile.getName())
+        {
+            @Override
+            protected Boolean call() throws Exception
+            {
+                PatientRegister register = Controller.this.patientRegister.getPatientRegister();
                 try {
-                    this.patientRegister.addPatients(importedPatients);
+                    if (selectedFile.getName().endsWith(PatientSnapshotFile.EXTENSION)) {
+                        new PatientSnapshotFile(selectedFile).addPatientsTo(register,
+                                COMPRESSED_IMPORT_BATCH_SIZE, this);
+                    }
+                    else if (CSVHandler.isCompressed(selectedFile)) {
+                        Controller.this.csvHandler.importPatients(selectedFile, COMPRESSED_IMPORT_BATCH_SIZE,
+                                register::addPatients, this);
+                    }
+                    else {
+                        Controller.this.parallelCSVReader.readPatients(selectedFile, true,
+                                register::addPatients, this);
+                    }
                 }
                 catch (DuplicateKeyException e) {
                     throw new DuplicateKeyException("A patient with that social security number already exists");
                 }
+                return true;
+            }
+        });
+        return importTask;
+    }
+
+    /**
+     * Adds the valid contents of the selected CSV file to the register in the background,
+     * skipping the invalid records and the records with a social security number that already exists.
+     * The skipped records are reported to a ".errors.csv" file next to the selected file.
+     * If an earlier import of the same file did not finish, it is resumed after its last checkpoint.
+     * The progress of the Task follows the bytes of the file that are imported. If the Task is cancelled,
+     * the import stops once the batch that is being added and its checkpoint are done.
+     * The returned Task succeeds with the counts of the imported and skipped records
+     * and fails with an IOException if an IO error is encountered
+     * or an IllegalArgumentException if the CSV header of the chosen file is invalid
+     * @return The Task that imports the selected CSV file
+     * @throws CancellationException If the user cancels the open action
+     */
+    public Task<ImportReport> doImportCSVFileSkippingErrors() throws CancellationException
+    {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Open CSV File");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Files", "*.csv", "*.csv.gz"));
+        File selectedFile = fileChooser.showOpenDialog(null);
+
+        if (selectedFile == null) {
+            throw new CancellationException("The file chooser was dismissed");
+        }
 
-                this.updateObservableList();
+        File errorReportFile = new File(selectedFile.getAbsolutePath() + ERROR_REPORT_SUFFIX);
+        String title = (this.patientImporter.hasCheckpoint(errorReportFile) ? "Resuming import of " : "Importing ")
+                + selectedFile.getName();
+        return this.patientRegister.submit(new ProgressTask<>(title)
+        {
+            @Override
+            protected ImportReport call() throws Exception
+            {
+                return Controller.this.patientImporter.importPatients(selectedFile,
+                        Controller.this.patientRegister.getPatientRegister(), errorReportFile, this);
             }
-            success = true;
+        });
+    }
+
+    /**
+     * Brings the register up to date with the selected CSV file, a full extract of the patients, in the background.
+     * Only the new patients and the patients whose content changed are written to the register.
+     * The user is asked whether the patients that are not in the file should be deleted.
+     * The progress of the Task follows the bytes of the file and then the deleted patients.
+     * If the Task is cancelled, it stops once the batch that is being written is done.
+     * The returned Task succeeds with the number of inserted, updated, unchanged and deleted patients
+     * and fails with an IOException if an IO error is encountered
+     * or an IllegalArgumentException if the CSV header of the chosen file is invalid
+     * @return The Task that synchronizes the register with the selected CSV file
+     * @throws CancellationException If the user cancels the open action or the confirmation
+     */
+    public Task<UpsertResult> doSynchronizeWithCSVFile() throws CancellationException
+    {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Open CSV Extract");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Files", "*.csv", "*.csv.gz"));
+        File selectedFile = fileChooser.showOpenDialog(null);
+
+        if (selectedFile == null) {
+            throw new CancellationException("The file chooser was dismissed");
         }
-        return success;
+
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION, "", ButtonType.YES, ButtonType.NO, ButtonType.CANCEL);
+        alert.setTitle("Synchronize with " + selectedFile.getName());
+        alert.setHeaderText("Delete the patients that are not in the file?");
+        alert.setContentText("The patients in the file are added or updated. "
+                + "Choose yes to also delete the patients of the register that are not in the file.");
+        Optional<ButtonType> result = alert.showAndWait();
+        if (result.isEmpty() || result.get() == ButtonType.CANCEL) {
+            throw new CancellationException("The synchronization was not confirmed");
+        }
+        boolean deleteMissing = result.get() == ButtonType.YES;
+
+        return this.patientRegister.submit(new ProgressTask<>("Synchronizing with " + selectedFile.getName())
+        {
+            @Override
+            protected UpsertResult call() throws Exception
+            {
+                return Controller.this.patientSynchronizer.synchronize(selectedFile,
+                        Controller.this.patientRegister.getPatientRegister(), deleteMissing, this);
+            }
+        });
     }
 
     /**
-     * Writes the contents of the patient register to a CSV file
-     * @throws IOException If an IO error is encountered
+     * Writes the contents of the patient register to a CSV file in the background.
+     * The patients are streamed from the register to the file, so they are not all read into memory.
+     * The file is compressed if the compressed CSV format is chosen.
+     * The progress of the Task follows the patients that are written,
+     * if the Task is cancelled the export stops and the file that was partly written is deleted.
+     * The returned Task fails with an IOException if an IO error is encountered
+     * @return The Task that exports the patient register
      * @throws CancellationException If the user cancels the export action
      */
-    public void doExportToCSV() throws IOException, CancellationException
+    public Task<Void> doExportToCSV() throws CancellationException
     {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Save to CSV");
-        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Files", "*.csv"));
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV Files", "*.csv"),
+                new FileChooser.ExtensionFilter("Compressed CSV Files", "*.csv.gz"));
         File selectedFile = fileChooser.showSaveDialog(null);
 
         if (selectedFile == null) {
             throw new CancellationException("The file chooser was dismissed");
         }
 
-        this.csvHandler.writePatientList(selectedFile, this.patientRegister.getPatientList());
+        return this.patientRegister.submit(new ProgressTask<>("Exporting to " + selectedFile.getName())
+        {
+            @Override
+            protected Void call() throws Exception
+            {
+                PatientRegister register = Controller.this.patientRegister.getPatientRegister();
+                try (Stream<Patient> patients = register.streamPatients()) {
+                    Controller.this.csvHandler.writePatients(selectedFile, patients,
+                            register.getNumberOfPatients(), this);
+                }
+                return null;
+            }
+        });
     }
 
     // -----------------------------------------------------------
@@ -301,6 +712,20 @@ public class Controller
         alert.showAndWait();
     }
 
+    /**
+     * Displays a warning dialog to tell the user that the operation could not be started,
+     * as too many operations are queued or the register is closing
+     */
+    private void showTooManyOperationsDialog()
+    {
+        Alert alert = new Alert(Alert.AlertType.WARNING);
+        alert.setTitle("Information");
+        alert.setHeaderText("Too many operations in progress");
+        alert.setContentText("The register is busy with other operations" + "\n"
+                + "The patients were not changed, please try again . . .");
+        alert.showAndWait();
+    }
+
     /**
      * Shows the Patient details dialog
      * @param mode If mode is 1, the method will create a new Patient and add it to the list
@@ -395,10 +820,11 @@ public class Controller
                 case 1:
                     Patient newPatient = result.get();
                     try {
-                        this.patientRegister.addPatient(newPatient);
+                        Task<Void> addTask = this.patientRegister.addPatient(newPatient);
+                        addTask.setOnFailed(event -> this.handleRegisterTaskFailure(addTask));
                     }
-                    catch (DuplicateKeyException e) {
-                        this.showDuplicateSocialSecurityNumberDialog();
+                    catch (RejectedExecutionException e) {
+                        this.showTooManyOperationsDialog();
                     }
                     break;
                 case 2:
@@ -411,13 +837,15 @@ public class Controller
                                 .withDiagnosis(diagnosis.getText())
                                 .build();
                         try {
-                            this.patientRegister.updatePatient(modifiedPatient, this.currentlySelectedPatient);
+                            Task<Boolean> updateTask = this.patientRegister.updatePatient(
+                                    modifiedPatient, this.currentlySelectedPatient);
+                            updateTask.setOnFailed(event -> this.handleRegisterTaskFailure(updateTask));
+
+                            this.clearSelection();
                         }
-                        catch (DuplicateKeyException e) {
-                            this.showDuplicateSocialSecurityNumberDialog();
+                        catch (RejectedExecutionException e) {
+                            this.showTooManyOperationsDialog();
                         }
-
-                        this.clearSelection();
                     }
                     break;
                 default:
@@ -425,8 +853,18 @@ public class Controller
                     // adding anyway; defensive programming
                     throw new IllegalArgumentException("Unexpected mode: " + mode);
             }
+        }
+    }
 
-            this.updateObservableList();
+    /**
+     * Handles a failed add or edit task, shows the showDuplicateSocialSecurityNumberDialog() dialog
+     * if the task failed due to a duplicate social security number
+     * @param failedTask The task that failed, can not be null
+     */
+    private void handleRegisterTaskFailure(Task<?> failedTask)
+    {
+        if (failedTask.getException() instanceof DuplicateKeyException) {
+            this.showDuplicateSocialSecurityNumberDialog();
         }
     }
 }
@@ -0,0 +1,59 @@
+package no.ntnu.mappe2.marko19907.patientregister.controller;
+
+import javafx.concurrent.Task;
+import no.ntnu.mappe2.marko19907.patientregister.utility.Progress;
+import no.ntnu.mappe2.marko19907.patientregister.utility.ProgressListener;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Class ProgressTask is a Task of a long running import or export that shows the progress
+ * the operation reports in the progress and message of the Task.
+ * Cancelling the Task does not interrupt its thread, that could interrupt the IO of a register
+ * in the middle of a transaction. The operation is instead stopped the next time it reports its progress,
+ * once the batch it was working on is done
+ *
+ * @param <T> The type of the result of the task
+ * @author Marko
+ * @version 17-10-2026
+ */
+abstract class ProgressTask<T> extends Task<T> implements ProgressListener
+{
+    /**
+     * Constructor for ProgressTask objects
+     * @param title The title of the task, shown to the user while the task is running
+     */
+    ProgressTask(String title)
+    {
+        this.updateTitle(title);
+    }
+
+    /**
+     * Shows the given progress in the progress and message of the task
+     * @param progress The progress of the operation so far
+     * @throws CancellationException If the task is cancelled, to stop the operation
+     */
+    @Override
+    public void progressed(Progress progress)
+    {
+        if (this.isCancelled()) {
+            throw new CancellationException("The task was cancelled");
+        }
+        double fractionDone = progress.getFractionDone();
+        if (fractionDone >= 0) {
+            this.updateProgress(fractionDone, 1);
+        }
+        this.updateMessage(progress.toString());
+    }
+
+    /**
+     * Cancels the task without interrupting its thread, the operation stops the next time it reports its progress
+     * @param mayInterruptIfRunning Ignored, the thread is never interrupted
+     * @return True if the task was cancelled, false if it was already done
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+        return super.cancel(false);
+    }
+}
@@ -0,0 +1,377 @@
+package no.ntnu.mappe2.marko19907.patientregister.model;
+
+import no.ntnu.mappe2.marko19907.patientregister.exception.DuplicateKeyException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The class CachedPatientRegister is a PatientRegister that keeps the most recently used patients
+ * of another register in memory, typically of a PatientRegisterDB.
+ * Writes go straight through to the other register, the cache follows them by listening to its events,
+ * so it is only changed once the other register has accepted the change.
+ * Lookups by social security number are answered from the cache when the patient is in it.
+ * Once getPatientList() has read every patient and they all fit in the cache, the cache is complete,
+ * and getPatientList(), the number of patients, searches and lookups of missing patients
+ * are answered from memory too,
+ * until a patient is evicted to make room for another.
+ * Searches of a complete cache use a PatientSearchIndex, built on the first search and kept up to date
+ * with the cache until it is no longer complete.
+ * The least recently used patient is evicted when the cache is full.
+ * Changes made to the storage of the other register by others are not seen until invalidate() is called.
+ * Like the registers it is put in front of, it must only be used from one thread at a time.
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public class CachedPatientRegister implements PatientRegister
+{
+    private static final int DEFAULT_MAX_SIZE = 200_000;
+
+    private final PatientRegister register;
+    private final int maxSize;
+    private final LinkedHashMap<String, Patient> cache;
+    private final PatientRegisterListener cacheUpdater;
+    private PatientSearchIndex searchIndex;
+    private boolean complete;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Constructor for CachedPatientRegister objects that holds up to DEFAULT_MAX_SIZE patients
+     * @param register The register to cache the patients of, can not be null
+     * @throws IllegalArgumentException If the register is null
+     */
+    public CachedPatientRegister(PatientRegister register)
+    {
+        this(register, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Constructor for CachedPatientRegister objects
+     * @param register The register to cache the patients of, can not be null
+     * @param maxSize The maximum number of patients to keep in memory, must be positive
+     * @throws IllegalArgumentException If the register is null or the maximum size is not positive
+     */
+    public CachedPatientRegister(PatientRegister register, int maxSize)
+    {
+        if (register == null || maxSize <= 0) {
+            throw new IllegalArgumentException("The register can not be null and the maximum size must be positive!");
+        }
+        this.register = register;
+        this.maxSize = maxSize;
+        // Ordered by access, so the eldest entry is the least recently used patient
+        this.cache = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Patient> eldest)
+            {
+                boolean evict = this.size() > CachedPatientRegister.this.maxSize;
+                if (evict) {
+                    CachedPatientRegister.this.evictionCount++;
+                    CachedPatientRegister.this.complete = false;
+                    CachedPatientRegister.this.searchIndex = null;
+                }
+                return evict;
+            }
+        };
+        this.cacheUpdater = this::applyEvent;
+        this.complete = false;
+        this.register.addListener(this.cacheUpdater);
+    }
+
+    /**
+     * Applies a change of the other register to the cache
+     * @param event The event that describes the change
+     */
+    private void applyEvent(PatientRegisterEvent event)
+    {
+        for (Patient oldPatient : event.getOldPatients()) {
+            Patient removedPatient = this.cache.remove(oldPatient.getSocialSecurityNumber());
+            if (this.searchIndex != null && removedPatient != null) {
+                this.searchIndex.remove(removedPatient);
+            }
+        }
+        for (Patient newPatient : event.getNewPatients()) {
+            Patient replacedPatient = this.cache.put(newPatient.getSocialSecurityNumber(), newPatient);
+            // The index is dropped if the put evicted a patient
+            if (this.searchIndex != null) {
+                if (replacedPatient != null) {
+                    this.searchIndex.remove(replacedPatient);
+                }
+                this.searchIndex.add(newPatient);
+            }
+        }
+    }
+
+    @Override
+    public void addPatient(Patient patient) throws DuplicateKeyException
+    {
+        this.register.addPatient(patient);
+    }
+
+    @Override
+    public void addPatients(List<Patient> patients)
+    {
+        this.register.addPatients(patients);
+    }
+
+    @Override
+    public List<Patient> addNewPatients(List<Patient> patients)
+    {
+        return this.register.addNewPatients(patients);
+    }
+
+    @Override
+    public UpsertResult upsertPatients(List<Patient> patients)
+    {
+        return this.register.upsertPatients(patients);
+    }
+
+    /**
+     * Returns a List of the patients in the register, in no particular order.
+     * The List is copied from the cache when it is complete, otherwise it is read from the other register
+     * and the cache is filled with it, which makes the cache complete if every patient fits
+     * @return A List of patients in the register
+     */
+    @Override
+    public List<Patient> getPatientList()
+    {
+        if (this.complete) {
+            this.hitCount++;
+            return new ArrayList<>(this.cache.values());
+        }
+
+        this.missCount++;
+        List<Patient> patients = this.register.getPatientList();
+        if (patients.size() <= this.maxSize) {
+            this.cache.clear();
+            this.searchIndex = null;
+            patients.forEach(patient -> this.cache.put(patient.getSocialSecurityNumber(), patient));
+            this.complete = true;
+        }
+        return patients;
+    }
+
+    @Override
+    public Stream<Patient> streamPatients()
+    {
+        return this.register.streamPatients();
+    }
+
+    @Override
+    public List<Patient> getPatientPage(PatientField sortKey, int offset, int limit)
+    {
+        return this.register.getPatientPage(sortKey, offset, limit);
+    }
+
+    @Override
+    public List<Patient> getPatientPageAfter(PatientField sortKey, Patient lastPatient, int limit)
+    {
+        return this.register.getPatientPageAfter(sortKey, lastPatient, limit);
+    }
+
+    /**
+     * Returns the patients whose given field is equal to the given value.
+     * Lookups by social security number are answered from the cache when the patient is in it,
+     * or when the cache is complete, the patients found in the other register are added to the cache.
+     * Lookups by the other fields are passed on to the other register.
+     * @param field The field to compare, can not be null
+     * @param value The value to look for, can not be null
+     * @return A List of the patients with the given value, in no particular order
+     * @throws IllegalArgumentException If any of the arguments is null
+     */
+    @Override
+    public List<Patient> findPatients(PatientField field, String value)
+    {
+        if (field == null || value == null) {
+            throw new IllegalArgumentException("The field and the value can not be null!");
+        }
+        if (field != PatientField.SOCIAL_SECURITY_NUMBER) {
+            return this.register.findPatients(field, value);
+        }
+
+        Patient cachedPatient = this.cache.get(value);
+        if (cachedPatient != null || this.complete) {
+            this.hitCount++;
+            return (cachedPatient != null) ? List.of(cachedPatient) : Collections.emptyList();
+        }
+
+        this.missCount++;
+        List<Patient> patients = this.register.findPatients(field, value);
+        patients.forEach(patient -> this.cache.put(patient.getSocialSecurityNumber(), patient));
+        return patients;
+    }
+
+    @Override
+    public List<Patient> findPatientsByPrefix(PatientField field, String prefix)
+    {
+        return this.register.findPatientsByPrefix(field, prefix);
+    }
+
+    @Override
+    public List<Patient> findPatientsInRange(PatientField field, String fromValue, String toValue)
+    {
+        return this.register.findPatientsInRange(field, fromValue, toValue);
+    }
+
+    @Override
+    public List<Patient> filterPatients(Map<PatientField, String> prefixes)
+    {
+        return this.register.filterPatients(prefixes);
+    }
+
+    /**
+     * Returns the patients that best match the given type-ahead query, the best match first.
+     * The patients are searched in the search index of the cache when it is complete,
+     * otherwise the search is passed on to the other register.
+     * @param query The query to search for, can not be null
+     * @param limit The maximum number of patients to return, must be positive
+     * @return A List of at most limit patients, the best match first
+     * @throws IllegalArgumentException If the query is null or the limit is not positive
+     */
+    @Override
+    public List<Patient> searchPatients(String query, int limit)
+    {
+        if (query == null || limit <= 0) {
+            throw new IllegalArgumentException("The query can not be null and the limit must be positive!");
+        }
+        if (!this.complete) {
+            this.missCount++;
+            return this.register.searchPatients(query, limit);
+        }
+
+        this.hitCount++;
+        if (this.searchIndex == null) {
+            this.searchIndex = new PatientSearchIndex();
+            this.cache.values().forEach(this.searchIndex::add);
+        }
+        return this.searchIndex.search(query, limit);
+    }
+
+    @Override
+    public boolean removePatient(Patient patientToRemove)
+    {
+        return this.register.removePatient(patientToRemove);
+    }
+
+    @Override
+    public boolean updatePatient(Patient newPatient, Patient oldPatient) throws DuplicateKeyException
+    {
+        return this.register.updatePatient(newPatient, oldPatient);
+    }
+
+    /**
+     * Returns the number of patients in the register,
+     * from the cache when it is complete and from the other register otherwise
+     * @return The number of patients in the register as an int
+     */
+    @Override
+    public int getNumberOfPatients()
+    {
+        return this.complete ? this.cache.size() : this.register.getNumberOfPatients();
+    }
+
+    /**
+     * Empties the cache, so that the next reads go to the other register.
+     * Needed when the storage of the other register has been changed by others
+     */
+    public void invalidate()
+    {
+        this.cache.clear();
+        this.searchIndex = null;
+        this.complete = false;
+    }
+
+    /**
+     * Returns true if the cache holds every patient of the register
+     * @return True if the cache is complete, false otherwise
+     */
+    public boolean isComplete()
+    {
+        return this.complete;
+    }
+
+    /**
+     * Returns the number of patients in the cache
+     * @return The number of patients in the cache as an int
+     */
+    public int getCacheSize()
+    {
+        return this.cache.size();
+    }
+
+    /**
+     * Returns the maximum number of patients the cache holds
+     * @return The maximum size of the cache as an int
+     */
+    public int getMaxSize()
+    {
+        return this.maxSize;
+    }
+
+    /**
+     * Returns the number of reads that were answered from the cache
+     * @return The number of cache hits
+     */
+    public long getHitCount()
+    {
+        return this.hitCount;
+    }
+
+    /**
+     * Returns the number of reads that had to go to the other register
+     * @return The number of cache misses
+     */
+    public long getMissCount()
+    {
+        return this.missCount;
+    }
+
+    /**
+     * Returns the share of the reads that were answered from the cache
+     * @return The hit rate from 0 to 1, 0 if there have been no reads
+     */
+    public double getHitRate()
+    {
+        long reads = this.hitCount + this.missCount;
+        return (reads == 0) ? 0 : (double) this.hitCount / reads;
+    }
+
+    /**
+     * Returns the number of patients that were evicted to make room for others
+     * @return The number of evictions
+     */
+    public long getEvictionCount()
+    {
+        return this.evictionCount;
+    }
+
+    @Override
+    public void addListener(PatientRegisterListener listener)
+    {
+        this.register.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(PatientRegisterListener listener)
+    {
+        this.register.removeListener(listener);
+    }
+
+    /**
+     * Empties the cache and closes the other register
+     */
+    @Override
+    public void close()
+    {
+        this.register.removeListener(this.cacheUpdater);
+        this.invalidate();
+        this.register.close();
+    }
+}
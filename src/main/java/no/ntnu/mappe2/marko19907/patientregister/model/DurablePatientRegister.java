@@ -0,0 +1,653 @@
+package no.ntnu.mappe2.marko19907.patientregister.model;
+
+import no.ntnu.mappe2.marko19907.patientregister.exception.DuplicateKeyException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The class DurablePatientRegister is a PatientRegisterPlain whose changes survive a restart.
+ * Every change is appended to a write-ahead log in the given directory before the method that made it returns,
+ * and a change that can not be appended is rolled back before the method throws,
+ * and snapshots of all the patients are written in the background once the log has grown past
+ * the snapshot threshold, after which the log before the snapshot is deleted.
+ * If the log can not be forced to disk, every change it has not forced yet is rolled back, the listeners
+ * are told of the rollback, the methods that made the changes throw, and the register becomes read-only.
+ * On startup the latest snapshot is loaded and the log after it is replayed.
+ * With synchronous commit, which is the default, a method that changes the register waits until its changes
+ * have been forced to disk. The operations of the register run one at a time, but they wait for the disk
+ * outside of the lock, so the changes of writers on different threads are forced to disk together.
+ * Without synchronous commit, the changes of the last few milliseconds can be lost if the machine stops.
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public class DurablePatientRegister implements PatientRegister
+{
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+    private static final long DEFAULT_SNAPSHOT_THRESHOLD = 64L * 1024 * 1024;
+
+    private final File directory;
+    private final PatientRegisterPlain register;
+    private final ReentrantLock lock;
+    private final WriteAheadLog log;
+    private final List<PatientRegisterEvent> changes;
+    private final Deque<LoggedChange> undurableChanges;
+    private final ExecutorService snapshotExecutor;
+    private final Logger logger;
+    private Future<?> runningSnapshot;
+    private long snapshotThreshold;
+    private boolean synchronousCommit;
+    private boolean failed;
+
+    /**
+     * Constructor for DurablePatientRegister objects, recovers the patients stored in the given directory
+     * @param directory The directory to store the patients in, it is created if it does not exist,
+     *                  can not be null
+     * @throws IllegalArgumentException If the directory is null
+     * @throws IOException If the directory can not be created, or the stored patients can not be read
+     */
+    public DurablePatientRegister(File directory) throws IOException
+    {
+        this(directory, UnaryOperator.identity());
+    }
+
+    /**
+     * Constructor for DurablePatientRegister objects that wraps the channels the log is written through,
+     * for example to count the writes or to make them fail. Recovers the patients stored in the given directory
+     * @param directory The directory to store the patients in, it is created if it does not exist,
+     *                  can not be null
+     * @param channelWrapper The function that wraps the channel of each log segment, can not be null
+     * @throws IllegalArgumentException If the directory or the channel wrapper is null
+     * @throws IOException If the directory can not be created, or the stored patients can not be read
+     */
+    public DurablePatientRegister(File directory, UnaryOperator<FileChannel> channelWrapper) throws IOException
+    {
+        if (directory == null || channelWrapper == null) {
+            throw new IllegalArgumentException("The directory and the channel wrapper can not be null!");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create the directory " + directory);
+        }
+        this.directory = directory;
+        this.register = new PatientRegisterPlain();
+        this.lock = new ReentrantLock();
+        this.logger = Logger.getLogger(this.getClass().getSimpleName());
+        this.snapshotThreshold = DEFAULT_SNAPSHOT_THRESHOLD;
+        this.synchronousCommit = true;
+
+        long nextSegmentNumber = this.recover();
+        this.log = new WriteAheadLog(directory, nextSegmentNumber, channelWrapper);
+        // The changes are collected and appended by write(), as the listeners can not fail the change
+        this.changes = new ArrayList<>();
+        this.undurableChanges = new ArrayDeque<>();
+        this.register.addListener(this.changes::add);
+        this.snapshotExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "patient-register-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Loads the latest snapshot and replays the log segments after it into the register
+     * @return The number of the segment to write next
+     * @throws IOException If the snapshot or the log can not be read
+     */
+    private long recover() throws IOException
+    {
+        long[] snapshotNumbers = DurablePatientRegister.findFileNumbers(
+                this.directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        long firstSegmentNumber = 0;
+        Map<String, Patient> patients = new LinkedHashMap<>();
+        if (snapshotNumbers.length > 0) {
+            firstSegmentNumber = snapshotNumbers[snapshotNumbers.length - 1];
+            PatientSnapshot.read(this.getSnapshotFile(firstSegmentNumber))
+                    .forEach(patient -> patients.put(patient.getSocialSecurityNumber(), patient));
+        }
+
+        long nextSegmentNumber = firstSegmentNumber;
+        for (long segmentNumber : WriteAheadLog.findSegmentNumbers(this.directory)) {
+            if (segmentNumber >= firstSegmentNumber) {
+                WriteAheadLog.replay(WriteAheadLog.getSegmentFile(this.directory, segmentNumber), patients);
+                nextSegmentNumber = segmentNumber + 1;
+            }
+        }
+
+        this.register.addPatients(new ArrayList<>(patients.values()));
+        return nextSegmentNumber;
+    }
+
+    /**
+     * Returns the snapshot file that holds the patients of the segments before the given one
+     * @param segmentNumber The number of the first segment after the snapshot
+     * @return The snapshot file
+     */
+    private File getSnapshotFile(long segmentNumber)
+    {
+        return new File(this.directory, String.format("%s%020d%s", SNAPSHOT_PREFIX, segmentNumber, SNAPSHOT_SUFFIX));
+    }
+
+    /**
+     * Returns the numbers of the files in the given directory that are named by the given prefix,
+     * a number and the given suffix, in ascending order
+     * @param directory The directory to look in, can not be null
+     * @param prefix The start of the names of the files, can not be null
+     * @param suffix The end of the names of the files, can not be null
+     * @return The numbers of the files
+     */
+    static long[] findFileNumbers(File directory, String prefix, String suffix)
+    {
+        String[] names = directory.list((dir, name) -> name.startsWith(prefix) && name.endsWith(suffix)
+                && name.length() > prefix.length() + suffix.length());
+        if (names == null) {
+            return new long[0];
+        }
+        List<Long> numbers = new ArrayList<>(names.length);
+        for (String name : names) {
+            try {
+                numbers.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+            }
+            catch (NumberFormatException e) {
+                // Not one of the files of the register
+            }
+        }
+        long[] sortedNumbers = numbers.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sortedNumbers);
+        return sortedNumbers;
+    }
+
+    /**
+     * Returns the size the log has to grow to before a snapshot is written in the background
+     * @return The snapshot threshold in bytes
+     */
+    public long getSnapshotThreshold()
+    {
+        return this.snapshotThreshold;
+    }
+
+    /**
+     * Sets the size the log has to grow to before a snapshot is written in the background
+     * @param snapshotThreshold The snapshot threshold in bytes, must be positive
+     * @throws IllegalArgumentException If the threshold is not positive
+     */
+    public void setSnapshotThreshold(long snapshotThreshold)
+    {
+        if (snapshotThreshold <= 0) {
+            throw new IllegalArgumentException("The snapshot threshold must be positive!");
+        }
+        this.snapshotThreshold = snapshotThreshold;
+    }
+
+    /**
+     * Returns true if the methods that change the register wait until the changes are on disk
+     * @return True if the commits are synchronous, false otherwise
+     */
+    public boolean isSynchronousCommit()
+    {
+        return this.synchronousCommit;
+    }
+
+    /**
+     * Sets whether the methods that change the register wait until the changes are on disk
+     * @param synchronousCommit True to wait for the disk, false to return as soon as the changes are logged
+     */
+    public void setSynchronousCommit(boolean synchronousCommit)
+    {
+        this.synchronousCommit = synchronousCommit;
+    }
+
+    /**
+     * Runs the given change of the register under the lock, and waits for it to be forced to disk
+     * outside of the lock when the commits are synchronous
+     * @param change The change to run, not null
+     * @param <T> The type of the result of the change
+     * @return The result of the change
+     * @throws UncheckedIOException If the log can not be written, the change is rolled back,
+     *                              or if the register is read-only after an earlier failure
+     */
+    private <T> T write(Supplier<T> change)
+    {
+        T result;
+        long position;
+        this.lock.lock();
+        try {
+            if (this.failed) {
+                throw new UncheckedIOException(new IOException(
+                        "The register is read-only, as its write-ahead log could not be written"));
+            }
+            this.forgetDurableChanges();
+            try {
+                result = change.get();
+            }
+            finally {
+                // A change that throws part way may still have changed the register
+                this.appendChanges();
+            }
+            position = this.log.getAppendedPosition();
+            if (this.log.getSegmentSize() >= this.snapshotThreshold
+                    && (this.runningSnapshot == null || this.runningSnapshot.isDone())) {
+                this.startBackgroundSnapshot();
+            }
+        }
+        finally {
+            this.lock.unlock();
+        }
+
+        if (this.synchronousCommit) {
+            try {
+                this.log.awaitDurable(position);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new IOException("Interrupted while waiting for the log", e));
+            }
+            catch (UncheckedIOException e) {
+                this.rollBackUndurableChanges(List.of());
+                throw e;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Starts a snapshot in the background after a change has been logged. A snapshot that can not be started
+     * is only logged, the change is in the log either way and the next change tries again.
+     * Must be called with the lock held
+     * @throws UncheckedIOException If the log failed, the changes it had not forced are rolled back
+     */
+    private void startBackgroundSnapshot()
+    {
+        try {
+            this.runningSnapshot = this.startSnapshot();
+        }
+        catch (IOException e) {
+            this.logger.log(Level.WARNING, "Could not start a snapshot, the log is kept", e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.logger.log(Level.WARNING, "Interrupted while starting a snapshot, the log is kept", e);
+        }
+        catch (UncheckedIOException e) {
+            // Starting a snapshot waits for the log, which is how a failure of the log can show up here
+            this.rollBackUndurableChanges(List.of());
+            throw e;
+        }
+    }
+
+    /**
+     * Appends the changes collected since the last call to the log, and undoes them in the register
+     * if the log can not take them. Must be called with the lock held
+     * @throws UncheckedIOException If the log can not be written
+     */
+    private void appendChanges()
+    {
+        List<PatientRegisterEvent> newChanges = new ArrayList<>(this.changes);
+        this.changes.clear();
+        int appendedChanges = 0;
+        try {
+            for (; appendedChanges < newChanges.size(); appendedChanges++) {
+                this.appendChange(newChanges.get(appendedChanges));
+            }
+        }
+        catch (UncheckedIOException e) {
+            if (this.log.hasFailed()) {
+                this.rollBackUndurableChanges(newChanges.subList(appendedChanges, newChanges.size()));
+                throw e;
+            }
+
+            this.undo(newChanges);
+            // The rollback is logged too, so that the changes appended before the failure are undone on recovery
+            try {
+                for (PatientRegisterEvent event : this.changes) {
+                    this.appendChange(event);
+                }
+            }
+            catch (UncheckedIOException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            finally {
+                this.changes.clear();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Appends the given change to the log and remembers it until the log has forced it to disk.
+     * Must be called with the lock held
+     * @param event The change to append, not null
+     * @throws UncheckedIOException If the log can not be written
+     */
+    private void appendChange(PatientRegisterEvent event)
+    {
+        long position = this.log.append(event);
+        this.undurableChanges.addLast(new LoggedChange(event, position));
+    }
+
+    /**
+     * Forgets the logged changes that the log has forced to disk, as they can no longer be rolled back.
+     * Must be called with the lock held
+     */
+    private void forgetDurableChanges()
+    {
+        long durablePosition = this.log.getDurablePosition();
+        while (!this.undurableChanges.isEmpty() && this.undurableChanges.peekFirst().position <= durablePosition) {
+            this.undurableChanges.removeFirst();
+        }
+    }
+
+    /**
+     * Undoes the given changes that were never appended and every logged change the log has not forced to disk,
+     * the latest first, and makes the register read-only, once the log has failed.
+     * The listeners of the register are told of the undo like of any other change
+     * @param unappendedChanges The changes that were made after the logged changes but could not be appended
+     */
+    private void rollBackUndurableChanges(List<PatientRegisterEvent> unappendedChanges)
+    {
+        this.lock.lock();
+        try {
+            if (!this.failed) {
+                this.failed = true;
+                this.forgetDurableChanges();
+                List<PatientRegisterEvent> rolledBackChanges = new ArrayList<>();
+                this.undurableChanges.forEach(change -> rolledBackChanges.add(change.event));
+                rolledBackChanges.addAll(unappendedChanges);
+                this.undurableChanges.clear();
+                this.undo(rolledBackChanges);
+                // The log can not take the undo either, it is left out of the log like the changes it undoes
+                this.changes.clear();
+            }
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Undoes the given changes in the register, the latest first. Must be called with the lock held
+     * @param events The changes to undo, in the order they were made
+     */
+    private void undo(List<PatientRegisterEvent> events)
+    {
+        for (int i = events.size() - 1; i >= 0; i--) {
+            PatientRegisterEvent event = events.get(i);
+            event.getNewPatients().forEach(this.register::removePatient);
+            if (!event.getOldPatients().isEmpty()) {
+                this.register.addPatients(event.getOldPatients());
+            }
+        }
+    }
+
+    /**
+     * Runs the given read of the register under the lock
+     * @param read The read to run, not null
+     * @param <T> The type of the result of the read
+     * @return The result of the read
+     */
+    private <T> T read(Supplier<T> read)
+    {
+        this.lock.lock();
+        try {
+            return read.get();
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Starts a new log segment and writes the patients in the background as the snapshot in front of it.
+     * Must be called with the lock held, so the copied patients are exactly those of the log before the segment
+     * @return The Future of the snapshot
+     * @throws IOException If the new segment can not be created
+     * @throws InterruptedException If the thread is interrupted while waiting for the log to be written
+     * @throws UncheckedIOException If the log has failed
+     */
+    private Future<?> startSnapshot() throws IOException, InterruptedException
+    {
+        List<Patient> patients = this.register.getPatientList();
+        long segmentNumber = this.log.startNewSegment();
+
+        return this.snapshotExecutor.submit(() -> {
+            try {
+                PatientSnapshot.write(this.getSnapshotFile(segmentNumber), patients);
+                this.deleteFilesBefore(segmentNumber);
+            }
+            catch (IOException e) {
+                // The log is kept, so nothing is lost, the next snapshot tries again
+                this.logger.log(Level.WARNING, "Could not write the snapshot before segment " + segmentNumber, e);
+            }
+        });
+    }
+
+    /**
+     * Deletes the snapshots and the log segments that the snapshot in front of the given segment replaces
+     * @param segmentNumber The number of the first segment after the new snapshot
+     */
+    private void deleteFilesBefore(long segmentNumber)
+    {
+        for (long number : DurablePatientRegister.findFileNumbers(this.directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (number < segmentNumber && !this.getSnapshotFile(number).delete()) {
+                this.logger.warning("Could not delete the old snapshot " + number);
+            }
+        }
+        for (long number : WriteAheadLog.findSegmentNumbers(this.directory)) {
+            if (number < segmentNumber && !WriteAheadLog.getSegmentFile(this.directory, number).delete()) {
+                this.logger.warning("Could not delete the old log segment " + number);
+            }
+        }
+    }
+
+    /**
+     * Writes a snapshot of the patients now and waits for it, so that the log before it can be deleted
+     * @throws IOException If the snapshot can not be written
+     * @throws InterruptedException If the thread is interrupted while waiting for the snapshot
+     */
+    public void snapshot() throws IOException, InterruptedException
+    {
+        Future<?> snapshot;
+        this.lock.lock();
+        try {
+            if (this.runningSnapshot != null) {
+                this.waitFor(this.runningSnapshot);
+            }
+            snapshot = this.startSnapshot();
+            this.runningSnapshot = snapshot;
+        }
+        finally {
+            this.lock.unlock();
+        }
+        this.waitFor(snapshot);
+    }
+
+    /**
+     * Waits for the given snapshot to finish
+     * @param snapshot The Future of the snapshot, not null
+     * @throws IOException If the snapshot failed
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    private void waitFor(Future<?> snapshot) throws IOException, InterruptedException
+    {
+        try {
+            snapshot.get();
+        }
+        catch (ExecutionException e) {
+            throw new IOException("The snapshot failed", e.getCause());
+        }
+    }
+
+    @Override
+    public void addPatient(Patient patient) throws DuplicateKeyException
+    {
+        this.write(() -> {
+            this.register.addPatient(patient);
+            return null;
+        });
+    }
+
+    @Override
+    public void addPatients(List<Patient> patients)
+    {
+        this.write(() -> {
+            this.register.addPatients(patients);
+            return null;
+        });
+    }
+
+    @Override
+    public List<Patient> addNewPatients(List<Patient> patients)
+    {
+        return this.write(() -> this.register.addNewPatients(patients));
+    }
+
+    @Override
+    public UpsertResult upsertPatients(List<Patient> patients)
+    {
+        return this.write(() -> this.register.upsertPatients(patients));
+    }
+
+    @Override
+    public List<Patient> getPatientList()
+    {
+        return this.read(this.register::getPatientList);
+    }
+
+    @Override
+    public List<Patient> getPatientPage(PatientField sortKey, int offset, int limit)
+    {
+        return this.read(() -> this.register.getPatientPage(sortKey, offset, limit));
+    }
+
+    @Override
+    public List<Patient> getPatientPageAfter(PatientField sortKey, Patient lastPatient, int limit)
+    {
+        return this.read(() -> this.register.getPatientPageAfter(sortKey, lastPatient, limit));
+    }
+
+    @Override
+    public List<Patient> findPatients(PatientField field, String value)
+    {
+        return this.read(() -> this.register.findPatients(field, value));
+    }
+
+    @Override
+    public List<Patient> findPatientsByPrefix(PatientField field, String prefix)
+    {
+        return this.read(() -> this.register.findPatientsByPrefix(field, prefix));
+    }
+
+    @Override
+    public List<Patient> findPatientsInRange(PatientField field, String fromValue, String toValue)
+    {
+        return this.read(() -> this.register.findPatientsInRange(field, fromValue, toValue));
+    }
+
+    @Override
+    public List<Patient> filterPatients(Map<PatientField, String> prefixes)
+    {
+        return this.read(() -> this.register.filterPatients(prefixes));
+    }
+
+    @Override
+    public List<Patient> searchPatients(String query, int limit)
+    {
+        return this.read(() -> this.register.searchPatients(query, limit));
+    }
+
+    @Override
+    public boolean removePatient(Patient patientToRemove)
+    {
+        return this.write(() -> this.register.removePatient(patientToRemove));
+    }
+
+    @Override
+    public boolean updatePatient(Patient newPatient, Patient oldPatient) throws DuplicateKeyException
+    {
+        return this.write(() -> this.register.updatePatient(newPatient, oldPatient));
+    }
+
+    @Override
+    public int getNumberOfPatients()
+    {
+        return this.read(this.register::getNumberOfPatients);
+    }
+
+    @Override
+    public boolean isThreadSafe()
+    {
+        return true;
+    }
+
+    @Override
+    public void addListener(PatientRegisterListener listener)
+    {
+        this.register.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(PatientRegisterListener listener)
+    {
+        this.register.removeListener(listener);
+    }
+
+    /**
+     * Waits for a running snapshot, then forces the rest of the log to disk and closes it
+     * @throws UncheckedIOException If the log can not be written
+     */
+    @Override
+    public void close()
+    {
+        this.lock.lock();
+        try {
+            this.snapshotExecutor.shutdown();
+            this.snapshotExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            this.log.close();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            this.lock.unlock();
+        }
+        this.register.close();
+    }
+
+    /**
+     * A change that was appended to the log, with the position of the log after it
+     */
+    private static final class LoggedChange
+    {
+        private final PatientRegisterEvent event;
+        private final long position;
+
+        private LoggedChange(PatientRegisterEvent event, long position)
+        {
+            this.event = event;
+            this.position = position;
+        }
+    }
+}
@@ -2,6 +2,13 @@ package no.ntnu.mappe2.marko19907.patientregister.model;
 
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.NamedQueries;
+import jakarta.persistence.NamedQuery;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import jakarta.persistence.Table;
 
 import java.util.Objects;
 
@@ -11,11 +18,66 @@ import java.util.Objects;
  * the social security number and the name of the patient's general practitioner.
  *
  * @author Marko
- * @version 01-05-2021
+ * @version 17-10-2026
  */
 @Entity
+@Table(indexes = {
+        @Index(name = "PATIENT_FIRST_NAME_IDX", columnList = "firstName, socialSecurityNumber"),
+        @Index(name = "PATIENT_LAST_NAME_IDX", columnList = "lastName, socialSecurityNumber"),
+        @Index(name = "PATIENT_GENERAL_PRACTITIONER_IDX",
+                columnList = "generalPractitioner, socialSecurityNumber"),
+        @Index(name = "PATIENT_DIAGNOSIS_IDX", columnList = "diagnosis, socialSecurityNumber")
+})
+@NamedQueries({
+        @NamedQuery(name = "Patient.findByFirstName",
+                query = "SELECT c FROM Patient c WHERE c.firstName = :value"),
+        @NamedQuery(name = "Patient.findByFirstNamePrefix",
+                query = "SELECT c FROM Patient c WHERE c.firstName LIKE :prefix ESCAPE '\\'"
+                        + " ORDER BY c.firstName, c.socialSecurityNumber"),
+        @NamedQuery(name = "Patient.findByFirstNameRange",
+                query = "SELECT c FROM Patient c WHERE c.firstName >= :fromValue"
+                        + " AND c.firstName < :toValue"
+                        + " ORDER BY c.firstName, c.socialSecurityNumber"),
+        @NamedQuery(name = "Patient.findByLastName",
+                query = "SELECT c FROM Patient c WHERE c.lastName = :value"),
+        @NamedQuery(name = "Patient.findByLastNamePrefix",
+                query = "SELECT c FROM Patient c WHERE c.lastName LIKE :prefix ESCAPE '\\'"
+                        + " ORDER BY c.lastName, c.socialSecurityNumber"),
+        @NamedQuery(name = "Patient.findByLastNameRange",
+                query = "SELECT c FROM Patient c WHERE c.lastName >= :fromValue"
+                        + " AND c.lastName < :toValue"
+                        + " ORDER BY c.lastName, c.socialSecurityNumber"),
+        @NamedQuery(name = "Patient.findByGeneralPractitioner",
+                query = "SELECT c FROM Patient c WHERE c.generalPractitioner = :value"),
+        @NamedQuery(name = "Patient.findByGeneralPractitionerPrefix",
+                query = "SELECT c FROM Patient c WHERE c.generalPractitioner LIKE :prefix ESCAPE '\\'"
+                        + " ORDER BY c.generalPractitioner, c.socialSecurityNumber"),
+        @NamedQuery(name = "Patient.findByGeneralPractitionerRange",
+                query = "SELECT c FROM Patient c WHERE c.generalPractitioner >= :fromValue"
+                        + " AND c.generalPractitioner < :toValue"
+                        + " ORDER BY c.generalPractitioner, c.socialSecurityNumber"),
+        @NamedQuery(name = "Patient.findByDiagnosis",
+                query = "SELECT c FROM Patient c WHERE c.diagnosis = :value"),
+        @NamedQuery(name = "Patient.findByDiagnosisPrefix",
+                query = "SELECT c FROM Patient c WHERE c.diagnosis LIKE :prefix ESCAPE '\\'"
+                        + " ORDER BY c.diagnosis, c.socialSecurityNumber"),
+        @NamedQuery(name = "Patient.findByDiagnosisRange",
+                query = "SELECT c FROM Patient c WHERE c.diagnosis >= :fromValue"
+                        + " AND c.diagnosis < :toValue"
+                        + " ORDER BY c.diagnosis, c.socialSecurityNumber"),
+        @NamedQuery(name = "Patient.findBySocialSecurityNumberPrefix",
+                query = "SELECT c FROM Patient c WHERE c.socialSecurityNumber LIKE :prefix ESCAPE '\\'"
+                        + " ORDER BY c.socialSecurityNumber"),
+        @NamedQuery(name = "Patient.findBySocialSecurityNumberRange",
+                query = "SELECT c FROM Patient c WHERE c.socialSecurityNumber >= :fromValue"
+                        + " AND c.socialSecurityNumber < :toValue"
+                        + " ORDER BY c.socialSecurityNumber")
+})
 public class Patient
 {
+    // The general practitioners and the diagnoses repeat across many patients, so every patient shares them
+    private static final ValueDictionary VALUE_DICTIONARY = new ValueDictionary();
+
     @Id
     private String socialSecurityNumber;
 
@@ -23,6 +85,8 @@ public class Patient
     private String lastName;
     private String generalPractitioner;
     private String diagnosis;
+    // The content hash as of the last write to the database, so changed patients can be found without loading them
+    private Long contentHash;
 
     /**
      * Constructor for Patient objects
@@ -57,6 +121,38 @@ public class Patient
         this.diagnosis = "";
     }
 
+    /**
+     * Returns a Patient with the given values as they are, without the checks of the constructor and the setters,
+     * and without sharing the values through the dictionary. It is only used as a bound when looking up
+     * a range of patients in a sorted index, where blank values are valid.
+     * @param firstName The first name of the bound, can not be null
+     * @param lastName The last name of the bound, can not be null
+     * @param socialSecurityNumber The social security number of the bound, can not be null
+     * @param generalPractitioner The general practitioner of the bound, can not be null
+     * @param diagnosis The diagnosis of the bound, can not be null
+     * @return A Patient with the given values
+     */
+    static Patient createSearchBound(String firstName, String lastName, String socialSecurityNumber,
+                                     String generalPractitioner, String diagnosis)
+    {
+        Patient bound = new Patient();
+        bound.firstName = firstName;
+        bound.lastName = lastName;
+        bound.socialSecurityNumber = socialSecurityNumber;
+        bound.generalPractitioner = generalPractitioner;
+        bound.diagnosis = diagnosis;
+        return bound;
+    }
+
+    /**
+     * Returns the dictionary that the general practitioners and the diagnoses of all patients are shared through
+     * @return The dictionary of the values of the patients
+     */
+    public static ValueDictionary getValueDictionary()
+    {
+        return VALUE_DICTIONARY;
+    }
+
     /**
      * Returns the social security number of the patient
      * @return Returns the social security number of the patient as a String
@@ -149,7 +245,7 @@ public class Patient
     public void setGeneralPractitioner(String generalPractitioner)
     {
         if (generalPractitioner != null) {
-            this.generalPractitioner = generalPractitioner;
+            this.generalPractitioner = VALUE_DICTIONARY.intern(generalPractitioner);
         }
     }
 
@@ -169,10 +265,56 @@ public class Patient
     public void setDiagnosis(String diagnosis)
     {
         if (diagnosis != null) {
-            this.diagnosis = diagnosis;
+            this.diagnosis = VALUE_DICTIONARY.intern(diagnosis);
         }
     }
 
+    /**
+     * Returns a 64-bit FNV-1a hash of the content of the patient, every field included.
+     * Unlike hashCode(), the hash is the same in every JVM, so it can be stored and compared later
+     * @return The content hash of the patient
+     */
+    public long computeContentHash()
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (String value : new String[] {this.socialSecurityNumber, this.firstName, this.lastName,
+                this.generalPractitioner, this.diagnosis}) {
+            // The length separates the fields, so that moving characters between fields changes the hash.
+            // Rows written before a column was filled in may hold NULL, which is hashed as the length -1
+            if (value == null) {
+                hash = (hash ^ -1) * 0x100000001b3L;
+            }
+            else {
+                hash = (hash ^ value.length()) * 0x100000001b3L;
+                for (int i = 0; i < value.length(); i++) {
+                    hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Stores the content hash of the patient before it is written to the database
+     */
+    @PrePersist
+    @PreUpdate
+    private void storeContentHash()
+    {
+        this.contentHash = this.computeContentHash();
+    }
+
+    /**
+     * Shares the general practitioner and the diagnosis of a patient loaded from the database
+     * with the other patients, as the database gives every row its own Strings
+     */
+    @PostLoad
+    private void internValues()
+    {
+        this.generalPractitioner = VALUE_DICTIONARY.intern(this.generalPractitioner);
+        this.diagnosis = VALUE_DICTIONARY.intern(this.diagnosis);
+    }
+
     @Override
     public String toString()
     {
@@ -235,7 +377,7 @@ public class Patient
         public PatientBuilder withGeneralPractitioner(String generalPractitioner)
         {
             if (generalPractitioner != null) {
-                this.generalPractitioner = generalPractitioner;
+                this.generalPractitioner = VALUE_DICTIONARY.intern(generalPractitioner);
             }
             return this;
         }
@@ -248,7 +390,7 @@ public class Patient
         public PatientBuilder withDiagnosis(String diagnosis)
         {
             if (diagnosis != null) {
-                this.diagnosis = diagnosis;
+                this.diagnosis = VALUE_DICTIONARY.intern(diagnosis);
             }
             return this;
         }
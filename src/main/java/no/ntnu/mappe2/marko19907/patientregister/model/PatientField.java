@@ -0,0 +1,72 @@
+package no.ntnu.mappe2.marko19907.patientregister.model;
+
+import java.util.function.Function;
+
+/**
+ * PatientField represents the fields of a Patient that the register can sort and look up patients by
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public enum PatientField
+{
+    FIRST_NAME("firstName", Patient::getFirstName,
+            value -> Patient.createSearchBound(value, "", "", "", "")),
+    LAST_NAME("lastName", Patient::getLastName,
+            value -> Patient.createSearchBound("", value, "", "", "")),
+    SOCIAL_SECURITY_NUMBER("socialSecurityNumber", Patient::getSocialSecurityNumber,
+            value -> Patient.createSearchBound("", "", value, "", "")),
+    GENERAL_PRACTITIONER("generalPractitioner", Patient::getGeneralPractitioner,
+            value -> Patient.createSearchBound("", "", "", value, "")),
+    DIAGNOSIS("diagnosis", Patient::getDiagnosis,
+            value -> Patient.createSearchBound("", "", "", "", value));
+
+    private final String attributeName;
+    private final Function<Patient, String> getter;
+    private final Function<String, Patient> boundFactory;
+
+    /**
+     * Constructor for PatientField
+     * @param attributeName The name of the persistent attribute in the Patient class
+     * @param getter The getter that returns the value of the field from a Patient
+     * @param boundFactory The function that returns a search bound with the given value of the field
+     */
+    PatientField(String attributeName, Function<Patient, String> getter, Function<String, Patient> boundFactory)
+    {
+        this.attributeName = attributeName;
+        this.getter = getter;
+        this.boundFactory = boundFactory;
+    }
+
+    /**
+     * Returns the name of the persistent attribute in the Patient class, as used in JPQL queries
+     * @return The name of the persistent attribute as a String
+     */
+    public String getAttributeName()
+    {
+        return this.attributeName;
+    }
+
+    /**
+     * Returns the value of this field from the given patient
+     * @param patient The patient to return the value from, can not be null
+     * @return The value of this field from the given patient
+     */
+    public String getValue(Patient patient)
+    {
+        return this.getter.apply(patient);
+    }
+
+    /**
+     * Returns a Patient that has this field set to the given value, even when it is blank,
+     * and every other field blank.
+     * It is used as a bound when looking up a range of patients in an index sorted by this field
+     * and then by the social security number, it sorts before every patient with the same value.
+     * @param value The value of this field, can not be null
+     * @return A Patient to use as a bound in a sorted index
+     */
+    Patient createSearchBound(String value)
+    {
+        return this.boundFactory.apply(value);
+    }
+}
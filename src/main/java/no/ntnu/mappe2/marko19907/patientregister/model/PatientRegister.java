@@ -2,14 +2,21 @@ package no.ntnu.mappe2.marko19907.patientregister.model;
 
 import no.ntnu.mappe2.marko19907.patientregister.exception.DuplicateKeyException;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * PatientRegister represents a DAO interface for create, read, update,
  * and delete (CRUD) operations of persistent storage
  *
  * @author Marko
- * @version 01-05-2021
+ * @version 17-10-2026
  */
 public interface PatientRegister
 {
@@ -27,12 +34,218 @@ public interface PatientRegister
      */
     void addPatients(List<Patient> patients);
 
+    /**
+     * Adds the patients of the given List whose social security number is not in the register yet,
+     * nor earlier in the List, and returns the others instead of throwing a DuplicateKeyException.
+     * The default implementation adds the patients one at a time, registers that can check
+     * a whole batch at once should override it.
+     * @param patients The patient List to add, null patients are ignored, can not be null
+     * @return A List of the patients that were not added because of a duplicate social security number
+     * @throws IllegalArgumentException If the List is null
+     */
+    default List<Patient> addNewPatients(List<Patient> patients)
+    {
+        if (patients == null) {
+            throw new IllegalArgumentException("The patient List can not be null!");
+        }
+
+        List<Patient> duplicatePatients = new ArrayList<>();
+        for (Patient patient : patients) {
+            if (patient != null) {
+                try {
+                    this.addPatient(patient);
+                }
+                catch (DuplicateKeyException e) {
+                    duplicatePatients.add(patient);
+                }
+            }
+        }
+        return duplicatePatients;
+    }
+
+    /**
+     * Adds the patients of the given List that are not in the register, and replaces the patients
+     * whose content differs from the patient with the same social security number in the register.
+     * The patients whose content is the same are left as they are. If the List has more than one patient
+     * with the same social security number, the last of them is used.
+     * The default implementation looks the patients up one at a time, registers that can compare
+     * a whole batch at once should override it.
+     * @param patients The patient List to upsert, null patients are ignored, can not be null
+     * @return The number of patients that were inserted, updated and left unchanged
+     * @throws IllegalArgumentException If the List is null
+     */
+    default UpsertResult upsertPatients(List<Patient> patients)
+    {
+        if (patients == null) {
+            throw new IllegalArgumentException("The patient List can not be null!");
+        }
+
+        Map<String, Patient> latestPatients = new LinkedHashMap<>();
+        patients.stream().filter(Objects::nonNull)
+                .forEach(patient -> latestPatients.put(patient.getSocialSecurityNumber(), patient));
+
+        long insertedPatients = 0;
+        long updatedPatients = 0;
+        long unchangedPatients = 0;
+        for (Patient patient : latestPatients.values()) {
+            List<Patient> foundPatients = this.findPatients(
+                    PatientField.SOCIAL_SECURITY_NUMBER, patient.getSocialSecurityNumber());
+            if (foundPatients.isEmpty()) {
+                this.addPatient(patient);
+                insertedPatients++;
+            }
+            else if (!foundPatients.get(0).equals(patient)) {
+                this.updatePatient(patient, foundPatients.get(0));
+                updatedPatients++;
+            }
+            else {
+                unchangedPatients++;
+            }
+        }
+        return new UpsertResult(insertedPatients, updatedPatients, unchangedPatients, 0);
+    }
+
     /**
      * Returns a List of patients in the register
      * @return A List of patients in the register
      */
     List<Patient> getPatientList();
 
+    /**
+     * Returns a Stream of the patients in the register, for reading every patient without holding them
+     * all in memory at once. The Stream must be closed once it is no longer needed.
+     * The default implementation streams a copy of getPatientList(),
+     * registers that can read the patients a part at a time should override it.
+     * @return A Stream of the patients in the register
+     */
+    default Stream<Patient> streamPatients()
+    {
+        return this.getPatientList().stream();
+    }
+
+    /**
+     * Returns a page of patients sorted by the given field, patients with the same value
+     * are sorted by their social security number
+     * @param sortKey The field to sort the patients by, can not be null
+     * @param offset The number of patients to skip, can not be negative
+     * @param limit The maximum number of patients to return, must be positive
+     * @return A List of at most limit patients in the given order
+     * @throws IllegalArgumentException If the sort key is null, the offset is negative or the limit is not positive
+     */
+    List<Patient> getPatientPage(PatientField sortKey, int offset, int limit);
+
+    /**
+     * Returns the page of patients that follows the given patient when sorted by the given field,
+     * patients with the same value are sorted by their social security number.
+     * Unlike getPatientPage(), the cost does not grow with the position of the page.
+     * @param sortKey The field to sort the patients by, can not be null
+     * @param lastPatient The last patient of the previous page, or null to return the first page
+     * @param limit The maximum number of patients to return, must be positive
+     * @return A List of at most limit patients that follow the given patient
+     * @throws IllegalArgumentException If the sort key is null or the limit is not positive
+     */
+    List<Patient> getPatientPageAfter(PatientField sortKey, Patient lastPatient, int limit);
+
+    /**
+     * Returns the patients whose given field is equal to the given value.
+     * The default implementation scans all the patients, registers with indexes should override it.
+     * @param field The field to compare, can not be null
+     * @param value The value to look for, can not be null
+     * @return A List of the patients with the given value, in no particular order
+     * @throws IllegalArgumentException If any of the arguments is null
+     */
+    default List<Patient> findPatients(PatientField field, String value)
+    {
+        if (field == null || value == null) {
+            throw new IllegalArgumentException("The field and the value can not be null!");
+        }
+        return this.getPatientList().stream()
+                .filter(patient -> field.getValue(patient).equals(value))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the patients whose given field starts with the given prefix, sorted by that field.
+     * The default implementation scans all the patients, registers with indexes should override it.
+     * @param field The field to compare, can not be null
+     * @param prefix The prefix to look for, can not be null
+     * @return A List of the patients whose field starts with the given prefix
+     * @throws IllegalArgumentException If any of the arguments is null
+     */
+    default List<Patient> findPatientsByPrefix(PatientField field, String prefix)
+    {
+        if (field == null || prefix == null) {
+            throw new IllegalArgumentException("The field and the prefix can not be null!");
+        }
+        return this.getPatientList().stream()
+                .filter(patient -> field.getValue(patient).startsWith(prefix))
+                .sorted(Comparator.comparing(field::getValue).thenComparing(Patient::getSocialSecurityNumber))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the patients whose given field is in the given range, sorted by that field.
+     * The default implementation scans all the patients, registers with indexes should override it.
+     * @param field The field to compare, can not be null
+     * @param fromValue The lowest value to include, can not be null
+     * @param toValue The value to stop before, can not be null
+     * @return A List of the patients whose field is at least fromValue and less than toValue
+     * @throws IllegalArgumentException If any of the arguments is null
+     */
+    default List<Patient> findPatientsInRange(PatientField field, String fromValue, String toValue)
+    {
+        if (field == null || fromValue == null || toValue == null) {
+            throw new IllegalArgumentException("The field and the values can not be null!");
+        }
+        return this.getPatientList().stream()
+                .filter(patient -> field.getValue(patient).compareTo(fromValue) >= 0
+                        && field.getValue(patient).compareTo(toValue) < 0)
+                .sorted(Comparator.comparing(field::getValue).thenComparing(Patient::getSocialSecurityNumber))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the patients whose fields start with all the given prefixes, sorted by social security number.
+     * The default implementation scans all the patients, registers with indexes should override it.
+     * @param prefixes The prefix to look for by field, can not be null or contain null values
+     * @return A List of the patients whose fields start with all the given prefixes
+     * @throws IllegalArgumentException If the prefixes are null or contain a null value
+     */
+    default List<Patient> filterPatients(Map<PatientField, String> prefixes)
+    {
+        if (prefixes == null || prefixes.entrySet().stream()
+                .anyMatch(entry -> entry.getKey() == null || entry.getValue() == null)) {
+            throw new IllegalArgumentException("The prefixes can not be null or contain null!");
+        }
+        return this.getPatientList().stream()
+                .filter(patient -> prefixes.entrySet().stream()
+                        .allMatch(entry -> entry.getKey().getValue(patient).startsWith(entry.getValue())))
+                .sorted(Comparator.comparing(Patient::getSocialSecurityNumber))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the patients that best match the given type-ahead query, the best match first.
+     * Every term of the query must be the start of a word in the first name, the last name
+     * or the social security number of the patient, ignoring case.
+     * The default implementation scans all the patients, registers with a search index should override it.
+     * @param query The query to search for, can not be null
+     * @param limit The maximum number of patients to return, must be positive
+     * @return A List of at most limit patients, the best match first
+     * @throws IllegalArgumentException If the query is null or the limit is not positive
+     */
+    default List<Patient> searchPatients(String query, int limit)
+    {
+        if (query == null || limit <= 0) {
+            throw new IllegalArgumentException("The query can not be null and the limit must be positive!");
+        }
+        return this.getPatientList().stream()
+                .filter(patient -> PatientSearchIndex.matches(patient, query))
+                .sorted(PatientSearchIndex.getRanking(query))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
     /**
      * Removes a given patient from the register
      * @param patientToRemove The patient to remove, can not be null
@@ -44,9 +257,11 @@ public interface PatientRegister
      * Updates the given patient in the register
      * @param newPatient The patient that replaces the oldPatient
      * @param oldPatient The patient that is to be replaced with the newPatient
+     * @return True if the oldPatient was replaced with the newPatient, false when given null
+     * and false if the oldPatient is not in the register
      * @throws DuplicateKeyException If a patient with the same social security number exists
      */
-    void updatePatient(Patient newPatient, Patient oldPatient) throws DuplicateKeyException;
+    boolean updatePatient(Patient newPatient, Patient oldPatient) throws DuplicateKeyException;
 
     /**
      * Returns the number of patients in the register
@@ -54,6 +269,27 @@ public interface PatientRegister
      */
     int getNumberOfPatients();
 
+    /**
+     * Returns true if the register can be used from several threads at once without being locked by the caller
+     * @return True if the register is safe to share between threads, false by default
+     */
+    default boolean isThreadSafe()
+    {
+        return false;
+    }
+
+    /**
+     * Adds a listener that is notified of every change made through this register
+     * @param listener The listener to add, can not be null
+     */
+    void addListener(PatientRegisterListener listener);
+
+    /**
+     * Removes a listener that was added with addListener()
+     * @param listener The listener to remove
+     */
+    void removeListener(PatientRegisterListener listener);
+
     /**
      * Closes the connection to the database
      */
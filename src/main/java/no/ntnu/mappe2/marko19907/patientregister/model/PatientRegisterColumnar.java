@@ -0,0 +1,1236 @@
+package no.ntnu.mappe2.marko19907.patientregister.model;
+
+import no.ntnu.mappe2.marko19907.patientregister.exception.DuplicateKeyException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * The class PatientRegisterColumnar is an implementation of a PatientRegister for registers of millions of patients.
+ * It holds no object per patient, every field is kept in a column outside the Java heap:
+ * the names and the social security numbers as UTF-8 with the offset of each row,
+ * the general practitioners and the diagnoses as numbers in a dictionary of their values.
+ * Patients are looked up by social security number through an open-addressing hash table, also outside the heap,
+ * and Patient objects are only created when they are read, so the garbage collector has almost nothing to trace
+ * however many patients the register holds. The other queries scan only the columns they compare.
+ * It can be shared between threads, reads run in parallel and writes are serialized by a read-write lock.
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public class PatientRegisterColumnar implements PatientRegister
+{
+    private static final int INITIAL_CAPACITY = 1024;
+    // The index has two slots of eight bytes per row, and its slots must fit in a single buffer
+    private static final int MAXIMUM_CAPACITY = 1 << 26;
+    private static final int NO_ROW = -1;
+    private static final int STREAM_CHUNK_SIZE = 1024;
+
+    private final StringColumn firstNames;
+    private final StringColumn lastNames;
+    private final StringColumn socialSecurityNumbers;
+    private final DictionaryColumn generalPractitioners;
+    private final DictionaryColumn diagnoses;
+    private final SocialSecurityNumberIndex index;
+    private final ReentrantReadWriteLock lock;
+    private final PatientRegisterEventSupport eventSupport;
+    private int capacity;
+    // The rows below this number have been used, the rows of removed patients are reused from the free rows
+    private int numberOfRows;
+    private int[] freeRows;
+    private int numberOfFreeRows;
+    private int numberOfPatients;
+
+    /**
+     * Constructor for PatientRegisterColumnar objects
+     */
+    public PatientRegisterColumnar()
+    {
+        this.capacity = INITIAL_CAPACITY;
+        this.firstNames = new StringColumn(this.capacity);
+        this.lastNames = new StringColumn(this.capacity);
+        this.socialSecurityNumbers = new StringColumn(this.capacity);
+        this.generalPractitioners = new DictionaryColumn(this.capacity);
+        this.diagnoses = new DictionaryColumn(this.capacity);
+        this.index = new SocialSecurityNumberIndex(this.socialSecurityNumbers, this.capacity * 2);
+        this.lock = new ReentrantReadWriteLock();
+        this.eventSupport = new PatientRegisterEventSupport();
+        this.freeRows = new int[16];
+    }
+
+    @Override
+    public void addPatient(Patient patient)
+    {
+        if (patient != null) {
+            this.lock.writeLock().lock();
+            try {
+                this.insertPatient(patient);
+            }
+            finally {
+                this.lock.writeLock().unlock();
+            }
+            this.eventSupport.fireEvent(PatientRegisterEvent.added(patient));
+        }
+    }
+
+    /**
+     * Adds the given patients to the register one at a time.
+     * The listeners are notified once, of all the patients that were added,
+     * even if the method stops at a duplicate.
+     * @param patients The patient List to add, can not be null or empty
+     * @throws DuplicateKeyException If a patient with the same social security number exists
+     */
+    @Override
+    public void addPatients(List<Patient> patients)
+    {
+        if (patients != null) {
+            List<Patient> addedPatients = new ArrayList<>(patients.size());
+            this.lock.writeLock().lock();
+            try {
+                for (Patient patient : patients) {
+                    if (patient != null) {
+                        this.insertPatient(patient);
+                        addedPatients.add(patient);
+                    }
+                }
+            }
+            finally {
+                this.lock.writeLock().unlock();
+                if (!addedPatients.isEmpty()) {
+                    this.eventSupport.fireEvent(PatientRegisterEvent.bulkLoaded(addedPatients));
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the patients of the given List that are not in the register yet and returns the others.
+     * The listeners are notified once, of all the patients that were added
+     * @param patients The patient List to add, null patients are ignored, can not be null
+     * @return A List of the patients that were not added because of a duplicate social security number
+     * @throws IllegalArgumentException If the List is null
+     */
+    @Override
+    public List<Patient> addNewPatients(List<Patient> patients)
+    {
+        if (patients == null) {
+            throw new IllegalArgumentException("The patient List can not be null!");
+        }
+
+        List<Patient> addedPatients = new ArrayList<>(patients.size());
+        List<Patient> duplicatePatients = new ArrayList<>();
+        this.lock.writeLock().lock();
+        try {
+            for (Patient patient : patients) {
+                if (patient != null) {
+                    if (this.index.find(patient.getSocialSecurityNumber()) != NO_ROW) {
+                        duplicatePatients.add(patient);
+                    }
+                    else {
+                        this.insertPatient(patient);
+                        addedPatients.add(patient);
+                    }
+                }
+            }
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+        if (!addedPatients.isEmpty()) {
+            this.eventSupport.fireEvent(PatientRegisterEvent.bulkLoaded(addedPatients));
+        }
+        return duplicatePatients;
+    }
+
+    /**
+     * Adds the patients of the given List that are not in the register, and replaces the patients
+     * that are not equal to the patient with the same social security number in the register.
+     * The listeners are notified once of the added patients and once of the replaced patients
+     * @param patients The patient List to upsert, null patients are ignored, can not be null
+     * @return The number of patients that were inserted, updated and left unchanged
+     * @throws IllegalArgumentException If the List is null
+     */
+    @Override
+    public UpsertResult upsertPatients(List<Patient> patients)
+    {
+        if (patients == null) {
+            throw new IllegalArgumentException("The patient List can not be null!");
+        }
+
+        Map<String, Patient> latestPatients = new LinkedHashMap<>();
+        for (Patient patient : patients) {
+            if (patient != null) {
+                latestPatients.put(patient.getSocialSecurityNumber(), patient);
+            }
+        }
+
+        List<Patient> insertedPatients = new ArrayList<>();
+        List<Patient> oldPatients = new ArrayList<>();
+        List<Patient> newPatients = new ArrayList<>();
+        long unchangedPatients = 0;
+        this.lock.writeLock().lock();
+        try {
+            for (Patient patient : latestPatients.values()) {
+                int row = this.index.find(patient.getSocialSecurityNumber());
+                if (row == NO_ROW) {
+                    this.insertPatient(patient);
+                    insertedPatients.add(patient);
+                }
+                else {
+                    Patient existingPatient = this.readPatient(row);
+                    if (!existingPatient.equals(patient)) {
+                        this.deletePatient(existingPatient);
+                        this.insertPatient(patient);
+                        oldPatients.add(existingPatient);
+                        newPatients.add(patient);
+                    }
+                    else {
+                        unchangedPatients++;
+                    }
+                }
+            }
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+
+        if (!insertedPatients.isEmpty()) {
+            this.eventSupport.fireEvent(PatientRegisterEvent.bulkLoaded(insertedPatients));
+        }
+        if (!oldPatients.isEmpty()) {
+            this.eventSupport.fireEvent(PatientRegisterEvent.updated(oldPatients, newPatients));
+        }
+        return new UpsertResult(insertedPatients.size(), oldPatients.size(), unchangedPatients, 0);
+    }
+
+    /**
+     * Writes the given patient to a free row and adds it to the index, the write lock must be held
+     * @param patient The patient to add, can not be null
+     * @throws DuplicateKeyException If a patient with the same social security number exists
+     */
+    private void insertPatient(Patient patient)
+    {
+        if (this.index.find(patient.getSocialSecurityNumber()) != NO_ROW) {
+            throw new DuplicateKeyException("A patient with that social security number already exists");
+        }
+
+        int row;
+        if (this.numberOfFreeRows > 0) {
+            row = this.freeRows[--this.numberOfFreeRows];
+        }
+        else {
+            if (this.numberOfRows == this.capacity) {
+                this.grow();
+            }
+            row = this.numberOfRows++;
+        }
+        this.firstNames.set(row, patient.getFirstName());
+        this.lastNames.set(row, patient.getLastName());
+        this.socialSecurityNumbers.set(row, patient.getSocialSecurityNumber());
+        this.generalPractitioners.set(row, patient.getGeneralPractitioner());
+        this.diagnoses.set(row, patient.getDiagnosis());
+        this.index.add(patient.getSocialSecurityNumber(), row);
+        this.numberOfPatients++;
+    }
+
+    /**
+     * Doubles the number of rows the columns and the index have room for, the write lock must be held
+     * @throws IllegalStateException If the register is full
+     */
+    private void grow()
+    {
+        if (this.capacity >= MAXIMUM_CAPACITY) {
+            throw new IllegalStateException("The register can not hold more than " + MAXIMUM_CAPACITY + " patients");
+        }
+        this.capacity *= 2;
+        this.firstNames.grow(this.capacity);
+        this.lastNames.grow(this.capacity);
+        this.socialSecurityNumbers.grow(this.capacity);
+        this.generalPractitioners.grow(this.capacity);
+        this.diagnoses.grow(this.capacity);
+        this.index.resize(this.capacity * 2);
+    }
+
+    /**
+     * Returns a new Patient with the values of the given row, the read or the write lock must be held
+     * @param row The row of the patient, it must hold a patient
+     * @return A new Patient with the values of the row
+     */
+    private Patient readPatient(int row)
+    {
+        return new Patient.PatientBuilder(this.firstNames.get(row), this.lastNames.get(row),
+                this.socialSecurityNumbers.get(row))
+                .withGeneralPractitioner(this.generalPractitioners.get(row))
+                .withDiagnosis(this.diagnoses.get(row))
+                .build();
+    }
+
+    /**
+     * Returns new Patients with the values of the given rows that hold a patient
+     * @param fromRow The first row to read
+     * @param toRow The row to stop before, at most the number of used rows
+     * @return A List of the patients of the rows
+     */
+    private List<Patient> readPatients(int fromRow, int toRow)
+    {
+        List<Patient> patients = new ArrayList<>(toRow - fromRow);
+        this.lock.readLock().lock();
+        try {
+            for (int row = fromRow; row < toRow; row++) {
+                if (this.socialSecurityNumbers.isSet(row)) {
+                    patients.add(this.readPatient(row));
+                }
+            }
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+        return patients;
+    }
+
+    /**
+     * Returns the value of the given field of the given row, without reading the other fields
+     * @param field The field to read, not null
+     * @param row The row to read, it must hold a patient
+     * @return The value of the field
+     */
+    private String getValue(PatientField field, int row)
+    {
+        String value;
+        switch (field) {
+            case FIRST_NAME:
+                value = this.firstNames.get(row);
+                break;
+            case LAST_NAME:
+                value = this.lastNames.get(row);
+                break;
+            case SOCIAL_SECURITY_NUMBER:
+                value = this.socialSecurityNumbers.get(row);
+                break;
+            case GENERAL_PRACTITIONER:
+                value = this.generalPractitioners.get(row);
+                break;
+            default:
+                value = this.diagnoses.get(row);
+                break;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the patients whose given field matches the given predicate, reading only the column of the field.
+     * The general practitioners and the diagnoses are matched once for each value of their dictionary
+     * @param field The field to match, not null
+     * @param predicate The predicate the value of the field must match, not null
+     * @return A List of the matching patients, in the order of their rows
+     */
+    private List<Patient> scan(PatientField field, Predicate<String> predicate)
+    {
+        List<Patient> foundPatients = new ArrayList<>();
+        this.lock.readLock().lock();
+        try {
+            DictionaryColumn dictionaryColumn = (field == PatientField.GENERAL_PRACTITIONER)
+                    ? this.generalPractitioners : (field == PatientField.DIAGNOSIS) ? this.diagnoses : null;
+            if (dictionaryColumn != null) {
+                boolean[] matchingCodes = dictionaryColumn.match(predicate);
+                for (int row = 0; row < this.numberOfRows; row++) {
+                    if (matchingCodes[dictionaryColumn.getCode(row)] && this.socialSecurityNumbers.isSet(row)) {
+                        foundPatients.add(this.readPatient(row));
+                    }
+                }
+            }
+            else {
+                for (int row = 0; row < this.numberOfRows; row++) {
+                    if (this.socialSecurityNumbers.isSet(row) && predicate.test(this.getValue(field, row))) {
+                        foundPatients.add(this.readPatient(row));
+                    }
+                }
+            }
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+        return foundPatients;
+    }
+
+    /**
+     * Returns the first patients sorted by the given field that follow the given patient.
+     * Only the column of the field, and the social security numbers for the rows that can still be selected,
+     * are read while the rows are compared, Patients are only created for the selected rows
+     * @param sortKey The field to sort the patients by, not null
+     * @param lastPatient The patient the returned patients must follow, or null to start from the first patient
+     * @param count The number of patients to return, positive
+     * @return A sorted List of at most count patients
+     */
+    private List<Patient> selectFirst(PatientField sortKey, Patient lastPatient, int count)
+    {
+        PriorityQueue<SortKey> selectedKeys = new PriorityQueue<>(Comparator.reverseOrder());
+        SortKey lastKey = (lastPatient == null) ? null
+                : new SortKey(sortKey.getValue(lastPatient), lastPatient.getSocialSecurityNumber(), NO_ROW);
+        List<Patient> page = new ArrayList<>();
+        this.lock.readLock().lock();
+        try {
+            for (int row = 0; row < this.numberOfRows; row++) {
+                if (this.socialSecurityNumbers.isSet(row)) {
+                    String value = this.getValue(sortKey, row);
+                    // Only a row with the same value as a bound needs its social security number to be compared
+                    boolean afterLast = lastKey == null || value.compareTo(lastKey.value) >= 0;
+                    boolean beforeSelected = selectedKeys.size() < count
+                            || value.compareTo(selectedKeys.peek().value) <= 0;
+                    if (afterLast && beforeSelected) {
+                        String socialSecurityNumber = (sortKey == PatientField.SOCIAL_SECURITY_NUMBER)
+                                ? value : this.socialSecurityNumbers.get(row);
+                        SortKey key = new SortKey(value, socialSecurityNumber, row);
+                        if (lastKey == null || key.compareTo(lastKey) > 0) {
+                            selectedKeys.add(key);
+                            if (selectedKeys.size() > count) {
+                                selectedKeys.poll();
+                            }
+                        }
+                    }
+                }
+            }
+
+            List<SortKey> sortedKeys = new ArrayList<>(selectedKeys);
+            sortedKeys.sort(Comparator.naturalOrder());
+            for (SortKey key : sortedKeys) {
+                page.add(this.readPatient(key.row));
+            }
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+        return page;
+    }
+
+    @Override
+    public List<Patient> getPatientList()
+    {
+        this.lock.readLock().lock();
+        try {
+            List<Patient> patientList = new ArrayList<>(this.numberOfPatients);
+            for (int row = 0; row < this.numberOfRows; row++) {
+                if (this.socialSecurityNumbers.isSet(row)) {
+                    patientList.add(this.readPatient(row));
+                }
+            }
+            return patientList;
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a Stream of the patients in the register that creates the Patients as they are read,
+     * a chunk of rows at a time. The Stream is weakly consistent, it may or may not reflect the changes
+     * made while it is read
+     * @return A Stream of the patients in the register
+     */
+    @Override
+    public Stream<Patient> streamPatients()
+    {
+        int rows;
+        this.lock.readLock().lock();
+        try {
+            rows = this.numberOfRows;
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+        return IntStream.range(0, (rows + STREAM_CHUNK_SIZE - 1) / STREAM_CHUNK_SIZE)
+                .mapToObj(chunk -> this.readPatients(chunk * STREAM_CHUNK_SIZE,
+                        Math.min(rows, (chunk + 1) * STREAM_CHUNK_SIZE)))
+                .flatMap(List::stream);
+    }
+
+    /**
+     * Returns a page of patients sorted by the given field, patients with the same value
+     * are sorted by their social security number.
+     * There are no sorted indexes, every call compares the column of the sort key of all the rows
+     * and keeps the first offset + limit rows
+     * @param sortKey The field to sort the patients by, can not be null
+     * @param offset The number of patients to skip, can not be negative
+     * @param limit The maximum number of patients to return, must be positive
+     * @return A List of at most limit patients in the given order
+     * @throws IllegalArgumentException If the sort key is null, the offset is negative or the limit is not positive
+     */
+    @Override
+    public List<Patient> getPatientPage(PatientField sortKey, int offset, int limit)
+    {
+        if (sortKey == null || offset < 0 || limit <= 0) {
+            throw new IllegalArgumentException("The sort key can not be null, the offset can not be negative "
+                    + "and the limit must be positive!");
+        }
+
+        int count = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+        List<Patient> patients = this.selectFirst(sortKey, null, count);
+        return new ArrayList<>(patients.subList(Math.min(offset, patients.size()), patients.size()));
+    }
+
+    /**
+     * Returns the page of patients that follows the given patient when sorted by the given field,
+     * patients with the same value are sorted by their social security number.
+     * There are no sorted indexes, every call compares the column of the sort key of all the rows
+     * and keeps the first limit rows
+     * @param sortKey The field to sort the patients by, can not be null
+     * @param lastPatient The last patient of the previous page, or null to return the first page
+     * @param limit The maximum number of patients to return, must be positive
+     * @return A List of at most limit patients that follow the given patient
+     * @throws IllegalArgumentException If the sort key is null or the limit is not positive
+     */
+    @Override
+    public List<Patient> getPatientPageAfter(PatientField sortKey, Patient lastPatient, int limit)
+    {
+        if (sortKey == null || limit <= 0) {
+            throw new IllegalArgumentException("The sort key can not be null and the limit must be positive!");
+        }
+
+        return this.selectFirst(sortKey, lastPatient, limit);
+    }
+
+    /**
+     * Returns the order of the patients by the given field and then by their social security number
+     * @param sortKey The field to sort the patients by, not null
+     * @return The order of the patients
+     */
+    private static Comparator<Patient> getOrder(PatientField sortKey)
+    {
+        return Comparator.comparing(sortKey::getValue).thenComparing(Patient::getSocialSecurityNumber);
+    }
+
+    @Override
+    public List<Patient> findPatients(PatientField field, String value)
+    {
+        if (field == null || value == null) {
+            throw new IllegalArgumentException("The field and the value can not be null!");
+        }
+
+        List<Patient> foundPatients;
+        if (field == PatientField.SOCIAL_SECURITY_NUMBER) {
+            foundPatients = new ArrayList<>();
+            this.lock.readLock().lock();
+            try {
+                int row = this.index.find(value);
+                if (row != NO_ROW) {
+                    foundPatients.add(this.readPatient(row));
+                }
+            }
+            finally {
+                this.lock.readLock().unlock();
+            }
+        }
+        else {
+            foundPatients = this.scan(field, value::equals);
+        }
+        return foundPatients;
+    }
+
+    @Override
+    public List<Patient> findPatientsByPrefix(PatientField field, String prefix)
+    {
+        if (field == null || prefix == null) {
+            throw new IllegalArgumentException("The field and the prefix can not be null!");
+        }
+
+        List<Patient> foundPatients = this.scan(field, value -> value.startsWith(prefix));
+        foundPatients.sort(PatientRegisterColumnar.getOrder(field));
+        return foundPatients;
+    }
+
+    @Override
+    public List<Patient> findPatientsInRange(PatientField field, String fromValue, String toValue)
+    {
+        if (field == null || fromValue == null || toValue == null) {
+            throw new IllegalArgumentException("The field and the values can not be null!");
+        }
+
+        List<Patient> foundPatients = new ArrayList<>();
+        if (fromValue.compareTo(toValue) < 0) {
+            foundPatients = this.scan(field, value -> value.compareTo(fromValue) >= 0 && value.compareTo(toValue) < 0);
+            foundPatients.sort(PatientRegisterColumnar.getOrder(field));
+        }
+        return foundPatients;
+    }
+
+    @Override
+    public List<Patient> filterPatients(Map<PatientField, String> prefixes)
+    {
+        if (prefixes == null || prefixes.entrySet().stream()
+                .anyMatch(entry -> entry.getKey() == null || entry.getValue() == null)) {
+            throw new IllegalArgumentException("The prefixes can not be null or contain null!");
+        }
+
+        List<Patient> foundPatients = new ArrayList<>();
+        this.lock.readLock().lock();
+        try {
+            for (int row = 0; row < this.numberOfRows; row++) {
+                if (this.socialSecurityNumbers.isSet(row) && this.matchesPrefixes(row, prefixes)) {
+                    foundPatients.add(this.readPatient(row));
+                }
+            }
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+        foundPatients.sort(Comparator.comparing(Patient::getSocialSecurityNumber));
+        return foundPatients;
+    }
+
+    /**
+     * Returns true if the fields of the given row start with all the given prefixes
+     * @param row The row to compare, it must hold a patient
+     * @param prefixes The prefix to look for by field, not null
+     * @return True if every field starts with its prefix, false otherwise
+     */
+    private boolean matchesPrefixes(int row, Map<PatientField, String> prefixes)
+    {
+        for (Map.Entry<PatientField, String> entry : prefixes.entrySet()) {
+            if (!this.getValue(entry.getKey(), row).startsWith(entry.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the patients that best match the given type-ahead query, the best match first.
+     * The names and the social security numbers of all the rows are matched against the query,
+     * Patients are only created for the rows that match
+     * @param query The query to search for, can not be null
+     * @param limit The maximum number of patients to return, must be positive
+     * @return A List of at most limit patients, the best match first
+     * @throws IllegalArgumentException If the query is null or the limit is not positive
+     */
+    @Override
+    public List<Patient> searchPatients(String query, int limit)
+    {
+        if (query == null || limit <= 0) {
+            throw new IllegalArgumentException("The query can not be null and the limit must be positive!");
+        }
+
+        String[] terms = PatientSearchIndex.getTerms(query);
+        List<Patient> foundPatients = new ArrayList<>();
+        if (terms.length > 0) {
+            this.lock.readLock().lock();
+            try {
+                for (int row = 0; row < this.numberOfRows; row++) {
+                    if (this.socialSecurityNumbers.isSet(row) && PatientSearchIndex.matches(terms,
+                            this.firstNames.get(row), this.lastNames.get(row), this.socialSecurityNumbers.get(row))) {
+                        foundPatients.add(this.readPatient(row));
+                    }
+                }
+            }
+            finally {
+                this.lock.readLock().unlock();
+            }
+        }
+        foundPatients.sort(PatientSearchIndex.getRanking(query));
+        return (foundPatients.size() > limit) ? new ArrayList<>(foundPatients.subList(0, limit)) : foundPatients;
+    }
+
+    @Override
+    public boolean removePatient(Patient patient)
+    {
+        // Guard condition
+        if (patient == null) {
+            return false;
+        }
+
+        boolean removed;
+        this.lock.writeLock().lock();
+        try {
+            removed = this.deletePatient(patient);
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+
+        if (removed) {
+            this.eventSupport.fireEvent(PatientRegisterEvent.removed(List.of(patient)));
+        }
+        return removed;
+    }
+
+    /**
+     * Frees the row of the given patient if the register holds a patient equal to it,
+     * the write lock must be held
+     * @param patient The patient to remove, can not be null
+     * @return True if the given patient was removed, false otherwise
+     */
+    private boolean deletePatient(Patient patient)
+    {
+        int row = this.index.find(patient.getSocialSecurityNumber());
+        if (row == NO_ROW || !this.readPatient(row).equals(patient)) {
+            return false;
+        }
+
+        this.index.remove(row);
+        this.firstNames.clear(row);
+        this.lastNames.clear(row);
+        this.socialSecurityNumbers.clear(row);
+        if (this.numberOfFreeRows == this.freeRows.length) {
+            this.freeRows = Arrays.copyOf(this.freeRows, this.freeRows.length * 2);
+        }
+        this.freeRows[this.numberOfFreeRows++] = row;
+        this.numberOfPatients--;
+
+        this.firstNames.compactIfWasteful(this.numberOfRows);
+        this.lastNames.compactIfWasteful(this.numberOfRows);
+        this.socialSecurityNumbers.compactIfWasteful(this.numberOfRows);
+        return true;
+    }
+
+    @Override
+    public boolean updatePatient(Patient newPatient, Patient oldPatient) throws DuplicateKeyException
+    {
+        // Guard condition
+        if (newPatient == null || oldPatient == null) {
+            return false;
+        }
+
+        boolean updated = false;
+        this.lock.writeLock().lock();
+        try {
+            int oldRow = this.index.find(oldPatient.getSocialSecurityNumber());
+            if (oldRow != NO_ROW && this.readPatient(oldRow).equals(oldPatient)) {
+                int foundRow = this.index.find(newPatient.getSocialSecurityNumber());
+                if (foundRow != NO_ROW && foundRow != oldRow) {
+                    throw new DuplicateKeyException("A patient with that social security number already exists");
+                }
+
+                this.deletePatient(oldPatient);
+                this.insertPatient(newPatient);
+                updated = true;
+            }
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+
+        if (updated) {
+            this.eventSupport.fireEvent(PatientRegisterEvent.updated(List.of(oldPatient), List.of(newPatient)));
+        }
+        return updated;
+    }
+
+    @Override
+    public int getNumberOfPatients()
+    {
+        this.lock.readLock().lock();
+        try {
+            return this.numberOfPatients;
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of bytes the columns and the index take outside the Java heap
+     * @return The size of the memory outside the heap in bytes
+     */
+    public long getOffHeapSize()
+    {
+        this.lock.readLock().lock();
+        try {
+            return this.firstNames.getOffHeapSize() + this.lastNames.getOffHeapSize()
+                    + this.socialSecurityNumbers.getOffHeapSize() + this.generalPractitioners.getOffHeapSize()
+                    + this.diagnoses.getOffHeapSize() + this.index.getOffHeapSize();
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isThreadSafe()
+    {
+        return true;
+    }
+
+    @Override
+    public void addListener(PatientRegisterListener listener)
+    {
+        this.eventSupport.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(PatientRegisterListener listener)
+    {
+        this.eventSupport.removeListener(listener);
+    }
+
+    @Override
+    public void close()
+    {
+        // Nothing to do here, the memory outside the heap is freed once the register is collected
+    }
+
+    /**
+     * Returns a new direct buffer of the given capacity with the content of the given buffer at its start
+     * @param buffer The buffer to copy, not null
+     * @param capacity The capacity of the new buffer, at least the capacity of the given buffer
+     * @return The new buffer
+     */
+    private static ByteBuffer copyOf(ByteBuffer buffer, int capacity)
+    {
+        ByteBuffer copy = ByteBuffer.allocateDirect(capacity);
+        ByteBuffer source = buffer.duplicate();
+        source.clear();
+        copy.put(source);
+        copy.clear();
+        return copy;
+    }
+
+    /**
+     * The value of the sort key and the social security number of a row, compared in that order
+     */
+    private static final class SortKey implements Comparable<SortKey>
+    {
+        private final String value;
+        private final String socialSecurityNumber;
+        private final int row;
+
+        private SortKey(String value, String socialSecurityNumber, int row)
+        {
+            this.value = value;
+            this.socialSecurityNumber = socialSecurityNumber;
+            this.row = row;
+        }
+
+        @Override
+        public int compareTo(SortKey other)
+        {
+            int comparison = this.value.compareTo(other.value);
+            return (comparison != 0) ? comparison : this.socialSecurityNumber.compareTo(other.socialSecurityNumber);
+        }
+    }
+
+    /**
+     * A column of Strings stored as UTF-8 one after the other, with the offset of the String of each row.
+     * A String starts with its length, in one byte if it is shorter than 128 bytes and in four bytes
+     * with the highest bit set otherwise. Replaced Strings are left in place until they take up
+     * half of the bytes, then the column is compacted.
+     */
+    private static final class StringColumn
+    {
+        private static final int EMPTY = -1;
+        private static final int LONG_LENGTH_FLAG = 0x80000000;
+        private static final int MINIMUM_WASTE_TO_COMPACT = 1 << 20;
+
+        private ByteBuffer offsets;
+        private ByteBuffer bytes;
+        private int usedBytes;
+        private int wastedBytes;
+
+        /**
+         * Constructor for StringColumn objects
+         * @param capacity The number of rows to make room for
+         */
+        StringColumn(int capacity)
+        {
+            this.offsets = ByteBuffer.allocateDirect(capacity * Integer.BYTES);
+            this.bytes = ByteBuffer.allocateDirect(capacity * 16);
+        }
+
+        /**
+         * Makes room for the given number of rows
+         * @param capacity The number of rows to make room for
+         */
+        void grow(int capacity)
+        {
+            this.offsets = PatientRegisterColumnar.copyOf(this.offsets, capacity * Integer.BYTES);
+        }
+
+        /**
+         * Appends the given String and sets it as the value of the given row
+         * @param row The row to set
+         * @param value The String to set, not null
+         * @throws IllegalStateException If the column has no room for the String
+         */
+        void set(int row, String value)
+        {
+            byte[] encodedValue = value.getBytes(StandardCharsets.UTF_8);
+            int lengthSize = (encodedValue.length < 0x80) ? 1 : Integer.BYTES;
+            int size = lengthSize + encodedValue.length;
+            if (size > this.bytes.capacity() - this.usedBytes) {
+                if ((long) this.usedBytes + size > Integer.MAX_VALUE - 8) {
+                    throw new IllegalStateException("The column of the register has no room for more values");
+                }
+                int newCapacity = (int) Math.min(Math.max(2L * this.bytes.capacity(), (long) this.usedBytes + size),
+                        Integer.MAX_VALUE - 8);
+                this.bytes = PatientRegisterColumnar.copyOf(this.bytes, newCapacity);
+            }
+
+            if (lengthSize == 1) {
+                this.bytes.put(this.usedBytes, (byte) encodedValue.length);
+            }
+            else {
+                this.bytes.putInt(this.usedBytes, encodedValue.length | LONG_LENGTH_FLAG);
+            }
+            ByteBuffer writer = this.bytes.duplicate();
+            writer.position(this.usedBytes + lengthSize);
+            writer.put(encodedValue);
+            this.offsets.putInt(row * Integer.BYTES, this.usedBytes);
+            this.usedBytes += size;
+        }
+
+        /**
+         * Returns true if the given row has a value
+         * @param row The row to check, it must have been set once
+         * @return True if the row has a value, false if it was cleared
+         */
+        boolean isSet(int row)
+        {
+            return this.offsets.getInt(row * Integer.BYTES) != EMPTY;
+        }
+
+        /**
+         * Returns the String of the given row
+         * @param row The row to read, it must have a value
+         * @return The String of the row
+         */
+        String get(int row)
+        {
+            int offset = this.offsets.getInt(row * Integer.BYTES);
+            byte[] encodedValue = new byte[this.getLength(offset)];
+            ByteBuffer reader = this.bytes.duplicate();
+            reader.position(offset + this.getLengthSize(offset));
+            reader.get(encodedValue);
+            return new String(encodedValue, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Returns true if the String of the given row is the given UTF-8, without decoding it
+         * @param row The row to compare, it must have a value
+         * @param encodedValue The UTF-8 to compare to, not null
+         * @return True if the row has the given value, false otherwise
+         */
+        boolean equals(int row, byte[] encodedValue)
+        {
+            int offset = this.offsets.getInt(row * Integer.BYTES);
+            if (this.getLength(offset) != encodedValue.length) {
+                return false;
+            }
+            int start = offset + this.getLengthSize(offset);
+            for (int i = 0; i < encodedValue.length; i++) {
+                if (this.bytes.get(start + i) != encodedValue[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Removes the value of the given row
+         * @param row The row to clear, it must have a value
+         */
+        void clear(int row)
+        {
+            int offset = this.offsets.getInt(row * Integer.BYTES);
+            this.wastedBytes += this.getLengthSize(offset) + this.getLength(offset);
+            this.offsets.putInt(row * Integer.BYTES, EMPTY);
+        }
+
+        /**
+         * Copies the values of the rows to a new buffer without the removed values,
+         * if they take up half of the bytes
+         * @param numberOfRows The number of rows that have been set
+         */
+        void compactIfWasteful(int numberOfRows)
+        {
+            if (this.wastedBytes < MINIMUM_WASTE_TO_COMPACT || this.wastedBytes < this.usedBytes / 2) {
+                return;
+            }
+
+            ByteBuffer compactedBytes = ByteBuffer.allocateDirect(Math.max(this.usedBytes - this.wastedBytes, 16));
+            int compactedSize = 0;
+            for (int row = 0; row < numberOfRows; row++) {
+                int offset = this.offsets.getInt(row * Integer.BYTES);
+                if (offset != EMPTY) {
+                    ByteBuffer value = this.bytes.duplicate();
+                    value.position(offset).limit(offset + this.getLengthSize(offset) + this.getLength(offset));
+                    this.offsets.putInt(row * Integer.BYTES, compactedSize);
+                    compactedSize += value.remaining();
+                    compactedBytes.put(value);
+                }
+            }
+            compactedBytes.clear();
+            this.bytes = compactedBytes;
+            this.usedBytes = compactedSize;
+            this.wastedBytes = 0;
+        }
+
+        /**
+         * Returns the number of bytes of the UTF-8 of the String at the given offset
+         * @param offset The offset of the String
+         * @return The length of the String in bytes
+         */
+        private int getLength(int offset)
+        {
+            byte firstByte = this.bytes.get(offset);
+            return (firstByte >= 0) ? firstByte : this.bytes.getInt(offset) & ~LONG_LENGTH_FLAG;
+        }
+
+        /**
+         * Returns the number of bytes of the length of the String at the given offset
+         * @param offset The offset of the String
+         * @return 1 or 4
+         */
+        private int getLengthSize(int offset)
+        {
+            return (this.bytes.get(offset) >= 0) ? 1 : Integer.BYTES;
+        }
+
+        /**
+         * Returns the number of bytes the column takes outside the heap
+         * @return The capacity of the buffers of the column in bytes
+         */
+        long getOffHeapSize()
+        {
+            return (long) this.offsets.capacity() + this.bytes.capacity();
+        }
+    }
+
+    /**
+     * A column of Strings with few distinct values, that stores the number of the value in a dictionary
+     * for each row. Values are never removed from the dictionary.
+     */
+    private static final class DictionaryColumn
+    {
+        private ByteBuffer codes;
+        private final List<String> values;
+        private final Map<String, Integer> codesByValue;
+
+        /**
+         * Constructor for DictionaryColumn objects
+         * @param capacity The number of rows to make room for
+         */
+        DictionaryColumn(int capacity)
+        {
+            this.codes = ByteBuffer.allocateDirect(capacity * Integer.BYTES);
+            this.values = new ArrayList<>();
+            this.codesByValue = new HashMap<>();
+        }
+
+        /**
+         * Makes room for the given number of rows
+         * @param capacity The number of rows to make room for
+         */
+        void grow(int capacity)
+        {
+            this.codes = PatientRegisterColumnar.copyOf(this.codes, capacity * Integer.BYTES);
+        }
+
+        /**
+         * Sets the value of the given row, adding it to the dictionary if it is new
+         * @param row The row to set
+         * @param value The value to set, not null
+         */
+        void set(int row, String value)
+        {
+            Integer code = this.codesByValue.get(value);
+            if (code == null) {
+                code = this.values.size();
+                this.values.add(value);
+                this.codesByValue.put(value, code);
+            }
+            this.codes.putInt(row * Integer.BYTES, code);
+        }
+
+        /**
+         * Returns the number of the value of the given row in the dictionary
+         * @param row The row to read, it must have been set once
+         * @return The number of the value
+         */
+        int getCode(int row)
+        {
+            return this.codes.getInt(row * Integer.BYTES);
+        }
+
+        /**
+         * Returns the value of the given row
+         * @param row The row to read, it must have been set once
+         * @return The value of the row
+         */
+        String get(int row)
+        {
+            return this.values.get(this.getCode(row));
+        }
+
+        /**
+         * Returns which values of the dictionary match the given predicate
+         * @param predicate The predicate to match, not null
+         * @return An array that is true at the number of each matching value
+         */
+        boolean[] match(Predicate<String> predicate)
+        {
+            boolean[] matchingCodes = new boolean[this.values.size()];
+            for (int code = 0; code < matchingCodes.length; code++) {
+                matchingCodes[code] = predicate.test(this.values.get(code));
+            }
+            return matchingCodes;
+        }
+
+        /**
+         * Returns the number of bytes the column takes outside the heap
+         * @return The capacity of the buffer of the column in bytes
+         */
+        long getOffHeapSize()
+        {
+            return this.codes.capacity();
+        }
+    }
+
+    /**
+     * An open-addressing hash table from social security numbers to rows with linear probing.
+     * A slot holds the hash of the social security number in its upper half and the row plus one
+     * in its lower half, so an empty slot is 0 and the table can be resized without reading the numbers.
+     * Removed slots are filled by moving the following slots back, so lookups never pass over removed slots.
+     */
+    private static final class SocialSecurityNumberIndex
+    {
+        private final StringColumn socialSecurityNumbers;
+        private ByteBuffer slots;
+        private int mask;
+
+        /**
+         * Constructor for SocialSecurityNumberIndex objects
+         * @param socialSecurityNumbers The column of the social security numbers of the rows, not null
+         * @param numberOfSlots The number of slots, a power of two
+         */
+        SocialSecurityNumberIndex(StringColumn socialSecurityNumbers, int numberOfSlots)
+        {
+            this.socialSecurityNumbers = socialSecurityNumbers;
+            this.slots = ByteBuffer.allocateDirect(numberOfSlots * Long.BYTES);
+            this.mask = numberOfSlots - 1;
+        }
+
+        /**
+         * Returns the hash of the given social security number, spread so that similar numbers
+         * end up in different parts of the table
+         * @param socialSecurityNumber The social security number to hash, not null
+         * @return The hash of the social security number
+         */
+        private static int hash(String socialSecurityNumber)
+        {
+            int hash = socialSecurityNumber.hashCode() * 0x9e3779b9;
+            return hash ^ (hash >>> 16);
+        }
+
+        /**
+         * Returns the row of the given social security number
+         * @param socialSecurityNumber The social security number to look for, not null
+         * @return The row of the social security number, or NO_ROW if it is not in the table
+         */
+        int find(String socialSecurityNumber)
+        {
+            int hash = SocialSecurityNumberIndex.hash(socialSecurityNumber);
+            byte[] encodedNumber = null;
+            for (int slot = hash & this.mask; ; slot = (slot + 1) & this.mask) {
+                long entry = this.slots.getLong(slot * Long.BYTES);
+                if (entry == 0) {
+                    return NO_ROW;
+                }
+                if ((int) (entry >>> 32) == hash) {
+                    if (encodedNumber == null) {
+                        encodedNumber = socialSecurityNumber.getBytes(StandardCharsets.UTF_8);
+                    }
+                    int row = (int) entry - 1;
+                    if (this.socialSecurityNumbers.equals(row, encodedNumber)) {
+                        return row;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds the given row under the given social security number, which must not be in the table
+         * @param socialSecurityNumber The social security number of the row, not null
+         * @param row The row to add
+         */
+        void add(String socialSecurityNumber, int row)
+        {
+            this.put(((long) SocialSecurityNumberIndex.hash(socialSecurityNumber) << 32) | (row + 1L));
+        }
+
+        /**
+         * Puts the given entry in the first empty slot from its hash
+         * @param entry The entry to put, not 0
+         */
+        private void put(long entry)
+        {
+            int slot = (int) (entry >>> 32) & this.mask;
+            while (this.slots.getLong(slot * Long.BYTES) != 0) {
+                slot = (slot + 1) & this.mask;
+            }
+            this.slots.putLong(slot * Long.BYTES, entry);
+        }
+
+        /**
+         * Removes the given row, which must be in the table
+         * @param row The row to remove
+         */
+        void remove(int row)
+        {
+            String socialSecurityNumber = this.socialSecurityNumbers.get(row);
+            int hole = SocialSecurityNumberIndex.hash(socialSecurityNumber) & this.mask;
+            while ((int) this.slots.getLong(hole * Long.BYTES) - 1 != row) {
+                hole = (hole + 1) & this.mask;
+            }
+
+            // Moves back every following entry of the run that may be placed at or before the hole
+            for (int slot = (hole + 1) & this.mask; ; slot = (slot + 1) & this.mask) {
+                long entry = this.slots.getLong(slot * Long.BYTES);
+                if (entry == 0) {
+                    break;
+                }
+                int home = (int) (entry >>> 32) & this.mask;
+                if (((slot - home) & this.mask) >= ((slot - hole) & this.mask)) {
+                    this.slots.putLong(hole * Long.BYTES, entry);
+                    hole = slot;
+                }
+            }
+            this.slots.putLong(hole * Long.BYTES, 0);
+        }
+
+        /**
+         * Moves the entries to a table with the given number of slots
+         * @param numberOfSlots The new number of slots, a power of two larger than the number of entries
+         */
+        void resize(int numberOfSlots)
+        {
+            ByteBuffer oldSlots = this.slots;
+            this.slots = ByteBuffer.allocateDirect(numberOfSlots * Long.BYTES);
+            this.mask = numberOfSlots - 1;
+            for (int slot = 0; slot < oldSlots.capacity() / Long.BYTES; slot++) {
+                long entry = oldSlots.getLong(slot * Long.BYTES);
+                if (entry != 0) {
+                    this.put(entry);
+                }
+            }
+        }
+
+        /**
+         * Returns the number of bytes the table takes outside the heap
+         * @return The capacity of the buffer of the table in bytes
+         */
+        long getOffHeapSize()
+        {
+            return this.slots.capacity();
+        }
+    }
+}
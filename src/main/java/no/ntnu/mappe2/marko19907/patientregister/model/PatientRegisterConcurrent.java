@@ -0,0 +1,464 @@
+package no.ntnu.mappe2.marko19907.patientregister.model;
+
+import no.ntnu.mappe2.marko19907.patientregister.exception.DuplicateKeyException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * The class PatientRegisterConcurrent is an implantation of a PatientRegister that holds Patients in memory
+ * and can be shared between threads.
+ * Reads never block, they go straight to a ConcurrentHashMap and to ConcurrentSkipListSet indexes.
+ * Writes lock the stripes of the social security numbers they change, so writes to different patients
+ * can run in parallel while the map and the indexes are always changed together.
+ * Updates are atomic with regard to other writes. While updatePatient() runs, a lookup by social security number
+ * always finds the old or the new patient: a new social security number is added before the old one is removed,
+ * so readers may briefly see both, and a patient that keeps its social security number is replaced in one step.
+ * Pages, ranges and lookups by other fields are weakly consistent and may briefly miss a patient being updated.
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public class PatientRegisterConcurrent implements PatientRegister
+{
+    private static final int NUMBER_OF_LOCK_STRIPES = 64;
+
+    private final ConcurrentHashMap<String, Patient> patients;
+    private final ConcurrentMap<PatientField, NavigableSet<Patient>> sortedIndexes;
+    private final ReentrantLock[] locks;
+    private final PatientRegisterEventSupport eventSupport;
+
+    /**
+     * Constructor for PatientRegisterConcurrent objects
+     */
+    public PatientRegisterConcurrent()
+    {
+        this.patients = new ConcurrentHashMap<>();
+        this.sortedIndexes = new ConcurrentHashMap<>();
+        this.locks = new ReentrantLock[NUMBER_OF_LOCK_STRIPES];
+        for (int i = 0; i < this.locks.length; i++) {
+            this.locks[i] = new ReentrantLock();
+        }
+        this.eventSupport = new PatientRegisterEventSupport();
+    }
+
+    @Override
+    public void addPatient(Patient patient)
+    {
+        if (patient != null) {
+            ReentrantLock lock = this.getLock(patient.getSocialSecurityNumber());
+            lock.lock();
+            try {
+                this.insertPatient(patient);
+            }
+            finally {
+                lock.unlock();
+            }
+            this.eventSupport.fireEvent(PatientRegisterEvent.added(patient));
+        }
+    }
+
+    /**
+     * Adds the given patients to the register one at a time.
+     * The listeners are notified once, of all the patients that were added,
+     * even if the method stops at a duplicate.
+     * @param patients The patient List to add, can not be null or empty
+     * @throws DuplicateKeyException If a patient with the same social security number exists
+     */
+    @Override
+    public void addPatients(List<Patient> patients)
+    {
+        if (patients != null) {
+            List<Patient> addedPatients = new ArrayList<>(patients.size());
+            try {
+                for (Patient patient : patients) {
+                    if (patient != null) {
+                        ReentrantLock lock = this.getLock(patient.getSocialSecurityNumber());
+                        lock.lock();
+                        try {
+                            this.insertPatient(patient);
+                        }
+                        finally {
+                            lock.unlock();
+                        }
+                        addedPatients.add(patient);
+                    }
+                }
+            }
+            finally {
+                if (!addedPatients.isEmpty()) {
+                    this.eventSupport.fireEvent(PatientRegisterEvent.bulkLoaded(addedPatients));
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the patients of the given List that are not in the register yet and returns the others.
+     * The listeners are notified once, of all the patients that were added
+     * @param patients The patient List to add, null patients are ignored, can not be null
+     * @return A List of the patients that were not added because of a duplicate social security number
+     * @throws IllegalArgumentException If the List is null
+     */
+    @Override
+    public List<Patient> addNewPatients(List<Patient> patients)
+    {
+        if (patients == null) {
+            throw new IllegalArgumentException("The patient List can not be null!");
+        }
+
+        List<Patient> addedPatients = new ArrayList<>(patients.size());
+        List<Patient> duplicatePatients = new ArrayList<>();
+        for (Patient patient : patients) {
+            if (patient != null) {
+                ReentrantLock lock = this.getLock(patient.getSocialSecurityNumber());
+                lock.lock();
+                try {
+                    if (this.patients.containsKey(patient.getSocialSecurityNumber())) {
+                        duplicatePatients.add(patient);
+                    }
+                    else {
+                        this.insertPatient(patient);
+                        addedPatients.add(patient);
+                    }
+                }
+                finally {
+                    lock.unlock();
+                }
+            }
+        }
+        if (!addedPatients.isEmpty()) {
+            this.eventSupport.fireEvent(PatientRegisterEvent.bulkLoaded(addedPatients));
+        }
+        return duplicatePatients;
+    }
+
+    /**
+     * Adds the patients of the given List that are not in the register, and replaces the patients
+     * that are not equal to the patient with the same social security number in the register.
+     * The listeners are notified once of the added patients and once of the replaced patients
+     * @param patients The patient List to upsert, null patients are ignored, can not be null
+     * @return The number of patients that were inserted, updated and left unchanged
+     * @throws IllegalArgumentException If the List is null
+     */
+    @Override
+    public UpsertResult upsertPatients(List<Patient> patients)
+    {
+        if (patients == null) {
+            throw new IllegalArgumentException("The patient List can not be null!");
+        }
+
+        Map<String, Patient> latestPatients = new LinkedHashMap<>();
+        for (Patient patient : patients) {
+            if (patient != null) {
+                latestPatients.put(patient.getSocialSecurityNumber(), patient);
+            }
+        }
+
+        List<Patient> insertedPatients = new ArrayList<>();
+        List<Patient> oldPatients = new ArrayList<>();
+        List<Patient> newPatients = new ArrayList<>();
+        long unchangedPatients = 0;
+        for (Patient patient : latestPatients.values()) {
+            ReentrantLock lock = this.getLock(patient.getSocialSecurityNumber());
+            lock.lock();
+            try {
+                Patient existingPatient = this.patients.get(patient.getSocialSecurityNumber());
+                if (existingPatient == null) {
+                    this.insertPatient(patient);
+                    insertedPatients.add(patient);
+                }
+                else if (!existingPatient.equals(patient)) {
+                    this.deletePatient(existingPatient);
+                    this.insertPatient(patient);
+                    oldPatients.add(existingPatient);
+                    newPatients.add(patient);
+                }
+                else {
+                    unchangedPatients++;
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        if (!insertedPatients.isEmpty()) {
+            this.eventSupport.fireEvent(PatientRegisterEvent.bulkLoaded(insertedPatients));
+        }
+        if (!oldPatients.isEmpty()) {
+            this.eventSupport.fireEvent(PatientRegisterEvent.updated(oldPatients, newPatients));
+        }
+        return new UpsertResult(insertedPatients.size(), oldPatients.size(), unchangedPatients, 0);
+    }
+
+    /**
+     * Adds the given patient to the map and the indexes,
+     * the lock of its social security number must be held
+     * @param patient The patient to add, can not be null
+     * @throws DuplicateKeyException If a patient with the same social security number exists
+     */
+    private void insertPatient(Patient patient)
+    {
+        if (this.patients.putIfAbsent(patient.getSocialSecurityNumber(), patient) != null) {
+            throw new DuplicateKeyException("A patient with that social security number already exists");
+        }
+        this.sortedIndexes.values().forEach(index -> index.add(patient));
+    }
+
+    @Override
+    public List<Patient> getPatientList()
+    {
+        return new ArrayList<>(this.patients.values());
+    }
+
+    /**
+     * Returns a Stream of the patients in the register without copying them.
+     * The Stream is weakly consistent, it may or may not reflect the changes made while it is read
+     * @return A Stream of the patients in the register
+     */
+    @Override
+    public Stream<Patient> streamPatients()
+    {
+        return this.patients.values().stream();
+    }
+
+    @Override
+    public List<Patient> getPatientPage(PatientField sortKey, int offset, int limit)
+    {
+        return SortedPatientIndexes.getPatientPage(this::getSortedIndex, sortKey, offset, limit);
+    }
+
+    @Override
+    public List<Patient> getPatientPageAfter(PatientField sortKey, Patient lastPatient, int limit)
+    {
+        return SortedPatientIndexes.getPatientPageAfter(this::getSortedIndex, sortKey, lastPatient, limit);
+    }
+
+    @Override
+    public List<Patient> findPatients(PatientField field, String value)
+    {
+        if (field == null || value == null) {
+            throw new IllegalArgumentException("The field and the value can not be null!");
+        }
+
+        List<Patient> foundPatients;
+        if (field == PatientField.SOCIAL_SECURITY_NUMBER) {
+            Patient patient = this.patients.get(value);
+            foundPatients = (patient == null) ? new ArrayList<>() : new ArrayList<>(List.of(patient));
+        }
+        else {
+            foundPatients = SortedPatientIndexes.findPatients(this::getSortedIndex, field, value);
+        }
+        return foundPatients;
+    }
+
+    @Override
+    public List<Patient> findPatientsByPrefix(PatientField field, String prefix)
+    {
+        return SortedPatientIndexes.findPatientsByPrefix(this::getSortedIndex, field, prefix);
+    }
+
+    @Override
+    public List<Patient> findPatientsInRange(PatientField field, String fromValue, String toValue)
+    {
+        return SortedPatientIndexes.findPatientsInRange(this::getSortedIndex, field, fromValue, toValue);
+    }
+
+    /**
+     * Returns the patients sorted by the given field and then by their social security number.
+     * The index is built the first time it is requested, with all the stripes locked
+     * so that no write is missed, and kept up to date from then on.
+     * @param sortKey The field to sort the patients by, can not be null
+     * @return The patients sorted by the given field
+     */
+    private NavigableSet<Patient> getSortedIndex(PatientField sortKey)
+    {
+        NavigableSet<Patient> sortedIndex = this.sortedIndexes.get(sortKey);
+        if (sortedIndex == null) {
+            for (ReentrantLock lock : this.locks) {
+                lock.lock();
+            }
+            try {
+                sortedIndex = this.sortedIndexes.computeIfAbsent(sortKey, field -> {
+                    NavigableSet<Patient> index = new ConcurrentSkipListSet<>(
+                            SortedPatientIndexes.createComparator(field));
+                    index.addAll(this.patients.values());
+                    return index;
+                });
+            }
+            finally {
+                for (ReentrantLock lock : this.locks) {
+                    lock.unlock();
+                }
+            }
+        }
+        return sortedIndex;
+    }
+
+    @Override
+    public boolean removePatient(Patient patient)
+    {
+        // Guard condition
+        if (patient == null) {
+            return false;
+        }
+
+        boolean removed;
+        ReentrantLock lock = this.getLock(patient.getSocialSecurityNumber());
+        lock.lock();
+        try {
+            removed = this.deletePatient(patient);
+        }
+        finally {
+            lock.unlock();
+        }
+
+        if (removed) {
+            this.eventSupport.fireEvent(PatientRegisterEvent.removed(List.of(patient)));
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the given patient from the map and the indexes,
+     * the lock of its social security number must be held
+     * @param patient The patient to remove, can not be null
+     * @return True if the given patient was removed, false otherwise
+     */
+    private boolean deletePatient(Patient patient)
+    {
+        boolean removed = this.patients.remove(patient.getSocialSecurityNumber(), patient);
+        if (removed) {
+            this.sortedIndexes.values().forEach(index -> index.remove(patient));
+        }
+        return removed;
+    }
+
+    /**
+     * Replaces the given stored patient with a new patient with the same social security number.
+     * The patient of the map is replaced in one step. In the index of a field that did not change,
+     * the old and the new patient sort as the same element, so the new one can only be added
+     * once the old one is removed, in the other indexes it is added first
+     * @param storedPatient The patient of the register to replace, not null
+     * @param newPatient The patient to replace it with, not null
+     */
+    private void replacePatient(Patient storedPatient, Patient newPatient)
+    {
+        this.patients.replace(storedPatient.getSocialSecurityNumber(), storedPatient, newPatient);
+        this.sortedIndexes.forEach((field, index) -> {
+            if (Objects.equals(field.getValue(storedPatient), field.getValue(newPatient))) {
+                index.remove(storedPatient);
+                index.add(newPatient);
+            }
+            else {
+                index.add(newPatient);
+                index.remove(storedPatient);
+            }
+        });
+    }
+
+    @Override
+    public boolean updatePatient(Patient newPatient, Patient oldPatient) throws DuplicateKeyException
+    {
+        // Guard condition
+        if (newPatient == null || oldPatient == null) {
+            return false;
+        }
+
+        int oldStripe = this.getStripe(oldPatient.getSocialSecurityNumber());
+        int newStripe = this.getStripe(newPatient.getSocialSecurityNumber());
+        // Always lock the lower stripe first, so that two updates can not wait for each other
+        ReentrantLock firstLock = this.locks[Math.min(oldStripe, newStripe)];
+        ReentrantLock secondLock = this.locks[Math.max(oldStripe, newStripe)];
+
+        boolean updated = false;
+        firstLock.lock();
+        secondLock.lock();
+        try {
+            Patient storedPatient = this.patients.get(oldPatient.getSocialSecurityNumber());
+            if (oldPatient.equals(storedPatient)) {
+                if (oldPatient.getSocialSecurityNumber().equals(newPatient.getSocialSecurityNumber())) {
+                    this.replacePatient(storedPatient, newPatient);
+                }
+                else {
+                    // Inserted before the old patient is deleted, so that readers always find one of them.
+                    // Throws a DuplicateKeyException if the new social security number is taken
+                    this.insertPatient(newPatient);
+                    this.deletePatient(storedPatient);
+                }
+                updated = true;
+            }
+        }
+        finally {
+            secondLock.unlock();
+            firstLock.unlock();
+        }
+
+        if (updated) {
+            this.eventSupport.fireEvent(PatientRegisterEvent.updated(List.of(oldPatient), List.of(newPatient)));
+        }
+        return updated;
+    }
+
+    /**
+     * Returns the lock stripe of the given social security number
+     * @param socialSecurityNumber The social security number to return the stripe of, can not be null
+     * @return The index of the lock stripe
+     */
+    private int getStripe(String socialSecurityNumber)
+    {
+        int hash = socialSecurityNumber.hashCode();
+        // Spread the higher bits, as the hash codes of similar numbers mostly differ in the lower ones
+        return Math.floorMod(hash ^ (hash >>> 16), NUMBER_OF_LOCK_STRIPES);
+    }
+
+    /**
+     * Returns the lock that guards the given social security number
+     * @param socialSecurityNumber The social security number to return the lock of, can not be null
+     * @return The lock that guards the given social security number
+     */
+    private ReentrantLock getLock(String socialSecurityNumber)
+    {
+        return this.locks[this.getStripe(socialSecurityNumber)];
+    }
+
+    @Override
+    public int getNumberOfPatients()
+    {
+        return this.patients.size();
+    }
+
+    @Override
+    public boolean isThreadSafe()
+    {
+        return true;
+    }
+
+    @Override
+    public void addListener(PatientRegisterListener listener)
+    {
+        this.eventSupport.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(PatientRegisterListener listener)
+    {
+        this.eventSupport.removeListener(listener);
+    }
+
+    @Override
+    public void close()
+    {
+        // Nothing to do here
+    }
+}
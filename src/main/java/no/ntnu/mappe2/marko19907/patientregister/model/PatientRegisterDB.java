@@ -1,31 +1,104 @@
 package no.ntnu.mappe2.marko19907.patientregister.model;
 
+import jakarta.persistence.CacheStoreMode;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.FlushModeType;
 import jakarta.persistence.Persistence;
+import jakarta.persistence.TypedQuery;
 import no.ntnu.mappe2.marko19907.patientregister.exception.DuplicateKeyException;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The class PatientRegisterDB is an implantation of a PatientRegister
  * that can hold Patients in persistent storage
  *
  * @author Marko
- * @version 01-05-2021
+ * @version 17-10-2026
  */
 public class PatientRegisterDB implements PatientRegister
 {
+    private static final String PERSISTENCE_UNIT_NAME = "st-olavs-register";
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final int STREAM_PAGE_SIZE = 1000;
+    // Derby only probes the primary key index for short IN lists, longer lists make it scan the whole table
+    private static final int IN_LIST_SIZE = 100;
+    // How many more candidates than results a search reads per lookup, to leave room for the ranking
+    private static final int SEARCH_CANDIDATE_FACTOR = 4;
+    private static final long COUNT_RECONCILIATION_INTERVAL = TimeUnit.SECONDS.toNanos(30);
+
     private final EntityManagerFactory entityManagerFactory;
     private final EntityManager entityManager;
+    private final PatientRegisterEventSupport eventSupport;
+    private int batchSize;
+    private int patientCount;
+    private long lastCountReconciliation;
 
     /**
      * Constructor for PatientRegisterDB objects
      */
     public PatientRegisterDB()
     {
-        this.entityManagerFactory = Persistence.createEntityManagerFactory("st-olavs-register");
+        this(Collections.emptyMap());
+    }
+
+    /**
+     * Constructor for PatientRegisterDB objects that overrides some of the persistence unit properties,
+     * for example the JDBC url to use a different database
+     * @param properties The persistence unit properties to override, can not be null
+     */
+    public PatientRegisterDB(Map<String, String> properties)
+    {
+        this.entityManagerFactory = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT_NAME, properties);
         this.entityManager = this.entityManagerFactory.createEntityManager();
+        this.eventSupport = new PatientRegisterEventSupport();
+        this.batchSize = DEFAULT_BATCH_SIZE;
+        this.reconcilePatientCount();
+    }
+
+    /**
+     * Returns the number of patients that are checked for duplicates and written to the database at a time
+     * when adding a List of patients
+     * @return The batch size as an int
+     */
+    public int getBatchSize()
+    {
+        return this.batchSize;
+    }
+
+    /**
+     * Sets the number of patients that are checked for duplicates and written to the database at a time
+     * when adding a List of patients
+     * @param batchSize The batch size to set, must be positive
+     * @throws IllegalArgumentException If the given batch size is not positive
+     */
+    public void setBatchSize(int batchSize)
+    {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive!");
+        }
+        this.batchSize = batchSize;
     }
 
     @Override
@@ -41,17 +114,273 @@ public class PatientRegisterDB implements PatientRegister
             this.entityManager.getTransaction().begin();
             this.entityManager.persist(patient);
             this.entityManager.getTransaction().commit();
+            this.patientCount++;
+            this.eventSupport.fireEvent(PatientRegisterEvent.added(patient));
         }
     }
 
+    /**
+     * Adds a given List of patients to the register in a single transaction.
+     * The List is checked for duplicates with one query per IN_LIST_SIZE patients before anything is written,
+     * the patients are then flushed to the database one batch at a time and committed at once.
+     * Either all the patients are added, or none of them are.
+     * @param patients The patient List to add, can not be null or empty
+     * @throws DuplicateKeyException If a patient with the same social security number exists,
+     *                               either in the register or in the given List
+     */
     @Override
-    public void addPatients(List<Patient> patients)
+    public void addPatients(List<Patient> patients) throws DuplicateKeyException
+    {
+        if (patients != null && !patients.isEmpty()) {
+            List<Patient> patientsToAdd = new ArrayList<>(patients.size());
+            Set<String> socialSecurityNumbers = new HashSet<>();
+            for (Patient patient : patients) {
+                if (patient != null) {
+                    if (!socialSecurityNumbers.add(patient.getSocialSecurityNumber())) {
+                        throw new DuplicateKeyException("The list contains a duplicate social security number");
+                    }
+                    patientsToAdd.add(patient);
+                }
+            }
+
+            for (int i = 0; i < patientsToAdd.size(); i += IN_LIST_SIZE) {
+                List<Patient> batch = patientsToAdd.subList(i, Math.min(i + IN_LIST_SIZE, patientsToAdd.size()));
+                if (!this.findExistingSocialSecurityNumbers(batch).isEmpty()) {
+                    throw new DuplicateKeyException("A patient with that social security number already exists");
+                }
+            }
+
+            this.persistPatients(patientsToAdd);
+        }
+    }
+
+    /**
+     * Adds the patients of the given List that are not in the register yet, in a single transaction,
+     * and returns the others. The List is checked for duplicates with one query
+     * per IN_LIST_SIZE patients
+     * @param patients The patient List to add, null patients are ignored, can not be null
+     * @return A List of the patients that were not added because of a duplicate social security number
+     * @throws IllegalArgumentException If the List is null
+     */
+    @Override
+    public List<Patient> addNewPatients(List<Patient> patients)
+    {
+        if (patients == null) {
+            throw new IllegalArgumentException("The patient List can not be null!");
+        }
+
+        List<Patient> uniquePatients = new ArrayList<>(patients.size());
+        List<Patient> duplicatePatients = new ArrayList<>();
+        Set<String> socialSecurityNumbers = new HashSet<>();
+        for (Patient patient : patients) {
+            if (patient != null) {
+                if (socialSecurityNumbers.add(patient.getSocialSecurityNumber())) {
+                    uniquePatients.add(patient);
+                }
+                else {
+                    duplicatePatients.add(patient);
+                }
+            }
+        }
+
+        Set<String> existingSocialSecurityNumbers = new HashSet<>();
+        for (int i = 0; i < uniquePatients.size(); i += IN_LIST_SIZE) {
+            List<Patient> batch = uniquePatients.subList(i, Math.min(i + IN_LIST_SIZE, uniquePatients.size()));
+            existingSocialSecurityNumbers.addAll(this.findExistingSocialSecurityNumbers(batch));
+        }
+
+        List<Patient> patientsToAdd = new ArrayList<>(uniquePatients.size());
+        for (Patient patient : uniquePatients) {
+            if (existingSocialSecurityNumbers.contains(patient.getSocialSecurityNumber())) {
+                duplicatePatients.add(patient);
+            }
+            else {
+                patientsToAdd.add(patient);
+            }
+        }
+        if (!patientsToAdd.isEmpty()) {
+            this.persistPatients(patientsToAdd);
+        }
+        return duplicatePatients;
+    }
+
+    /**
+     * Adds the patients of the given List that are not in the register, and updates the patients
+     * whose content hash differs from the hash stored with the patient with the same social security number.
+     * Only the social security numbers and content hashes of the stored patients are read, one query
+     * per IN_LIST_SIZE patients, and only the patients that changed are loaded and written, in a single transaction.
+     * The listeners are notified once of the added patients and once of the updated patients
+     * @param patients The patient List to upsert, null patients are ignored, can not be null
+     * @return The number of patients that were inserted, updated and left unchanged
+     * @throws IllegalArgumentException If the List is null
+     */
+    @Override
+    public UpsertResult upsertPatients(List<Patient> patients)
+    {
+        if (patients == null) {
+            throw new IllegalArgumentException("The patient List can not be null!");
+        }
+
+        Map<String, Patient> latestPatients = new LinkedHashMap<>();
+        for (Patient patient : patients) {
+            if (patient != null) {
+                latestPatients.put(patient.getSocialSecurityNumber(), patient);
+            }
+        }
+
+        List<Patient> uniquePatients = new ArrayList<>(latestPatients.values());
+        Map<String, Long> storedHashes = new HashMap<>();
+        for (int i = 0; i < uniquePatients.size(); i += IN_LIST_SIZE) {
+            this.findContentHashes(uniquePatients.subList(i, Math.min(i + IN_LIST_SIZE, uniquePatients.size())),
+                    storedHashes);
+        }
+
+        List<Patient> patientsToInsert = new ArrayList<>();
+        List<Patient> patientsToUpdate = new ArrayList<>();
+        for (Patient patient : uniquePatients) {
+            if (!storedHashes.containsKey(patient.getSocialSecurityNumber())) {
+                patientsToInsert.add(patient);
+            }
+            else {
+                // Patients stored before the content hash was introduced have no hash, and are updated once
+                Long storedHash = storedHashes.get(patient.getSocialSecurityNumber());
+                if (storedHash == null || storedHash != patient.computeContentHash()) {
+                    patientsToUpdate.add(patient);
+                }
+            }
+        }
+        long unchangedPatients = uniquePatients.size() - patientsToInsert.size() - patientsToUpdate.size();
+
+        if (!patientsToInsert.isEmpty()) {
+            this.persistPatients(patientsToInsert);
+        }
+        if (!patientsToUpdate.isEmpty()) {
+            this.mergeChangedPatients(patientsToUpdate);
+        }
+        return new UpsertResult(patientsToInsert.size(), patientsToUpdate.size(), unchangedPatients, 0);
+    }
+
+    /**
+     * Puts the stored content hash of each of the given patients that exists in the database into the given Map
+     * @param patients The patients to look for, can not be null
+     * @param storedHashes The Map to put the content hashes in by social security number, can not be null
+     */
+    private void findContentHashes(List<Patient> patients, Map<String, Long> storedHashes)
+    {
+        List<String> socialSecurityNumbers = new ArrayList<>(patients.size());
+        patients.forEach(patient -> socialSecurityNumbers.add(patient.getSocialSecurityNumber()));
+
+        String jpql = "SELECT c.socialSecurityNumber, c.contentHash FROM Patient c"
+                + " WHERE c.socialSecurityNumber IN :keys";
+        this.entityManager.createQuery(jpql, Object[].class)
+                .setParameter("keys", socialSecurityNumbers)
+                .getResultList()
+                .forEach(row -> storedHashes.put((String) row[0], (Long) row[1]));
+    }
+
+    /**
+     * Replaces the stored patients with the given patients with the same social security numbers,
+     * in a single transaction, the way updatePatient() does: the stored patients are removed,
+     * the removals are flushed, and the given patients are persisted in their place.
+     * The stored patients are never changed, as they may be shown or cached by others,
+     * and the given patients are detached from the register once they are committed
+     * @param changedPatients The patients with the new content, they must exist in the register, can not be empty
+     */
+    private void mergeChangedPatients(List<Patient> changedPatients)
     {
-        if (patients != null) {
-            patients.forEach(this::addPatient);
+        List<Patient> oldPatients = new ArrayList<>(changedPatients.size());
+        List<Patient> newPatients = new ArrayList<>(changedPatients.size());
+        EntityTransaction transaction = this.entityManager.getTransaction();
+        try {
+            transaction.begin();
+            for (int i = 0; i < changedPatients.size(); i += IN_LIST_SIZE) {
+                Map<String, Patient> changedBatch = new HashMap<>();
+                changedPatients.subList(i, Math.min(i + IN_LIST_SIZE, changedPatients.size()))
+                        .forEach(patient -> changedBatch.put(patient.getSocialSecurityNumber(), patient));
+
+                // Flushing before the query would look for changes in every patient the EntityManager manages
+                String jpql = "SELECT c FROM Patient c WHERE c.socialSecurityNumber IN :keys";
+                List<Patient> storedPatients = this.entityManager.createQuery(jpql, Patient.class)
+                        .setParameter("keys", new ArrayList<>(changedBatch.keySet()))
+                        .setFlushMode(FlushModeType.COMMIT)
+                        .getResultList();
+                for (Patient storedPatient : storedPatients) {
+                    this.entityManager.remove(storedPatient);
+                    oldPatients.add(storedPatient);
+                    newPatients.add(changedBatch.get(storedPatient.getSocialSecurityNumber()));
+                }
+            }
+            // Delete the old rows before inserting the new ones, they have the same keys
+            this.entityManager.flush();
+            for (int i = 0; i < newPatients.size(); i++) {
+                this.entityManager.persist(newPatients.get(i));
+                if ((i + 1) % this.batchSize == 0) {
+                    this.entityManager.flush();
+                }
+            }
+            transaction.commit();
+            newPatients.forEach(this.entityManager::detach);
+            this.eventSupport.fireEvent(PatientRegisterEvent.updated(oldPatients, newPatients));
+        }
+        finally {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
         }
     }
 
+    /**
+     * Persists the given patients in a single transaction, flushing them to the database one batch at a time.
+     * The patients are written with a separate EntityManager that is cleared after every batch and closed
+     * afterwards, so that an import does not leave every imported patient managed by the register.
+     * The persisted patients are detached once this method returns
+     * @param patientsToAdd The patients to persist, none of them may exist in the register, can not be empty
+     */
+    private void persistPatients(List<Patient> patientsToAdd)
+    {
+        EntityManager batchEntityManager = this.entityManagerFactory.createEntityManager();
+        try {
+            EntityTransaction transaction = batchEntityManager.getTransaction();
+            try {
+                transaction.begin();
+                for (int i = 0; i < patientsToAdd.size(); i++) {
+                    batchEntityManager.persist(patientsToAdd.get(i));
+                    if ((i + 1) % this.batchSize == 0) {
+                        batchEntityManager.flush();
+                        batchEntityManager.clear();
+                    }
+                }
+                transaction.commit();
+            }
+            finally {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+            }
+        }
+        finally {
+            batchEntityManager.close();
+        }
+        this.patientCount += patientsToAdd.size();
+        this.eventSupport.fireEvent(PatientRegisterEvent.bulkLoaded(patientsToAdd));
+    }
+
+    /**
+     * Returns the social security numbers of the given patients that already exist in the database
+     * @param patients The patients to look for, can not be null
+     * @return A List of the social security numbers that already exist in the database
+     */
+    private List<String> findExistingSocialSecurityNumbers(List<Patient> patients)
+    {
+        List<String> socialSecurityNumbers = new ArrayList<>(patients.size());
+        patients.forEach(patient -> socialSecurityNumbers.add(patient.getSocialSecurityNumber()));
+
+        String jpql = "SELECT c.socialSecurityNumber FROM Patient c WHERE c.socialSecurityNumber IN :keys";
+        return this.entityManager.createQuery(jpql, String.class)
+                .setParameter("keys", socialSecurityNumbers)
+                .getResultList();
+    }
+
     @Override
     public List<Patient> getPatientList()
     {
@@ -59,41 +388,488 @@ public class PatientRegisterDB implements PatientRegister
         return this.entityManager.createQuery(jpql, Patient.class).getResultList();
     }
 
+    /**
+     * Returns a Stream of the patients in the register, sorted by their social security number.
+     * The patients are read a page at a time, each page starting after the last patient of the previous one,
+     * with a separate EntityManager that is cleared after every page, so only one page is held in memory.
+     * The patients in the Stream are not the patients of getPatientList(), they are detached.
+     * The Stream must be closed to close its EntityManager
+     * @return A Stream of the patients in the register
+     */
+    @Override
+    public Stream<Patient> streamPatients()
+    {
+        EntityManager streamEntityManager = this.entityManagerFactory.createEntityManager();
+        Iterator<Patient> iterator = new Iterator<>()
+        {
+            private List<Patient> page = Collections.emptyList();
+            private int index = 0;
+            private boolean lastPage = false;
+
+            @Override
+            public boolean hasNext()
+            {
+                if (this.index == this.page.size() && !this.lastPage) {
+                    String lastKey = this.page.isEmpty()
+                            ? null : this.page.get(this.page.size() - 1).getSocialSecurityNumber();
+                    streamEntityManager.clear();
+                    this.page = PatientRegisterDB.this.findPatientsAfter(streamEntityManager, lastKey);
+                    this.index = 0;
+                    this.lastPage = this.page.size() < STREAM_PAGE_SIZE;
+                }
+                return this.index < this.page.size();
+            }
+
+            @Override
+            public Patient next()
+            {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return this.page.get(this.index++);
+            }
+        };
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false)
+                .onClose(streamEntityManager::close);
+    }
+
+    /**
+     * Returns a page of the patients that follow the given social security number, sorted by it.
+     * The patients are not stored in the shared cache, that would otherwise fill up with every patient
+     * @param entityManager The EntityManager to read the patients with, not null
+     * @param lastKey The social security number to start after, or null to start with the first patient
+     * @return A List of at most STREAM_PAGE_SIZE patients
+     */
+    private List<Patient> findPatientsAfter(EntityManager entityManager, String lastKey)
+    {
+        TypedQuery<Patient> query;
+        if (lastKey == null) {
+            query = entityManager.createQuery("SELECT c FROM Patient c ORDER BY c.socialSecurityNumber",
+                    Patient.class);
+        }
+        else {
+            query = entityManager.createQuery("SELECT c FROM Patient c WHERE c.socialSecurityNumber > :lastKey"
+                    + " ORDER BY c.socialSecurityNumber", Patient.class)
+                    .setParameter("lastKey", lastKey);
+        }
+        return query
+                .setHint("jakarta.persistence.cache.storeMode", CacheStoreMode.BYPASS)
+                .setMaxResults(STREAM_PAGE_SIZE)
+                .getResultList();
+    }
+
+    /**
+     * Returns a page of patients sorted by the given field, patients with the same value
+     * are sorted by their social security number.
+     * The page is read with a separate EntityManager that is closed afterwards, so that paging through
+     * the register does not leave every page managed by the register. The patients are detached
+     * @param sortKey The field to sort the patients by, can not be null
+     * @param offset The number of patients to skip, can not be negative
+     * @param limit The maximum number of patients to return, must be positive
+     * @return A List of at most limit patients in the given order
+     * @throws IllegalArgumentException If the sort key is null, the offset is negative or the limit is not positive
+     */
+    @Override
+    public List<Patient> getPatientPage(PatientField sortKey, int offset, int limit)
+    {
+        if (sortKey == null || offset < 0 || limit <= 0) {
+            throw new IllegalArgumentException("The sort key can not be null, the offset can not be negative "
+                    + "and the limit must be positive!");
+        }
+
+        EntityManager pageEntityManager = this.entityManagerFactory.createEntityManager();
+        try {
+            String jpql = "SELECT c FROM Patient c ORDER BY " + this.getOrderBy(sortKey);
+            return pageEntityManager.createQuery(jpql, Patient.class)
+                    .setHint("jakarta.persistence.cache.storeMode", CacheStoreMode.BYPASS)
+                    .setFirstResult(offset)
+                    .setMaxResults(limit)
+                    .getResultList();
+        }
+        finally {
+            pageEntityManager.close();
+        }
+    }
+
+    /**
+     * Returns the page of patients that follows the given patient when sorted by the given field,
+     * patients with the same value are sorted by their social security number.
+     * The page is read with a separate EntityManager that is closed afterwards, as getPatientPage() does
+     * @param sortKey The field to sort the patients by, can not be null
+     * @param lastPatient The last patient of the previous page, or null to return the first page
+     * @param limit The maximum number of patients to return, must be positive
+     * @return A List of at most limit patients that follow the given patient
+     * @throws IllegalArgumentException If the sort key is null or the limit is not positive
+     */
+    @Override
+    public List<Patient> getPatientPageAfter(PatientField sortKey, Patient lastPatient, int limit)
+    {
+        if (sortKey == null || limit <= 0) {
+            throw new IllegalArgumentException("The sort key can not be null and the limit must be positive!");
+        }
+
+        if (lastPatient == null) {
+            return this.getPatientPage(sortKey, 0, limit);
+        }
+
+        EntityManager pageEntityManager = this.entityManagerFactory.createEntityManager();
+        try {
+            TypedQuery<Patient> query;
+            if (sortKey == PatientField.SOCIAL_SECURITY_NUMBER) {
+                String jpql = "SELECT c FROM Patient c WHERE c.socialSecurityNumber > :lastKey"
+                        + " ORDER BY " + this.getOrderBy(sortKey);
+                query = pageEntityManager.createQuery(jpql, Patient.class);
+            }
+            else {
+                String attribute = "c." + sortKey.getAttributeName();
+                String jpql = "SELECT c FROM Patient c WHERE " + attribute + " > :lastValue"
+                        + " OR (" + attribute + " = :lastValue AND c.socialSecurityNumber > :lastKey)"
+                        + " ORDER BY " + this.getOrderBy(sortKey);
+                query = pageEntityManager.createQuery(jpql, Patient.class)
+                        .setParameter("lastValue", sortKey.getValue(lastPatient));
+            }
+
+            return query
+                    .setParameter("lastKey", lastPatient.getSocialSecurityNumber())
+                    .setHint("jakarta.persistence.cache.storeMode", CacheStoreMode.BYPASS)
+                    .setMaxResults(limit)
+                    .getResultList();
+        }
+        finally {
+            pageEntityManager.close();
+        }
+    }
+
+    /**
+     * Returns the JPQL ORDER BY items that sort the patients by the given field
+     * and then by their social security number
+     * @param sortKey The field to sort the patients by, can not be null
+     * @return The JPQL ORDER BY items as a String
+     */
+    private String getOrderBy(PatientField sortKey)
+    {
+        String orderBy = "c.socialSecurityNumber";
+        if (sortKey != PatientField.SOCIAL_SECURITY_NUMBER) {
+            orderBy = "c." + sortKey.getAttributeName() + ", " + orderBy;
+        }
+        return orderBy;
+    }
+
+    /**
+     * Returns the patients whose given field is equal to the given value,
+     * the lookup is done by the database with the index of the field
+     * @param field The field to compare, can not be null
+     * @param value The value to look for, can not be null
+     * @return A List of the patients with the given value, in no particular order
+     * @throws IllegalArgumentException If any of the arguments is null
+     */
+    @Override
+    public List<Patient> findPatients(PatientField field, String value)
+    {
+        if (field == null || value == null) {
+            throw new IllegalArgumentException("The field and the value can not be null!");
+        }
+
+        List<Patient> patients;
+        if (field == PatientField.SOCIAL_SECURITY_NUMBER) {
+            Patient foundPatient = this.entityManager.find(Patient.class, value);
+            patients = (foundPatient != null) ? List.of(foundPatient) : Collections.emptyList();
+        }
+        else {
+            patients = this.entityManager.createNamedQuery(this.getNamedQueryName(field, ""), Patient.class)
+                    .setParameter("value", value)
+                    .getResultList();
+        }
+        return patients;
+    }
+
+    /**
+     * Returns the patients whose given field starts with the given prefix, sorted by that field.
+     * The lookup is done by the database with the index of the field
+     * @param field The field to compare, can not be null
+     * @param prefix The prefix to look for, can not be null
+     * @return A List of the patients whose field starts with the given prefix
+     * @throws IllegalArgumentException If any of the arguments is null
+     */
+    @Override
+    public List<Patient> findPatientsByPrefix(PatientField field, String prefix)
+    {
+        if (field == null || prefix == null) {
+            throw new IllegalArgumentException("The field and the prefix can not be null!");
+        }
+
+        return this.entityManager.createNamedQuery(this.getNamedQueryName(field, "Prefix"), Patient.class)
+                .setParameter("prefix", this.escapeLikePattern(prefix) + "%")
+                .getResultList();
+    }
+
+    /**
+     * Returns the patients whose given field is in the given range, sorted by that field.
+     * The lookup is done by the database with the index of the field
+     * @param field The field to compare, can not be null
+     * @param fromValue The lowest value to include, can not be null
+     * @param toValue The value to stop before, can not be null
+     * @return A List of the patients whose field is at least fromValue and less than toValue
+     * @throws IllegalArgumentException If any of the arguments is null
+     */
+    @Override
+    public List<Patient> findPatientsInRange(PatientField field, String fromValue, String toValue)
+    {
+        if (field == null || fromValue == null || toValue == null) {
+            throw new IllegalArgumentException("The field and the values can not be null!");
+        }
+
+        return this.entityManager.createNamedQuery(this.getNamedQueryName(field, "Range"), Patient.class)
+                .setParameter("fromValue", fromValue)
+                .setParameter("toValue", toValue)
+                .getResultList();
+    }
+
+    /**
+     * Returns the patients whose fields start with all the given prefixes, sorted by social security number.
+     * The filter is done by the database, only the matching patients are read.
+     * The query only has a condition for each of the given fields, rather than a fixed named query
+     * with optional conditions, so that the database can use the index of the most selective field.
+     * @param prefixes The prefix to look for by field, can not be null or contain null values
+     * @return A List of the patients whose fields start with all the given prefixes
+     * @throws IllegalArgumentException If the prefixes are null or contain a null value
+     */
+    @Override
+    public List<Patient> filterPatients(Map<PatientField, String> prefixes)
+    {
+        if (prefixes == null || prefixes.entrySet().stream()
+                .anyMatch(entry -> entry.getKey() == null || entry.getValue() == null)) {
+            throw new IllegalArgumentException("The prefixes can not be null or contain null!");
+        }
+
+        Map<PatientField, String> conditions = new EnumMap<>(PatientField.class);
+        conditions.putAll(prefixes);
+        StringJoiner where = new StringJoiner(" AND ", " WHERE ", "").setEmptyValue("");
+        conditions.keySet().forEach(field -> where.add(
+                "c." + field.getAttributeName() + " LIKE :" + field.getAttributeName() + " ESCAPE '\\'"));
+
+        String jpql = "SELECT c FROM Patient c" + where + " ORDER BY c.socialSecurityNumber";
+        TypedQuery<Patient> query = this.entityManager.createQuery(jpql, Patient.class);
+        conditions.forEach((field, prefix) ->
+                query.setParameter(field.getAttributeName(), this.escapeLikePattern(prefix) + "%"));
+        return query.getResultList();
+    }
+
+    /**
+     * Returns the patients that best match the given type-ahead query, the best match first.
+     * The database only looks up the patients whose first name, last name or social security number
+     * starts with the first term of the query, written in lower case, capitalized or in upper case,
+     * with the index of each field and at most SEARCH_CANDIDATE_FACTOR times the limit per lookup.
+     * The candidates are then matched against every term and ranked in memory.
+     * Like the search index of the in-memory registers, the result is approximate: a term that only
+     * starts a later word of a field, or a name in mixed case, is not looked up in the database,
+     * and a query whose first term starts many names may miss some of the best matches.
+     * @param query The query to search for, can not be null
+     * @param limit The maximum number of patients to return, must be positive
+     * @return A List of at most limit patients, the best match first
+     * @throws IllegalArgumentException If the query is null or the limit is not positive
+     */
+    @Override
+    public List<Patient> searchPatients(String query, int limit)
+    {
+        if (query == null || limit <= 0) {
+            throw new IllegalArgumentException("The query can not be null and the limit must be positive!");
+        }
+        String[] terms = PatientSearchIndex.getTerms(query);
+        if (terms.length == 0) {
+            return new ArrayList<>();
+        }
+
+        String term = terms[0];
+        Set<String> prefixes = new LinkedHashSet<>(List.of(term,
+                term.substring(0, 1).toUpperCase(Locale.ROOT) + term.substring(1), term.toUpperCase(Locale.ROOT)));
+        int maxCandidates = (int) Math.min((long) limit * SEARCH_CANDIDATE_FACTOR, Integer.MAX_VALUE);
+        Map<String, Patient> candidates = new LinkedHashMap<>();
+        EntityManager searchEntityManager = this.entityManagerFactory.createEntityManager();
+        try {
+            for (PatientField field : List.of(PatientField.FIRST_NAME, PatientField.LAST_NAME,
+                    PatientField.SOCIAL_SECURITY_NUMBER)) {
+                for (String prefix : prefixes) {
+                    searchEntityManager.createNamedQuery(this.getNamedQueryName(field, "Prefix"), Patient.class)
+                            .setParameter("prefix", this.escapeLikePattern(prefix) + "%")
+                            .setHint("jakarta.persistence.cache.storeMode", CacheStoreMode.BYPASS)
+                            .setMaxResults(maxCandidates)
+                            .getResultList()
+                            .forEach(patient -> candidates.putIfAbsent(patient.getSocialSecurityNumber(), patient));
+                }
+            }
+        }
+        finally {
+            searchEntityManager.close();
+        }
+        return candidates.values().stream()
+                .filter(patient -> PatientSearchIndex.matches(patient, query))
+                .sorted(PatientSearchIndex.getRanking(query))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the name of the named query of the Patient class that looks up patients by the given field
+     * @param field The field to look up patients by, can not be null
+     * @param kind The kind of lookup, blank for an exact lookup, "Prefix" or "Range"
+     * @return The name of the named query as a String
+     */
+    private String getNamedQueryName(PatientField field, String kind)
+    {
+        String attribute = field.getAttributeName();
+        return "Patient.findBy" + Character.toUpperCase(attribute.charAt(0)) + attribute.substring(1) + kind;
+    }
+
+    /**
+     * Returns the given text with the LIKE wildcards escaped, so that it only matches itself
+     * @param text The text to escape, can not be null
+     * @return The escaped text as a String
+     */
+    private String escapeLikePattern(String text)
+    {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
     @Override
     public boolean removePatient(Patient patient)
     {
         boolean success = false;
         if (patient != null) {
-            this.entityManager.getTransaction().begin();
-            this.entityManager.remove(patient);
-            this.entityManager.getTransaction().commit();
-            success = true;
+            Patient storedPatient = this.entityManager.find(Patient.class, patient.getSocialSecurityNumber());
+            if (storedPatient != null && storedPatient.equals(patient)) {
+                this.entityManager.getTransaction().begin();
+                this.entityManager.remove(storedPatient);
+                this.entityManager.getTransaction().commit();
+                this.patientCount--;
+                success = true;
+                this.eventSupport.fireEvent(PatientRegisterEvent.removed(List.of(storedPatient)));
+            }
         }
         return success;
     }
 
+    /**
+     * Updates the given patient in the register, the old patient is removed and the new patient is added
+     * in a single transaction. The old patient is looked up by its social security number, so it does not
+     * have to be managed by the register, for example when it was returned by a page or added in a batch
+     * @param newPatient The patient that replaces the oldPatient
+     * @param oldPatient The patient that is to be replaced with the newPatient
+     * @return True if the oldPatient was replaced with the newPatient, false when given null
+     * and false if the oldPatient is not in the register
+     * @throws DuplicateKeyException If a patient with the same social security number exists
+     */
     @Override
-    public void updatePatient(Patient newPatient, Patient oldPatient) throws DuplicateKeyException
+    public boolean updatePatient(Patient newPatient, Patient oldPatient) throws DuplicateKeyException
     {
+        boolean updated = false;
         if (newPatient != null && oldPatient != null) {
-            if (this.entityManager.contains(oldPatient)) {
+            Patient storedPatient = this.entityManager.find(Patient.class, oldPatient.getSocialSecurityNumber());
+            if (storedPatient != null && storedPatient.equals(oldPatient)) {
                 Patient foundPatient = this.entityManager.find(Patient.class, newPatient.getSocialSecurityNumber());
-                if (foundPatient != null && !foundPatient.equals(oldPatient)) {
+                if (foundPatient != null && foundPatient != storedPatient) {
                     throw new DuplicateKeyException("A patient with that social security number already exists");
                 }
 
                 if (!this.entityManager.contains(newPatient)) {
-                    this.removePatient(oldPatient);
-                    this.addPatient(newPatient);
+                    EntityTransaction transaction = this.entityManager.getTransaction();
+                    try {
+                        transaction.begin();
+                        this.entityManager.remove(storedPatient);
+                        // Delete the old row before inserting the new one, they may have the same key
+                        this.entityManager.flush();
+                        this.entityManager.persist(newPatient);
+                        transaction.commit();
+                        updated = true;
+                    }
+                    finally {
+                        if (transaction.isActive()) {
+                            transaction.rollback();
+                        }
+                    }
+                    this.eventSupport.fireEvent(
+                            PatientRegisterEvent.updated(List.of(oldPatient), List.of(newPatient)));
                 }
             }
         }
+        return updated;
     }
 
+    /**
+     * Returns the number of patients in the register.
+     * The number is kept up to date by the operations of this register and is reconciled
+     * with the database when it is older than the reconciliation interval,
+     * to account for changes made to the database by others.
+     * @return The number of patients in the register as an int
+     */
     @Override
     public int getNumberOfPatients()
     {
-        return this.entityManager.getProperties().size();
+        if (System.nanoTime() - this.lastCountReconciliation > COUNT_RECONCILIATION_INTERVAL) {
+            this.reconcilePatientCount();
+        }
+        return this.patientCount;
+    }
+
+    /**
+     * Counts the patients in the database and resets the number of patients to the result
+     */
+    private void reconcilePatientCount()
+    {
+        String jpql = "SELECT COUNT(c) FROM Patient c";
+        this.patientCount = this.entityManager.createQuery(jpql, Long.class).getSingleResult().intValue();
+        this.lastCountReconciliation = System.nanoTime();
+    }
+
+    /**
+     * Rebuilds the table of the patients and its indexes, so that the space left by deleted and updated patients
+     * is given back to the file system. The table is locked while it is rebuilt, which can take a while
+     * for a large register, so this is meant for maintenance windows
+     * @return The number of bytes the table and its indexes shrank by
+     */
+    public long compact()
+    {
+        long sizeBefore = this.getStorageSize();
+        EntityTransaction transaction = this.entityManager.getTransaction();
+        try {
+            transaction.begin();
+            // Rebuilds one index at a time instead of sorting all of them at once, which needs less memory
+            this.entityManager.createNativeQuery(
+                    "CALL SYSCS_UTIL.SYSCS_COMPRESS_TABLE(CURRENT SCHEMA, 'PATIENT', 1)").executeUpdate();
+            transaction.commit();
+        }
+        finally {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+        }
+        return sizeBefore - this.getStorageSize();
+    }
+
+    /**
+     * Returns the number of bytes that the table of the patients and its indexes take up in the database
+     * @return The storage size of the patients in bytes
+     */
+    public long getStorageSize()
+    {
+        String sql = "SELECT SUM(NUMALLOCATEDPAGES * PAGESIZE)"
+                + " FROM TABLE (SYSCS_DIAG.SPACE_TABLE(CURRENT SCHEMA, 'PATIENT')) T";
+        Object size = this.entityManager.createNativeQuery(sql).getSingleResult();
+        return ((Number) size).longValue();
+    }
+
+    @Override
+    public void addListener(PatientRegisterListener listener)
+    {
+        this.eventSupport.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(PatientRegisterListener listener)
+    {
+        this.eventSupport.removeListener(listener);
     }
 
     @Override
@@ -0,0 +1,136 @@
+package no.ntnu.mappe2.marko19907.patientregister.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class PatientRegisterEvent represents a change to a PatientRegister.
+ * Changes made by a single operation are reported as a single event, so an operation
+ * that adds many patients at once results in one BULK_LOADED event with all the added patients.
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public final class PatientRegisterEvent
+{
+    /**
+     * The type of the change
+     */
+    public enum Type
+    {
+        /**
+         * A single patient was added, it is the only new patient of the event
+         */
+        ADDED,
+        /**
+         * One or more patients were removed, they are the old patients of the event
+         */
+        REMOVED,
+        /**
+         * One or more patients were replaced, each old patient was replaced
+         * by the new patient at the same position
+         */
+        UPDATED,
+        /**
+         * Many patients were added at once, they are the new patients of the event
+         */
+        BULK_LOADED
+    }
+
+    private final Type type;
+    private final List<Patient> oldPatients;
+    private final List<Patient> newPatients;
+
+    /**
+     * Constructor for PatientRegisterEvent objects
+     * @param type The type of the change
+     * @param oldPatients The patients that were removed or replaced
+     * @param newPatients The patients that were added or replaced the old patients
+     */
+    private PatientRegisterEvent(Type type, List<Patient> oldPatients, List<Patient> newPatients)
+    {
+        this.type = type;
+        this.oldPatients = Collections.unmodifiableList(oldPatients);
+        this.newPatients = Collections.unmodifiableList(newPatients);
+    }
+
+    /**
+     * Returns an event that reports that the given patient was added
+     * @param patient The patient that was added, can not be null
+     * @return An ADDED event
+     */
+    public static PatientRegisterEvent added(Patient patient)
+    {
+        return new PatientRegisterEvent(Type.ADDED, List.of(), List.of(patient));
+    }
+
+    /**
+     * Returns an event that reports that the given patients were added at once
+     * @param patients The patients that were added, can not be null
+     * @return A BULK_LOADED event
+     */
+    public static PatientRegisterEvent bulkLoaded(List<Patient> patients)
+    {
+        return new PatientRegisterEvent(Type.BULK_LOADED, List.of(), patients);
+    }
+
+    /**
+     * Returns an event that reports that the given patients were removed
+     * @param patients The patients that were removed, can not be null
+     * @return A REMOVED event
+     */
+    public static PatientRegisterEvent removed(List<Patient> patients)
+    {
+        return new PatientRegisterEvent(Type.REMOVED, patients, List.of());
+    }
+
+    /**
+     * Returns an event that reports that each of the old patients was replaced
+     * by the new patient at the same position
+     * @param oldPatients The patients that were replaced, can not be null
+     * @param newPatients The patients that replaced them, can not be null and must be the same size
+     * @return An UPDATED event
+     * @throws IllegalArgumentException If the Lists are not the same size
+     */
+    public static PatientRegisterEvent updated(List<Patient> oldPatients, List<Patient> newPatients)
+    {
+        if (oldPatients.size() != newPatients.size()) {
+            throw new IllegalArgumentException("Every old patient must have a new patient!");
+        }
+        return new PatientRegisterEvent(Type.UPDATED, oldPatients, newPatients);
+    }
+
+    /**
+     * Returns the type of the change
+     * @return The type of the change
+     */
+    public Type getType()
+    {
+        return this.type;
+    }
+
+    /**
+     * Returns the patients that were removed or replaced, empty for ADDED and BULK_LOADED events
+     * @return An unmodifiable List of the patients that were removed or replaced
+     */
+    public List<Patient> getOldPatients()
+    {
+        return this.oldPatients;
+    }
+
+    /**
+     * Returns the patients that were added or that replaced the old patients, empty for REMOVED events
+     * @return An unmodifiable List of the patients that were added or that replaced the old patients
+     */
+    public List<Patient> getNewPatients()
+    {
+        return this.newPatients;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.type + " event with " + this.oldPatients.size() + " old and "
+                + this.newPatients.size() + " new patients";
+    }
+}
@@ -0,0 +1,76 @@
+package no.ntnu.mappe2.marko19907.patientregister.model;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Class PatientRegisterEventSupport keeps track of the listeners of a PatientRegister
+ * and notifies them of changes. The registers delegate their listener methods to it.
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public class PatientRegisterEventSupport
+{
+    private final List<PatientRegisterListener> listeners;
+    private final Logger logger;
+
+    /**
+     * Constructor for PatientRegisterEventSupport objects
+     */
+    public PatientRegisterEventSupport()
+    {
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.logger = Logger.getLogger(this.getClass().getSimpleName());
+    }
+
+    /**
+     * Adds the given listener
+     * @param listener The listener to add, can not be null
+     */
+    public void addListener(PatientRegisterListener listener)
+    {
+        if (listener != null) {
+            this.listeners.add(listener);
+        }
+    }
+
+    /**
+     * Removes the given listener
+     * @param listener The listener to remove
+     */
+    public void removeListener(PatientRegisterListener listener)
+    {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Returns true if there are any listeners to notify, so that events
+     * that are expensive to create can be skipped otherwise
+     * @return True if there are any listeners, false otherwise
+     */
+    public boolean hasListeners()
+    {
+        return !this.listeners.isEmpty();
+    }
+
+    /**
+     * Notifies all the listeners of the given event.
+     * An exception thrown by a listener is logged and does not stop the other listeners from being notified,
+     * since the change it reports has already been made.
+     * @param event The event to notify the listeners of, can not be null
+     */
+    public void fireEvent(PatientRegisterEvent event)
+    {
+        for (PatientRegisterListener listener : this.listeners) {
+            try {
+                listener.registerChanged(event);
+            }
+            catch (RuntimeException e) {
+                this.logger.log(Level.WARNING, "A listener failed to handle the " + event, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package no.ntnu.mappe2.marko19907.patientregister.model;
+
+/**
+ * PatientRegisterListener represents a listener that is notified of the changes to a PatientRegister
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+@FunctionalInterface
+public interface PatientRegisterListener
+{
+    /**
+     * Called after the register has changed, on the thread that made the change
+     * @param event The event that describes the change
+     */
+    void registerChanged(PatientRegisterEvent event);
+}
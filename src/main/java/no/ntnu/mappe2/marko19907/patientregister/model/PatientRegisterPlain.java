@@ -3,20 +3,37 @@ package no.ntnu.mappe2.marko19907.patientregister.model;
 import no.ntnu.mappe2.marko19907.patientregister.exception.DuplicateKeyException;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * The class PatientRegisterPlain is an implantation of a PatientRegister and
  * represents a register that can hold Patients in memory.
- * It is responsible for adding, removing and returning a list of the Patients
+ * It is responsible for adding, removing and returning a list of the Patients.
+ * The last name, general practitioner and diagnosis are indexed, both in hash indexes for exact lookups
+ * and in sorted indexes for prefix and range lookups, so that looking patients up by them
+ * does not require a scan of the register. A PatientSearchIndex is kept for type-ahead search.
  *
  * @author Marko
- * @version 01-05-2021
+ * @version 17-10-2026
  */
 public class PatientRegisterPlain implements PatientRegister
 {
+    private static final Set<PatientField> INDEXED_FIELDS = EnumSet.of(
+            PatientField.LAST_NAME, PatientField.GENERAL_PRACTITIONER, PatientField.DIAGNOSIS);
+
     private final HashMap<String, Patient> patients;
+    private final EnumMap<PatientField, NavigableSet<Patient>> sortedIndexes;
+    private final EnumMap<PatientField, HashMap<String, Map<String, Patient>>> exactIndexes;
+    private final PatientSearchIndex searchIndex;
+    private final PatientRegisterEventSupport eventSupport;
 
     /**
      * Constructor for PatientRegisterPlain objects
@@ -24,25 +41,155 @@ public class PatientRegisterPlain implements PatientRegister
     public PatientRegisterPlain()
     {
         this.patients = new HashMap<>();
+        this.sortedIndexes = new EnumMap<>(PatientField.class);
+        this.exactIndexes = new EnumMap<>(PatientField.class);
+        this.searchIndex = new PatientSearchIndex();
+        this.eventSupport = new PatientRegisterEventSupport();
+
+        for (PatientField field : INDEXED_FIELDS) {
+            this.getSortedIndex(field);
+            this.exactIndexes.put(field, new HashMap<>());
+        }
     }
 
     @Override
     public void addPatient(Patient patient)
     {
         if (patient != null) {
-            if (this.patients.containsKey(patient.getSocialSecurityNumber())) {
-                throw new DuplicateKeyException("A patient with that social security number already exists");
-            }
-            this.patients.put(patient.getSocialSecurityNumber(), patient);
+            this.insertPatient(patient);
+            this.eventSupport.fireEvent(PatientRegisterEvent.added(patient));
         }
     }
 
+    /**
+     * Adds the given patients to the register one at a time.
+     * The listeners are notified once, of all the patients that were added,
+     * even if the method stops at a duplicate.
+     * @param patients The patient List to add, can not be null or empty
+     * @throws DuplicateKeyException If a patient with the same social security number exists
+     */
     @Override
     public void addPatients(List<Patient> patients)
     {
         if (patients != null) {
-            patients.forEach(this::addPatient);
+            List<Patient> addedPatients = new ArrayList<>(patients.size());
+            try {
+                for (Patient patient : patients) {
+                    if (patient != null) {
+                        this.insertPatient(patient);
+                        addedPatients.add(patient);
+                    }
+                }
+            }
+            finally {
+                if (!addedPatients.isEmpty()) {
+                    this.eventSupport.fireEvent(PatientRegisterEvent.bulkLoaded(addedPatients));
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the patients of the given List that are not in the register yet and returns the others.
+     * The listeners are notified once, of all the patients that were added
+     * @param patients The patient List to add, null patients are ignored, can not be null
+     * @return A List of the patients that were not added because of a duplicate social security number
+     * @throws IllegalArgumentException If the List is null
+     */
+    @Override
+    public List<Patient> addNewPatients(List<Patient> patients)
+    {
+        if (patients == null) {
+            throw new IllegalArgumentException("The patient List can not be null!");
+        }
+
+        List<Patient> addedPatients = new ArrayList<>(patients.size());
+        List<Patient> duplicatePatients = new ArrayList<>();
+        for (Patient patient : patients) {
+            if (patient != null) {
+                if (this.patients.containsKey(patient.getSocialSecurityNumber())) {
+                    duplicatePatients.add(patient);
+                }
+                else {
+                    this.insertPatient(patient);
+                    addedPatients.add(patient);
+                }
+            }
+        }
+        if (!addedPatients.isEmpty()) {
+            this.eventSupport.fireEvent(PatientRegisterEvent.bulkLoaded(addedPatients));
+        }
+        return duplicatePatients;
+    }
+
+    /**
+     * Adds the patients of the given List that are not in the register, and replaces the patients
+     * that are not equal to the patient with the same social security number in the register.
+     * The listeners are notified once of the added patients and once of the replaced patients
+     * @param patients The patient List to upsert, null patients are ignored, can not be null
+     * @return The number of patients that were inserted, updated and left unchanged
+     * @throws IllegalArgumentException If the List is null
+     */
+    @Override
+    public UpsertResult upsertPatients(List<Patient> patients)
+    {
+        if (patients == null) {
+            throw new IllegalArgumentException("The patient List can not be null!");
+        }
+
+        Map<String, Patient> latestPatients = new LinkedHashMap<>();
+        for (Patient patient : patients) {
+            if (patient != null) {
+                latestPatients.put(patient.getSocialSecurityNumber(), patient);
+            }
+        }
+
+        List<Patient> insertedPatients = new ArrayList<>();
+        List<Patient> oldPatients = new ArrayList<>();
+        List<Patient> newPatients = new ArrayList<>();
+        long unchangedPatients = 0;
+        for (Patient patient : latestPatients.values()) {
+            Patient existingPatient = this.patients.get(patient.getSocialSecurityNumber());
+            if (existingPatient == null) {
+                this.insertPatient(patient);
+                insertedPatients.add(patient);
+            }
+            else if (!existingPatient.equals(patient)) {
+                this.deletePatient(existingPatient);
+                this.insertPatient(patient);
+                oldPatients.add(existingPatient);
+                newPatients.add(patient);
+            }
+            else {
+                unchangedPatients++;
+            }
         }
+
+        if (!insertedPatients.isEmpty()) {
+            this.eventSupport.fireEvent(PatientRegisterEvent.bulkLoaded(insertedPatients));
+        }
+        if (!oldPatients.isEmpty()) {
+            this.eventSupport.fireEvent(PatientRegisterEvent.updated(oldPatients, newPatients));
+        }
+        return new UpsertResult(insertedPatients.size(), oldPatients.size(), unchangedPatients, 0);
+    }
+
+    /**
+     * Adds the given patient to the map and the indexes without notifying the listeners
+     * @param patient The patient to add, can not be null
+     * @throws DuplicateKeyException If a patient with the same social security number exists
+     */
+    private void insertPatient(Patient patient)
+    {
+        if (this.patients.containsKey(patient.getSocialSecurityNumber())) {
+            throw new DuplicateKeyException("A patient with that social security number already exists");
+        }
+        this.patients.put(patient.getSocialSecurityNumber(), patient);
+        this.sortedIndexes.values().forEach(index -> index.add(patient));
+        this.exactIndexes.forEach((field, index) -> index
+                .computeIfAbsent(field.getValue(patient), value -> new HashMap<>())
+                .put(patient.getSocialSecurityNumber(), patient));
+        this.searchIndex.add(patient);
     }
 
     @Override
@@ -51,6 +198,76 @@ public class PatientRegisterPlain implements PatientRegister
         return new ArrayList<>(this.patients.values());
     }
 
+    @Override
+    public List<Patient> getPatientPage(PatientField sortKey, int offset, int limit)
+    {
+        return SortedPatientIndexes.getPatientPage(this::getSortedIndex, sortKey, offset, limit);
+    }
+
+    @Override
+    public List<Patient> getPatientPageAfter(PatientField sortKey, Patient lastPatient, int limit)
+    {
+        return SortedPatientIndexes.getPatientPageAfter(this::getSortedIndex, sortKey, lastPatient, limit);
+    }
+
+    @Override
+    public List<Patient> findPatients(PatientField field, String value)
+    {
+        if (field == null || value == null) {
+            throw new IllegalArgumentException("The field and the value can not be null!");
+        }
+
+        List<Patient> foundPatients;
+        if (field == PatientField.SOCIAL_SECURITY_NUMBER) {
+            Patient patient = this.patients.get(value);
+            foundPatients = (patient == null) ? new ArrayList<>() : new ArrayList<>(List.of(patient));
+        }
+        else if (this.exactIndexes.containsKey(field)) {
+            foundPatients = new ArrayList<>(this.exactIndexes.get(field).getOrDefault(value, Map.of()).values());
+        }
+        else {
+            foundPatients = SortedPatientIndexes.findPatients(this::getSortedIndex, field, value);
+        }
+        return foundPatients;
+    }
+
+    @Override
+    public List<Patient> findPatientsByPrefix(PatientField field, String prefix)
+    {
+        return SortedPatientIndexes.findPatientsByPrefix(this::getSortedIndex, field, prefix);
+    }
+
+    @Override
+    public List<Patient> findPatientsInRange(PatientField field, String fromValue, String toValue)
+    {
+        return SortedPatientIndexes.findPatientsInRange(this::getSortedIndex, field, fromValue, toValue);
+    }
+
+    @Override
+    public List<Patient> searchPatients(String query, int limit)
+    {
+        if (query == null || limit <= 0) {
+            throw new IllegalArgumentException("The query can not be null and the limit must be positive!");
+        }
+
+        return this.searchIndex.search(query, limit);
+    }
+
+    /**
+     * Returns the patients sorted by the given field and then by their social security number.
+     * The index is built the first time it is requested and kept up to date from then on.
+     * @param sortKey The field to sort the patients by, can not be null
+     * @return The patients sorted by the given field
+     */
+    private NavigableSet<Patient> getSortedIndex(PatientField sortKey)
+    {
+        return this.sortedIndexes.computeIfAbsent(sortKey, field -> {
+            NavigableSet<Patient> index = new TreeSet<>(SortedPatientIndexes.createComparator(field));
+            index.addAll(this.patients.values());
+            return index;
+        });
+    }
+
     @Override
     public boolean removePatient(Patient patient)
     {
@@ -59,12 +276,39 @@ public class PatientRegisterPlain implements PatientRegister
             return false;
         }
 
-        return this.patients.remove(patient.getSocialSecurityNumber(), patient);
+        boolean removed = this.deletePatient(patient);
+        if (removed) {
+            this.eventSupport.fireEvent(PatientRegisterEvent.removed(List.of(patient)));
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the given patient from the map and the indexes without notifying the listeners
+     * @param patient The patient to remove, can not be null
+     * @return True if the given patient was removed, false otherwise
+     */
+    private boolean deletePatient(Patient patient)
+    {
+        boolean removed = this.patients.remove(patient.getSocialSecurityNumber(), patient);
+        if (removed) {
+            this.sortedIndexes.values().forEach(index -> index.remove(patient));
+            this.exactIndexes.forEach((field, index) -> {
+                Map<String, Patient> patientsWithValue = index.get(field.getValue(patient));
+                patientsWithValue.remove(patient.getSocialSecurityNumber());
+                if (patientsWithValue.isEmpty()) {
+                    index.remove(field.getValue(patient));
+                }
+            });
+            this.searchIndex.remove(patient);
+        }
+        return removed;
     }
 
     @Override
-    public void updatePatient(Patient newPatient, Patient oldPatient) throws DuplicateKeyException
+    public boolean updatePatient(Patient newPatient, Patient oldPatient) throws DuplicateKeyException
     {
+        boolean updated = false;
         if (newPatient != null && oldPatient != null) {
             if (this.patients.containsKey(oldPatient.getSocialSecurityNumber())) {
                 Patient foundPatient = this.patients.get(newPatient.getSocialSecurityNumber());
@@ -72,10 +316,15 @@ public class PatientRegisterPlain implements PatientRegister
                     throw new DuplicateKeyException("A patient with that social security number already exists");
                 }
 
-                this.removePatient(oldPatient);
-                this.addPatient(newPatient);
+                if (this.deletePatient(oldPatient)) {
+                    this.insertPatient(newPatient);
+                    updated = true;
+                    this.eventSupport.fireEvent(
+                            PatientRegisterEvent.updated(List.of(oldPatient), List.of(newPatient)));
+                }
             }
         }
+        return updated;
     }
 
     @Override
@@ -84,6 +333,18 @@ public class PatientRegisterPlain implements PatientRegister
         return this.patients.size();
     }
 
+    @Override
+    public void addListener(PatientRegisterListener listener)
+    {
+        this.eventSupport.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(PatientRegisterListener listener)
+    {
+        this.eventSupport.removeListener(listener);
+    }
+
     @Override
     public void close()
     {
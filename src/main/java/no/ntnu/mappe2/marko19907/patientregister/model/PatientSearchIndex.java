@@ -0,0 +1,337 @@
+package no.ntnu.mappe2.marko19907.patientregister.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Class PatientSearchIndex is a prefix trie over the words of the first name, the last name and
+ * the social security number of the patients, used for type-ahead search.
+ * A search returns the best matches first: patients where a search term is a whole word come before
+ * patients where it is only the start of a word, and shorter completions come before longer ones.
+ * Only the part of the trie below the first search term is visited, and only until enough matches are found,
+ * so the cost of a search depends on the number of results rather than on the size of the register.
+ * The index is not thread-safe.
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public class PatientSearchIndex
+{
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[\\s\\-]+");
+    // How many more candidates than results to collect, to leave room for the ranking of the later terms
+    private static final int CANDIDATE_FACTOR = 4;
+
+    private final Node root;
+
+    /**
+     * Constructor for PatientSearchIndex objects
+     */
+    public PatientSearchIndex()
+    {
+        this.root = new Node();
+    }
+
+    /**
+     * Adds the given patient to the index
+     * @param patient The patient to add, can not be null
+     */
+    public void add(Patient patient)
+    {
+        for (String word : PatientSearchIndex.getWords(patient)) {
+            Node node = this.root;
+            for (int i = 0; i < word.length(); i++) {
+                node = node.getOrCreateChild(word.charAt(i));
+            }
+            if (node.patients == null) {
+                node.patients = new LinkedHashMap<>();
+            }
+            node.patients.put(patient.getSocialSecurityNumber(), patient);
+        }
+    }
+
+    /**
+     * Removes the given patient from the index, and the branches of the trie that are left empty
+     * @param patient The patient to remove, can not be null
+     */
+    public void remove(Patient patient)
+    {
+        for (String word : PatientSearchIndex.getWords(patient)) {
+            Node[] path = new Node[word.length() + 1];
+            path[0] = this.root;
+            for (int i = 0; i < word.length() && path[i] != null; i++) {
+                path[i + 1] = path[i].getChild(word.charAt(i));
+            }
+
+            Node node = path[word.length()];
+            if (node != null && node.patients != null) {
+                node.patients.remove(patient.getSocialSecurityNumber());
+                if (node.patients.isEmpty()) {
+                    node.patients = null;
+                }
+                for (int i = word.length(); i > 0 && path[i].isEmpty(); i--) {
+                    path[i - 1].removeChild(word.charAt(i - 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the patients that best match the given query.
+     * Every term of the query must be the start of a word in the first name, the last name
+     * or the social security number of the patient, ignoring case.
+     * @param query The query to search for, can not be null
+     * @param limit The maximum number of patients to return, must be positive
+     * @return A List of at most limit patients, the best match first
+     */
+    public List<Patient> search(String query, int limit)
+    {
+        String[] terms = PatientSearchIndex.getTerms(query);
+        List<Patient> candidates = new ArrayList<>();
+        if (terms.length == 0) {
+            return candidates;
+        }
+
+        // Visit the words that start with the first term breadth first, the shortest completions first
+        Node start = this.root;
+        for (int i = 0; i < terms[0].length() && start != null; i++) {
+            start = start.getChild(terms[0].charAt(i));
+        }
+
+        Map<String, Patient> found = new HashMap<>();
+        Deque<Node> queue = new ArrayDeque<>();
+        if (start != null) {
+            queue.add(start);
+        }
+        int maxCandidates = limit * CANDIDATE_FACTOR;
+        while (!queue.isEmpty() && found.size() < maxCandidates) {
+            Node node = queue.poll();
+            if (node.patients != null) {
+                for (Patient patient : node.patients.values()) {
+                    if (found.size() < maxCandidates && !found.containsKey(patient.getSocialSecurityNumber())
+                            && PatientSearchIndex.matches(patient, terms)) {
+                        found.put(patient.getSocialSecurityNumber(), patient);
+                        candidates.add(patient);
+                    }
+                }
+            }
+            queue.addAll(Arrays.asList(node.children));
+        }
+
+        candidates.sort(PatientSearchIndex.getRanking(query));
+        return candidates.size() > limit ? new ArrayList<>(candidates.subList(0, limit)) : candidates;
+    }
+
+    /**
+     * Returns true if every term of the given query is the start of a word of the given patient, ignoring case
+     * @param patient The patient to check, can not be null
+     * @param query The query to check, can not be null
+     * @return True if the patient matches the query, false otherwise and false if the query is blank
+     */
+    public static boolean matches(Patient patient, String query)
+    {
+        String[] terms = PatientSearchIndex.getTerms(query);
+        return terms.length > 0 && PatientSearchIndex.matches(patient, terms);
+    }
+
+    /**
+     * Returns a Comparator that sorts the patients that match the given query by how well they match it,
+     * the best match first
+     * @param query The query the patients match, can not be null
+     * @return A Comparator that sorts the best match first
+     */
+    public static Comparator<Patient> getRanking(String query)
+    {
+        String[] terms = PatientSearchIndex.getTerms(query);
+        return Comparator
+                .comparingInt((Patient patient) -> -PatientSearchIndex.countWholeWordMatches(patient, terms))
+                .thenComparingInt(patient -> PatientSearchIndex.countCompletedCharacters(patient, terms))
+                .thenComparing(Patient::getLastName)
+                .thenComparing(Patient::getFirstName)
+                .thenComparing(Patient::getSocialSecurityNumber);
+    }
+
+    /**
+     * Returns true if every one of the given terms is the start of a word of the given patient
+     * @param patient The patient to check
+     * @param terms The lower case terms to look for
+     * @return True if every term is the start of a word of the patient, false otherwise
+     */
+    private static boolean matches(Patient patient, String[] terms)
+    {
+        return PatientSearchIndex.matches(terms, patient.getFirstName(), patient.getLastName(),
+                patient.getSocialSecurityNumber());
+    }
+
+    /**
+     * Returns true if every one of the given terms is the start of a word of the given values,
+     * for registers that match the fields without creating a Patient
+     * @param terms The lower case terms to look for, as returned by getTerms()
+     * @param firstName The first name to match, not null
+     * @param lastName The last name to match, not null
+     * @param socialSecurityNumber The social security number to match, not null
+     * @return True if every term is the start of a word of the values, false otherwise
+     */
+    static boolean matches(String[] terms, String firstName, String lastName, String socialSecurityNumber)
+    {
+        List<String> words = PatientSearchIndex.getWords(firstName, lastName, socialSecurityNumber);
+        for (String term : terms) {
+            if (words.stream().noneMatch(word -> word.startsWith(term))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of the given terms that are a whole word of the given patient
+     * @param patient The patient to check
+     * @param terms The lower case terms to look for
+     * @return The number of terms that are a whole word of the patient
+     */
+    private static int countWholeWordMatches(Patient patient, String[] terms)
+    {
+        List<String> words = PatientSearchIndex.getWords(patient);
+        int matches = 0;
+        for (String term : terms) {
+            if (words.contains(term)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the number of characters that the shortest matching words of the patient add to the given terms
+     * @param patient The patient to check
+     * @param terms The lower case terms to look for
+     * @return The total number of characters the matching words add to the terms
+     */
+    private static int countCompletedCharacters(Patient patient, String[] terms)
+    {
+        List<String> words = PatientSearchIndex.getWords(patient);
+        int completed = 0;
+        for (String term : terms) {
+            completed += words.stream()
+                    .filter(word -> word.startsWith(term))
+                    .mapToInt(word -> word.length() - term.length())
+                    .min()
+                    .orElse(0);
+        }
+        return completed;
+    }
+
+    /**
+     * Returns the lower case words of the first name, the last name and the social security number of the patient
+     * @param patient The patient to return the words of
+     * @return A List of the words of the patient
+     */
+    private static List<String> getWords(Patient patient)
+    {
+        return PatientSearchIndex.getWords(patient.getFirstName(), patient.getLastName(),
+                patient.getSocialSecurityNumber());
+    }
+
+    /**
+     * Returns the lower case words of the given first name, last name and social security number
+     * @param firstName The first name, not null
+     * @param lastName The last name, not null
+     * @param socialSecurityNumber The social security number, not null
+     * @return A List of the words of the values
+     */
+    private static List<String> getWords(String firstName, String lastName, String socialSecurityNumber)
+    {
+        List<String> words = new ArrayList<>(4);
+        words.addAll(Arrays.asList(PatientSearchIndex.getTerms(firstName)));
+        words.addAll(Arrays.asList(PatientSearchIndex.getTerms(lastName)));
+        words.addAll(Arrays.asList(PatientSearchIndex.getTerms(socialSecurityNumber)));
+        return words;
+    }
+
+    /**
+     * Splits the given text into lower case terms, the words of a patient and the terms of a query alike
+     * @param text The text to split
+     * @return An array of the lower case terms of the text
+     */
+    static String[] getTerms(String text)
+    {
+        String trimmed = text.strip().toLowerCase(Locale.ROOT);
+        return trimmed.isEmpty() ? new String[0] : WORD_SEPARATOR.split(trimmed);
+    }
+
+    /**
+     * A node of the trie, the children are kept sorted by their character
+     */
+    private static final class Node
+    {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private char[] keys;
+        private Node[] children;
+        private Map<String, Patient> patients;
+
+        private Node()
+        {
+            this.keys = NO_KEYS;
+            this.children = NO_CHILDREN;
+        }
+
+        private Node getChild(char key)
+        {
+            int index = Arrays.binarySearch(this.keys, key);
+            return index >= 0 ? this.children[index] : null;
+        }
+
+        private Node getOrCreateChild(char key)
+        {
+            int index = Arrays.binarySearch(this.keys, key);
+            if (index >= 0) {
+                return this.children[index];
+            }
+
+            int insertAt = -index - 1;
+            char[] newKeys = new char[this.keys.length + 1];
+            Node[] newChildren = new Node[this.children.length + 1];
+            System.arraycopy(this.keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(this.children, 0, newChildren, 0, insertAt);
+            System.arraycopy(this.keys, insertAt, newKeys, insertAt + 1, this.keys.length - insertAt);
+            System.arraycopy(this.children, insertAt, newChildren, insertAt + 1, this.children.length - insertAt);
+
+            Node child = new Node();
+            newKeys[insertAt] = key;
+            newChildren[insertAt] = child;
+            this.keys = newKeys;
+            this.children = newChildren;
+            return child;
+        }
+
+        private void removeChild(char key)
+        {
+            int index = Arrays.binarySearch(this.keys, key);
+            if (index >= 0) {
+                char[] newKeys = new char[this.keys.length - 1];
+                Node[] newChildren = new Node[this.children.length - 1];
+                System.arraycopy(this.keys, 0, newKeys, 0, index);
+                System.arraycopy(this.children, 0, newChildren, 0, index);
+                System.arraycopy(this.keys, index + 1, newKeys, index, this.keys.length - index - 1);
+                System.arraycopy(this.children, index + 1, newChildren, index, this.children.length - index - 1);
+                this.keys = newKeys;
+                this.children = newChildren;
+            }
+        }
+
+        private boolean isEmpty()
+        {
+            return this.patients == null && this.children.length == 0;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package no.ntnu.mappe2.marko19907.patientregister.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Class PatientSnapshot writes and reads compact binary copies of all the patients of a register.
+ * A snapshot is a header with a magic number and the number of patients, the patients
+ * and a CRC32 checksum of everything before it. It is written to a temporary file that is forced to disk
+ * and then renamed, so a snapshot file is either complete or missing.
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+final class PatientSnapshot
+{
+    private static final int MAGIC = 0x50525331;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Constructor for PatientSnapshot, it only has static methods
+     */
+    private PatientSnapshot()
+    {
+    }
+
+    /**
+     * Writes the given patients to the given file, replacing it if it exists
+     * @param file The file to write, can not be null
+     * @param patients The patients to write, can not be null
+     * @throws IOException If the snapshot can not be written
+     */
+    static void write(File file, List<Patient> patients) throws IOException
+    {
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        CRC32 checksum = new CRC32();
+        try (FileOutputStream fileOutput = new FileOutputStream(temporaryFile)) {
+            DataOutputStream output = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(fileOutput, BUFFER_SIZE), checksum));
+            output.writeInt(MAGIC);
+            output.writeInt(patients.size());
+            for (Patient patient : patients) {
+                WriteAheadLog.writePatient(output, patient);
+            }
+            output.writeLong(checksum.getValue());
+            output.flush();
+            fileOutput.getFD().sync();
+        }
+        Files.move(temporaryFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the patients of the given snapshot file
+     * @param file The file to read, can not be null
+     * @return The patients of the snapshot
+     * @throws IOException If the file can not be read, or it is not a complete snapshot
+     */
+    static List<Patient> read(File file) throws IOException
+    {
+        CRC32 checksum = new CRC32();
+        try (DataInputStream input = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE), checksum))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException(file.getName() + " is not a patient snapshot");
+            }
+            int size = input.readInt();
+            List<Patient> patients = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                patients.add(WriteAheadLog.readPatient(input));
+            }
+            long expectedChecksum = checksum.getValue();
+            if (input.readLong() != expectedChecksum) {
+                throw new IOException(file.getName() + " does not match its checksum");
+            }
+            return patients;
+        }
+    }
+}
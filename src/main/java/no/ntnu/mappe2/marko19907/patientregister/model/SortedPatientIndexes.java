@@ -0,0 +1,160 @@
+package no.ntnu.mappe2.marko19907.patientregister.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.function.Function;
+
+/**
+ * Class SortedPatientIndexes holds the paging and lookups of the in-memory registers that keep
+ * their patients in sorted indexes, sorted by a field and then by the social security number.
+ * The registers pass the function that returns their index of a field, so that each register
+ * decides how its indexes are built and shared between threads.
+ *
+ * @author Marko
+ * @version 18-10-2026
+ */
+final class SortedPatientIndexes
+{
+    /**
+     * Private constructor, the class only has static methods
+     */
+    private SortedPatientIndexes()
+    {
+    }
+
+    /**
+     * Returns the order of a sorted index of the given field
+     * @param field The field to sort the patients by, can not be null
+     * @return A Comparator that sorts by the given field and then by the social security number
+     */
+    static Comparator<Patient> createComparator(PatientField field)
+    {
+        return Comparator.comparing(field::getValue).thenComparing(Patient::getSocialSecurityNumber);
+    }
+
+    /**
+     * Returns a page of patients sorted by the given field, as described by PatientRegister.getPatientPage()
+     * @param sortedIndexes The function that returns the sorted index of a field, can not be null
+     * @param sortKey The field to sort the patients by, can not be null
+     * @param offset The number of patients to skip, can not be negative
+     * @param limit The maximum number of patients to return, must be positive
+     * @return A List of at most limit patients in the given order
+     * @throws IllegalArgumentException If the sort key is null, the offset is negative or the limit is not positive
+     */
+    static List<Patient> getPatientPage(Function<PatientField, NavigableSet<Patient>> sortedIndexes,
+                                        PatientField sortKey, int offset, int limit)
+    {
+        if (sortKey == null || offset < 0 || limit <= 0) {
+            throw new IllegalArgumentException("The sort key can not be null, the offset can not be negative "
+                    + "and the limit must be positive!");
+        }
+
+        Iterator<Patient> iterator = sortedIndexes.apply(sortKey).iterator();
+        for (int i = 0; i < offset && iterator.hasNext(); i++) {
+            iterator.next();
+        }
+        return SortedPatientIndexes.readPage(iterator, limit);
+    }
+
+    /**
+     * Returns the page of patients that follows the given patient,
+     * as described by PatientRegister.getPatientPageAfter()
+     * @param sortedIndexes The function that returns the sorted index of a field, can not be null
+     * @param sortKey The field to sort the patients by, can not be null
+     * @param lastPatient The last patient of the previous page, or null to return the first page
+     * @param limit The maximum number of patients to return, must be positive
+     * @return A List of at most limit patients that follow the given patient
+     * @throws IllegalArgumentException If the sort key is null or the limit is not positive
+     */
+    static List<Patient> getPatientPageAfter(Function<PatientField, NavigableSet<Patient>> sortedIndexes,
+                                             PatientField sortKey, Patient lastPatient, int limit)
+    {
+        if (sortKey == null || limit <= 0) {
+            throw new IllegalArgumentException("The sort key can not be null and the limit must be positive!");
+        }
+
+        NavigableSet<Patient> index = sortedIndexes.apply(sortKey);
+        if (lastPatient != null) {
+            index = index.tailSet(lastPatient, false);
+        }
+        return SortedPatientIndexes.readPage(index.iterator(), limit);
+    }
+
+    /**
+     * Returns the patients whose given field is equal to the given value, looked up in the sorted index
+     * @param sortedIndexes The function that returns the sorted index of a field, can not be null
+     * @param field The field to compare, can not be null
+     * @param value The value to look for, can not be null
+     * @return A List of the patients with the given value
+     * @throws IllegalArgumentException If the field or the value is null
+     */
+    static List<Patient> findPatients(Function<PatientField, NavigableSet<Patient>> sortedIndexes,
+                                      PatientField field, String value)
+    {
+        if (field == null || value == null) {
+            throw new IllegalArgumentException("The field and the value can not be null!");
+        }
+
+        return SortedPatientIndexes.findPatientsInRange(sortedIndexes, field, value, value + Character.MIN_VALUE);
+    }
+
+    /**
+     * Returns the patients whose given field starts with the given prefix, sorted by that field
+     * @param sortedIndexes The function that returns the sorted index of a field, can not be null
+     * @param field The field to compare, can not be null
+     * @param prefix The prefix to look for, can not be null
+     * @return A List of the patients whose field starts with the given prefix
+     * @throws IllegalArgumentException If the field or the prefix is null
+     */
+    static List<Patient> findPatientsByPrefix(Function<PatientField, NavigableSet<Patient>> sortedIndexes,
+                                              PatientField field, String prefix)
+    {
+        if (field == null || prefix == null) {
+            throw new IllegalArgumentException("The field and the prefix can not be null!");
+        }
+
+        return SortedPatientIndexes.findPatientsInRange(sortedIndexes, field, prefix, prefix + Character.MAX_VALUE);
+    }
+
+    /**
+     * Returns the patients whose given field is in the given range, sorted by that field
+     * @param sortedIndexes The function that returns the sorted index of a field, can not be null
+     * @param field The field to compare, can not be null
+     * @param fromValue The lowest value to include, can not be null
+     * @param toValue The value to stop before, can not be null
+     * @return A List of the patients whose field is at least fromValue and less than toValue
+     * @throws IllegalArgumentException If any of the field and the values is null
+     */
+    static List<Patient> findPatientsInRange(Function<PatientField, NavigableSet<Patient>> sortedIndexes,
+                                             PatientField field, String fromValue, String toValue)
+    {
+        if (field == null || fromValue == null || toValue == null) {
+            throw new IllegalArgumentException("The field and the values can not be null!");
+        }
+
+        List<Patient> foundPatients = new ArrayList<>();
+        if (fromValue.compareTo(toValue) < 0) {
+            foundPatients.addAll(sortedIndexes.apply(field).subSet(
+                    field.createSearchBound(fromValue), true, field.createSearchBound(toValue), false));
+        }
+        return foundPatients;
+    }
+
+    /**
+     * Reads at most the given number of patients from the given iterator
+     * @param iterator The iterator to read from, can not be null
+     * @param limit The maximum number of patients to read
+     * @return A List of the patients read
+     */
+    private static List<Patient> readPage(Iterator<Patient> iterator, int limit)
+    {
+        List<Patient> page = new ArrayList<>();
+        while (iterator.hasNext() && page.size() < limit) {
+            page.add(iterator.next());
+        }
+        return page;
+    }
+}
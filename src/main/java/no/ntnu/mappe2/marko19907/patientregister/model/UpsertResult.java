@@ -0,0 +1,88 @@
+package no.ntnu.mappe2.marko19907.patientregister.model;
+
+/**
+ * Class UpsertResult holds the number of patients that were inserted, updated, left unchanged
+ * and deleted by an upsert into a register
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public final class UpsertResult
+{
+    private final long insertedPatients;
+    private final long updatedPatients;
+    private final long unchangedPatients;
+    private final long deletedPatients;
+
+    /**
+     * Constructor for UpsertResult objects
+     * @param insertedPatients The number of patients that were not in the register and were added
+     * @param updatedPatients The number of patients whose content changed and were replaced
+     * @param unchangedPatients The number of patients whose content did not change
+     * @param deletedPatients The number of patients that were removed from the register
+     */
+    public UpsertResult(long insertedPatients, long updatedPatients, long unchangedPatients, long deletedPatients)
+    {
+        this.insertedPatients = insertedPatients;
+        this.updatedPatients = updatedPatients;
+        this.unchangedPatients = unchangedPatients;
+        this.deletedPatients = deletedPatients;
+    }
+
+    /**
+     * Returns an UpsertResult with the counts of this result and the given result added together
+     * @param other The result to add, can not be null
+     * @return The sum of the two results
+     */
+    public UpsertResult plus(UpsertResult other)
+    {
+        return new UpsertResult(
+                this.insertedPatients + other.insertedPatients,
+                this.updatedPatients + other.updatedPatients,
+                this.unchangedPatients + other.unchangedPatients,
+                this.deletedPatients + other.deletedPatients);
+    }
+
+    /**
+     * Returns the number of patients that were not in the register and were added
+     * @return The number of inserted patients
+     */
+    public long getInsertedPatients()
+    {
+        return this.insertedPatients;
+    }
+
+    /**
+     * Returns the number of patients whose content changed and were replaced
+     * @return The number of updated patients
+     */
+    public long getUpdatedPatients()
+    {
+        return this.updatedPatients;
+    }
+
+    /**
+     * Returns the number of patients whose content did not change and were left as they are
+     * @return The number of unchanged patients
+     */
+    public long getUnchangedPatients()
+    {
+        return this.unchangedPatients;
+    }
+
+    /**
+     * Returns the number of patients that were removed from the register
+     * @return The number of deleted patients
+     */
+    public long getDeletedPatients()
+    {
+        return this.deletedPatients;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Inserted " + this.insertedPatients + ", updated " + this.updatedPatients
+                + ", unchanged " + this.unchangedPatients + " and deleted " + this.deletedPatients + " patients";
+    }
+}
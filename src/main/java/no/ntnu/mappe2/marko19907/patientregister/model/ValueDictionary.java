@@ -0,0 +1,95 @@
+package no.ntnu.mappe2.marko19907.patientregister.model;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Class ValueDictionary canonicalizes Strings that repeat across many patients, such as the names
+ * of the general practitioners and the diagnoses, so that equal values share a single String.
+ * The values are held through weak references, so a value that no patient uses any more is collected.
+ * The dictionary is split into stripes by the hash of the value, so that threads that intern different
+ * values rarely wait for each other. It is safe to use from several threads at once.
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public final class ValueDictionary
+{
+    private static final int NUMBER_OF_STRIPES = 16;
+
+    private final List<Map<String, WeakReference<String>>> stripes;
+    private volatile boolean enabled;
+
+    /**
+     * Constructor for ValueDictionary objects, the dictionary starts empty and enabled
+     */
+    public ValueDictionary()
+    {
+        this.stripes = new ArrayList<>(NUMBER_OF_STRIPES);
+        for (int i = 0; i < NUMBER_OF_STRIPES; i++) {
+            this.stripes.add(new WeakHashMap<>());
+        }
+        this.enabled = true;
+    }
+
+    /**
+     * Returns the String in the dictionary that is equal to the given value, adding the value if there is none.
+     * The value is returned unchanged if the dictionary is disabled
+     * @param value The value to canonicalize, null is returned as it is
+     * @return A String equal to the given value that is shared with the other equal values
+     */
+    public String intern(String value)
+    {
+        if (value == null || value.isEmpty() || !this.enabled) {
+            return value;
+        }
+        Map<String, WeakReference<String>> stripe =
+                this.stripes.get((value.hashCode() & 0x7fffffff) % NUMBER_OF_STRIPES);
+        synchronized (stripe) {
+            WeakReference<String> reference = stripe.get(value);
+            String sharedValue = (reference == null) ? null : reference.get();
+            if (sharedValue == null) {
+                // The map holds its keys weakly, a strong reference to the key as the value would keep it forever
+                stripe.put(value, new WeakReference<>(value));
+                sharedValue = value;
+            }
+            return sharedValue;
+        }
+    }
+
+    /**
+     * Returns the number of values in the dictionary, values that are about to be collected may be included
+     * @return The number of values in the dictionary
+     */
+    public int size()
+    {
+        int size = 0;
+        for (Map<String, WeakReference<String>> stripe : this.stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns true if values are canonicalized
+     * @return True if values are canonicalized, false if they are returned unchanged
+     */
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    /**
+     * Sets whether values are canonicalized, values that were canonicalized before stay shared
+     * @param enabled True to canonicalize values, false to return them unchanged
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+}
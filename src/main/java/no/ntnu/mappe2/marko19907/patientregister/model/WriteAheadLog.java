@@ -0,0 +1,496 @@
+package no.ntnu.mappe2.marko19907.patientregister.model;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+import java.util.zip.CRC32;
+
+/**
+ * Class WriteAheadLog appends the changes of a register to binary log files, called segments,
+ * and replays them after a restart. Each event of the register is a single record
+ * of a length, a CRC32 checksum and the changes, so an event that was only partly written
+ * when the process stopped is left out as a whole.
+ * Appending only copies the record to a buffer. A background thread writes the buffer and forces it to disk,
+ * and the records that are appended while it does are written and forced together the next time,
+ * so one fsync covers the records of every writer that waited for it.
+ * If a batch can not be written or forced, the segment is cut back to the records that were forced before it,
+ * and the log fails: every later append and wait throws, as the log can no longer tell what is on disk.
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+final class WriteAheadLog
+{
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+
+    private final File directory;
+    private final UnaryOperator<FileChannel> channelWrapper;
+    private final ReentrantLock lock;
+    private final Condition dataAvailable;
+    private final Condition synced;
+    private final ByteArrayOutputStream recordBuffer;
+    private final DataOutputStream recordOutput;
+    private final CRC32 checksum;
+    private final Thread syncThread;
+    private ByteArrayOutputStream pending;
+    private ByteArrayOutputStream spare;
+    private FileChannel channel;
+    private long segmentNumber;
+    private long segmentSize;
+    private long appendedPosition;
+    private long durablePosition;
+    private boolean writing;
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * Constructor for WriteAheadLog objects, starts a new segment with the given number
+     * @param directory The directory of the segments, can not be null
+     * @param segmentNumber The number of the first segment to write, greater than the number of any existing segment
+     * @param channelWrapper The function that wraps the channel of each new segment, can not be null
+     * @throws IOException If the segment can not be created
+     */
+    WriteAheadLog(File directory, long segmentNumber, UnaryOperator<FileChannel> channelWrapper) throws IOException
+    {
+        this.directory = directory;
+        this.channelWrapper = channelWrapper;
+        this.lock = new ReentrantLock();
+        this.dataAvailable = this.lock.newCondition();
+        this.synced = this.lock.newCondition();
+        this.recordBuffer = new ByteArrayOutputStream();
+        this.recordOutput = new DataOutputStream(this.recordBuffer);
+        this.checksum = new CRC32();
+        this.pending = new ByteArrayOutputStream();
+        this.spare = new ByteArrayOutputStream();
+        this.channel = this.openSegment(segmentNumber);
+        this.segmentNumber = segmentNumber;
+
+        this.syncThread = new Thread(this::syncLoop, "patient-register-wal");
+        this.syncThread.setDaemon(true);
+        this.syncThread.start();
+    }
+
+    /**
+     * Creates the segment file with the given number
+     * @param number The number of the segment
+     * @return A channel that writes to the new segment
+     * @throws IOException If the segment can not be created
+     */
+    private FileChannel openSegment(long number) throws IOException
+    {
+        return this.channelWrapper.apply(FileChannel.open(WriteAheadLog.getSegmentFile(this.directory, number).toPath(),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+    }
+
+    /**
+     * Appends the changes of the given event as a single record, without waiting for it to be written
+     * @param event The event to append, can not be null
+     * @return The position of the log after the record, to pass to awaitDurable()
+     * @throws UncheckedIOException If writing the log has failed before
+     */
+    long append(PatientRegisterEvent event)
+    {
+        this.lock.lock();
+        try {
+            this.checkFailure();
+            this.recordBuffer.reset();
+            // The old patients are removed first, as the new patients of an update can have their numbers
+            this.recordOutput.writeInt(event.getOldPatients().size() + event.getNewPatients().size());
+            for (Patient oldPatient : event.getOldPatients()) {
+                this.recordOutput.writeByte(REMOVE);
+                this.recordOutput.writeUTF(oldPatient.getSocialSecurityNumber());
+            }
+            for (Patient newPatient : event.getNewPatients()) {
+                this.recordOutput.writeByte(PUT);
+                WriteAheadLog.writePatient(this.recordOutput, newPatient);
+            }
+
+            byte[] record = this.recordBuffer.toByteArray();
+            this.checksum.reset();
+            this.checksum.update(record, 0, record.length);
+            DataOutputStream pendingOutput = new DataOutputStream(this.pending);
+            pendingOutput.writeInt(record.length);
+            pendingOutput.writeInt((int) this.checksum.getValue());
+            pendingOutput.write(record);
+            this.appendedPosition += RECORD_HEADER_SIZE + record.length;
+            this.dataAvailable.signal();
+            return this.appendedPosition;
+        }
+        catch (IOException e) {
+            // Writing to a ByteArrayOutputStream does not throw
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the log has been forced to disk up to the given position
+     * @param position The position returned by append()
+     * @throws UncheckedIOException If writing the log failed
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    void awaitDurable(long position) throws InterruptedException
+    {
+        this.lock.lock();
+        try {
+            while (this.durablePosition < position) {
+                this.checkFailure();
+                this.synced.await();
+            }
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the position of the log up to which the records have been forced to disk
+     * @return The durable position of the log
+     */
+    long getDurablePosition()
+    {
+        this.lock.lock();
+        try {
+            return this.durablePosition;
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if the background thread could not write or force the log, after which it takes no more records
+     * @return True if the log has failed, false otherwise
+     */
+    boolean hasFailed()
+    {
+        this.lock.lock();
+        try {
+            return this.failure != null;
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the position of the log after the last appended record
+     * @return The position of the end of the log
+     */
+    long getAppendedPosition()
+    {
+        this.lock.lock();
+        try {
+            return this.appendedPosition;
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of bytes written to the current segment
+     * @return The size of the current segment in bytes
+     */
+    long getSegmentSize()
+    {
+        this.lock.lock();
+        try {
+            return this.segmentSize;
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Forces the records appended so far to disk and starts a new segment.
+     * No records may be appended while it runs, so that the segments before the new one
+     * hold exactly the changes made before it was called
+     * @return The number of the new segment
+     * @throws IOException If the log can not be written or the new segment can not be created
+     * @throws InterruptedException If the thread is interrupted while waiting for the log to be written
+     */
+    long startNewSegment() throws IOException, InterruptedException
+    {
+        this.lock.lock();
+        try {
+            while (this.durablePosition < this.appendedPosition || this.writing) {
+                this.checkFailure();
+                this.synced.await();
+            }
+            // The new segment is opened first, so that the log can still be written if it can not be created
+            FileChannel newChannel = this.openSegment(this.segmentNumber + 1);
+            try {
+                this.channel.close();
+            }
+            finally {
+                this.channel = newChannel;
+                this.segmentNumber++;
+                this.segmentSize = 0;
+            }
+            return this.segmentNumber;
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the pending records and forces them to disk until the log is closed
+     */
+    private void syncLoop()
+    {
+        while (true) {
+            ByteArrayOutputStream batch;
+            FileChannel batchChannel;
+            long batchStart;
+            this.lock.lock();
+            try {
+                while (this.pending.size() == 0 && !this.closed) {
+                    this.dataAvailable.awaitUninterruptibly();
+                }
+                if (this.pending.size() == 0) {
+                    return;
+                }
+                batch = this.pending;
+                batchChannel = this.channel;
+                batchStart = this.segmentSize;
+                this.pending = this.spare;
+                this.writing = true;
+            }
+            finally {
+                this.lock.unlock();
+            }
+
+            IOException batchFailure = null;
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+                while (buffer.hasRemaining()) {
+                    batchChannel.write(buffer);
+                }
+                batchChannel.force(false);
+            }
+            catch (IOException e) {
+                batchFailure = e;
+                // Cut the records that may not be on disk, so that a restart does not replay changes that failed
+                try {
+                    batchChannel.truncate(batchStart);
+                }
+                catch (IOException truncateFailure) {
+                    batchFailure.addSuppressed(truncateFailure);
+                }
+            }
+
+            this.lock.lock();
+            try {
+                this.writing = false;
+                if (batchFailure != null) {
+                    this.failure = batchFailure;
+                }
+                else {
+                    this.durablePosition += batch.size();
+                    this.segmentSize += batch.size();
+                }
+                batch.reset();
+                this.spare = batch;
+                this.synced.signalAll();
+                if (batchFailure != null) {
+                    return;
+                }
+            }
+            finally {
+                this.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Throws the failure of the background thread, if it has failed
+     * @throws UncheckedIOException If writing the log has failed
+     */
+    private void checkFailure()
+    {
+        if (this.failure != null) {
+            throw new UncheckedIOException("The write-ahead log could not be written", this.failure);
+        }
+    }
+
+    /**
+     * Writes the records that are still pending, forces them to disk and closes the log
+     * @throws IOException If the records can not be written or the segment can not be closed
+     */
+    void close() throws IOException
+    {
+        this.lock.lock();
+        try {
+            this.closed = true;
+            this.dataAvailable.signal();
+        }
+        finally {
+            this.lock.unlock();
+        }
+        try {
+            this.syncThread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.channel.close();
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+
+    /**
+     * Returns the numbers of the segments in the given directory, in ascending order
+     * @param directory The directory of the segments, can not be null
+     * @return The numbers of the segments
+     */
+    static long[] findSegmentNumbers(File directory)
+    {
+        return DurablePatientRegister.findFileNumbers(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Returns the file of the segment with the given number
+     * @param directory The directory of the segments, can not be null
+     * @param number The number of the segment
+     * @return The file of the segment
+     */
+    static File getSegmentFile(File directory, long number)
+    {
+        return new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Applies the records of the given segment to the given patients by social security number.
+     * A record that is cut short or does not match its checksum ends the segment, which is then truncated
+     * in front of it, as that is what a crash in the middle of writing a record leaves behind
+     * @param segment The segment to replay, can not be null
+     * @param patients The patients to apply the changes to, can not be null
+     * @return The number of records that were applied
+     * @throws IOException If the segment can not be read or truncated
+     */
+    static long replay(File segment, Map<String, Patient> patients) throws IOException
+    {
+        long records = 0;
+        long validSize = 0;
+        CRC32 recordChecksum = new CRC32();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)))) {
+            while (true) {
+                byte[] record;
+                int storedChecksum;
+                try {
+                    int length = input.readInt();
+                    storedChecksum = input.readInt();
+                    if (length < 0 || length > segment.length()) {
+                        break;
+                    }
+                    record = new byte[length];
+                    input.readFully(record);
+                }
+                catch (EOFException e) {
+                    break;
+                }
+                recordChecksum.reset();
+                recordChecksum.update(record, 0, record.length);
+                if ((int) recordChecksum.getValue() != storedChecksum) {
+                    break;
+                }
+
+                WriteAheadLog.applyRecord(record, patients);
+                records++;
+                validSize += RECORD_HEADER_SIZE + record.length;
+            }
+        }
+
+        if (validSize < segment.length()) {
+            try (FileChannel truncatedChannel = FileChannel.open(segment.toPath(), StandardOpenOption.WRITE)) {
+                truncatedChannel.truncate(validSize);
+                truncatedChannel.force(true);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Applies the changes of a single record to the given patients by social security number
+     * @param record The changes of the record, can not be null
+     * @param patients The patients to apply the changes to, can not be null
+     * @throws IOException If the record is malformed
+     */
+    private static void applyRecord(byte[] record, Map<String, Patient> patients) throws IOException
+    {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+        int changes = input.readInt();
+        List<Patient> putPatients = new ArrayList<>();
+        for (int i = 0; i < changes; i++) {
+            byte type = input.readByte();
+            if (type == REMOVE) {
+                patients.remove(input.readUTF());
+            }
+            else if (type == PUT) {
+                putPatients.add(WriteAheadLog.readPatient(input));
+            }
+            else {
+                throw new IOException("Unknown change type " + type + " in the write-ahead log");
+            }
+        }
+        putPatients.forEach(patient -> patients.put(patient.getSocialSecurityNumber(), patient));
+    }
+
+    /**
+     * Writes the fields of the given patient
+     * @param output The stream to write to, can not be null
+     * @param patient The patient to write, can not be null
+     * @throws IOException If the patient can not be written
+     */
+    static void writePatient(DataOutputStream output, Patient patient) throws IOException
+    {
+        output.writeUTF(patient.getFirstName());
+        output.writeUTF(patient.getLastName());
+        output.writeUTF(patient.getSocialSecurityNumber());
+        output.writeUTF(patient.getGeneralPractitioner());
+        output.writeUTF(patient.getDiagnosis());
+    }
+
+    /**
+     * Reads a patient written by writePatient()
+     * @param input The stream to read from, can not be null
+     * @return The patient that was read
+     * @throws IOException If the patient can not be read
+     */
+    static Patient readPatient(DataInputStream input) throws IOException
+    {
+        String firstName = input.readUTF();
+        String lastName = input.readUTF();
+        String socialSecurityNumber = input.readUTF();
+        return new Patient.PatientBuilder(firstName, lastName, socialSecurityNumber)
+                .withGeneralPractitioner(input.readUTF())
+                .withDiagnosis(input.readUTF())
+                .build();
+    }
+}
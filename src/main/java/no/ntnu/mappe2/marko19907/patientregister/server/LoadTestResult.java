@@ -0,0 +1,113 @@
+package no.ntnu.mappe2.marko19907.patientregister.server;
+
+import java.util.Arrays;
+
+/**
+ * Class LoadTestResult holds the throughput and the latency percentiles of a load test of the HTTP API
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public final class LoadTestResult
+{
+    private final long requests;
+    private final long errors;
+    private final long durationNanos;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long maxNanos;
+
+    /**
+     * Constructor for LoadTestResult objects
+     * @param latencies The latency of each request in nanoseconds, sorted in place, can not be null
+     * @param errors The number of requests that failed or got an unexpected status code
+     * @param durationNanos The duration of the test in nanoseconds
+     */
+    LoadTestResult(long[] latencies, long errors, long durationNanos)
+    {
+        Arrays.sort(latencies);
+        this.requests = latencies.length;
+        this.errors = errors;
+        this.durationNanos = durationNanos;
+        this.p50Nanos = LoadTestResult.percentile(latencies, 50);
+        this.p99Nanos = LoadTestResult.percentile(latencies, 99);
+        this.maxNanos = (latencies.length == 0) ? 0 : latencies[latencies.length - 1];
+    }
+
+    /**
+     * Returns the given percentile of the given sorted latencies, by the nearest-rank method
+     * @param sortedLatencies The sorted latencies, not null
+     * @param percentile The percentile from 1 to 100
+     * @return The latency of the percentile, 0 if there are no latencies
+     */
+    private static long percentile(long[] sortedLatencies, int percentile)
+    {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length);
+        return sortedLatencies[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * Returns the number of requests that were sent
+     * @return The number of requests
+     */
+    public long getRequests()
+    {
+        return this.requests;
+    }
+
+    /**
+     * Returns the number of requests that failed or got an unexpected status code
+     * @return The number of errors
+     */
+    public long getErrors()
+    {
+        return this.errors;
+    }
+
+    /**
+     * Returns the number of requests per second over the duration of the test
+     * @return The throughput in requests per second
+     */
+    public double getRequestsPerSecond()
+    {
+        return (this.durationNanos == 0) ? 0 : this.requests * 1e9 / this.durationNanos;
+    }
+
+    /**
+     * Returns the median latency of the requests
+     * @return The 50th percentile of the latencies in nanoseconds
+     */
+    public long getP50Nanos()
+    {
+        return this.p50Nanos;
+    }
+
+    /**
+     * Returns the latency that 99 percent of the requests were at or below
+     * @return The 99th percentile of the latencies in nanoseconds
+     */
+    public long getP99Nanos()
+    {
+        return this.p99Nanos;
+    }
+
+    /**
+     * Returns the latency of the slowest request
+     * @return The largest latency in nanoseconds
+     */
+    public long getMaxNanos()
+    {
+        return this.maxNanos;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%d requests in %.1f s, %.0f requests/s, p50 %.2f ms, p99 %.2f ms, max %.2f ms, %d errors",
+                this.requests, this.durationNanos / 1e9, this.getRequestsPerSecond(),
+                this.p50Nanos / 1e6, this.p99Nanos / 1e6, this.maxNanos / 1e6, this.errors);
+    }
+}
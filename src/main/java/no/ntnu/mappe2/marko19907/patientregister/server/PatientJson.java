@@ -0,0 +1,328 @@
+package no.ntnu.mappe2.marko19907.patientregister.server;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class PatientJson converts patients to and from JSON objects with a string member for each field of a patient,
+ * named as the columns of the CSV files. Only flat objects with string or null members and arrays of them are read,
+ * which is all the API of the register needs
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+final class PatientJson
+{
+    /**
+     * Hidden constructor, the class only has static methods
+     */
+    private PatientJson()
+    {
+    }
+
+    /**
+     * Appends the given patient as a JSON object to the given StringBuilder
+     * @param json The StringBuilder to append to, not null
+     * @param patient The patient to append, not null
+     */
+    static void appendPatient(StringBuilder json, Patient patient)
+    {
+        json.append("{\"firstName\":");
+        PatientJson.appendString(json, patient.getFirstName());
+        json.append(",\"lastName\":");
+        PatientJson.appendString(json, patient.getLastName());
+        json.append(",\"generalPractitioner\":");
+        PatientJson.appendString(json, patient.getGeneralPractitioner());
+        json.append(",\"socialSecurityNumber\":");
+        PatientJson.appendString(json, patient.getSocialSecurityNumber());
+        json.append(",\"diagnosis\":");
+        PatientJson.appendString(json, patient.getDiagnosis());
+        json.append('}');
+    }
+
+    /**
+     * Returns the given patients as a JSON array of objects
+     * @param patients The patients to convert, not null
+     * @return The JSON array of the patients as a String
+     */
+    static String toJson(List<Patient> patients)
+    {
+        StringBuilder json = new StringBuilder(patients.size() * 128 + 2).append('[');
+        for (int i = 0; i < patients.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            PatientJson.appendPatient(json, patients.get(i));
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * Appends the given String as a JSON string, or null, to the given StringBuilder
+     * @param json The StringBuilder to append to, not null
+     * @param value The String to append, may be null
+     */
+    static void appendString(StringBuilder json, String value)
+    {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Returns the patient in the given JSON object, members that are not fields of a patient are ignored
+     * @param json The JSON object to read, not null
+     * @return The patient in the object
+     * @throws IllegalArgumentException If the JSON is invalid or the patient is missing a name
+     * or a social security number
+     */
+    static Patient parsePatient(String json)
+    {
+        Parser parser = new Parser(json);
+        Patient patient = parser.readPatient();
+        parser.expectEnd();
+        return patient;
+    }
+
+    /**
+     * Returns the patients in the given JSON array of objects
+     * @param json The JSON array to read, not null
+     * @return A List of the patients in the array
+     * @throws IllegalArgumentException If the JSON is invalid or a patient is missing a name
+     * or a social security number
+     */
+    static List<Patient> parsePatients(String json)
+    {
+        Parser parser = new Parser(json);
+        List<Patient> patients = new ArrayList<>();
+        parser.expect('[');
+        if (!parser.skipIf(']')) {
+            do {
+                patients.add(parser.readPatient());
+            }
+            while (parser.skipIf(','));
+            parser.expect(']');
+        }
+        parser.expectEnd();
+        return patients;
+    }
+
+    /**
+     * A parser of the JSON that is read by PatientJson, that keeps track of its position in the text
+     */
+    private static final class Parser
+    {
+        private final String json;
+        private int position;
+
+        /**
+         * Constructor for Parser objects
+         * @param json The JSON to parse, not null
+         */
+        private Parser(String json)
+        {
+            this.json = json;
+        }
+
+        /**
+         * Reads a JSON object of string members at the position as a patient
+         * @return The patient in the object
+         * @throws IllegalArgumentException If the JSON is invalid or the patient is missing a required field
+         */
+        private Patient readPatient()
+        {
+            Map<String, String> members = new HashMap<>();
+            this.expect('{');
+            if (!this.skipIf('}')) {
+                do {
+                    String name = this.readString();
+                    this.expect(':');
+                    members.put(name, this.readStringOrNull());
+                }
+                while (this.skipIf(','));
+                this.expect('}');
+            }
+
+            // The constructor of the patient rejects missing and blank required fields
+            return new Patient.PatientBuilder(members.get("firstName"), members.get("lastName"),
+                    members.get("socialSecurityNumber"))
+                    .withGeneralPractitioner(members.getOrDefault("generalPractitioner", ""))
+                    .withDiagnosis(members.getOrDefault("diagnosis", ""))
+                    .build();
+        }
+
+        /**
+         * Reads a JSON string or null at the position
+         * @return The String that was read, or null
+         * @throws IllegalArgumentException If there is no string or null at the position
+         */
+        private String readStringOrNull()
+        {
+            this.skipWhitespace();
+            if (this.json.startsWith("null", this.position)) {
+                this.position += 4;
+                return null;
+            }
+            return this.readString();
+        }
+
+        /**
+         * Reads a JSON string at the position
+         * @return The String that was read
+         * @throws IllegalArgumentException If there is no valid string at the position
+         */
+        private String readString()
+        {
+            this.expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                if (this.position >= this.json.length()) {
+                    throw this.createException("Unterminated string");
+                }
+                char c = this.json.charAt(this.position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (this.position >= this.json.length()) {
+                    throw this.createException("Unterminated string");
+                }
+                char escaped = this.json.charAt(this.position++);
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        value.append(escaped);
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        if (this.position + 4 > this.json.length()) {
+                            throw this.createException("Invalid unicode escape");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(
+                                    this.json.substring(this.position, this.position + 4), 16));
+                        }
+                        catch (NumberFormatException e) {
+                            throw this.createException("Invalid unicode escape");
+                        }
+                        this.position += 4;
+                        break;
+                    default:
+                        throw this.createException("Invalid escape");
+                }
+            }
+        }
+
+        /**
+         * Skips the given character, and the whitespace before it, if it is at the position
+         * @param c The character to skip
+         * @return True if the character was skipped
+         */
+        private boolean skipIf(char c)
+        {
+            this.skipWhitespace();
+            if (this.position < this.json.length() && this.json.charAt(this.position) == c) {
+                this.position++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Skips the given character, and the whitespace before it
+         * @param c The character to skip
+         * @throws IllegalArgumentException If the character is not at the position
+         */
+        private void expect(char c)
+        {
+            if (!this.skipIf(c)) {
+                throw this.createException("Expected '" + c + "'");
+            }
+        }
+
+        /**
+         * Checks that only whitespace is left after the position
+         * @throws IllegalArgumentException If anything but whitespace is left
+         */
+        private void expectEnd()
+        {
+            this.skipWhitespace();
+            if (this.position < this.json.length()) {
+                throw this.createException("Unexpected content");
+            }
+        }
+
+        /**
+         * Moves the position past any whitespace
+         */
+        private void skipWhitespace()
+        {
+            while (this.position < this.json.length() && Character.isWhitespace(this.json.charAt(this.position))) {
+                this.position++;
+            }
+        }
+
+        /**
+         * Returns the exception that is thrown when the JSON is invalid
+         * @param problem The problem that was found, not null
+         * @return The exception with the problem and its position
+         */
+        private IllegalArgumentException createException(String problem)
+        {
+            return new IllegalArgumentException("Invalid JSON, " + problem + " at position " + this.position);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package no.ntnu.mappe2.marko19907.patientregister.server;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Class PatientRegisterLoadClient is a load test client of the HTTP API of the register.
+ * A number of threads send requests back to back for a given duration, each over its own keep-alive connection.
+ * Nine in ten requests look a patient up by social security number and one in ten searches by the start
+ * of a last name. The patients to look up are taken from the first page of the register,
+ * so the register should not be empty.
+ * Only reads are sent, so it can be pointed at a register with real data. It is started with:
+ * PatientRegisterLoadClient &lt;base url&gt; [threads] [seconds]
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public class PatientRegisterLoadClient
+{
+    private static final int SAMPLE_SIZE = 1000;
+    private static final int SEARCH_PERCENT = 10;
+    private static final int SEARCH_PREFIX_LENGTH = 3;
+
+    private final URI baseUri;
+    private final boolean secure;
+    private final int port;
+
+    /**
+     * Constructor for PatientRegisterLoadClient objects
+     * @param baseUri The URI the server listens on, for example http://127.0.0.1:8080, without a port
+     *                the default port of the scheme is used, can not be null
+     * @throws IllegalArgumentException If the URI is null, or it is not an http or https URI with a host
+     */
+    public PatientRegisterLoadClient(URI baseUri)
+    {
+        if (baseUri == null) {
+            throw new IllegalArgumentException("The URI can not be null!");
+        }
+        String scheme = (baseUri.getScheme() == null) ? "" : baseUri.getScheme().toLowerCase(Locale.ROOT);
+        if (!(scheme.equals("http") || scheme.equals("https")) || baseUri.getHost() == null) {
+            throw new IllegalArgumentException("The URI must be an http or https URI with a host!");
+        }
+        this.baseUri = baseUri;
+        this.secure = scheme.equals("https");
+        if (baseUri.getPort() != -1) {
+            this.port = baseUri.getPort();
+        }
+        else {
+            this.port = this.secure ? 443 : 80;
+        }
+    }
+
+    /**
+     * Runs a load test against the server given in the arguments and prints the result
+     * @param args The base URL of the server, optionally followed by the number of threads and the seconds to run
+     * @throws IOException If the patients to look up can not be fetched
+     * @throws InterruptedException If the thread is interrupted
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: PatientRegisterLoadClient <base url> [threads] [seconds]");
+            System.exit(2);
+        }
+        int threads = (args.length > 1) ? Integer.parseInt(args[1]) : 32;
+        int seconds = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+
+        PatientRegisterLoadClient loadClient = new PatientRegisterLoadClient(URI.create(args[0]));
+        System.out.println("Warming up");
+        loadClient.run(threads, Duration.ofSeconds(Math.max(1, seconds / 5)));
+        System.out.println(loadClient.run(threads, Duration.ofSeconds(seconds)));
+    }
+
+    /**
+     * Sends requests from the given number of threads for the given duration and measures their latencies
+     * @param threads The number of threads that send requests, must be positive
+     * @param duration How long to send requests for, can not be null
+     * @return The throughput and the latency percentiles of the requests
+     * @throws IllegalArgumentException If the number of threads is not positive or the duration is null
+     * @throws IOException If the patients to look up can not be fetched, or the register is empty
+     * @throws InterruptedException If the thread is interrupted while waiting for the threads
+     */
+    public LoadTestResult run(int threads, Duration duration) throws IOException, InterruptedException
+    {
+        if (threads <= 0 || duration == null) {
+            throw new IllegalArgumentException("The number of threads must be positive and the duration not null!");
+        }
+
+        Connection connection = new Connection();
+        ByteArrayOutputStream sampleBody = new ByteArrayOutputStream();
+        int statusCode;
+        try {
+            statusCode = connection.get("/patients?offset=0&limit=" + SAMPLE_SIZE, sampleBody);
+        }
+        finally {
+            connection.disconnect();
+        }
+        if (statusCode != 200) {
+            throw new IOException("Could not fetch the patients to look up, status " + statusCode);
+        }
+        List<Patient> sample = PatientJson.parsePatients(sampleBody.toString(StandardCharsets.UTF_8));
+        if (sample.isEmpty()) {
+            throw new IOException("The register is empty, there are no patients to look up");
+        }
+        List<String> lookups = new ArrayList<>();
+        List<String> searches = new ArrayList<>();
+        for (Patient patient : sample) {
+            lookups.add("/patients/" + PatientRegisterLoadClient.encode(patient.getSocialSecurityNumber()));
+            String lastName = patient.getLastName();
+            searches.add("/search?limit=20&q=" + PatientRegisterLoadClient.encode(
+                    lastName.substring(0, Math.min(SEARCH_PREFIX_LENGTH, lastName.length()))));
+        }
+
+        long deadline = System.nanoTime() + duration.toNanos();
+        Worker[] workers = new Worker[threads];
+        Thread[] workerThreads = new Thread[threads];
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(lookups, searches, deadline);
+            workerThreads[i] = new Thread(workers[i], "load-client-" + i);
+            workerThreads[i].start();
+        }
+        for (Thread workerThread : workerThreads) {
+            workerThread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        int totalRequests = 0;
+        long errors = 0;
+        for (Worker worker : workers) {
+            totalRequests += worker.requests;
+            errors += worker.errors;
+        }
+        long[] latencies = new long[totalRequests];
+        int position = 0;
+        for (Worker worker : workers) {
+            System.arraycopy(worker.latencies, 0, latencies, position, worker.requests);
+            position += worker.requests;
+        }
+        return new LoadTestResult(latencies, errors, elapsed);
+    }
+
+    /**
+     * Returns the given text encoded to be a part of a URI
+     * @param text The text to encode, not null
+     * @return The encoded text
+     */
+    private static String encode(String text)
+    {
+        return URLEncoder.encode(text, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    /**
+     * Sends requests back to back until the deadline over its own keep-alive connection and records
+     * the latency of each request
+     */
+    private final class Worker implements Runnable
+    {
+        private final List<String> lookups;
+        private final List<String> searches;
+        private final long deadline;
+        private final Connection connection;
+        private long[] latencies;
+        private int requests;
+        private long errors;
+
+        /**
+         * Constructor for Worker objects
+         * @param lookups The paths of the patients to look up, not empty
+         * @param searches The paths of the searches, not empty
+         * @param deadline The System.nanoTime() to stop at
+         */
+        private Worker(List<String> lookups, List<String> searches, long deadline)
+        {
+            this.lookups = lookups;
+            this.searches = searches;
+            this.deadline = deadline;
+            this.connection = new Connection();
+            this.latencies = new long[4096];
+        }
+
+        @Override
+        public void run()
+        {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long now = System.nanoTime();
+            while (now < this.deadline) {
+                List<String> paths = (random.nextInt(100) < SEARCH_PERCENT) ? this.searches : this.lookups;
+                try {
+                    if (this.connection.get(paths.get(random.nextInt(paths.size())), null) != 200) {
+                        this.errors++;
+                    }
+                }
+                catch (IOException | RuntimeException e) {
+                    this.errors++;
+                    this.connection.disconnect();
+                }
+                long end = System.nanoTime();
+                if (this.requests == this.latencies.length) {
+                    this.latencies = Arrays.copyOf(this.latencies, this.latencies.length * 2);
+                }
+                this.latencies[this.requests++] = end - now;
+                now = end;
+            }
+            this.connection.disconnect();
+        }
+    }
+
+    /**
+     * A keep-alive connection to the server. HTTP/1.1 is written and read directly on a socket, as the HttpClient
+     * of the JDK spends more time handing each request between its threads than the server spends handling it
+     */
+    private final class Connection
+    {
+        private final byte[] buffer;
+        private Socket socket;
+        private InputStream input;
+        private OutputStream output;
+
+        /**
+         * Constructor for Connection objects, the socket is opened by the first request
+         */
+        private Connection()
+        {
+            this.buffer = new byte[8192];
+        }
+
+        /**
+         * Sends a GET request for the given path and reads the whole response
+         * @param path The path and query to request, not null
+         * @param body The stream to copy the body of the response to, or null to discard it
+         * @return The status code of the response
+         * @throws IOException If the request fails or the response is not a response with a Content-Length
+         */
+        private int get(String path, OutputStream body) throws IOException
+        {
+            if (this.socket == null) {
+                String host = PatientRegisterLoadClient.this.baseUri.getHost();
+                int port = PatientRegisterLoadClient.this.port;
+                this.socket = PatientRegisterLoadClient.this.secure
+                        ? SSLSocketFactory.getDefault().createSocket(host, port) : new Socket(host, port);
+                this.socket.setTcpNoDelay(true);
+                this.input = new BufferedInputStream(this.socket.getInputStream());
+                this.output = this.socket.getOutputStream();
+            }
+            this.output.write(("GET " + path + " HTTP/1.1\r\nHost: "
+                    + PatientRegisterLoadClient.this.baseUri.getAuthority() + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            this.output.flush();
+
+            String statusLine = this.readLine();
+            if (!statusLine.startsWith("HTTP/1.1 ") || statusLine.length() < 12) {
+                throw new IOException("Invalid status line: " + statusLine);
+            }
+            int statusCode = Integer.parseInt(statusLine.substring(9, 12));
+            long contentLength = -1;
+            boolean close = false;
+            for (String header = this.readLine(); !header.isEmpty(); header = this.readLine()) {
+                String lowerCaseHeader = header.toLowerCase(Locale.ROOT);
+                if (lowerCaseHeader.startsWith("content-length:")) {
+                    contentLength = Long.parseLong(header.substring(15).trim());
+                }
+                else if (lowerCaseHeader.startsWith("connection:") && lowerCaseHeader.contains("close")) {
+                    close = true;
+                }
+            }
+            if (contentLength < 0) {
+                throw new IOException("The response has no Content-Length");
+            }
+
+            while (contentLength > 0) {
+                int read = this.input.read(this.buffer, 0, (int) Math.min(this.buffer.length, contentLength));
+                if (read < 0) {
+                    throw new IOException("The connection closed in the middle of a response");
+                }
+                if (body != null) {
+                    body.write(this.buffer, 0, read);
+                }
+                contentLength -= read;
+            }
+            if (close) {
+                this.disconnect();
+            }
+            return statusCode;
+        }
+
+        /**
+         * Reads a line of the status line or the headers of a response
+         * @return The line without the line break
+         * @throws IOException If the connection closes before the end of the line
+         */
+        private String readLine() throws IOException
+        {
+            StringBuilder line = new StringBuilder();
+            int c = this.input.read();
+            while (c != '\n') {
+                if (c < 0) {
+                    throw new IOException("The connection closed in the middle of a response");
+                }
+                if (c != '\r') {
+                    line.append((char) c);
+                }
+                c = this.input.read();
+            }
+            return line.toString();
+        }
+
+        /**
+         * Closes the connection of the worker, a new one is opened by the next request
+         */
+        private void disconnect()
+        {
+            if (this.socket != null) {
+                try {
+                    this.socket.close();
+                }
+                catch (IOException e) {
+                    // The connection is dropped either way
+                }
+                this.socket = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,495 @@
+package no.ntnu.mappe2.marko19907.patientregister.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import no.ntnu.mappe2.marko19907.patientregister.exception.DuplicateKeyException;
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientField;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegister;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Class PatientRegisterServer serves a PatientRegister as a JSON API over HTTP on the loopback interface,
+ * so that other local tools can read and write the register. The patients are JSON objects with the fields
+ * of the CSV files as members.
+ * <ul>
+ *     <li>GET /patients lists every patient, streamed a page at a time, sorted by social security number</li>
+ *     <li>GET /patients?offset=0&amp;limit=100&amp;sort=lastName returns a page of the patients</li>
+ *     <li>GET, PUT and DELETE /patients/{socialSecurityNumber} read, replace and remove a patient,
+ *     the patient of a PUT must have the social security number of the path</li>
+ *     <li>POST /patients adds a patient</li>
+ *     <li>GET /search?q=nor&amp;limit=20 searches the patients as the search field of the GUI does</li>
+ *     <li>GET /count returns the number of patients</li>
+ * </ul>
+ * The requests are handled on virtual threads where the runtime supports them and on a large thread pool
+ * otherwise. A register that is thread-safe, as told by PatientRegister.isThreadSafe(), is used by the threads
+ * in parallel, the other registers are used by one request at a time. Their operations take microseconds,
+ * so the requests still spend most of their time in parallel, parsing, encoding and doing IO.
+ * The JDK server leaves Nagle's algorithm on unless the system property sun.net.httpserver.nodelay is true,
+ * which adds about 40 ms to every response, so the process that serves the register should set it
+ * before the first server is created, as PatientRegisterCLI does
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public class PatientRegisterServer
+{
+    private static final int FALLBACK_POOL_SIZE = 256;
+    private static final int BACKLOG = 1024;
+    private static final int LISTING_PAGE_SIZE = 1000;
+    private static final int DEFAULT_PAGE_LIMIT = 100;
+    private static final int MAX_PAGE_LIMIT = 10_000;
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final int MAX_BODY_SIZE = 64 * 1024;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final String PATIENTS_PATH = "/patients";
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+
+    private final PatientRegister register;
+    // Null if the register can be shared between threads
+    private final ReentrantLock registerLock;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Constructor for PatientRegisterServer objects, the server is started with start()
+     * @param register The register to serve, can not be null
+     * @param port The port on the loopback interface to listen on, 0 to pick a free port
+     * @throws IllegalArgumentException If the register is null or the port is out of range
+     * @throws IOException If the server can not listen on the port
+     */
+    public PatientRegisterServer(PatientRegister register, int port) throws IOException
+    {
+        if (register == null || port < 0 || port > 0xFFFF) {
+            throw new IllegalArgumentException("The register can not be null and the port must be in range!");
+        }
+        this.register = register;
+        this.registerLock = register.isThreadSafe() ? null : new ReentrantLock();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        this.executor = PatientRegisterServer.createExecutor();
+        this.server.setExecutor(this.executor);
+        this.server.createContext(PATIENTS_PATH, exchange -> this.handle(exchange, this::handlePatients));
+        this.server.createContext("/search", exchange -> this.handle(exchange, this::handleSearch));
+        this.server.createContext("/count", exchange -> this.handle(exchange, this::handleCount));
+    }
+
+    /**
+     * Returns an executor that runs each task on a new virtual thread if the runtime supports them,
+     * or else on a large pool of platform threads
+     * @return The executor to handle the requests on
+     */
+    static ExecutorService createExecutor()
+    {
+        try {
+            // Looked up by reflection, so the server compiles for and runs on runtimes without virtual threads
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            return Executors.newFixedThreadPool(FALLBACK_POOL_SIZE, runnable -> {
+                Thread thread = new Thread(runnable, "patient-register-http-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Starts listening for requests
+     */
+    public void start()
+    {
+        this.server.start();
+    }
+
+    /**
+     * Stops listening for requests and waits a short while for the requests that are being handled
+     */
+    public void stop()
+    {
+        this.server.stop(0);
+        this.executor.shutdown();
+        try {
+            this.executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the port the server listens on
+     * @return The port as an int
+     */
+    public int getPort()
+    {
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * Runs the given operation on the register, holding the lock of the register if it has one
+     * @param operation The operation to run, not null
+     * @param <T> The type of the result of the operation
+     * @return The result of the operation
+     */
+    private <T> T withRegister(Function<PatientRegister, T> operation)
+    {
+        if (this.registerLock == null) {
+            return operation.apply(this.register);
+        }
+        this.registerLock.lock();
+        try {
+            return operation.apply(this.register);
+        }
+        finally {
+            this.registerLock.unlock();
+        }
+    }
+
+    /**
+     * Handles the given exchange with the given handler and turns the exceptions of the handler into
+     * error responses: 400 for invalid requests, 409 for duplicate social security numbers and 500 for the rest
+     * @param exchange The exchange to handle, not null
+     * @param handler The handler of the exchange, not null
+     */
+    private void handle(HttpExchange exchange, HttpHandler handler)
+    {
+        try {
+            handler.handle(exchange);
+        }
+        catch (IllegalArgumentException e) {
+            this.sendError(exchange, 400, e.getMessage());
+        }
+        catch (DuplicateKeyException e) {
+            this.sendError(exchange, 409, "A patient with that social security number already exists");
+        }
+        catch (IOException e) {
+            // The client went away, there is nobody to respond to
+        }
+        catch (RuntimeException e) {
+            this.sendError(exchange, 500, e.toString());
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Handles the requests to /patients and /patients/{socialSecurityNumber}
+     * @param exchange The exchange to handle, not null
+     * @throws IOException If the exchange fails
+     */
+    private void handlePatients(HttpExchange exchange) throws IOException
+    {
+        String path = exchange.getRequestURI().getPath();
+        if (!path.equals(PATIENTS_PATH) && !path.startsWith(PATIENTS_PATH + "/")) {
+            this.sendError(exchange, 404, "Not found");
+            return;
+        }
+        String socialSecurityNumber = (path.length() > PATIENTS_PATH.length() + 1)
+                ? path.substring(PATIENTS_PATH.length() + 1) : null;
+
+        String method = exchange.getRequestMethod();
+        if (socialSecurityNumber == null && method.equals("GET")) {
+            this.listPatients(exchange);
+        }
+        else if (socialSecurityNumber == null && method.equals("POST")) {
+            Patient patient = PatientJson.parsePatient(this.readBody(exchange));
+            this.withRegister(register -> {
+                register.addPatient(patient);
+                return null;
+            });
+            exchange.getResponseHeaders().set("Location", PATIENTS_PATH + "/" + patient.getSocialSecurityNumber());
+            this.sendPatient(exchange, 201, patient);
+        }
+        else if (socialSecurityNumber != null && method.equals("GET")) {
+            this.sendPatient(exchange, 200,
+                    this.withRegister(register -> this.findPatient(register, socialSecurityNumber)));
+        }
+        else if (socialSecurityNumber != null && method.equals("PUT")) {
+            Patient newPatient = PatientJson.parsePatient(this.readBody(exchange));
+            if (!newPatient.getSocialSecurityNumber().equals(socialSecurityNumber)) {
+                throw new IllegalArgumentException("The social security number of the patient must match the path!");
+            }
+            Patient updatedPatient = this.withRegister(register -> {
+                Patient oldPatient = this.findPatient(register, socialSecurityNumber);
+                return (oldPatient != null && register.updatePatient(newPatient, oldPatient)) ? newPatient : null;
+            });
+            this.sendPatient(exchange, 200, updatedPatient);
+        }
+        else if (socialSecurityNumber != null && method.equals("DELETE")) {
+            boolean removed = this.withRegister(register -> {
+                Patient patient = this.findPatient(register, socialSecurityNumber);
+                return patient != null && register.removePatient(patient);
+            });
+            if (removed) {
+                exchange.sendResponseHeaders(204, -1);
+            }
+            else {
+                this.sendError(exchange, 404, "No patient with that social security number");
+            }
+        }
+        else {
+            exchange.getResponseHeaders().set("Allow",
+                    (socialSecurityNumber == null) ? "GET, POST" : "GET, PUT, DELETE");
+            this.sendError(exchange, 405, "Method not allowed");
+        }
+    }
+
+    /**
+     * Returns the patient with the given social security number in the given register
+     * @param register The register to look in, not null
+     * @param socialSecurityNumber The social security number of the patient, not null
+     * @return The patient, or null if there is no patient with the social security number
+     */
+    private Patient findPatient(PatientRegister register, String socialSecurityNumber)
+    {
+        List<Patient> patients = register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, socialSecurityNumber);
+        return patients.isEmpty() ? null : patients.get(0);
+    }
+
+    /**
+     * Responds with a page of the patients if the request has an offset or a limit,
+     * or else with every patient. Every patient is streamed a page at a time, sorted by social security number,
+     * so the register is only held while a page is read and never while the response is written
+     * @param exchange The exchange to respond to, not null
+     * @throws IllegalArgumentException If the offset, the limit or the sort key is invalid
+     * @throws IOException If the exchange fails
+     */
+    private void listPatients(HttpExchange exchange) throws IOException
+    {
+        Map<String, String> parameters = PatientRegisterServer.parseQuery(exchange);
+        if (parameters.containsKey("offset") || parameters.containsKey("limit")) {
+            int offset = PatientRegisterServer.parseInt(parameters, "offset", 0, Integer.MAX_VALUE);
+            int limit = PatientRegisterServer.parseInt(parameters, "limit", DEFAULT_PAGE_LIMIT, MAX_PAGE_LIMIT);
+            PatientField sortKey = PatientRegisterServer.parseField(parameters.getOrDefault("sort",
+                    PatientField.SOCIAL_SECURITY_NUMBER.getAttributeName()));
+            List<Patient> page = this.withRegister(register -> register.getPatientPage(sortKey, offset, limit));
+            this.sendJson(exchange, 200, PatientJson.toJson(page));
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, 0);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(),
+                StandardCharsets.UTF_8), STREAM_BUFFER_SIZE)) {
+            StringBuilder json = new StringBuilder().append('[');
+            Patient lastPatient = null;
+            List<Patient> page;
+            do {
+                Patient pageStart = lastPatient;
+                page = this.withRegister(register -> register.getPatientPageAfter(
+                        PatientField.SOCIAL_SECURITY_NUMBER, pageStart, LISTING_PAGE_SIZE));
+                for (Patient patient : page) {
+                    if (lastPatient != null) {
+                        json.append(',');
+                    }
+                    PatientJson.appendPatient(json, patient);
+                    lastPatient = patient;
+                }
+                writer.append(json);
+                json.setLength(0);
+            }
+            while (page.size() == LISTING_PAGE_SIZE);
+            writer.write(']');
+        }
+    }
+
+    /**
+     * Handles the requests to /search
+     * @param exchange The exchange to handle, not null
+     * @throws IllegalArgumentException If the query is missing or the limit is invalid
+     * @throws IOException If the exchange fails
+     */
+    private void handleSearch(HttpExchange exchange) throws IOException
+    {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            this.sendError(exchange, 405, "Method not allowed");
+            return;
+        }
+
+        Map<String, String> parameters = PatientRegisterServer.parseQuery(exchange);
+        String query = parameters.get("q");
+        if (query == null) {
+            throw new IllegalArgumentException("The search needs a q parameter");
+        }
+        int limit = PatientRegisterServer.parseInt(parameters, "limit", DEFAULT_SEARCH_LIMIT, MAX_PAGE_LIMIT);
+        this.sendJson(exchange, 200, PatientJson.toJson(
+                this.withRegister(register -> register.searchPatients(query, limit))));
+    }
+
+    /**
+     * Handles the requests to /count
+     * @param exchange The exchange to handle, not null
+     * @throws IOException If the exchange fails
+     */
+    private void handleCount(HttpExchange exchange) throws IOException
+    {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            this.sendError(exchange, 405, "Method not allowed");
+            return;
+        }
+
+        this.sendJson(exchange, 200, "{\"count\":" + this.withRegister(PatientRegister::getNumberOfPatients) + "}");
+    }
+
+    /**
+     * Returns the body of the request of the given exchange as a String
+     * @param exchange The exchange to read the body of, not null
+     * @return The body as a String
+     * @throws IllegalArgumentException If the body is larger than the maximum body size
+     * @throws IOException If the body can not be read
+     */
+    private String readBody(HttpExchange exchange) throws IOException
+    {
+        try (InputStream body = exchange.getRequestBody()) {
+            byte[] bytes = body.readNBytes(MAX_BODY_SIZE + 1);
+            if (bytes.length > MAX_BODY_SIZE) {
+                throw new IllegalArgumentException("The body can not be larger than " + MAX_BODY_SIZE + " bytes");
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Returns the parameters in the query of the request of the given exchange
+     * @param exchange The exchange to read the query of, not null
+     * @return A Map from the names to the values of the parameters
+     */
+    private static Map<String, String> parseQuery(HttpExchange exchange)
+    {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int separator = parameter.indexOf('=');
+                if (separator > 0) {
+                    parameters.put(URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8),
+                            URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Returns the value of the given parameter as an int
+     * @param parameters The parameters of the request, not null
+     * @param name The name of the parameter, not null
+     * @param defaultValue The value if the parameter is missing
+     * @param maxValue The largest valid value
+     * @return The value of the parameter
+     * @throws IllegalArgumentException If the value is not a number from 0 to the max value
+     */
+    private static int parseInt(Map<String, String> parameters, String name, int defaultValue, int maxValue)
+    {
+        String value = parameters.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int number = Integer.parseInt(value);
+            if (number >= 0 && number <= maxValue) {
+                return number;
+            }
+        }
+        catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("The " + name + " must be a number from 0 to " + maxValue);
+    }
+
+    /**
+     * Returns the field with the given attribute name
+     * @param attributeName The attribute name of the field, as in the CSV files, not null
+     * @return The field with the attribute name
+     * @throws IllegalArgumentException If no field has the attribute name
+     */
+    private static PatientField parseField(String attributeName)
+    {
+        for (PatientField field : PatientField.values()) {
+            if (field.getAttributeName().equalsIgnoreCase(attributeName)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown field " + attributeName);
+    }
+
+    /**
+     * Responds with the given patient, or with 404 if it is null
+     * @param exchange The exchange to respond to, not null
+     * @param status The status code if the patient is not null
+     * @param patient The patient to respond with, may be null
+     * @throws IOException If the exchange fails
+     */
+    private void sendPatient(HttpExchange exchange, int status, Patient patient) throws IOException
+    {
+        if (patient == null) {
+            this.sendError(exchange, 404, "No patient with that social security number");
+            return;
+        }
+        StringBuilder json = new StringBuilder(128);
+        PatientJson.appendPatient(json, patient);
+        this.sendJson(exchange, status, json.toString());
+    }
+
+    /**
+     * Responds with an error object with the given message, unless a response was already started
+     * @param exchange The exchange to respond to, not null
+     * @param status The status code of the error
+     * @param message The message of the error, may be null
+     */
+    private void sendError(HttpExchange exchange, int status, String message)
+    {
+        if (exchange.getResponseCode() != -1) {
+            return;
+        }
+        StringBuilder json = new StringBuilder("{\"error\":");
+        PatientJson.appendString(json, message);
+        try {
+            this.sendJson(exchange, status, json.append('}').toString());
+        }
+        catch (IOException e) {
+            // The client went away, there is nobody to respond to
+        }
+    }
+
+    /**
+     * Responds with the given JSON
+     * @param exchange The exchange to respond to, not null
+     * @param status The status code of the response
+     * @param json The JSON to respond with, not null
+     * @throws IOException If the exchange fails
+     */
+    private void sendJson(HttpExchange exchange, int status, String json) throws IOException
+    {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(bytes);
+        }
+    }
+}
@@ -6,25 +6,61 @@ import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.CSVRecord;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
- * Class CSVHandler is responsible for reading and writing, to and from CSV files
+ * Class CSVHandler is responsible for reading and writing, to and from CSV files.
+ * Files with a name that ends with ".gz" are read and written as gzip compressed CSV files
  *
  * @author Marko
- * @version 05-05-2021
+ * @version 17-10-2026
  */
 public class CSVHandler
 {
     private static final char DELIMITER = ';';
-    private static final String[] HEADERS = {
+    private static final int IMPORT_QUEUE_CAPACITY = 4;
+    private static final int OUTPUT_BUFFER_SIZE = 1024 * 1024;
+    private static final int COMPRESSION_BUFFER_SIZE = 64 * 1024;
+    private static final String COMPRESSED_FILE_SUFFIX = ".gz";
+    // The number of records written between the checks of whether the progress should be reported
+    private static final int PROGRESS_CHECK_INTERVAL = 1000;
+    // Marks the end of an import on the queue, compared by identity
+    private static final List<Patient> END_OF_IMPORT = new ArrayList<>();
+    static final String[] HEADERS = {
             "firstName",
             "lastName",
             "generalPractitioner",
@@ -32,11 +68,49 @@ public class CSVHandler
             "diagnosis"
     };
 
+    private int compressionLevel;
+
     /**
      * Constructor for CSVHandler objects
      */
     public CSVHandler()
     {
+        this.compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    }
+
+    /**
+     * Returns the compression level of the compressed files that are written
+     * @return The compression level, from 0 to 9 or -1 for the default level of the compressor
+     */
+    public int getCompressionLevel()
+    {
+        return this.compressionLevel;
+    }
+
+    /**
+     * Sets the compression level of the compressed files that are written.
+     * Lower levels are faster, higher levels make smaller files
+     * @param compressionLevel The compression level, from 0 (no compression) to 9 (best compression),
+     *                         or -1 for the default level of the compressor
+     * @throws IllegalArgumentException If the compression level is out of range
+     */
+    public void setCompressionLevel(int compressionLevel)
+    {
+        if (compressionLevel != Deflater.DEFAULT_COMPRESSION
+                && (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("The compression level must be from 0 to 9, or -1 for the default!");
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Returns true if the given file is read and written as a compressed CSV file
+     * @param file The file to check, not null
+     * @return True if the name of the file ends with ".gz", false otherwise
+     */
+    public static boolean isCompressed(File file)
+    {
+        return file.getName().toLowerCase(Locale.ROOT).endsWith(COMPRESSED_FILE_SUFFIX);
     }
 
     /**
@@ -50,37 +124,315 @@ public class CSVHandler
         List<Patient> patientList = new ArrayList<>();
 
         if (fileToRead != null) {
-            try (Reader reader = Files.newBufferedReader(Paths.get(fileToRead.getAbsolutePath()))) {
+            try (Reader reader = this.openReader(fileToRead)) {
                 CSVParser records = this.getCSVFormat().withFirstRecordAsHeader().parse(reader);
 
                 for (CSVRecord csvRecord : records) {
-                    String firstName = csvRecord.get(HEADERS[0]);
-                    String lastName = csvRecord.get(HEADERS[1]);
-                    String generalPractitioner = csvRecord.get(HEADERS[2]);
-                    String socialSecurityNumber = csvRecord.get(HEADERS[3]);
-                    String diagnosis = "";
-                    if (csvRecord.isMapped(HEADERS[4])) {
-                        diagnosis = csvRecord.get(HEADERS[4]);
-                    }
-
-                    patientList.add(new Patient.PatientBuilder(firstName, lastName, socialSecurityNumber)
-                            .withGeneralPractitioner(generalPractitioner)
-                            .withDiagnosis(diagnosis)
-                            .build());
+                    patientList.add(this.parsePatient(csvRecord));
                 }
 
                 records.close();
             }
             catch (IllegalArgumentException e) {
-                throw new IllegalArgumentException("The CSV header is in an unknown format, "
-                        + "expected [" + HEADERS[0] + "; " + HEADERS[1] + "; "
-                        + HEADERS[2] + "; " + HEADERS[3] + "; " + HEADERS[4]+ "]");
+                throw this.createHeaderException();
             }
         }
 
         return patientList;
     }
 
+    /**
+     * Returns a Stream of the patients in the given CSV file, that reads the file as the Stream is consumed,
+     * so the patients do not have to be in memory at once. The Stream must be closed to close the file.
+     * An IO error while the Stream is consumed is thrown as an UncheckedIOException
+     * @param fileToRead The file to read from, can not be null
+     * @return The Stream of the patients in the file, in the order of the file
+     * @throws IllegalArgumentException If the file is null or the CSV header of the file is invalid,
+     * also thrown while the Stream is consumed if a record does not have the expected columns
+     * @throws IOException If the file can not be opened
+     */
+    public Stream<Patient> streamPatients(File fileToRead) throws IOException
+    {
+        if (fileToRead == null) {
+            throw new IllegalArgumentException("The file can not be null!");
+        }
+
+        Reader reader = this.openReader(fileToRead);
+        CSVParser records;
+        try {
+            records = this.getCSVFormat().withFirstRecordAsHeader().parse(reader);
+        }
+        catch (IllegalArgumentException e) {
+            reader.close();
+            throw this.createHeaderException();
+        }
+        catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+
+        Iterator<CSVRecord> recordIterator = records.iterator();
+        Iterator<Patient> patientIterator = new Iterator<>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                try {
+                    return recordIterator.hasNext();
+                }
+                catch (IllegalStateException e) {
+                    // The parser wraps the IO errors of its iterator
+                    if (e.getCause() instanceof IOException) {
+                        throw new UncheckedIOException((IOException) e.getCause());
+                    }
+                    throw e;
+                }
+            }
+
+            @Override
+            public Patient next()
+            {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    return CSVHandler.this.parsePatient(recordIterator.next());
+                }
+                catch (IllegalArgumentException e) {
+                    throw CSVHandler.this.createHeaderException();
+                }
+            }
+        };
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(patientIterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        records.close();
+                    }
+                    catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * Imports the patients from a given CSV file without reading the whole file into memory.
+     * The file is parsed on a separate thread and handed over in batches through a bounded queue,
+     * so that parsing the next batches overlaps with the given consumer handling the previous ones
+     * and at most a few batches of patients are held in memory at a time.
+     * The consumer is called on the calling thread, one batch at a time and in the order of the file.
+     * The batches that were handed to the consumer before an error are not undone.
+     * @param fileToRead The file to read from, can not be null
+     * @param batchSize The number of patients in each batch, must be positive
+     * @param batchConsumer The consumer that handles each batch of patients, for example a register, not null
+     * @return The number of patients that were imported
+     * @throws IllegalArgumentException If any of the arguments is invalid or the CSV header of the file is invalid
+     * @throws IOException If an IO error is encountered
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the next batch
+     */
+    public long importPatients(File fileToRead, int batchSize, Consumer<List<Patient>> batchConsumer)
+            throws IOException, InterruptedException
+    {
+        return this.importPatients(fileToRead, batchSize, batchConsumer, progress -> { });
+    }
+
+    /**
+     * Imports the patients from a given CSV file without reading the whole file into memory,
+     * as importPatients(File, int, Consumer) does, and reports the progress to the given listener
+     * after the batches are handled. The progress is measured in bytes of the file, compressed or not.
+     * If the listener stops the import, the batch that was being handled is done first,
+     * so a consumer that handles each batch in a transaction is never left with part of a batch.
+     * @param fileToRead The file to read from, can not be null
+     * @param batchSize The number of patients in each batch, must be positive
+     * @param batchConsumer The consumer that handles each batch of patients, for example a register, not null
+     * @param progressListener The listener to report the progress to, can not be null
+     * @return The number of patients that were imported
+     * @throws IllegalArgumentException If any of the arguments is invalid or the CSV header of the file is invalid
+     * @throws IOException If an IO error is encountered
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the next batch
+     * @throws java.util.concurrent.CancellationException If the listener stopped the import
+     */
+    public long importPatients(File fileToRead, int batchSize, Consumer<List<Patient>> batchConsumer,
+                               ProgressListener progressListener)
+            throws IOException, InterruptedException
+    {
+        if (fileToRead == null || batchSize <= 0 || batchConsumer == null || progressListener == null) {
+            throw new IllegalArgumentException("The file, the consumer and the listener can not be null "
+                    + "and the batch size must be positive!");
+        }
+
+        ProgressTracker tracker = new ProgressTracker(progressListener, fileToRead.length(), -1);
+        BlockingQueue<List<Patient>> queue = new ArrayBlockingQueue<>(IMPORT_QUEUE_CAPACITY);
+        FutureTask<Void> parser = new FutureTask<>(() -> {
+            this.parseBatches(fileToRead, batchSize, queue, tracker);
+            return null;
+        });
+        Thread parserThread = new Thread(parser, "csv-import-parser");
+        parserThread.setDaemon(true);
+        parserThread.start();
+
+        long numberOfPatients = 0;
+        try {
+            List<Patient> batch = queue.take();
+            while (batch != END_OF_IMPORT) {
+                batchConsumer.accept(batch);
+                numberOfPatients += batch.size();
+                tracker.report(numberOfPatients);
+                batch = queue.take();
+            }
+            parser.get();
+            tracker.reportDone(numberOfPatients);
+        }
+        catch (ExecutionException e) {
+            throw CSVHandler.rethrowCause(e);
+        }
+        finally {
+            // Stops the parser if the consumer failed, the import was stopped or the calling thread was interrupted
+            parser.cancel(true);
+        }
+
+        return numberOfPatients;
+    }
+
+    /**
+     * Parses the given CSV file and puts the patients on the given queue in batches,
+     * followed by END_OF_IMPORT once the file is parsed or parsing failed
+     * @param fileToRead The file to read from, not null
+     * @param batchSize The number of patients in each batch, must be positive
+     * @param queue The queue to put the batches on, not null
+     * @param tracker The tracker that counts the bytes that are read, not null
+     * @throws IllegalArgumentException If the CSV header of the given file is invalid
+     * @throws IOException If an IO error is encountered
+     * @throws InterruptedException If the import is stopped while waiting for room on the queue
+     */
+    private void parseBatches(File fileToRead, int batchSize, BlockingQueue<List<Patient>> queue,
+                              ProgressTracker tracker)
+            throws IOException, InterruptedException
+    {
+        try (Reader reader = this.openReader(fileToRead, tracker::countBytes);
+             CSVParser records = this.getCSVFormat().withFirstRecordAsHeader().parse(reader)) {
+            List<Patient> batch = new ArrayList<>(batchSize);
+            for (CSVRecord csvRecord : records) {
+                batch.add(this.parsePatient(csvRecord));
+                if (batch.size() == batchSize) {
+                    queue.put(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                queue.put(batch);
+            }
+            queue.put(END_OF_IMPORT);
+        }
+        catch (IllegalArgumentException e) {
+            queue.put(END_OF_IMPORT);
+            throw this.createHeaderException();
+        }
+        catch (IOException | RuntimeException e) {
+            queue.put(END_OF_IMPORT);
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a buffered UTF-8 Reader of the given file, that decompresses the file if it is compressed
+     * @param fileToRead The file to read from, not null
+     * @return The Reader of the file
+     * @throws IOException If the file can not be opened or its gzip header is invalid
+     */
+    Reader openReader(File fileToRead) throws IOException
+    {
+        return this.openReader(fileToRead, UnaryOperator.identity());
+    }
+
+    /**
+     * Opens a buffered UTF-8 Reader of the given file, that decompresses the file if it is compressed,
+     * reading the bytes of the file through the stream returned by the given wrapper
+     * @param fileToRead The file to read from, not null
+     * @param streamWrapper The function that wraps the InputStream of the file, for example to count its bytes
+     * @return The Reader of the file
+     * @throws IOException If the file can not be opened or its gzip header is invalid
+     */
+    Reader openReader(File fileToRead, UnaryOperator<InputStream> streamWrapper) throws IOException
+    {
+        Path path = Paths.get(fileToRead.getAbsolutePath());
+        InputStream fileStream = streamWrapper.apply(Files.newInputStream(path));
+        if (!CSVHandler.isCompressed(fileToRead)) {
+            // Reports malformed input, as Files.newBufferedReader does
+            return new BufferedReader(new InputStreamReader(fileStream, StandardCharsets.UTF_8.newDecoder()));
+        }
+
+        GZIPInputStream inputStream;
+        try {
+            inputStream = new GZIPInputStream(fileStream, COMPRESSION_BUFFER_SIZE);
+        }
+        catch (IOException | RuntimeException e) {
+            fileStream.close();
+            throw e;
+        }
+        try {
+            return new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8),
+                    COMPRESSION_BUFFER_SIZE);
+        }
+        catch (RuntimeException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Throws the cause of the given exception from a parsing task, IOExceptions and unchecked exceptions
+     * are thrown as they are and any other cause is wrapped in an IOException
+     * @param e The exception to throw the cause of, not null
+     * @return Never returns, declared so that callers can write "throw rethrowCause(e)"
+     * @throws IOException If the cause is not an unchecked exception
+     */
+    static IOException rethrowCause(ExecutionException e) throws IOException
+    {
+        if (e.getCause() instanceof IOException) {
+            throw (IOException) e.getCause();
+        }
+        if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+        }
+        throw new IOException(e.getCause());
+    }
+
+    /**
+     * Returns a patient built from the given CSV record
+     * @param csvRecord The record to build the patient from, not null
+     * @return The patient in the given record
+     * @throws IllegalArgumentException If the record does not have the expected columns
+     */
+    Patient parsePatient(CSVRecord csvRecord)
+    {
+        String firstName = csvRecord.get(HEADERS[0]);
+        String lastName = csvRecord.get(HEADERS[1]);
+        String generalPractitioner = csvRecord.get(HEADERS[2]);
+        String socialSecurityNumber = csvRecord.get(HEADERS[3]);
+        String diagnosis = "";
+        if (csvRecord.isMapped(HEADERS[4])) {
+            diagnosis = csvRecord.get(HEADERS[4]);
+        }
+
+        return new Patient.PatientBuilder(firstName, lastName, socialSecurityNumber)
+                .withGeneralPractitioner(generalPractitioner)
+                .withDiagnosis(diagnosis)
+                .build();
+    }
+
+    /**
+     * Returns the exception that is thrown when the CSV header of a file is invalid
+     * @return The exception that describes the expected CSV header
+     */
+    IllegalArgumentException createHeaderException()
+    {
+        return new IllegalArgumentException("The CSV header is in an unknown format, "
+                + "expected [" + HEADERS[0] + "; " + HEADERS[1] + "; "
+                + HEADERS[2] + "; " + HEADERS[3] + "; " + HEADERS[4]+ "]");
+    }
+
     /**
      * Writes the given List to the given CSV file
      * @param fileToWrite The file to write to, not null
@@ -90,10 +442,55 @@ public class CSVHandler
     public void writePatientList(File fileToWrite, List<Patient> patientList) throws IOException
     {
         if (fileToWrite != null && patientList != null && !patientList.isEmpty()) {
-            try (BufferedWriter fileWriter = Files.newBufferedWriter(Paths.get(fileToWrite.getAbsolutePath()))) {
-                CSVPrinter csvPrinter = new CSVPrinter(fileWriter, this.getCSVFormat());
+            this.writePatients(fileToWrite, patientList.stream());
+        }
+    }
 
-                for (Patient patient : patientList) {
+    /**
+     * Writes the patients of the given Stream to the given CSV file as they are read from the Stream,
+     * so the patients do not have to be in memory at once. The file is written through a large buffer.
+     * A compressed file is compressed on a separate thread, so that compressing overlaps with encoding the records
+     * @param fileToWrite The file to write to, can not be null
+     * @param patients The patients to write to the file, can not be null
+     * @return The number of patients that were written
+     * @throws IllegalArgumentException If any of the arguments is null
+     * @throws IOException If an IO error is encountered
+     */
+    public long writePatients(File fileToWrite, Stream<Patient> patients) throws IOException
+    {
+        return this.writePatients(fileToWrite, patients, -1, progress -> { });
+    }
+
+    /**
+     * Writes the patients of the given Stream to the given CSV file as writePatients(File, Stream) does,
+     * and reports the progress to the given listener. The progress is measured in records,
+     * against the given number of patients, and the bytes are counted as they are written to the file.
+     * If the listener stops the export, the file that was partly written is deleted
+     * @param fileToWrite The file to write to, can not be null
+     * @param patients The patients to write to the file, can not be null
+     * @param numberOfPatients The number of patients in the Stream, or -1 if it is not known
+     * @param progressListener The listener to report the progress to, can not be null
+     * @return The number of patients that were written
+     * @throws IllegalArgumentException If any of the arguments is null
+     * @throws IOException If an IO error is encountered
+     * @throws java.util.concurrent.CancellationException If the listener stopped the export
+     */
+    public long writePatients(File fileToWrite, Stream<Patient> patients, long numberOfPatients,
+                              ProgressListener progressListener) throws IOException
+    {
+        if (fileToWrite == null || patients == null || progressListener == null) {
+            throw new IllegalArgumentException("The file, the patients and the listener can not be null!");
+        }
+
+        ProgressTracker tracker = new ProgressTracker(progressListener, -1, numberOfPatients);
+        long patientsWritten = 0;
+        try {
+            try (Writer fileWriter = new BufferedWriter(new OutputStreamWriter(
+                    this.openOutputStream(fileToWrite, tracker), StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE);
+                 CSVPrinter csvPrinter = new CSVPrinter(fileWriter, this.getCSVFormat())) {
+                Iterator<Patient> iterator = patients.iterator();
+                while (iterator.hasNext()) {
+                    Patient patient = iterator.next();
                     csvPrinter.printRecord(
                             patient.getFirstName(),
                             patient.getLastName(),
@@ -101,19 +498,90 @@ public class CSVHandler
                             patient.getSocialSecurityNumber(),
                             patient.getDiagnosis()
                     );
+                    patientsWritten++;
+                    if (patientsWritten % PROGRESS_CHECK_INTERVAL == 0) {
+                        tracker.report(patientsWritten);
+                    }
+                }
+            }
+            tracker.reportDone(patientsWritten);
+        }
+        catch (CancellationException e) {
+            Files.deleteIfExists(fileToWrite.toPath());
+            throw e;
+        }
+        return patientsWritten;
+    }
+
+    /**
+     * Opens an OutputStream to the given file, that compresses the bytes on a separate thread
+     * with the compression level of the handler if the file is compressed
+     * @param fileToWrite The file to write to, not null
+     * @param tracker The tracker that counts the bytes that are written to the file, not null
+     * @return The OutputStream to the file
+     * @throws IOException If the file can not be opened
+     */
+    private OutputStream openOutputStream(File fileToWrite, ProgressTracker tracker) throws IOException
+    {
+        Path path = Paths.get(fileToWrite.getAbsolutePath());
+        OutputStream fileStream = tracker.countBytes(Files.newOutputStream(path));
+        if (!CSVHandler.isCompressed(fileToWrite)) {
+            return fileStream;
+        }
+
+        int level = this.compressionLevel;
+        try {
+            OutputStream compressedStream = new GZIPOutputStream(fileStream, COMPRESSION_BUFFER_SIZE)
+            {
+                {
+                    this.def.setLevel(level);
                 }
+            };
+            return new ThreadedOutputStream(compressedStream, "csv-export-compressor");
+        }
+        catch (IOException | RuntimeException e) {
+            fileStream.close();
+            throw e;
+        }
+    }
 
-                csvPrinter.flush();
-                csvPrinter.close();
+    /**
+     * Returns the CSVFormat for the records of a CSV file without its header line,
+     * that maps the columns of the records to the names in the given header line
+     * @param headerLine The header line of the file, not null
+     * @return The CSVFormat for the records of the file
+     * @throws IllegalArgumentException If the header line lacks a column that is needed for a patient
+     * @throws IOException If the header line can not be parsed
+     */
+    CSVFormat getRecordFormat(String headerLine) throws IOException
+    {
+        List<String> headers = new ArrayList<>();
+        try (CSVParser parser = CSVFormat.DEFAULT.withDelimiter(DELIMITER).parse(new StringReader(headerLine))) {
+            for (CSVRecord csvRecord : parser) {
+                csvRecord.forEach(headers::add);
             }
         }
+
+        // The diagnosis is the only optional column
+        for (int i = 0; i < HEADERS.length - 1; i++) {
+            String header = HEADERS[i];
+            if (headers.stream().noneMatch(name -> name.equalsIgnoreCase(header))) {
+                throw this.createHeaderException();
+            }
+        }
+
+        return CSVFormat
+                .DEFAULT
+                .withHeader(headers.toArray(new String[0]))
+                .withIgnoreHeaderCase()
+                .withDelimiter(DELIMITER);
     }
 
     /**
      * Returns the CSVFormat for the CSV files
      * @return The CSVFormat for the CSV files
      */
-    private CSVFormat getCSVFormat()
+    CSVFormat getCSVFormat()
     {
         return CSVFormat
                 .DEFAULT
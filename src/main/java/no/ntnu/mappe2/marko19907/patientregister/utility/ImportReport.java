@@ -0,0 +1,99 @@
+package no.ntnu.mappe2.marko19907.patientregister.utility;
+
+import java.io.File;
+
+/**
+ * Class ImportReport holds the outcome of an import by the PatientImporter.
+ * The counts include the records of earlier runs of a resumed import
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public final class ImportReport
+{
+    private final long importedPatients;
+    private final long invalidRecords;
+    private final long duplicateRecords;
+    private final long resumedAfterRecord;
+    private final File errorReportFile;
+
+    /**
+     * Constructor for ImportReport objects
+     * @param importedPatients The number of patients that were added to the register
+     * @param invalidRecords The number of records that were skipped because they are invalid
+     * @param duplicateRecords The number of records that were skipped because of a duplicate social security number
+     * @param resumedAfterRecord The number of records that were imported by earlier runs, 0 if the import was not resumed
+     * @param errorReportFile The file the skipped records were reported to, not null
+     */
+    ImportReport(long importedPatients, long invalidRecords, long duplicateRecords, long resumedAfterRecord,
+                 File errorReportFile)
+    {
+        this.importedPatients = importedPatients;
+        this.invalidRecords = invalidRecords;
+        this.duplicateRecords = duplicateRecords;
+        this.resumedAfterRecord = resumedAfterRecord;
+        this.errorReportFile = errorReportFile;
+    }
+
+    /**
+     * Returns the number of patients that were added to the register
+     * @return The number of patients that were added to the register
+     */
+    public long getImportedPatients()
+    {
+        return this.importedPatients;
+    }
+
+    /**
+     * Returns the number of records that were skipped because they are invalid
+     * @return The number of invalid records
+     */
+    public long getInvalidRecords()
+    {
+        return this.invalidRecords;
+    }
+
+    /**
+     * Returns the number of records that were skipped because their social security number
+     * is in the register or earlier in the file
+     * @return The number of duplicate records
+     */
+    public long getDuplicateRecords()
+    {
+        return this.duplicateRecords;
+    }
+
+    /**
+     * Returns the number of records that were skipped for any reason
+     * @return The number of skipped records
+     */
+    public long getSkippedRecords()
+    {
+        return this.invalidRecords + this.duplicateRecords;
+    }
+
+    /**
+     * Returns the number of records that were already imported by earlier runs of a resumed import
+     * @return The record the import was resumed after, 0 if the import was not resumed
+     */
+    public long getResumedAfterRecord()
+    {
+        return this.resumedAfterRecord;
+    }
+
+    /**
+     * Returns the file the skipped records were reported to
+     * @return The error report file
+     */
+    public File getErrorReportFile()
+    {
+        return this.errorReportFile;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Imported " + this.importedPatients + " patients, skipped " + this.invalidRecords
+                + " invalid and " + this.duplicateRecords + " duplicate records";
+    }
+}
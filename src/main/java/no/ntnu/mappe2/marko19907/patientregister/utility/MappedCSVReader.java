@@ -0,0 +1,169 @@
+package no.ntnu.mappe2.marko19907.patientregister.utility;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Class MappedCSVReader is responsible for reading the patient CSV files through a memory-mapped buffer.
+ * The records are parsed directly from the mapped bytes by a PatientRecordParser, rather than through
+ * the generic reader and parser of commons-csv. It reads the files that the CSVHandler writes
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public class MappedCSVReader
+{
+    private static final long DEFAULT_MAPPING_WINDOW_SIZE = 256L * 1024 * 1024;
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final byte QUOTE = '"';
+    private static final byte LINE_FEED = '\n';
+
+    private final CSVHandler csvHandler;
+    private final long mappingWindowSize;
+
+    /**
+     * Constructor for MappedCSVReader objects
+     */
+    public MappedCSVReader()
+    {
+        this(DEFAULT_MAPPING_WINDOW_SIZE);
+    }
+
+    /**
+     * Constructor for MappedCSVReader objects with a given mapping window size
+     * @param mappingWindowSize The number of bytes of the file that are mapped at a time, must be positive
+     *                          and can not be more than Integer.MAX_VALUE
+     * @throws IllegalArgumentException If the mapping window size is out of range
+     */
+    public MappedCSVReader(long mappingWindowSize)
+    {
+        if (mappingWindowSize <= 0 || mappingWindowSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The mapping window size must be positive "
+                    + "and can not be more than Integer.MAX_VALUE!");
+        }
+        this.csvHandler = new CSVHandler();
+        this.mappingWindowSize = mappingWindowSize;
+    }
+
+    /**
+     * Returns the patient List from a given CSV file
+     * @param fileToRead The file to read from, can not be null
+     * @return The patients in the given file, in the order of the file
+     * @throws IllegalArgumentException If the file is null or compressed, or the CSV header of the file is invalid
+     * @throws IOException If an IO error is encountered
+     */
+    public List<Patient> readPatientList(File fileToRead) throws IOException
+    {
+        List<Patient> patientList = new ArrayList<>();
+        this.readPatients(fileToRead, DEFAULT_BATCH_SIZE, patientList::addAll);
+        return patientList;
+    }
+
+    /**
+     * Reads the patients from a given CSV file and hands them to the given consumer in batches,
+     * in the order of the file. The file is mapped a window at a time,
+     * so files larger than the address space of a single mapping can be read
+     * @param fileToRead The file to read from, can not be null
+     * @param batchSize The number of patients in each batch, must be positive
+     * @param batchConsumer The consumer that handles each batch of patients, can not be null
+     * @return The number of patients that were read
+     * @throws IllegalArgumentException If any of the arguments is invalid, the file is compressed
+     *                                  or the CSV header of the file is invalid
+     * @throws IOException If an IO error is encountered
+     */
+    public long readPatients(File fileToRead, int batchSize, Consumer<List<Patient>> batchConsumer)
+            throws IOException
+    {
+        if (fileToRead == null || batchSize <= 0 || batchConsumer == null) {
+            throw new IllegalArgumentException("The file and the consumer can not be null "
+                    + "and the batch size must be positive!");
+        }
+        if (CSVHandler.isCompressed(fileToRead)) {
+            throw new IllegalArgumentException("A compressed file can not be read from its bytes, "
+                    + "read it with the CSVHandler instead!");
+        }
+
+        long numberOfPatients = 0;
+        try (FileChannel channel = FileChannel.open(fileToRead.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(this.mappingWindowSize, fileSize));
+            int headerEnd = this.findHeaderEnd(buffer);
+            if (headerEnd == buffer.limit() && headerEnd < fileSize) {
+                throw new IOException("The header is larger than the mapping window of "
+                        + this.mappingWindowSize + " bytes");
+            }
+
+            if (headerEnd > 0) {
+                byte[] headerBytes = new byte[headerEnd];
+                buffer.get(headerBytes);
+                PatientRecordParser parser = new PatientRecordParser(this.csvHandler, this.csvHandler
+                        .getRecordFormat(new String(headerBytes, StandardCharsets.UTF_8)).getHeader());
+
+                long windowStart = 0;
+                int position = headerEnd;
+                boolean endOfInput = buffer.limit() == fileSize;
+                boolean done = false;
+                while (!done) {
+                    List<Patient> batch = new ArrayList<>(batchSize);
+                    int nextPosition = parser.parseRecords(buffer, position, buffer.limit(), endOfInput,
+                            batch, batchSize);
+                    if (!batch.isEmpty()) {
+                        batchConsumer.accept(batch);
+                        numberOfPatients += batch.size();
+                    }
+
+                    if (nextPosition < buffer.limit() && nextPosition > position) {
+                        position = nextPosition;
+                    }
+                    else if (endOfInput) {
+                        done = true;
+                    }
+                    else if (nextPosition == 0) {
+                        throw new IOException("A record is larger than the mapping window of "
+                                + this.mappingWindowSize + " bytes");
+                    }
+                    else {
+                        // Map the next window from the start of the first record that was not parsed
+                        windowStart += nextPosition;
+                        buffer = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                                Math.min(this.mappingWindowSize, fileSize - windowStart));
+                        position = 0;
+                        endOfInput = windowStart + buffer.limit() == fileSize;
+                    }
+                }
+            }
+        }
+        return numberOfPatients;
+    }
+
+    /**
+     * Returns the position after the header line of the file
+     * @param buffer The buffer with the start of the file, not null
+     * @return The position after the first newline outside of quotes, or the limit of the buffer if there is none
+     */
+    private int findHeaderEnd(MappedByteBuffer buffer)
+    {
+        boolean quoted = false;
+        int headerEnd = buffer.limit();
+        for (int i = 0; i < buffer.limit() && headerEnd == buffer.limit(); i++) {
+            byte value = buffer.get(i);
+            if (value == QUOTE) {
+                quoted = !quoted;
+            }
+            else if (value == LINE_FEED && !quoted) {
+                headerEnd = i + 1;
+            }
+        }
+        return headerEnd;
+    }
+}
@@ -4,6 +4,7 @@ import javafx.scene.Node;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.MenuBar;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
 import javafx.scene.control.ToolBar;
@@ -110,6 +111,15 @@ public class NodeFactory
         return new VBox();
     }
 
+    /**
+     * Returns a new ProgressBar
+     * @return A new ProgressBar
+     */
+    public Node createProgressBar()
+    {
+        return new ProgressBar();
+    }
+
     /**
      * Returns a new HBox
      * @return A new HBox
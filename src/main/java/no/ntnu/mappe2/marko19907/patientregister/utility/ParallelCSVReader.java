@@ -0,0 +1,438 @@
+package no.ntnu.mappe2.marko19907.patientregister.utility;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+
+/**
+ * Class ParallelCSVReader is responsible for reading large CSV files of patients on several threads.
+ * The file is split into chunks of bytes that start and end on a record boundary, newlines inside
+ * quoted fields included, and the chunks are parsed in parallel on a ForkJoinPool by PatientRecordParsers.
+ * The files have the same format as the files of the CSVHandler, with the quotes in pairs
+ * as they are written by the CSVHandler
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public class ParallelCSVReader
+{
+    private static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+    private static final byte QUOTE = '"';
+    private static final byte NEW_LINE = '\n';
+
+    private final CSVHandler csvHandler;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    /**
+     * Constructor for ParallelCSVReader objects that parses on the common ForkJoinPool
+     */
+    public ParallelCSVReader()
+    {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor for ParallelCSVReader objects
+     * @param pool The pool to parse the chunks on, can not be null
+     * @param chunkSize The number of bytes in each chunk before it is aligned to a record, must be positive
+     * @throws IllegalArgumentException If the pool is null or the chunk size is not positive
+     */
+    public ParallelCSVReader(ForkJoinPool pool, int chunkSize)
+    {
+        if (pool == null || chunkSize <= 0) {
+            throw new IllegalArgumentException("The pool can not be null and the chunk size must be positive!");
+        }
+        this.csvHandler = new CSVHandler();
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Returns the patient List from a given CSV file
+     * @param fileToRead The file to read from, can not be null
+     * @param ordered True to return the patients in the order of the file, false to return them in any order
+     * @return The patients in the given file
+     * @throws IllegalArgumentException If the file is null or compressed, or the CSV header of the file is invalid
+     * @throws IOException If an IO error is encountered
+     * @throws InterruptedException If the calling thread is interrupted while waiting for a chunk
+     */
+    public List<Patient> readPatientList(File fileToRead, boolean ordered) throws IOException, InterruptedException
+    {
+        List<Patient> patientList = new ArrayList<>();
+        this.readPatients(fileToRead, ordered, patientList::addAll);
+        return patientList;
+    }
+
+    /**
+     * Reads the patients from a given CSV file and hands them to the given consumer one chunk at a time.
+     * The consumer is called on the calling thread, either in the order of the file or in the order
+     * the chunks are parsed in. Only a few chunks more than the parallelism of the pool are parsed ahead
+     * of the consumer, so the memory use does not grow with the size of the file.
+     * The chunks that were handed to the consumer before an error are not undone.
+     * @param fileToRead The file to read from, can not be null
+     * @param ordered True to hand over the chunks in the order of the file, false to hand them over
+     *                as soon as they are parsed
+     * @param chunkConsumer The consumer that handles the patients of each chunk, can not be null
+     * @return The number of patients that were read
+     * @throws IllegalArgumentException If any of the arguments is null, the file is compressed
+     *                                  or the CSV header of the file is invalid
+     * @throws IOException If an IO error is encountered
+     * @throws InterruptedException If the calling thread is interrupted while waiting for a chunk
+     */
+    public long readPatients(File fileToRead, boolean ordered, Consumer<List<Patient>> chunkConsumer)
+            throws IOException, InterruptedException
+    {
+        return this.readPatients(fileToRead, ordered, chunkConsumer, progress -> { });
+    }
+
+    /**
+     * Reads the patients from a given CSV file and hands them to the given consumer one chunk at a time,
+     * as readPatients(File, boolean, Consumer) does, and reports the progress to the given listener
+     * after the chunks are handled. The progress is measured in bytes of the chunks that were handled.
+     * If the listener stops the read, the chunk that was being handled is done first.
+     * @param fileToRead The file to read from, can not be null
+     * @param ordered True to hand over the chunks in the order of the file, false to hand them over
+     *                as soon as they are parsed
+     * @param chunkConsumer The consumer that handles the patients of each chunk, can not be null
+     * @param progressListener The listener to report the progress to, can not be null
+     * @return The number of patients that were read
+     * @throws IllegalArgumentException If any of the arguments is null, the file is compressed
+     *                                  or the CSV header of the file is invalid
+     * @throws IOException If an IO error is encountered
+     * @throws InterruptedException If the calling thread is interrupted while waiting for a chunk
+     * @throws java.util.concurrent.CancellationException If the listener stopped the read
+     */
+    public long readPatients(File fileToRead, boolean ordered, Consumer<List<Patient>> chunkConsumer,
+                             ProgressListener progressListener)
+            throws IOException, InterruptedException
+    {
+        if (fileToRead == null || chunkConsumer == null || progressListener == null) {
+            throw new IllegalArgumentException("The file, the consumer and the listener can not be null!");
+        }
+        if (CSVHandler.isCompressed(fileToRead)) {
+            throw new IllegalArgumentException("A compressed file can not be read from its bytes, "
+                    + "read it with the CSVHandler instead!");
+        }
+
+        long numberOfPatients = 0;
+        try (FileChannel channel = FileChannel.open(fileToRead.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ProgressTracker tracker = new ProgressTracker(progressListener, fileSize, -1);
+            long dataStart = this.findRecordEnd(channel, 0, false);
+            if (dataStart > 0) {
+                String[] headers = this.csvHandler.getRecordFormat(
+                        new String(this.readBytes(channel, 0, dataStart), StandardCharsets.UTF_8)).getHeader();
+                long[] chunkStarts = this.getChunkStarts(dataStart, fileSize);
+                boolean[] startsInQuotes = this.findQuoteStates(channel, chunkStarts, fileSize);
+
+                tracker.addBytes(dataStart);
+                numberOfPatients = this.parseChunks(channel, chunkStarts, startsInQuotes, fileSize,
+                        headers, ordered, chunkConsumer, tracker);
+            }
+            else {
+                tracker.addBytes(fileSize);
+            }
+            tracker.reportDone(numberOfPatients);
+        }
+        return numberOfPatients;
+    }
+
+    /**
+     * Parses the chunks that start at the given positions on the pool and hands them to the given consumer
+     * @param channel The channel of the file to read from, not null
+     * @param chunkStarts The positions the chunks start at before they are aligned to a record, not null
+     * @param startsInQuotes Whether each chunk starts inside a quoted field, not null
+     * @param fileSize The size of the file
+     * @param headers The header names of the file in the order of the columns, not null
+     * @param ordered True to hand over the chunks in the order of the file
+     * @param chunkConsumer The consumer that handles the patients of each chunk, not null
+     * @param tracker The tracker to report the bytes of the handled chunks to, not null
+     * @return The number of patients that were read
+     * @throws IOException If an IO error is encountered
+     * @throws InterruptedException If the calling thread is interrupted while waiting for a chunk
+     */
+    private long parseChunks(FileChannel channel, long[] chunkStarts, boolean[] startsInQuotes, long fileSize,
+                             String[] headers, boolean ordered, Consumer<List<Patient>> chunkConsumer,
+                             ProgressTracker tracker)
+            throws IOException, InterruptedException
+    {
+        int maxChunksInFlight = this.pool.getParallelism() * 2;
+        // Only used when unordered, the queue of completed chunks would otherwise keep every chunk in memory
+        CompletionService<List<Patient>> completionService = new ExecutorCompletionService<>(this.pool);
+        Deque<Future<List<Patient>>> chunksInFlight = new ArrayDeque<>();
+        Map<Future<List<Patient>>, Long> chunkSizes = new HashMap<>();
+
+        long numberOfPatients = 0;
+        int nextChunk = 0;
+        try {
+            while (nextChunk < chunkStarts.length || !chunksInFlight.isEmpty()) {
+                while (nextChunk < chunkStarts.length && chunksInFlight.size() < maxChunksInFlight) {
+                    int chunk = nextChunk;
+                    long end = (chunk + 1 < chunkStarts.length) ? chunkStarts[chunk + 1] : fileSize;
+                    boolean endInQuotes = (chunk + 1 < chunkStarts.length) && startsInQuotes[chunk + 1];
+                    Future<List<Patient>> future;
+                    if (ordered) {
+                        future = this.submit(() -> this.parseChunk(channel,
+                                chunkStarts[chunk], startsInQuotes[chunk], end, endInQuotes, headers));
+                    }
+                    else {
+                        future = completionService.submit(() -> this.parseChunk(channel,
+                                chunkStarts[chunk], startsInQuotes[chunk], end, endInQuotes, headers));
+                    }
+                    chunksInFlight.addLast(future);
+                    chunkSizes.put(future, end - chunkStarts[chunk]);
+                    nextChunk++;
+                }
+
+                Future<List<Patient>> parsedChunk;
+                if (ordered) {
+                    parsedChunk = chunksInFlight.removeFirst();
+                }
+                else {
+                    parsedChunk = completionService.take();
+                    chunksInFlight.remove(parsedChunk);
+                }
+
+                List<Patient> patients = parsedChunk.get();
+                if (!patients.isEmpty()) {
+                    chunkConsumer.accept(patients);
+                    numberOfPatients += patients.size();
+                }
+                tracker.addBytes(chunkSizes.remove(parsedChunk));
+                tracker.report(numberOfPatients);
+            }
+        }
+        catch (ExecutionException e) {
+            throw CSVHandler.rethrowCause(e);
+        }
+        finally {
+            chunksInFlight.forEach(chunk -> chunk.cancel(true));
+        }
+        return numberOfPatients;
+    }
+
+    /**
+     * Runs the given task on the pool. The task is wrapped in a FutureTask rather than submitted
+     * as a ForkJoinTask, that would throw a copy of an exception from the task instead of the exception itself
+     * @param task The task to run, not null
+     * @param <T> The type of the result of the task
+     * @return The Future of the task
+     */
+    private <T> Future<T> submit(Callable<T> task)
+    {
+        FutureTask<T> futureTask = new FutureTask<>(task);
+        this.pool.execute(futureTask);
+        return futureTask;
+    }
+
+    /**
+     * Returns the patients in the records that start in the given range of the file.
+     * The range is aligned to the first record boundary at or after each end
+     * @param channel The channel of the file to read from, not null
+     * @param start The position the chunk starts at before it is aligned to a record
+     * @param startInQuotes Whether the start is inside a quoted field
+     * @param end The position the next chunk starts at before it is aligned, or the size of the file
+     * @param endInQuotes Whether the end is inside a quoted field
+     * @param headers The header names of the file in the order of the columns, not null
+     * @return The patients in the chunk, in the order of the file
+     * @throws IllegalArgumentException If a record does not have the expected columns
+     * @throws IOException If an IO error is encountered
+     */
+    private List<Patient> parseChunk(FileChannel channel, long start, boolean startInQuotes,
+                                     long end, boolean endInQuotes, String[] headers) throws IOException
+    {
+        long recordStart = this.findRecordStart(channel, start, startInQuotes);
+        long recordEnd = (end < channel.size()) ? this.findRecordStart(channel, end, endInQuotes) : end;
+
+        List<Patient> patients = new ArrayList<>();
+        if (recordStart < recordEnd) {
+            byte[] records = this.readBytes(channel, recordStart, recordEnd);
+            PatientRecordParser parser = new PatientRecordParser(this.csvHandler, headers);
+            parser.parseRecords(ByteBuffer.wrap(records), 0, records.length, true, patients, Integer.MAX_VALUE);
+        }
+        return patients;
+    }
+
+    /**
+     * Returns the positions the chunks of the given range start at, before they are aligned to a record
+     * @param dataStart The position of the first record
+     * @param fileSize The size of the file
+     * @return The start positions of the chunks, in the order of the file
+     */
+    private long[] getChunkStarts(long dataStart, long fileSize)
+    {
+        int numberOfChunks = (int) Math.max(1, (fileSize - dataStart + this.chunkSize - 1) / this.chunkSize);
+        long[] chunkStarts = new long[numberOfChunks];
+        for (int i = 0; i < numberOfChunks; i++) {
+            chunkStarts[i] = dataStart + (long) i * this.chunkSize;
+        }
+        return chunkStarts;
+    }
+
+    /**
+     * Returns whether each of the given positions is inside a quoted field.
+     * The quotes of every chunk are counted in parallel, an odd number of quotes before
+     * a position means that it is inside a quoted field. Escaped quotes come in pairs and do not count
+     * @param channel The channel of the file to read from, not null
+     * @param chunkStarts The start positions of the chunks, the first one outside of any quotes, not null
+     * @param fileSize The size of the file
+     * @return Whether each of the positions is inside a quoted field
+     * @throws IOException If an IO error is encountered
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the counts
+     */
+    private boolean[] findQuoteStates(FileChannel channel, long[] chunkStarts, long fileSize)
+            throws IOException, InterruptedException
+    {
+        List<Future<Long>> quoteCounts = new ArrayList<>(chunkStarts.length);
+        for (int i = 0; i < chunkStarts.length; i++) {
+            long start = chunkStarts[i];
+            long end = (i + 1 < chunkStarts.length) ? chunkStarts[i + 1] : fileSize;
+            quoteCounts.add(this.submit(() -> this.countQuotes(channel, start, end)));
+        }
+
+        boolean[] startsInQuotes = new boolean[chunkStarts.length];
+        try {
+            long quotes = 0;
+            for (int i = 0; i < chunkStarts.length; i++) {
+                startsInQuotes[i] = quotes % 2 != 0;
+                quotes += quoteCounts.get(i).get();
+            }
+        }
+        catch (ExecutionException e) {
+            throw CSVHandler.rethrowCause(e);
+        }
+        finally {
+            quoteCounts.forEach(count -> count.cancel(true));
+        }
+        return startsInQuotes;
+    }
+
+    /**
+     * Returns the number of quotes in the given range of the file
+     * @param channel The channel of the file to read from, not null
+     * @param start The first position to count from
+     * @param end The position to stop before
+     * @return The number of quotes in the range
+     * @throws IOException If an IO error is encountered
+     */
+    private long countQuotes(FileChannel channel, long start, long end) throws IOException
+    {
+        long quotes = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = start;
+        while (position < end) {
+            buffer.clear().limit((int) Math.min(SCAN_BUFFER_SIZE, end - position));
+            int bytesRead = channel.read(buffer, position);
+            if (bytesRead < 0) {
+                break;
+            }
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < bytesRead; i++) {
+                if (bytes[i] == QUOTE) {
+                    quotes++;
+                }
+            }
+            position += bytesRead;
+        }
+        return quotes;
+    }
+
+    /**
+     * Returns the start of the first record at or after the given position.
+     * A position inside a record belongs to that record, so the start of the next record is returned
+     * @param channel The channel of the file to read from, not null
+     * @param position The position to look from
+     * @param inQuotes Whether the position is inside a quoted field
+     * @return The start of the first record at or after the position, or the size of the file if there is none
+     * @throws IOException If an IO error is encountered
+     */
+    private long findRecordStart(FileChannel channel, long position, boolean inQuotes) throws IOException
+    {
+        long recordStart = position;
+        if (position > 0) {
+            // The position starts a record if the byte before it is a newline outside of quotes,
+            // a newline does not change whether the position is inside a quoted field
+            ByteBuffer previousByte = ByteBuffer.allocate(1);
+            channel.read(previousByte, position - 1);
+            if (previousByte.get(0) != NEW_LINE || inQuotes) {
+                recordStart = this.findRecordEnd(channel, position, inQuotes);
+            }
+        }
+        return recordStart;
+    }
+
+    /**
+     * Returns the position after the first newline at or after the given position that is outside of quotes
+     * @param channel The channel of the file to read from, not null
+     * @param position The position to look from
+     * @param inQuotes Whether the position is inside a quoted field
+     * @return The position after the newline that ends the record, or the size of the file if there is none
+     * @throws IOException If an IO error is encountered
+     */
+    private long findRecordEnd(FileChannel channel, long position, boolean inQuotes) throws IOException
+    {
+        long recordEnd = -1;
+        boolean quoted = inQuotes;
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long bufferStart = position;
+        int bytesRead = channel.read(buffer, bufferStart);
+        while (recordEnd < 0 && bytesRead > 0) {
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < bytesRead && recordEnd < 0; i++) {
+                if (bytes[i] == QUOTE) {
+                    quoted = !quoted;
+                }
+                else if (bytes[i] == NEW_LINE && !quoted) {
+                    recordEnd = bufferStart + i + 1;
+                }
+            }
+            bufferStart += bytesRead;
+            buffer.clear();
+            bytesRead = channel.read(buffer, bufferStart);
+        }
+        return (recordEnd < 0) ? channel.size() : recordEnd;
+    }
+
+    /**
+     * Returns the bytes in the given range of the file
+     * @param channel The channel of the file to read from, not null
+     * @param start The first position to read
+     * @param end The position to stop before
+     * @return The bytes in the range
+     * @throws IOException If an IO error is encountered
+     */
+    private byte[] readBytes(FileChannel channel, long start, long end) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        long position = start;
+        while (buffer.hasRemaining()) {
+            int bytesRead = channel.read(buffer, position);
+            if (bytesRead < 0) {
+                throw new IOException("The file ended before the expected position " + end);
+            }
+            position += bytesRead;
+        }
+        return buffer.array();
+    }
+}
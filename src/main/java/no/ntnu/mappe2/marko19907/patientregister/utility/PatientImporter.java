@@ -0,0 +1,409 @@
+package no.ntnu.mappe2.marko19907.patientregister.utility;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegister;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Class PatientImporter is responsible for importing CSV files into a register without stopping at the first error.
+ * Records that are invalid, or whose social security number is in the register or earlier in the file,
+ * are skipped and written to an error report, the other records are added to the register in batches.
+ * After every batch a checkpoint is written next to the error report, so that an import that failed
+ * or was interrupted continues after the last batch that was added, instead of starting over.
+ * The progress is reported after every checkpoint, so an import that is stopped by its listener can be resumed.
+ * An invalid CSV header, a malformed quoted field and errors of the register still stop the import
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public class PatientImporter
+{
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final char DELIMITER = ';';
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    private static final String RECORDS_KEY = "records";
+    private static final String IMPORTED_KEY = "importedPatients";
+    private static final String INVALID_KEY = "invalidRecords";
+    private static final String DUPLICATE_KEY = "duplicateRecords";
+    private static final String REPORT_LENGTH_KEY = "errorReportLength";
+    static final String[] REPORT_HEADERS = {
+            "lineNumber",
+            "recordNumber",
+            "socialSecurityNumber",
+            "reason",
+            "message"
+    };
+    static final String INVALID_RECORD = "INVALID_RECORD";
+    static final String DUPLICATE_RECORD = "DUPLICATE_SOCIAL_SECURITY_NUMBER";
+
+    private final CSVHandler csvHandler;
+    private final int batchSize;
+
+    /**
+     * Constructor for PatientImporter objects
+     */
+    public PatientImporter()
+    {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor for PatientImporter objects with a given batch size
+     * @param batchSize The number of patients that are added to the register between checkpoints, must be positive
+     * @throws IllegalArgumentException If the batch size is not positive
+     */
+    public PatientImporter(int batchSize)
+    {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive!");
+        }
+        this.csvHandler = new CSVHandler();
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the checkpoint file of the given error report, that holds the progress of an unfinished import
+     * @param errorReportFile The error report file of the import, can not be null
+     * @return The checkpoint file of the import
+     * @throws IllegalArgumentException If the error report file is null
+     */
+    public File getCheckpointFile(File errorReportFile)
+    {
+        if (errorReportFile == null) {
+            throw new IllegalArgumentException("The error report file can not be null!");
+        }
+        return new File(errorReportFile.getAbsolutePath() + CHECKPOINT_SUFFIX);
+    }
+
+    /**
+     * Returns true if the import with the given error report is unfinished and will be resumed
+     * @param errorReportFile The error report file of the import, can not be null
+     * @return True if the import has a checkpoint, false otherwise
+     * @throws IllegalArgumentException If the error report file is null
+     */
+    public boolean hasCheckpoint(File errorReportFile)
+    {
+        return this.getCheckpointFile(errorReportFile).exists();
+    }
+
+    /**
+     * Imports the patients of the given CSV file into the given register, skipping the invalid
+     * and duplicate records. The skipped records are written to the error report as CSV,
+     * with the line and record number of each record and the reason it was skipped.
+     * If the error report has a checkpoint, the import is resumed after the last record of the checkpoint
+     * and the error report is cut back to its length at the checkpoint and appended to,
+     * so that the records skipped after the checkpoint are not reported twice.
+     * Otherwise the error report is overwritten.
+     * The checkpoint is deleted once the whole file is imported.
+     * The patients of a batch may be reported again if the import stops between adding the batch
+     * and writing its checkpoint
+     * @param fileToRead The file to read from, can not be null
+     * @param register The register to add the patients to, can not be null
+     * @param errorReportFile The file to report the skipped records to, can not be null
+     * @return The counts of the imported and skipped records, including the records of earlier runs
+     * @throws IllegalArgumentException If any of the arguments is null or the CSV header of the file is invalid
+     * @throws IOException If an IO error is encountered or a quoted field of the file is malformed
+     * @throws InterruptedException If the calling thread is interrupted, the import can be resumed
+     */
+    public ImportReport importPatients(File fileToRead, PatientRegister register, File errorReportFile)
+            throws IOException, InterruptedException
+    {
+        return this.importPatients(fileToRead, register, errorReportFile, progress -> { });
+    }
+
+    /**
+     * Imports the patients of the given CSV file into the given register, skipping the invalid
+     * and duplicate records, as importPatients(File, PatientRegister, File) does, and reports the progress
+     * to the given listener after each checkpoint. The progress is measured in bytes of the file.
+     * If the listener stops the import, the batch that was being added and its checkpoint are done first,
+     * so the import can be resumed
+     * @param fileToRead The file to read from, can not be null
+     * @param register The register to add the patients to, can not be null
+     * @param errorReportFile The file to report the skipped records to, can not be null
+     * @param progressListener The listener to report the progress to, can not be null
+     * @return The counts of the imported and skipped records, including the records of earlier runs
+     * @throws IllegalArgumentException If any of the arguments is null or the CSV header of the file is invalid
+     * @throws IOException If an IO error is encountered or a quoted field of the file is malformed
+     * @throws InterruptedException If the calling thread is interrupted, the import can be resumed
+     * @throws java.util.concurrent.CancellationException If the listener stopped the import
+     */
+    public ImportReport importPatients(File fileToRead, PatientRegister register, File errorReportFile,
+                                       ProgressListener progressListener)
+            throws IOException, InterruptedException
+    {
+        if (fileToRead == null || register == null || errorReportFile == null || progressListener == null) {
+            throw new IllegalArgumentException("The file, the register, the error report file and the listener "
+                    + "can not be null!");
+        }
+
+        File checkpointFile = this.getCheckpointFile(errorReportFile);
+        Properties checkpoint = this.readCheckpoint(checkpointFile);
+        long resumedAfterRecord = Long.parseLong(checkpoint.getProperty(RECORDS_KEY, "0"));
+        long importedPatients = Long.parseLong(checkpoint.getProperty(IMPORTED_KEY, "0"));
+        long invalidRecords = Long.parseLong(checkpoint.getProperty(INVALID_KEY, "0"));
+        long duplicateRecords = Long.parseLong(checkpoint.getProperty(DUPLICATE_KEY, "0"));
+        // A checkpoint of an older version has no length, its error report is appended to as it is
+        long reportLength = Long.parseLong(checkpoint.getProperty(REPORT_LENGTH_KEY, "-1"));
+        boolean resuming = checkpointFile.exists();
+        if (resuming && reportLength >= 0) {
+            this.truncate(errorReportFile, reportLength);
+        }
+
+        ProgressTracker tracker = new ProgressTracker(progressListener, fileToRead.length(), -1);
+        try (Reader reader = this.csvHandler.openReader(fileToRead, tracker::countBytes);
+             CSVParser parser = this.csvHandler.getCSVFormat().withFirstRecordAsHeader().parse(reader);
+             CSVPrinter errorReport = this.openErrorReport(errorReportFile, resuming)) {
+            this.checkHeader(parser);
+
+            List<CSVRecord> batchRecords = new ArrayList<>(this.batchSize);
+            List<Long> batchLineNumbers = new ArrayList<>(this.batchSize);
+            List<Patient> batch = new ArrayList<>(this.batchSize);
+            long lastRecordNumber = resumedAfterRecord;
+            Iterator<CSVRecord> records = parser.iterator();
+            while (this.hasNextRecord(records, parser)) {
+                CSVRecord csvRecord = records.next();
+                if (csvRecord.getRecordNumber() > resumedAfterRecord) {
+                    lastRecordNumber = csvRecord.getRecordNumber();
+                    // The parser has read up to the end of the record
+                    long lineNumber = parser.getCurrentLineNumber();
+                    try {
+                        batch.add(this.csvHandler.parsePatient(csvRecord));
+                        batchRecords.add(csvRecord);
+                        batchLineNumbers.add(lineNumber);
+                    }
+                    catch (IllegalArgumentException e) {
+                        this.reportRecord(errorReport, lineNumber, csvRecord, INVALID_RECORD, e.getMessage());
+                        invalidRecords++;
+                    }
+
+                    if (batch.size() == this.batchSize) {
+                        long duplicates = this.addBatch(register, batch, batchRecords, batchLineNumbers,
+                                errorReport);
+                        importedPatients += batch.size() - duplicates;
+                        duplicateRecords += duplicates;
+                        batch.clear();
+                        batchRecords.clear();
+                        batchLineNumbers.clear();
+                        this.writeCheckpoint(checkpointFile, errorReport, errorReportFile, lastRecordNumber,
+                                importedPatients, invalidRecords, duplicateRecords);
+                        tracker.report(lastRecordNumber);
+                    }
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                long duplicates = this.addBatch(register, batch, batchRecords, batchLineNumbers, errorReport);
+                importedPatients += batch.size() - duplicates;
+                duplicateRecords += duplicates;
+                // The listener can still stop the import, it is then resumed at the end of the file
+                this.writeCheckpoint(checkpointFile, errorReport, errorReportFile, lastRecordNumber,
+                        importedPatients, invalidRecords, duplicateRecords);
+            }
+            tracker.reportDone(lastRecordNumber);
+        }
+
+        Files.deleteIfExists(checkpointFile.toPath());
+        return new ImportReport(importedPatients, invalidRecords, duplicateRecords, resumedAfterRecord,
+                errorReportFile);
+    }
+
+    /**
+     * Returns true if the file has another record, and stops the import if the calling thread is interrupted
+     * @param records The records of the file, not null
+     * @param parser The parser of the file, not null
+     * @return True if the file has another record
+     * @throws IOException If a record can not be parsed
+     * @throws InterruptedException If the calling thread is interrupted
+     */
+    private boolean hasNextRecord(Iterator<CSVRecord> records, CSVParser parser)
+            throws IOException, InterruptedException
+    {
+        if (Thread.interrupted()) {
+            throw new InterruptedException("The import was interrupted");
+        }
+        try {
+            return records.hasNext();
+        }
+        catch (IllegalStateException e) {
+            // commons-csv wraps the IOExceptions of its iterator
+            throw new IOException("The record after line " + parser.getCurrentLineNumber()
+                    + " can not be parsed", e.getCause());
+        }
+    }
+
+    /**
+     * Adds the given batch to the register and reports the records of the patients that were not added
+     * @param register The register to add the patients to, not null
+     * @param batch The patients to add, not null
+     * @param batchRecords The records of the patients, in the same order, not null
+     * @param batchLineNumbers The line numbers of the records, in the same order, not null
+     * @param errorReport The error report, not null
+     * @return The number of patients that were not added because of a duplicate social security number
+     * @throws IOException If the error report can not be written
+     */
+    private long addBatch(PatientRegister register, List<Patient> batch, List<CSVRecord> batchRecords,
+                          List<Long> batchLineNumbers, CSVPrinter errorReport) throws IOException
+    {
+        List<Patient> duplicatePatients = register.addNewPatients(batch);
+        if (!duplicatePatients.isEmpty()) {
+            Set<Patient> duplicates = Collections.newSetFromMap(new IdentityHashMap<>());
+            duplicates.addAll(duplicatePatients);
+            for (int i = 0; i < batch.size(); i++) {
+                if (duplicates.contains(batch.get(i))) {
+                    this.reportRecord(errorReport, batchLineNumbers.get(i), batchRecords.get(i), DUPLICATE_RECORD,
+                            "A patient with that social security number already exists");
+                }
+            }
+        }
+        return duplicatePatients.size();
+    }
+
+    /**
+     * Checks that the header of the file has the columns that are needed for a patient
+     * @param parser The parser of the file, not null
+     * @throws IllegalArgumentException If the header lacks a column that is needed for a patient
+     */
+    private void checkHeader(CSVParser parser)
+    {
+        Map<String, Integer> headerMap = parser.getHeaderMap();
+        // The diagnosis is the only optional column
+        for (int i = 0; i < CSVHandler.HEADERS.length - 1; i++) {
+            if (headerMap == null || !headerMap.containsKey(CSVHandler.HEADERS[i])) {
+                throw this.csvHandler.createHeaderException();
+            }
+        }
+    }
+
+    /**
+     * Writes a skipped record to the error report
+     * @param errorReport The error report, not null
+     * @param lineNumber The line number of the end of the record, the header is line 1
+     * @param csvRecord The skipped record, not null
+     * @param reason The reason the record was skipped, not null
+     * @param message The description of the error
+     * @throws IOException If the error report can not be written
+     */
+    private void reportRecord(CSVPrinter errorReport, long lineNumber, CSVRecord csvRecord,
+                              String reason, String message) throws IOException
+    {
+        String socialSecurityNumber = CSVHandler.HEADERS[3];
+        errorReport.printRecord(
+                lineNumber,
+                csvRecord.getRecordNumber(),
+                csvRecord.isSet(socialSecurityNumber) ? csvRecord.get(socialSecurityNumber) : "",
+                reason,
+                message
+        );
+    }
+
+    /**
+     * Opens the error report, a new report gets a header line
+     * @param errorReportFile The error report file, not null
+     * @param append True to append to an existing report, false to overwrite it
+     * @return The CSVPrinter of the error report
+     * @throws IOException If the error report can not be opened
+     */
+    private CSVPrinter openErrorReport(File errorReportFile, boolean append) throws IOException
+    {
+        boolean writeHeader = !append || !errorReportFile.exists() || errorReportFile.length() == 0;
+        Writer writer = Files.newBufferedWriter(errorReportFile.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        CSVFormat format = CSVFormat.DEFAULT.withDelimiter(DELIMITER).withHeader(REPORT_HEADERS)
+                .withSkipHeaderRecord(!writeHeader);
+        try {
+            return new CSVPrinter(writer, format);
+        }
+        catch (IOException | RuntimeException e) {
+            writer.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Cuts the given error report back to the given length, dropping the records reported after the checkpoint
+     * @param errorReportFile The error report file, not null
+     * @param length The length of the error report at the checkpoint in bytes
+     * @throws IOException If the error report can not be truncated
+     */
+    private void truncate(File errorReportFile, long length) throws IOException
+    {
+        if (errorReportFile.exists()) {
+            try (FileChannel channel = FileChannel.open(errorReportFile.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(length);
+            }
+        }
+    }
+
+    /**
+     * Reads the checkpoint of an unfinished import
+     * @param checkpointFile The checkpoint file, not null
+     * @return The properties of the checkpoint, empty if there is no checkpoint
+     * @throws IOException If the checkpoint can not be read
+     */
+    private Properties readCheckpoint(File checkpointFile) throws IOException
+    {
+        Properties checkpoint = new Properties();
+        if (checkpointFile.exists()) {
+            try (Reader reader = Files.newBufferedReader(checkpointFile.toPath(), StandardCharsets.UTF_8)) {
+                checkpoint.load(reader);
+            }
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Flushes the error report and replaces the checkpoint with the progress of the import.
+     * The checkpoint is written to a temporary file first, so a crash never leaves a partial checkpoint
+     * @param checkpointFile The checkpoint file, not null
+     * @param errorReport The error report, not null
+     * @param errorReportFile The file of the error report, not null
+     * @param records The number of the last record that was handled
+     * @param importedPatients The number of patients that were added so far
+     * @param invalidRecords The number of invalid records so far
+     * @param duplicateRecords The number of duplicate records so far
+     * @throws IOException If the error report or the checkpoint can not be written
+     */
+    private void writeCheckpoint(File checkpointFile, CSVPrinter errorReport, File errorReportFile, long records,
+                                 long importedPatients, long invalidRecords, long duplicateRecords) throws IOException
+    {
+        errorReport.flush();
+
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty(RECORDS_KEY, Long.toString(records));
+        checkpoint.setProperty(IMPORTED_KEY, Long.toString(importedPatients));
+        checkpoint.setProperty(INVALID_KEY, Long.toString(invalidRecords));
+        checkpoint.setProperty(DUPLICATE_KEY, Long.toString(duplicateRecords));
+        checkpoint.setProperty(REPORT_LENGTH_KEY, Long.toString(errorReportFile.length()));
+
+        Path checkpointPath = checkpointFile.toPath();
+        Path temporaryPath = checkpointPath.resolveSibling(checkpointPath.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8)) {
+            checkpoint.store(writer, "Progress of an unfinished patient import");
+        }
+        Files.move(temporaryPath, checkpointPath, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,226 @@
+package no.ntnu.mappe2.marko19907.patientregister.utility;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class PatientRecordParser is responsible for parsing the records of the patient CSV files
+ * directly from the bytes of a ByteBuffer.
+ * The header names are resolved to column indexes once, and a String is only created for the columns
+ * that make up a patient. It reads the same format as the CSVHandler writes: UTF-8, ';' as the delimiter,
+ * fields in quotes when needed, quotes escaped by doubling them and CRLF at the end of each record.
+ * A parser is not thread-safe, each thread needs its own
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+final class PatientRecordParser
+{
+    private static final byte DELIMITER = ';';
+    private static final byte QUOTE = '"';
+    private static final byte CARRIAGE_RETURN = '\r';
+    private static final byte LINE_FEED = '\n';
+
+    private final CSVHandler csvHandler;
+    // The index in CSVHandler.HEADERS of each column of the file, -1 for the columns that are not used
+    private final int[] headerIndexes;
+    private final String[] values;
+    private byte[] fieldBytes;
+
+    /**
+     * Constructor for PatientRecordParser objects
+     * @param csvHandler The CSVHandler of the format, not null
+     * @param headers The header names of the file in the order of the columns, not null
+     * @throws IllegalArgumentException If the header names lack a column that is needed for a patient
+     */
+    PatientRecordParser(CSVHandler csvHandler, String[] headers)
+    {
+        this.csvHandler = csvHandler;
+        this.headerIndexes = new int[headers.length];
+        this.values = new String[CSVHandler.HEADERS.length];
+        this.fieldBytes = new byte[256];
+
+        boolean[] found = new boolean[CSVHandler.HEADERS.length];
+        for (int column = 0; column < headers.length; column++) {
+            this.headerIndexes[column] = -1;
+            for (int i = 0; i < CSVHandler.HEADERS.length; i++) {
+                if (!found[i] && CSVHandler.HEADERS[i].equalsIgnoreCase(headers[column])) {
+                    this.headerIndexes[column] = i;
+                    found[i] = true;
+                }
+            }
+        }
+        // The diagnosis is the only optional column
+        for (int i = 0; i < CSVHandler.HEADERS.length - 1; i++) {
+            if (!found[i]) {
+                throw csvHandler.createHeaderException();
+            }
+        }
+    }
+
+    /**
+     * Parses the records in the given range of the buffer into patients, empty lines are skipped
+     * @param buffer The buffer to parse, not null
+     * @param position The position of the first record
+     * @param limit The position to stop before
+     * @param endOfInput True if the limit is the end of the input, false if the last record may go on after it
+     * @param patients The List to add the patients to, not null
+     * @param maxPatients The maximum number of patients to add
+     * @return The position after the last record that was parsed, an incomplete record at the limit
+     * is left for the next call
+     * @throws IllegalArgumentException If a record lacks a column that is needed for a patient
+     * @throws IOException If a quoted field is malformed
+     */
+    int parseRecords(ByteBuffer buffer, int position, int limit, boolean endOfInput,
+                     List<Patient> patients, int maxPatients) throws IOException
+    {
+        int recordStart = position;
+        int numberOfPatients = 0;
+        while (recordStart < limit && numberOfPatients < maxPatients) {
+            byte firstByte = buffer.get(recordStart);
+            if (firstByte == CARRIAGE_RETURN || firstByte == LINE_FEED) {
+                recordStart++;
+            }
+            else {
+                int recordEnd = this.parseRecord(buffer, recordStart, limit, endOfInput);
+                if (recordEnd < 0) {
+                    break;
+                }
+                patients.add(this.createPatient());
+                numberOfPatients++;
+                recordStart = recordEnd;
+            }
+        }
+        return recordStart;
+    }
+
+    /**
+     * Parses the record at the given position into the values of the parser
+     * @param buffer The buffer to parse, not null
+     * @param position The position of the record
+     * @param limit The position to stop before
+     * @param endOfInput True if the limit is the end of the input
+     * @return The position after the record, or -1 if the record goes on after the limit
+     * @throws IOException If a quoted field is malformed
+     */
+    private int parseRecord(ByteBuffer buffer, int position, int limit, boolean endOfInput) throws IOException
+    {
+        Arrays.fill(this.values, null);
+        int index = position;
+        int column = 0;
+        while (true) {
+            int headerIndex = (column < this.headerIndexes.length) ? this.headerIndexes[column] : -1;
+            int length = 0;
+
+            if (index < limit && buffer.get(index) == QUOTE) {
+                index++;
+                boolean closed = false;
+                while (!closed) {
+                    if (index >= limit) {
+                        if (endOfInput) {
+                            throw new IOException("The input ended inside a quoted field");
+                        }
+                        return -1;
+                    }
+                    byte value = buffer.get(index);
+                    if (value == QUOTE) {
+                        if (index + 1 >= limit && !endOfInput) {
+                            return -1;
+                        }
+                        if (index + 1 < limit && buffer.get(index + 1) == QUOTE) {
+                            // An escaped quote
+                            length = this.appendByte(headerIndex, length, QUOTE);
+                            index += 2;
+                        }
+                        else {
+                            closed = true;
+                            index++;
+                        }
+                    }
+                    else {
+                        length = this.appendByte(headerIndex, length, value);
+                        index++;
+                    }
+                }
+            }
+            else {
+                byte value;
+                while (index < limit && (value = buffer.get(index)) != DELIMITER
+                        && value != CARRIAGE_RETURN && value != LINE_FEED) {
+                    length = this.appendByte(headerIndex, length, value);
+                    index++;
+                }
+            }
+
+            if (index >= limit && !endOfInput) {
+                return -1;
+            }
+            if (headerIndex >= 0) {
+                this.values[headerIndex] = new String(this.fieldBytes, 0, length, StandardCharsets.UTF_8);
+            }
+            column++;
+
+            if (index >= limit) {
+                return index;
+            }
+            byte separator = buffer.get(index);
+            if (separator == LINE_FEED) {
+                return index + 1;
+            }
+            if (separator == CARRIAGE_RETURN) {
+                if (index + 1 < limit) {
+                    return (buffer.get(index + 1) == LINE_FEED) ? index + 2 : index + 1;
+                }
+                return endOfInput ? index + 1 : -1;
+            }
+            if (separator != DELIMITER) {
+                throw new IOException("Invalid character between a quoted field and the delimiter at " + index);
+            }
+            index++;
+        }
+    }
+
+    /**
+     * Appends a byte to the current field, if the field is used
+     * @param headerIndex The index of the header of the field, -1 if the field is not used
+     * @param length The length of the field so far
+     * @param value The byte to append
+     * @return The new length of the field
+     */
+    private int appendByte(int headerIndex, int length, byte value)
+    {
+        int newLength = length;
+        if (headerIndex >= 0) {
+            if (length == this.fieldBytes.length) {
+                this.fieldBytes = Arrays.copyOf(this.fieldBytes, length * 2);
+            }
+            this.fieldBytes[length] = value;
+            newLength++;
+        }
+        return newLength;
+    }
+
+    /**
+     * Returns a patient built from the values of the last record
+     * @return The patient in the last record
+     * @throws IllegalArgumentException If the record lacks a column that is needed for a patient
+     */
+    private Patient createPatient()
+    {
+        try {
+            String diagnosis = (this.values[4] != null) ? this.values[4] : "";
+            return new Patient.PatientBuilder(this.values[0], this.values[1], this.values[3])
+                    .withGeneralPractitioner(this.values[2])
+                    .withDiagnosis(diagnosis)
+                    .build();
+        }
+        catch (IllegalArgumentException e) {
+            throw this.csvHandler.createHeaderException();
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package no.ntnu.mappe2.marko19907.patientregister.utility;
+
+import no.ntnu.mappe2.marko19907.patientregister.exception.DuplicateKeyException;
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegister;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Stream;
+
+/**
+ * Class PatientSnapshotFile reads a binary snapshot of the patients of a register through a memory-mapped buffer.
+ * Opening a snapshot only maps the file and reads its header and its dictionary, the patients are decoded
+ * the first time they are accessed, so opening a snapshot of millions of patients takes milliseconds.
+ * The format is a header, the records of the patients, a dictionary and an index sorted by social security
+ * number. A record is the first name, the last name and the social security number as length-prefixed
+ * UTF-8, followed by the numbers of the general practitioner and the diagnosis in the dictionary,
+ * as those repeat across many patients. The index holds the offset of each record, so a patient is found
+ * by its position or by a binary search on its social security number without reading the others.
+ * A snapshot is written to a temporary file that is forced to disk and then renamed,
+ * so a crash while writing leaves the previous snapshot as it was.
+ * It can be read from several threads at once.
+ * Unlike the snapshots that DurablePatientRegister keeps next to its log, which are only read
+ * from start to end when the register is recovered, this format is made to be read in place.
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public final class PatientSnapshotFile
+{
+    /**
+     * The extension of the snapshot files
+     */
+    public static final String EXTENSION = ".psnap";
+
+    private static final int MAGIC = 0x50534e50;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int numberOfPatients;
+    private final long indexOffset;
+    private final String[] dictionary;
+    private final AtomicReferenceArray<Patient> decodedPatients;
+
+    /**
+     * Opens the given snapshot file
+     * @param file The snapshot file to open, can not be null
+     * @throws IllegalArgumentException If the file is null
+     * @throws IOException If the file can not be read, or it is not a complete snapshot
+     */
+    public PatientSnapshotFile(File file) throws IOException
+    {
+        if (file == null) {
+            throw new IllegalArgumentException("The file can not be null!");
+        }
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("The snapshot " + file.getName() + " is too large to be mapped");
+            }
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException(file.getName() + " is not a patient snapshot");
+            }
+            // The mapping stays valid after the channel is closed
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        }
+
+        if (this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != VERSION) {
+            throw new IOException(file.getName() + " is not a patient snapshot of version " + VERSION);
+        }
+        this.numberOfPatients = this.buffer.getInt(8);
+        int dictionarySize = this.buffer.getInt(12);
+        long dictionaryOffset = this.buffer.getLong(16);
+        this.indexOffset = this.buffer.getLong(24);
+        if (this.numberOfPatients < 0 || dictionarySize < 0 || dictionaryOffset < HEADER_SIZE
+                || this.indexOffset < dictionaryOffset
+                || this.indexOffset + (long) this.numberOfPatients * Long.BYTES != this.buffer.capacity()) {
+            throw new IOException("The snapshot " + file.getName() + " is incomplete or damaged");
+        }
+
+        ByteBuffer reader = this.buffer.duplicate();
+        reader.position((int) dictionaryOffset);
+        this.dictionary = new String[dictionarySize];
+        for (int i = 0; i < dictionarySize; i++) {
+            this.dictionary[i] = PatientSnapshotFile.readString(reader);
+        }
+        this.decodedPatients = new AtomicReferenceArray<>(this.numberOfPatients);
+    }
+
+    /**
+     * Writes the given patients to the given file as a snapshot, sorted by social security number
+     * @param file The file to write, it is replaced once the new snapshot is complete, can not be null
+     * @param patients The patients to write, can not be null or contain null
+     * @return The number of patients that were written
+     * @throws IllegalArgumentException If any of the arguments is null
+     * @throws DuplicateKeyException If two of the patients have the same social security number
+     * @throws IOException If an IO error is encountered
+     */
+    public static long write(File file, Collection<Patient> patients) throws IOException
+    {
+        if (file == null || patients == null) {
+            throw new IllegalArgumentException("The file and the patients can not be null!");
+        }
+        // The records are sorted too, so that reading the patients in order reads the file from start to end
+        List<Patient> sortedPatients = new ArrayList<>(patients);
+        sortedPatients.sort(Comparator.comparing(Patient::getSocialSecurityNumber));
+        return PatientSnapshotFile.write(file, sortedPatients.iterator());
+    }
+
+    /**
+     * Writes the given patients to the given file as a snapshot, with the records in the order of the patients.
+     * Only the social security number and the offset of each record are kept in memory, to sort the index
+     * @param file The file to write, it is replaced once the new snapshot is complete, not null
+     * @param patients The patients to write, can not contain null, not null
+     * @return The number of patients that were written
+     * @throws DuplicateKeyException If two of the patients have the same social security number
+     * @throws IOException If an IO error is encountered
+     */
+    private static long write(File file, Iterator<Patient> patients) throws IOException
+    {
+        Map<String, Integer> dictionaryNumbers = new HashMap<>();
+        List<String> dictionaryValues = new ArrayList<>();
+        List<IndexEntry> index = new ArrayList<>();
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        boolean written = false;
+        try (FileChannel channel = FileChannel.open(temporaryFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(channel), OUTPUT_BUFFER_SIZE));
+            output.write(new byte[HEADER_SIZE]);
+            long offset = HEADER_SIZE;
+            while (patients.hasNext()) {
+                Patient patient = patients.next();
+                index.add(new IndexEntry(patient.getSocialSecurityNumber(), offset));
+                offset += PatientSnapshotFile.writeString(output, patient.getFirstName());
+                offset += PatientSnapshotFile.writeString(output, patient.getLastName());
+                offset += PatientSnapshotFile.writeString(output, patient.getSocialSecurityNumber());
+                for (String value : new String[]{patient.getGeneralPractitioner(), patient.getDiagnosis()}) {
+                    output.writeInt(dictionaryNumbers.computeIfAbsent(value, newValue -> {
+                        dictionaryValues.add(newValue);
+                        return dictionaryValues.size() - 1;
+                    }));
+                    offset += Integer.BYTES;
+                }
+            }
+
+            index.sort(Comparator.comparing(entry -> entry.socialSecurityNumber));
+            for (int i = 1; i < index.size(); i++) {
+                if (index.get(i).socialSecurityNumber.equals(index.get(i - 1).socialSecurityNumber)) {
+                    throw new DuplicateKeyException("Two patients have the social security number "
+                            + index.get(i).socialSecurityNumber);
+                }
+            }
+
+            long dictionaryOffset = offset;
+            for (String value : dictionaryValues) {
+                offset += PatientSnapshotFile.writeString(output, value);
+            }
+            long indexOffset = offset;
+            if (indexOffset + (long) index.size() * Long.BYTES > Integer.MAX_VALUE) {
+                throw new IOException("The patients are too many to fit in a snapshot that can be mapped");
+            }
+            for (IndexEntry entry : index) {
+                output.writeLong(entry.offset);
+            }
+            output.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(index.size()).putInt(dictionaryValues.size())
+                    .putLong(dictionaryOffset).putLong(indexOffset).flip();
+            channel.write(header, 0);
+            channel.force(false);
+            written = true;
+        }
+        finally {
+            if (!written) {
+                Files.deleteIfExists(temporaryFile.toPath());
+            }
+        }
+        Files.move(temporaryFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return index.size();
+    }
+
+    /**
+     * Converts the given CSV file to a snapshot file. The records are streamed from the CSV file,
+     * so the records of the snapshot are in the order of the file, only its index is sorted
+     * @param csvFile The CSV file to read, can be compressed, can not be null
+     * @param snapshotFile The snapshot file to write, can not be null
+     * @return The number of patients that were converted
+     * @throws IllegalArgumentException If any of the files is null, or the CSV file is invalid
+     * @throws DuplicateKeyException If two records of the CSV file have the same social security number
+     * @throws IOException If an IO error is encountered
+     */
+    public static long convertFromCSV(File csvFile, File snapshotFile) throws IOException
+    {
+        if (csvFile == null || snapshotFile == null) {
+            throw new IllegalArgumentException("The files can not be null!");
+        }
+        try (Stream<Patient> patients = new CSVHandler().streamPatients(csvFile)) {
+            return PatientSnapshotFile.write(snapshotFile, patients.iterator());
+        }
+        catch (UncheckedIOException e) {
+            // The CSV file could not be read while it was streamed
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Writes the patients of the snapshot to the given CSV file, sorted by social security number
+     * @param csvFile The CSV file to write, it is compressed if its name ends with .gz, can not be null
+     * @return The number of patients that were written
+     * @throws IllegalArgumentException If the file is null
+     * @throws IOException If an IO error is encountered
+     */
+    public long convertToCSV(File csvFile) throws IOException
+    {
+        if (csvFile == null) {
+            throw new IllegalArgumentException("The file can not be null!");
+        }
+        return new CSVHandler().writePatients(csvFile, this.stream(), this.numberOfPatients, progress -> { });
+    }
+
+    /**
+     * Returns the snapshot file
+     * @return The snapshot file
+     */
+    public File getFile()
+    {
+        return this.file;
+    }
+
+    /**
+     * Returns the number of patients in the snapshot
+     * @return The number of patients as an int
+     */
+    public int getNumberOfPatients()
+    {
+        return this.numberOfPatients;
+    }
+
+    /**
+     * Returns the patient at the given position, in the order of their social security numbers.
+     * The patient is decoded the first time it is accessed
+     * @param index The position of the patient, from 0 to the number of patients
+     * @return The patient at the given position
+     * @throws IndexOutOfBoundsException If the index is out of range
+     */
+    public Patient getPatient(int index)
+    {
+        Patient patient = this.decodedPatients.get(index);
+        if (patient == null) {
+            patient = this.decodePatient(index);
+            // Another thread may decode the same patient at the same time, the first copy is kept
+            if (!this.decodedPatients.compareAndSet(index, null, patient)) {
+                patient = this.decodedPatients.get(index);
+            }
+        }
+        return patient;
+    }
+
+    /**
+     * Returns the patient with the given social security number, found by a binary search of the index
+     * that only decodes the social security numbers it compares
+     * @param socialSecurityNumber The social security number to look for, can not be null
+     * @return The patient with the given social security number, or null if there is none
+     * @throws IllegalArgumentException If the social security number is null
+     */
+    public Patient findPatient(String socialSecurityNumber)
+    {
+        if (socialSecurityNumber == null) {
+            throw new IllegalArgumentException("The social security number can not be null!");
+        }
+
+        ByteBuffer reader = this.buffer.duplicate();
+        int low = 0;
+        int high = this.numberOfPatients - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            reader.position(this.getRecordOffset(middle));
+            // Skips the first and the last name
+            for (int name = 0; name < 2; name++) {
+                int length = reader.getInt();
+                reader.position(reader.position() + length);
+            }
+            int comparison = PatientSnapshotFile.readString(reader).compareTo(socialSecurityNumber);
+            if (comparison < 0) {
+                low = middle + 1;
+            }
+            else if (comparison > 0) {
+                high = middle - 1;
+            }
+            else {
+                return this.getPatient(middle);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the patients of the snapshot to the given register in batches, sorted by social security number.
+     * The patients are decoded as they are added and are not kept by the snapshot, so a register that holds
+     * its patients outside the heap, like PatientRegisterColumnar, can be filled from a snapshot of millions
+     * of patients without parsing a CSV file
+     * @param register The register to add the patients to, can not be null
+     * @param batchSize The number of patients to add at a time, must be positive
+     * @param progressListener The listener to report the progress to after each batch, can not be null
+     * @return The number of patients that were added
+     * @throws IllegalArgumentException If the register or the listener is null, or the batch size is not positive
+     * @throws DuplicateKeyException If a patient of the snapshot is already in the register
+     * @throws java.util.concurrent.CancellationException If the listener stops the operation
+     */
+    public long addPatientsTo(PatientRegister register, int batchSize, ProgressListener progressListener)
+    {
+        if (register == null || batchSize <= 0 || progressListener == null) {
+            throw new IllegalArgumentException("The register and the listener can not be null "
+                    + "and the batch size must be positive!");
+        }
+
+        ProgressTracker tracker = new ProgressTracker(progressListener, -1, this.numberOfPatients);
+        int addedPatients = 0;
+        while (addedPatients < this.numberOfPatients) {
+            int batchEnd = (int) Math.min((long) addedPatients + batchSize, this.numberOfPatients);
+            List<Patient> batch = new ArrayList<>(batchEnd - addedPatients);
+            for (int i = addedPatients; i < batchEnd; i++) {
+                Patient patient = this.decodedPatients.get(i);
+                batch.add((patient != null) ? patient : this.decodePatient(i));
+            }
+            register.addPatients(batch);
+            addedPatients = batchEnd;
+            tracker.report(addedPatients);
+        }
+        tracker.reportDone(addedPatients);
+        return addedPatients;
+    }
+
+    /**
+     * Returns a List view of the patients of the snapshot, sorted by social security number.
+     * The patients are decoded as they are accessed
+     * @return An unmodifiable List of the patients
+     */
+    public List<Patient> asList()
+    {
+        return new PatientList();
+    }
+
+    /**
+     * Returns a Stream of the patients of the snapshot, sorted by social security number
+     * @return A Stream of the patients
+     */
+    public Stream<Patient> stream()
+    {
+        return this.asList().stream();
+    }
+
+    /**
+     * Decodes the record at the given position, without keeping the patient
+     * @param index The position of the record
+     * @return A new Patient with the fields of the record
+     * @throws IndexOutOfBoundsException If the index is out of range
+     */
+    private Patient decodePatient(int index)
+    {
+        ByteBuffer reader = this.buffer.duplicate();
+        reader.position(this.getRecordOffset(index));
+        String firstName = PatientSnapshotFile.readString(reader);
+        String lastName = PatientSnapshotFile.readString(reader);
+        String socialSecurityNumber = PatientSnapshotFile.readString(reader);
+        return new Patient.PatientBuilder(firstName, lastName, socialSecurityNumber)
+                .withGeneralPractitioner(this.dictionary[reader.getInt()])
+                .withDiagnosis(this.dictionary[reader.getInt()])
+                .build();
+    }
+
+    /**
+     * Returns the offset of the record at the given position
+     * @param index The position of the record
+     * @return The offset of the record in the file
+     * @throws IndexOutOfBoundsException If the index is out of range
+     */
+    private int getRecordOffset(int index)
+    {
+        if (index < 0 || index >= this.numberOfPatients) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of range for "
+                    + this.numberOfPatients + " patients");
+        }
+        return (int) this.buffer.getLong((int) (this.indexOffset + (long) index * Long.BYTES));
+    }
+
+    /**
+     * Writes the given String as its length in UTF-8 bytes followed by the bytes
+     * @param output The stream to write to, not null
+     * @param value The String to write, not null
+     * @return The number of bytes that were written
+     * @throws IOException If an IO error is encountered
+     */
+    private static int writeString(DataOutputStream output, String value) throws IOException
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+        return Integer.BYTES + bytes.length;
+    }
+
+    /**
+     * Reads a String written by writeString() at the position of the given buffer and moves past it
+     * @param reader The buffer to read from, not null
+     * @return The String that was read
+     */
+    private static String readString(ByteBuffer reader)
+    {
+        byte[] bytes = new byte[reader.getInt()];
+        reader.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The social security number and the offset of a record, sorted to write the index
+     */
+    private static final class IndexEntry
+    {
+        private final String socialSecurityNumber;
+        private final long offset;
+
+        private IndexEntry(String socialSecurityNumber, long offset)
+        {
+            this.socialSecurityNumber = socialSecurityNumber;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * A read-only List view of the patients that decodes them as they are accessed
+     */
+    private final class PatientList extends AbstractList<Patient> implements RandomAccess
+    {
+        @Override
+        public Patient get(int index)
+        {
+            return PatientSnapshotFile.this.getPatient(index);
+        }
+
+        @Override
+        public int size()
+        {
+            return PatientSnapshotFile.this.numberOfPatients;
+        }
+    }
+}
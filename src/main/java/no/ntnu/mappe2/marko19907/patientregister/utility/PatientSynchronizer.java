@@ -0,0 +1,194 @@
+package no.ntnu.mappe2.marko19907.patientregister.utility;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientField;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegister;
+import no.ntnu.mappe2.marko19907.patientregister.model.UpsertResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Class PatientSynchronizer is responsible for bringing a register up to date with a full extract in a CSV file.
+ * The patients of the file are upserted into the register in batches, so only the new and changed patients
+ * are written, and the patients that are not in the file can be deleted from the register.
+ * The progress can be reported to a listener, that can stop the synchronization between two batches
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public class PatientSynchronizer
+{
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final CSVHandler csvHandler;
+    private final int batchSize;
+
+    /**
+     * Constructor for PatientSynchronizer objects
+     */
+    public PatientSynchronizer()
+    {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor for PatientSynchronizer objects with a given batch size
+     * @param batchSize The number of patients that are upserted at a time, must be positive
+     * @throws IllegalArgumentException If the batch size is not positive
+     */
+    public PatientSynchronizer(int batchSize)
+    {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive!");
+        }
+        this.csvHandler = new CSVHandler();
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Upserts the patients of the given CSV file into the given register, and optionally deletes
+     * the patients of the register that are not in the file.
+     * The file is streamed, the social security numbers of the file are kept as 64-bit fingerprints
+     * to find the missing patients, so the memory use is about 8 bytes per record.
+     * Nothing is deleted if the file can not be read to the end.
+     * A missing patient whose fingerprint happens to equal the fingerprint of a patient in the file is kept
+     * @param fileToRead The full extract to read from, can not be null
+     * @param register The register to bring up to date, can not be null
+     * @param deleteMissing True to delete the patients of the register that are not in the file
+     * @return The number of patients that were inserted, updated, left unchanged and deleted
+     * @throws IllegalArgumentException If any of the arguments is null or the CSV header of the file is invalid
+     * @throws IOException If an IO error is encountered
+     * @throws InterruptedException If the calling thread is interrupted
+     */
+    public UpsertResult synchronize(File fileToRead, PatientRegister register, boolean deleteMissing)
+            throws IOException, InterruptedException
+    {
+        return this.synchronize(fileToRead, register, deleteMissing, progress -> { });
+    }
+
+    /**
+     * Upserts the patients of the given CSV file into the given register, and optionally deletes
+     * the patients of the register that are not in the file, as synchronize(File, PatientRegister, boolean) does.
+     * The progress is reported to the given listener in bytes of the file while the patients are upserted,
+     * then in deleted patients. If the listener stops the synchronization while the patients are upserted,
+     * the batch that was being upserted is done first and nothing is deleted
+     * @param fileToRead The full extract to read from, can not be null
+     * @param register The register to bring up to date, can not be null
+     * @param deleteMissing True to delete the patients of the register that are not in the file
+     * @param progressListener The listener to report the progress to, can not be null
+     * @return The number of patients that were inserted, updated, left unchanged and deleted
+     * @throws IllegalArgumentException If any of the arguments is null or the CSV header of the file is invalid
+     * @throws IOException If an IO error is encountered
+     * @throws InterruptedException If the calling thread is interrupted
+     * @throws java.util.concurrent.CancellationException If the listener stopped the synchronization
+     */
+    public UpsertResult synchronize(File fileToRead, PatientRegister register, boolean deleteMissing,
+                                    ProgressListener progressListener)
+            throws IOException, InterruptedException
+    {
+        if (fileToRead == null || register == null || progressListener == null) {
+            throw new IllegalArgumentException("The file, the register and the listener can not be null!");
+        }
+
+        BatchUpserter upserter = new BatchUpserter(register, deleteMissing);
+        this.csvHandler.importPatients(fileToRead, this.batchSize, upserter, progressListener);
+        UpsertResult result = upserter.result;
+
+        if (deleteMissing) {
+            long[] fingerprints = Arrays.copyOf(upserter.fingerprints, upserter.numberOfFingerprints);
+            Arrays.sort(fingerprints);
+
+            // The missing patients are collected first, the register is not changed while it is streamed
+            List<String> missingSocialSecurityNumbers = new ArrayList<>();
+            try (Stream<Patient> patients = register.streamPatients()) {
+                Iterator<Patient> iterator = patients.iterator();
+                while (iterator.hasNext()) {
+                    String socialSecurityNumber = iterator.next().getSocialSecurityNumber();
+                    if (Arrays.binarySearch(fingerprints, PatientSynchronizer.fingerprint(socialSecurityNumber)) < 0) {
+                        missingSocialSecurityNumbers.add(socialSecurityNumber);
+                    }
+                }
+            }
+
+            ProgressTracker tracker = new ProgressTracker(progressListener, -1, missingSocialSecurityNumbers.size());
+            long deletedPatients = 0;
+            for (String socialSecurityNumber : missingSocialSecurityNumbers) {
+                tracker.report(deletedPatients);
+                // The streamed patients may be copies, the register removes its own instances
+                List<Patient> foundPatients = register.findPatients(
+                        PatientField.SOCIAL_SECURITY_NUMBER, socialSecurityNumber);
+                for (Patient patient : foundPatients) {
+                    if (register.removePatient(patient)) {
+                        deletedPatients++;
+                    }
+                }
+            }
+            tracker.reportDone(deletedPatients);
+            result = result.plus(new UpsertResult(0, 0, 0, deletedPatients));
+        }
+        return result;
+    }
+
+    /**
+     * Returns a 64-bit FNV-1a fingerprint of the given social security number
+     * @param socialSecurityNumber The social security number, not null
+     * @return The fingerprint of the social security number
+     */
+    private static long fingerprint(String socialSecurityNumber)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < socialSecurityNumber.length(); i++) {
+            hash = (hash ^ socialSecurityNumber.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Upserts each batch of patients into a register and sums up the results,
+     * keeping the fingerprints of the social security numbers if they are needed
+     */
+    private static final class BatchUpserter implements Consumer<List<Patient>>
+    {
+        private final PatientRegister register;
+        private final boolean keepFingerprints;
+        private UpsertResult result;
+        private long[] fingerprints;
+        private int numberOfFingerprints;
+
+        /**
+         * Constructor for BatchUpserter objects
+         * @param register The register to upsert the patients into, not null
+         * @param keepFingerprints True to keep the fingerprints of the social security numbers
+         */
+        private BatchUpserter(PatientRegister register, boolean keepFingerprints)
+        {
+            this.register = register;
+            this.keepFingerprints = keepFingerprints;
+            this.result = new UpsertResult(0, 0, 0, 0);
+            this.fingerprints = new long[keepFingerprints ? 1024 : 0];
+        }
+
+        @Override
+        public void accept(List<Patient> batch)
+        {
+            this.result = this.result.plus(this.register.upsertPatients(batch));
+            if (this.keepFingerprints) {
+                if (this.numberOfFingerprints + batch.size() > this.fingerprints.length) {
+                    this.fingerprints = Arrays.copyOf(this.fingerprints,
+                            Math.max(this.fingerprints.length * 2, this.numberOfFingerprints + batch.size()));
+                }
+                for (Patient patient : batch) {
+                    this.fingerprints[this.numberOfFingerprints++] =
+                            PatientSynchronizer.fingerprint(patient.getSocialSecurityNumber());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package no.ntnu.mappe2.marko19907.patientregister.utility;
+
+/**
+ * Class Progress holds the progress of an import or export at a point in time,
+ * the number of bytes and records processed and the time it took
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+public final class Progress
+{
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private final long bytesProcessed;
+    private final long totalBytes;
+    private final long recordsProcessed;
+    private final long totalRecords;
+    private final long elapsedNanos;
+
+    /**
+     * Constructor for Progress objects
+     * @param bytesProcessed The number of bytes of the file that are read or written
+     * @param totalBytes The size of the file, or -1 if it is not known
+     * @param recordsProcessed The number of records that are read or written
+     * @param totalRecords The number of records in total, or -1 if it is not known
+     * @param elapsedNanos The time since the operation started, in nanoseconds
+     */
+    public Progress(long bytesProcessed, long totalBytes, long recordsProcessed, long totalRecords,
+                    long elapsedNanos)
+    {
+        this.bytesProcessed = bytesProcessed;
+        this.totalBytes = totalBytes;
+        this.recordsProcessed = recordsProcessed;
+        this.totalRecords = totalRecords;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the number of bytes of the file that are read or written
+     * @return The number of bytes processed
+     */
+    public long getBytesProcessed()
+    {
+        return this.bytesProcessed;
+    }
+
+    /**
+     * Returns the size of the file that is read, or -1 if it is not known
+     * @return The size of the file in bytes, or -1
+     */
+    public long getTotalBytes()
+    {
+        return this.totalBytes;
+    }
+
+    /**
+     * Returns the number of records that are read or written
+     * @return The number of records processed
+     */
+    public long getRecordsProcessed()
+    {
+        return this.recordsProcessed;
+    }
+
+    /**
+     * Returns the number of records in total, or -1 if it is not known
+     * @return The number of records in total, or -1
+     */
+    public long getTotalRecords()
+    {
+        return this.totalRecords;
+    }
+
+    /**
+     * Returns the time since the operation started
+     * @return The elapsed time in nanoseconds
+     */
+    public long getElapsedNanos()
+    {
+        return this.elapsedNanos;
+    }
+
+    /**
+     * Returns the fraction of the operation that is done, by the bytes if the size of the file is known,
+     * otherwise by the records if the number of records is known
+     * @return The fraction that is done, from 0 to 1, or -1 if neither of the totals is known
+     */
+    public double getFractionDone()
+    {
+        if (this.totalBytes >= 0) {
+            return (this.totalBytes == 0) ? 1 : Math.min(1, (double) this.bytesProcessed / this.totalBytes);
+        }
+        if (this.totalRecords >= 0) {
+            return (this.totalRecords == 0) ? 1 : Math.min(1, (double) this.recordsProcessed / this.totalRecords);
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the average number of records processed per second so far
+     * @return The number of records per second, or 0 if no time has passed
+     */
+    public double getRecordsPerSecond()
+    {
+        return (this.elapsedNanos > 0) ? this.recordsProcessed * NANOS_PER_SECOND / this.elapsedNanos : 0;
+    }
+
+    /**
+     * Returns the estimated time until the operation is done, if it keeps going at the average rate so far
+     * @return The estimated number of seconds left, or -1 if it can not be estimated yet
+     */
+    public long getEstimatedSecondsRemaining()
+    {
+        double fractionDone = this.getFractionDone();
+        if (fractionDone <= 0) {
+            return -1;
+        }
+        return Math.round(this.elapsedNanos * (1 - fractionDone) / fractionDone / NANOS_PER_SECOND);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder description = new StringBuilder()
+                .append(this.recordsProcessed).append(" records, ")
+                .append(Math.round(this.getRecordsPerSecond())).append(" records/s, ")
+                .append(String.format("%.1f", this.bytesProcessed / BYTES_PER_MEGABYTE));
+        if (this.totalBytes >= 0) {
+            description.append(String.format(" of %.1f", this.totalBytes / BYTES_PER_MEGABYTE));
+        }
+        description.append(" MB");
+
+        long secondsRemaining = this.getEstimatedSecondsRemaining();
+        if (secondsRemaining >= 0) {
+            description.append(", about ").append(secondsRemaining).append(" s left");
+        }
+        return description.toString();
+    }
+}
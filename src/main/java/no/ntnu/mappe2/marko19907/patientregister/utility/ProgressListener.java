@@ -0,0 +1,19 @@
+package no.ntnu.mappe2.marko19907.patientregister.utility;
+
+/**
+ * ProgressListener represents a listener that is notified of the progress of a long running import or export
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+@FunctionalInterface
+public interface ProgressListener
+{
+    /**
+     * Called on the thread that runs the operation, between the batches of the operation.
+     * The operation can be stopped by throwing a CancellationException,
+     * it is then thrown from the operation once the work on the current batch is done
+     * @param progress The progress of the operation so far
+     */
+    void progressed(Progress progress);
+}
@@ -0,0 +1,147 @@
+package no.ntnu.mappe2.marko19907.patientregister.utility;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class ProgressTracker counts the bytes of an import or export and reports its progress to a ProgressListener,
+ * at most once every REPORT_INTERVAL, so that a listener that updates a user interface is not flooded.
+ * The bytes may be counted on another thread than the one that reports the progress
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+final class ProgressTracker
+{
+    private static final long REPORT_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ProgressListener listener;
+    private final long totalBytes;
+    private final long totalRecords;
+    private final long startTime;
+    // Only written by the thread that reads or writes the file
+    private volatile long bytesProcessed;
+    private long lastReport;
+
+    /**
+     * Constructor for ProgressTracker objects
+     * @param listener The listener to report the progress to, not null
+     * @param totalBytes The size of the file, or -1 if it is not known
+     * @param totalRecords The number of records in total, or -1 if it is not known
+     */
+    ProgressTracker(ProgressListener listener, long totalBytes, long totalRecords)
+    {
+        this.listener = listener;
+        this.totalBytes = totalBytes;
+        this.totalRecords = totalRecords;
+        this.startTime = System.nanoTime();
+        this.lastReport = this.startTime;
+    }
+
+    /**
+     * Adds the given number of bytes to the bytes processed
+     * @param bytes The number of bytes that were read or written
+     */
+    void addBytes(long bytes)
+    {
+        this.bytesProcessed += bytes;
+    }
+
+    /**
+     * Returns an InputStream that counts the bytes that are read from the given stream
+     * @param inputStream The stream to count the bytes of, not null
+     * @return The counting InputStream
+     */
+    InputStream countBytes(InputStream inputStream)
+    {
+        return new FilterInputStream(inputStream)
+        {
+            @Override
+            public int read() throws IOException
+            {
+                int value = super.read();
+                if (value >= 0) {
+                    ProgressTracker.this.addBytes(1);
+                }
+                return value;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException
+            {
+                int bytesRead = super.read(bytes, offset, length);
+                if (bytesRead > 0) {
+                    ProgressTracker.this.addBytes(bytesRead);
+                }
+                return bytesRead;
+            }
+        };
+    }
+
+    /**
+     * Returns an OutputStream that counts the bytes that are written to the given stream
+     * @param outputStream The stream to count the bytes of, not null
+     * @return The counting OutputStream
+     */
+    OutputStream countBytes(OutputStream outputStream)
+    {
+        return new FilterOutputStream(outputStream)
+        {
+            @Override
+            public void write(int value) throws IOException
+            {
+                this.out.write(value);
+                ProgressTracker.this.addBytes(1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException
+            {
+                this.out.write(bytes, offset, length);
+                ProgressTracker.this.addBytes(length);
+            }
+        };
+    }
+
+    /**
+     * Reports the progress to the listener if REPORT_INTERVAL has passed since the last report
+     * @param recordsProcessed The number of records that are read or written so far
+     * @throws java.util.concurrent.CancellationException If the listener stops the operation
+     */
+    void report(long recordsProcessed)
+    {
+        long now = System.nanoTime();
+        if (now - this.lastReport >= REPORT_INTERVAL) {
+            this.lastReport = now;
+            this.listener.progressed(this.getProgress(recordsProcessed, now));
+        }
+    }
+
+    /**
+     * Reports the final progress to the listener, whenever the last report was
+     * @param recordsProcessed The number of records that were read or written
+     * @throws java.util.concurrent.CancellationException If the listener stops the operation
+     */
+    void reportDone(long recordsProcessed)
+    {
+        long now = System.nanoTime();
+        this.lastReport = now;
+        this.listener.progressed(this.getProgress(recordsProcessed, now));
+    }
+
+    /**
+     * Returns the progress at the given time
+     * @param recordsProcessed The number of records that are read or written so far
+     * @param now The current value of System.nanoTime()
+     * @return The progress at the given time
+     */
+    private Progress getProgress(long recordsProcessed, long now)
+    {
+        return new Progress(this.bytesProcessed, this.totalBytes, recordsProcessed, this.totalRecords,
+                now - this.startTime);
+    }
+}
@@ -0,0 +1,170 @@
+package no.ntnu.mappe2.marko19907.patientregister.utility;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class ThreadedOutputStream is an OutputStream that writes to another OutputStream on a separate thread.
+ * The bytes are collected in chunks that are handed to the writer thread through a bounded queue,
+ * so that the work of the other stream, for example compression, overlaps with the work of the caller.
+ * An error of the writer thread is thrown by the next write or by close()
+ *
+ * @author Marko
+ * @version 17-10-2026
+ */
+final class ThreadedOutputStream extends OutputStream
+{
+    private static final int CHUNK_SIZE = 256 * 1024;
+    private static final int QUEUE_CAPACITY = 4;
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+    // Marks the end of the stream on the queue, compared by identity
+    private static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
+
+    private final BlockingQueue<ByteBuffer> queue;
+    private final FutureTask<Void> writer;
+    private byte[] buffer;
+    private int count;
+    private boolean closed;
+
+    /**
+     * Constructor for ThreadedOutputStream objects
+     * @param out The stream to write to on the writer thread, it is closed when this stream is closed, not null
+     * @param threadName The name of the writer thread, not null
+     */
+    ThreadedOutputStream(OutputStream out, String threadName)
+    {
+        this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.writer = new FutureTask<>(() -> {
+            try (out) {
+                ByteBuffer chunk = this.queue.take();
+                while (chunk != END_OF_STREAM) {
+                    out.write(chunk.array(), 0, chunk.limit());
+                    chunk = this.queue.take();
+                }
+            }
+            return null;
+        });
+        this.buffer = new byte[CHUNK_SIZE];
+
+        Thread writerThread = new Thread(this.writer, threadName);
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        if (this.count == this.buffer.length) {
+            this.sendBuffer();
+        }
+        this.buffer[this.count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException
+    {
+        int position = offset;
+        int remaining = length;
+        while (remaining > 0) {
+            if (this.count == this.buffer.length) {
+                this.sendBuffer();
+            }
+            int bytesToCopy = Math.min(remaining, this.buffer.length - this.count);
+            System.arraycopy(bytes, position, this.buffer, this.count, bytesToCopy);
+            this.count += bytesToCopy;
+            position += bytesToCopy;
+            remaining -= bytesToCopy;
+        }
+    }
+
+    /**
+     * Hands the bytes written so far to the writer thread, without waiting for them to be written
+     * @throws IOException If the writer thread failed
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        this.sendBuffer();
+    }
+
+    /**
+     * Hands the remaining bytes to the writer thread and waits for it to write them and close its stream.
+     * If that fails, the writer thread is stopped and the other stream is closed all the same
+     * @throws IOException If the writer thread failed or the calling thread is interrupted while waiting
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (!this.closed) {
+            this.closed = true;
+            boolean written = false;
+            try {
+                this.sendBuffer();
+                this.put(END_OF_STREAM);
+                this.writer.get();
+                written = true;
+            }
+            catch (ExecutionException e) {
+                throw CSVHandler.rethrowCause(e);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the writer thread");
+            }
+            finally {
+                if (!written) {
+                    // Stops a writer thread that is still waiting for chunks, which closes the other stream
+                    this.writer.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands the buffer to the writer thread if it has any bytes and starts a new one
+     * @throws IOException If the writer thread failed or the calling thread is interrupted while waiting
+     */
+    private void sendBuffer() throws IOException
+    {
+        if (this.count > 0) {
+            try {
+                this.put(ByteBuffer.wrap(this.buffer, 0, this.count));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the writer thread");
+            }
+            this.buffer = new byte[CHUNK_SIZE];
+            this.count = 0;
+        }
+    }
+
+    /**
+     * Puts the given chunk on the queue, and throws the error of the writer thread if it stopped
+     * rather than waiting for room on the queue forever
+     * @param chunk The chunk to put on the queue, not null
+     * @throws IOException If the writer thread failed
+     * @throws InterruptedException If the calling thread is interrupted while waiting
+     */
+    private void put(ByteBuffer chunk) throws IOException, InterruptedException
+    {
+        while (!this.queue.offer(chunk, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (this.writer.isDone()) {
+                try {
+                    this.writer.get();
+                }
+                catch (ExecutionException e) {
+                    throw CSVHandler.rethrowCause(e);
+                }
+                throw new IOException("The writer thread stopped");
+            }
+        }
+    }
+}
@@ -1,17 +1,26 @@
 package no.ntnu.mappe2.marko19907.patientregister.view;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
+import javafx.collections.ListChangeListener;
+import javafx.collections.transformation.SortedList;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.Separator;
 import javafx.scene.control.SeparatorMenuItem;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
 import javafx.scene.control.ToolBar;
 import javafx.scene.control.Tooltip;
 import javafx.scene.control.cell.PropertyValueFactory;
@@ -26,28 +35,43 @@ import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import no.ntnu.mappe2.marko19907.patientregister.controller.Controller;
 import no.ntnu.mappe2.marko19907.patientregister.exception.DuplicateKeyException;
 import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.UpsertResult;
 import no.ntnu.mappe2.marko19907.patientregister.utility.ImageLoader;
+import no.ntnu.mappe2.marko19907.patientregister.utility.ImportReport;
 import no.ntnu.mappe2.marko19907.patientregister.utility.NodeFactory;
 
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
 
 /**
  * Class PatientRegisterGUI represents the main window in the application.
  *
  * @author Marko
- * @version 03-05-2021
+ * @version 17-10-2026
  */
 public class PatientRegisterGUI extends Application
 {
+    private static final Duration SEARCH_DELAY = Duration.millis(150);
+
     private final Controller controller;
     private final NodeFactory nodeFactory;
 
     private final Label statusLabel;
+    private final ProgressBar progressBar;
+    private final Label progressLabel;
+    private final Button cancelButton;
+    private final TextField searchField;
+    private final List<Task<?>> progressTasks;
+    private String statusMessage;
 
     /**
      * PatientRegisterGUI constructor
@@ -58,6 +82,12 @@ public class PatientRegisterGUI extends Application
         this.nodeFactory = new NodeFactory();
 
         this.statusLabel = (Label) this.nodeFactory.createLabel();
+        this.progressBar = (ProgressBar) this.nodeFactory.createProgressBar();
+        this.progressLabel = (Label) this.nodeFactory.createLabel();
+        this.cancelButton = (Button) this.nodeFactory.createButton();
+        this.searchField = (TextField) this.nodeFactory.createTextField();
+        this.progressTasks = new ArrayList<>();
+        this.statusMessage = "";
     }
 
     public static void main(String[] args)
@@ -125,10 +155,25 @@ public class PatientRegisterGUI extends Application
 
         patientTableView.getColumns().addAll(Arrays.asList(nameColumn, lastNameColumn, socialSecurityNumberColumn,
                 generalPractitionerColumn, diagnosisColumn));
-        patientTableView.setItems(this.controller.getPatientObservableList());
+        // Sort a view of the list instead of the list itself, so the controller can keep updating it
+        SortedList<Patient> sortedPatients = new SortedList<>(this.controller.getPatientObservableList());
+        sortedPatients.comparatorProperty().bind(patientTableView.comparatorProperty());
+        patientTableView.setItems(sortedPatients);
         //Set a default sort column
         patientTableView.getSortOrder().add(nameColumn);
 
+        // Show the search results, in the order of how well they match, while there is a search query
+        this.searchField.textProperty().addListener((observable, oldText, newText) -> {
+            if (newText.isBlank()) {
+                patientTableView.setItems(sortedPatients);
+                patientTableView.getSortOrder().setAll(Collections.singletonList(nameColumn));
+            }
+            else if (patientTableView.getItems() == sortedPatients) {
+                patientTableView.getSortOrder().clear();
+                patientTableView.setItems(this.controller.getSearchResultList());
+            }
+        });
+
         return patientTableView;
     }
 
@@ -197,7 +242,23 @@ public class PatientRegisterGUI extends Application
             deletePatientButton.setGraphic(deletePersonIcon);
         }
 
-        toolBar.getItems().addAll(addPatientButton, deletePatientButton, editPatientButton);
+        this.searchField.setPromptText("Search by name or social security number");
+        this.searchField.setPrefWidth(260);
+        // Wait for a pause in the typing before searching, instead of searching on every key stroke
+        PauseTransition searchDelay = new PauseTransition(SEARCH_DELAY);
+        searchDelay.setOnFinished(event -> this.controller.doSearch(this.searchField.getText()));
+        this.searchField.textProperty().addListener((observable, oldText, newText) -> {
+            if (newText.isBlank()) {
+                searchDelay.stop();
+                this.controller.doSearch(newText);
+            }
+            else {
+                searchDelay.playFromStart();
+            }
+        });
+
+        toolBar.getItems().addAll(addPatientButton, deletePatientButton, editPatientButton,
+                new Separator(), this.searchField);
         return toolBar;
     }
 
@@ -222,17 +283,71 @@ public class PatientRegisterGUI extends Application
     }
 
     /**
-     * Sets up the HBox that contains the bottom status Label
+     * Sets up the HBox that contains the bottom status Label,
+     * and the progress bar and cancel button of the import or export in progress
      * @return An already set-up HBox that contains the bottom status Label
      */
     private HBox setupBottomLabel()
     {
         HBox statusBox = (HBox) this.nodeFactory.createHBox();
         statusBox.setStyle("-fx-background-color: #b6b6b6");
-        statusBox.getChildren().add(this.statusLabel);
+        statusBox.setAlignment(Pos.CENTER_LEFT);
+        statusBox.setSpacing(5);
+
+        this.cancelButton.setText("Cancel");
+        for (Node node : List.of(this.progressBar, this.progressLabel, this.cancelButton)) {
+            node.managedProperty().bind(node.visibleProperty());
+            node.setVisible(false);
+        }
+        statusBox.getChildren().addAll(this.statusLabel, this.progressBar, this.progressLabel, this.cancelButton);
+
+        this.controller.getRunningTasks().addListener(
+                (ListChangeListener<Task<?>>) change -> this.updateStatusLabel());
         return statusBox;
     }
 
+    /**
+     * Shows the progress of the given task in the bottom status bar, with a button that cancels it.
+     * The tasks run one at a time, so the progress of the first task that is not done yet is shown
+     * @param task The task to show the progress of, can not be null
+     */
+    private void showProgress(Task<?> task)
+    {
+        this.progressTasks.add(task);
+        task.stateProperty().addListener((observable, oldState, newState) -> {
+            if (newState == Worker.State.SUCCEEDED || newState == Worker.State.FAILED
+                    || newState == Worker.State.CANCELLED) {
+                this.progressTasks.remove(task);
+                this.updateProgressBar();
+            }
+        });
+        this.updateProgressBar();
+    }
+
+    /**
+     * Binds the progress bar, its label and the cancel button to the first task of the progress tasks,
+     * or hides them if there are no progress tasks
+     */
+    private void updateProgressBar()
+    {
+        this.progressBar.progressProperty().unbind();
+        this.progressLabel.textProperty().unbind();
+
+        boolean inProgress = !this.progressTasks.isEmpty();
+        if (inProgress) {
+            Task<?> task = this.progressTasks.get(0);
+            this.progressBar.progressProperty().bind(task.progressProperty());
+            this.progressLabel.textProperty().bind(task.messageProperty());
+            this.cancelButton.setOnAction(event -> task.cancel());
+        }
+        else {
+            this.cancelButton.setOnAction(null);
+        }
+        this.progressBar.setVisible(inProgress);
+        this.progressLabel.setVisible(inProgress);
+        this.cancelButton.setVisible(inProgress);
+    }
+
     /**
      * Sets the given status message to the bottom status label
      * @param message The message to set, can not be null
@@ -240,8 +355,26 @@ public class PatientRegisterGUI extends Application
     private void setStatusMessage(String message)
     {
         if (message != null) {
-            this.statusLabel.setText("Status: " + message);
+            this.statusMessage = message;
+            this.updateStatusLabel();
+        }
+    }
+
+    /**
+     * Updates the bottom status label with the status message and the operations running in the background
+     */
+    private void updateStatusLabel()
+    {
+        StringBuilder status = new StringBuilder("Status: ").append(this.statusMessage);
+
+        List<Task<?>> runningTasks = this.controller.getRunningTasks();
+        if (!runningTasks.isEmpty()) {
+            status.append(" | In progress: ");
+            status.append(runningTasks.stream()
+                    .map(Task::getTitle)
+                    .collect(Collectors.joining(", ")));
         }
+        this.statusLabel.setText(status.toString());
     }
 
     /**
@@ -257,22 +390,91 @@ public class PatientRegisterGUI extends Application
             this.setStatusMessage("Import started");
 
             try {
-                boolean success = this.controller.doImportCSVFile();
-                if (success) {
-                    this.setStatusMessage("Import successful");
-                }
+                Task<Boolean> importTask = this.controller.doImportCSVFile();
+                this.showProgress(importTask);
+                importTask.setOnSucceeded(taskEvent -> {
+                    if (Boolean.TRUE.equals(importTask.getValue())) {
+                        this.setStatusMessage("Import successful");
+                    }
+                });
+                importTask.setOnCancelled(taskEvent -> this.setStatusMessage("Import cancelled"));
+                importTask.setOnFailed(taskEvent -> {
+                    Throwable exception = importTask.getException();
+                    if (exception instanceof DuplicateKeyException) {
+                        this.setStatusMessage("Duplicate entries detected, import cancelled . . .");
+                    }
+                    else if (exception instanceof IllegalArgumentException) {
+                        this.setStatusMessage("The CSV file header is invalid, import failed . . .");
+                    }
+                    else {
+                        this.setStatusMessage("Import failed");
+                    }
+                });
             }
             catch (CancellationException e) {
                 this.setStatusMessage("Import cancelled");
             }
-            catch (IllegalArgumentException e) {
-                this.setStatusMessage("The CSV file header is invalid, import failed . . .");
+            catch (RejectedExecutionException e) {
+                this.setStatusMessage("Too many operations in progress, import cancelled . . .");
             }
-            catch (DuplicateKeyException e) {
-                this.setStatusMessage("Duplicate entries detected, import cancelled . . .");
+        });
+
+        MenuItem importSkippingErrors = new MenuItem("Import from .CVS, skipping invalid rows");
+        importSkippingErrors.setOnAction(event -> {
+            this.setStatusMessage("Import started");
+
+            try {
+                Task<ImportReport> importTask = this.controller.doImportCSVFileSkippingErrors();
+                importTask.setOnSucceeded(taskEvent -> {
+                    ImportReport report = importTask.getValue();
+                    if (report.getSkippedRecords() == 0) {
+                        this.setStatusMessage(report.toString());
+                    }
+                    else {
+                        this.setStatusMessage(report + ", see " + report.getErrorReportFile().getName());
+                    }
+                });
+                importTask.setOnCancelled(taskEvent ->
+                        this.setStatusMessage("Import stopped, import the file again to resume"));
+                importTask.setOnFailed(taskEvent -> {
+                    if (importTask.getException() instanceof IllegalArgumentException) {
+                        this.setStatusMessage("The CSV file header is invalid, import failed . . .");
+                    }
+                    else {
+                        this.setStatusMessage("Import failed, import the file again to resume");
+                    }
+                });
+            }
+            catch (CancellationException e) {
+                this.setStatusMessage("Import cancelled");
+            }
+            catch (RejectedExecutionException e) {
+                this.setStatusMessage("Too many operations in progress, import cancelled . . .");
+            }
+        });
+
+        MenuItem synchronizeWithCVS = new MenuItem("Synchronize with .CVS extract");
+        synchronizeWithCVS.setOnAction(event -> {
+            try {
+                Task<UpsertResult> synchronizeTask = this.controller.doSynchronizeWithCSVFile();
+                this.setStatusMessage("Synchronization started");
+                synchronizeTask.setOnSucceeded(taskEvent ->
+                        this.setStatusMessage(synchronizeTask.getValue().toString()));
+                synchronizeTask.setOnCancelled(taskEvent -> this.setStatusMessage("Synchronization cancelled"));
+                synchronizeTask.setOnFailed(taskEvent -> {
+                    if (synchronizeTask.getException() instanceof IllegalArgumentException) {
+                        this.setStatusMessage("The CSV file header is invalid, synchronization failed . . .");
+                    }
+                    else {
+                        this.setStatusMessage("Synchronization failed");
+                    }
+                });
+            }
+            catch (CancellationException e) {
+                this.setStatusMessage("Synchronization cancelled");
             }
-            catch (IOException e) {
-                this.setStatusMessage("Import failed");
+            catch (RejectedExecutionException e) {
+                this.setStatusMessage("Too many operations in progress, synchronization cancelled . . .");
             }
         });
 
@@ -281,14 +483,17 @@ public class PatientRegisterGUI extends Application
             this.setStatusMessage("Export started");
 
             try {
-                this.controller.doExportToCSV();
-                this.setStatusMessage("Export successful");
+                Task<Void> exportTask = this.controller.doExportToCSV();
+                this.showProgress(exportTask);
+                exportTask.setOnSucceeded(taskEvent -> this.setStatusMessage("Export successful"));
+                exportTask.setOnCancelled(taskEvent -> this.setStatusMessage("Export cancelled"));
+                exportTask.setOnFailed(taskEvent -> this.setStatusMessage("Export failed"));
             }
             catch (CancellationException e) {
                 this.setStatusMessage("Export cancelled");
             }
-            catch (IOException e) {
-                this.setStatusMessage("Export failed");
+            catch (RejectedExecutionException e) {
+                this.setStatusMessage("Too many operations in progress, export cancelled . . .");
             }
         });
 
@@ -297,7 +502,8 @@ public class PatientRegisterGUI extends Application
         MenuItem exitButton = new MenuItem("Exit");
         exitButton.setOnAction(this.controller::doQuit);
 
-        fileMenu.getItems().addAll(importFromCVS, exportToCVS, separator, exitButton);
+        fileMenu.getItems().addAll(importFromCVS, importSkippingErrors, synchronizeWithCVS, exportToCVS,
+                separator, exitButton);
         return fileMenu;
     }
 
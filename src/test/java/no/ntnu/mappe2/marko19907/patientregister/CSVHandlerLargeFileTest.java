@@ -0,0 +1,170 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientField;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterDB;
+import no.ntnu.mappe2.marko19907.patientregister.utility.CSVHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Imports a multi-GB synthetic CSV file and exports a large database register with a small heap,
+ * only run with the large-file profile:
+ * mvn test -P large-file
+ */
+public class CSVHandlerLargeFileTest
+{
+    private static final File largeFile = new File("target/largeFile.csv");
+    private static final long FILE_SIZE = Long.getLong("import.file.megabytes", 2048) * 1024 * 1024;
+    private static final long DATABASE_FILE_SIZE = Long.getLong("import.database.megabytes", 128) * 1024 * 1024;
+    private static final int NUMBER_OF_EXPORTED_PATIENTS = Integer.getInteger("export.patients", 1_000_000);
+
+    @AfterEach
+    @DisplayName("Cleaning up the file that was written")
+    public void cleanup()
+    {
+        assertTrue(CSVHandlerLargeFileTest.largeFile.delete());
+    }
+
+    /**
+     * Writes a synthetic CSV file of at least the given size to the large file
+     * @param fileSize The size of the file to write in bytes
+     * @return The number of patients written
+     * @throws IOException If the file could not be written
+     */
+    private static long writeLargeFile(long fileSize) throws IOException
+    {
+        long numberOfRows = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(largeFile.toPath())) {
+            writer.write("firstName;lastName;generalPractitioner;socialSecurityNumber;diagnosis\n");
+            while (largeFile.length() < fileSize) {
+                for (int i = 0; i < 100_000; i++, numberOfRows++) {
+                    writer.write("FirstName" + numberOfRows + ";LastName" + (numberOfRows % 1000)
+                            + ";Doctor" + (numberOfRows % 300) + ";" + String.format("%011d", numberOfRows)
+                            + ";Diagnosis" + (numberOfRows % 2000) + "\n");
+                }
+                writer.flush();
+            }
+        }
+        return numberOfRows;
+    }
+
+    @Test
+    @DisplayName("Test that importing a file larger than the heap keeps memory use flat")
+    public void testImportingLargeFile() throws IOException, InterruptedException
+    {
+        // Arrange
+        long numberOfRows = CSVHandlerLargeFileTest.writeLargeFile(FILE_SIZE);
+        CSVHandler csvHandler = new CSVHandler();
+        AtomicLong numberOfPatients = new AtomicLong();
+
+
+        // Act
+        long start = System.nanoTime();
+        long numberImported = csvHandler.importPatients(largeFile, 1000,
+                batch -> numberOfPatients.addAndGet(batch.size()));
+        long time = System.nanoTime() - start;
+
+
+        // Assert
+        assertEquals(numberOfRows, numberImported);
+        assertEquals(numberOfRows, numberOfPatients.get());
+        assertTrue(largeFile.length() > Runtime.getRuntime().maxMemory());
+        System.out.printf("Imported %d patients, %d MB, in %d ms with a max heap of %d MB%n",
+                numberImported, largeFile.length() / (1024 * 1024), time / 1_000_000,
+                Runtime.getRuntime().maxMemory() / (1024 * 1024));
+    }
+
+    @Test
+    @DisplayName("Test that importing a file larger than the heap into a database register keeps memory use flat")
+    public void testImportingLargeFileIntoDatabase() throws IOException, InterruptedException
+    {
+        // Arrange
+        long numberOfRows = CSVHandlerLargeFileTest.writeLargeFile(DATABASE_FILE_SIZE);
+        Map<String, String> properties = new HashMap<>();
+        properties.put("jakarta.persistence.jdbc.url",
+                "jdbc:derby:target/large-file-db/import-" + System.nanoTime() + ";create=true");
+        PatientRegisterDB register = new PatientRegisterDB(properties);
+
+
+        // Act
+        long start = System.nanoTime();
+        long numberImported = new CSVHandler().importPatients(largeFile, 1000, register::addPatients);
+        long time = System.nanoTime() - start;
+
+
+        // Assert
+        assertEquals(numberOfRows, numberImported);
+        assertEquals(numberOfRows, register.getNumberOfPatients());
+        assertEquals(1, register.getPatientPageAfter(PatientField.SOCIAL_SECURITY_NUMBER,
+                new Patient("First", "Last", String.format("%011d", numberOfRows - 2)), 10).size());
+        assertTrue(largeFile.length() > Runtime.getRuntime().maxMemory());
+        register.close();
+        System.out.printf("Imported %d patients, %d MB, into the database in %d ms with a max heap of %d MB%n",
+                numberImported, largeFile.length() / (1024 * 1024), time / 1_000_000,
+                Runtime.getRuntime().maxMemory() / (1024 * 1024));
+    }
+
+    @Test
+    @DisplayName("Test that exporting a database register larger than the heap keeps memory use flat")
+    public void testExportingLargeRegister() throws IOException
+    {
+        // Arrange
+        Map<String, String> properties = new HashMap<>();
+        properties.put("jakarta.persistence.jdbc.url",
+                "jdbc:derby:target/large-file-db/export-" + System.nanoTime() + ";create=true");
+        EntityManagerFactory entityManagerFactory =
+                Persistence.createEntityManagerFactory("st-olavs-register", properties);
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        entityManager.getTransaction().begin();
+        for (int i = 0; i < NUMBER_OF_EXPORTED_PATIENTS; i++) {
+            entityManager.persist(new Patient.PatientBuilder("FirstName" + i, "LastName" + (i % 1000),
+                    String.format("%011d", i))
+                    .withGeneralPractitioner("Doctor" + (i % 300))
+                    .withDiagnosis("Diagnosis" + (i % 2000))
+                    .build());
+            if ((i + 1) % 10_000 == 0) {
+                entityManager.getTransaction().commit();
+                entityManager.clear();
+                entityManager.getTransaction().begin();
+            }
+        }
+        entityManager.getTransaction().commit();
+        entityManager.close();
+        entityManagerFactory.close();
+        PatientRegisterDB register = new PatientRegisterDB(properties);
+        long numberExported;
+
+
+        // Act
+        long start = System.nanoTime();
+        try (Stream<Patient> patients = register.streamPatients()) {
+            numberExported = new CSVHandler().writePatients(largeFile, patients);
+        }
+        long time = System.nanoTime() - start;
+        register.close();
+
+
+        // Assert
+        assertEquals(NUMBER_OF_EXPORTED_PATIENTS, numberExported);
+        System.out.printf("Exported %d patients, %d MB, in %d ms with a max heap of %d MB%n",
+                numberExported, largeFile.length() / (1024 * 1024), time / 1_000_000,
+                Runtime.getRuntime().maxMemory() / (1024 * 1024));
+    }
+}
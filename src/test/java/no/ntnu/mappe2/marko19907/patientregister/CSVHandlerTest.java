@@ -3,6 +3,7 @@ package no.ntnu.mappe2.marko19907.patientregister;
 
 import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
 import no.ntnu.mappe2.marko19907.patientregister.utility.CSVHandler;
+import no.ntnu.mappe2.marko19907.patientregister.utility.Progress;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -10,11 +11,18 @@ import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -22,6 +30,7 @@ public class CSVHandlerTest
 {
     private static final File testFileToWrite1 = new File("target/testFile.csv");
     private static final File testFileToWrite2 = new File("target/testFile2.csv");
+    private static final File compressedTestFile = new File("target/testFile.csv.gz");
 
     private static final Patient patient1 = new Patient.
             PatientBuilder("TestName", "TestLastName", "123")
@@ -61,6 +70,9 @@ public class CSVHandlerTest
         if (testFileToWrite2.exists()) {
             assertTrue(CSVHandlerTest.testFileToWrite2.delete());
         }
+        if (compressedTestFile.exists()) {
+            assertTrue(CSVHandlerTest.compressedTestFile.delete());
+        }
     }
 
     @Test
@@ -189,4 +201,280 @@ public class CSVHandlerTest
 
         assertTrue(exceptionThrown);
     }
+
+    @Test
+    @DisplayName("Test importing a file in batches")
+    public void testImportPatients()
+    {
+        // Arrange
+        CSVHandler csvHandler = new CSVHandler();
+        List<Patient> patientListToWrite = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            patientListToWrite.add(new Patient.PatientBuilder("Name" + i, "LastName" + i, "ID" + i).build());
+        }
+        List<List<Patient>> batches = new ArrayList<>();
+        long numberOfPatients = 0;
+        try {
+            csvHandler.writePatientList(testFileToWrite2, patientListToWrite);
+        }
+        catch (IOException e) {
+            fail();
+        }
+
+
+        // Act
+        try {
+            numberOfPatients = csvHandler.importPatients(testFileToWrite2, 10, batches::add);
+        }
+        catch (IOException | InterruptedException e) {
+            fail();
+        }
+
+
+        // Assert
+        assertEquals(25, numberOfPatients);
+        assertEquals(3, batches.size());
+        assertEquals(5, batches.get(2).size());
+        List<Patient> patientListRead = new ArrayList<>();
+        batches.forEach(patientListRead::addAll);
+        assertEquals(patientListToWrite, patientListRead);
+    }
+
+    @Test
+    @DisplayName("Test that an import stops when the consumer fails")
+    public void testImportStopsWhenConsumerFails()
+    {
+        CSVHandler csvHandler = new CSVHandler();
+        boolean exceptionThrown = false;
+
+        try {
+            csvHandler.importPatients(testFileToWrite1, 1, batch -> {
+                throw new IllegalStateException("The register is full");
+            });
+        }
+        catch (IllegalStateException e) {
+            exceptionThrown = true;
+        }
+        catch (IOException | InterruptedException e) {
+            fail();
+        }
+
+        assertTrue(exceptionThrown);
+    }
+
+    @Test
+    @DisplayName("Test importing a non-existent file")
+    public void testImportingNonExistentFile()
+    {
+        CSVHandler csvHandler = new CSVHandler();
+        boolean exceptionThrown = false;
+
+        try {
+            csvHandler.importPatients(new File("target/fileThatDoesNotExist.csv"), 10, batch -> fail());
+        }
+        catch (IOException e) {
+            exceptionThrown = true;
+        }
+        catch (InterruptedException e) {
+            fail();
+        }
+
+        assertTrue(exceptionThrown);
+    }
+
+    @Test
+    @DisplayName("Test writing the patients of a Stream, including an empty Stream")
+    public void testWritePatientsFromStream()
+    {
+        // Arrange
+        CSVHandler csvHandler = new CSVHandler();
+        long numberOfPatients = 0;
+        List<Patient> patientListRead = null;
+
+
+        // Act
+        try {
+            numberOfPatients = csvHandler.writePatients(testFileToWrite2, Stream.of(patient2, patient1));
+            patientListRead = csvHandler.readPatientList(testFileToWrite2);
+        }
+        catch (IOException e) {
+            fail();
+        }
+
+
+        // Assert
+        assertEquals(2, numberOfPatients);
+        assertEquals(List.of(patient2, patient1), patientListRead);
+        try {
+            assertEquals(0, csvHandler.writePatients(testFileToWrite2, Stream.empty()));
+            assertTrue(csvHandler.readPatientList(testFileToWrite2).isEmpty());
+        }
+        catch (IOException e) {
+            fail();
+        }
+    }
+
+    @Test
+    @DisplayName("Test writing and reading a compressed file, and that it is smaller than the plain file")
+    public void testCompressedFile()
+    {
+        // Arrange
+        CSVHandler csvHandler = new CSVHandler();
+        csvHandler.setCompressionLevel(1);
+        List<Patient> patientList = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            patientList.add(new Patient.PatientBuilder("First" + (i % 100), "Last" + (i % 300), "ssn" + i)
+                    .withGeneralPractitioner("Doctor" + (i % 20))
+                    .withDiagnosis((i % 2 == 0) ? "" : "Diagnosis; \"quoted\"\r\nline")
+                    .build());
+        }
+        List<Patient> patientListRead = new ArrayList<>();
+        long numberOfPatients = 0;
+        byte[] compressedBytes = null;
+
+
+        // Act
+        try {
+            numberOfPatients = csvHandler.writePatients(compressedTestFile, patientList.stream());
+            csvHandler.writePatientList(testFileToWrite2, patientList);
+            compressedBytes = Files.readAllBytes(compressedTestFile.toPath());
+            csvHandler.importPatients(compressedTestFile, 1000, patientListRead::addAll);
+        }
+        catch (IOException | InterruptedException e) {
+            fail();
+        }
+
+
+        // Assert
+        assertEquals(patientList.size(), numberOfPatients);
+        assertEquals(patientList, patientListRead);
+        // The gzip magic number
+        assertEquals((byte) 0x1f, compressedBytes[0]);
+        assertEquals((byte) 0x8b, compressedBytes[1]);
+        assertTrue(compressedBytes.length * 5L < testFileToWrite2.length());
+        try {
+            assertEquals(patientList, csvHandler.readPatientList(compressedTestFile));
+        }
+        catch (IOException e) {
+            fail();
+        }
+    }
+
+    @Test
+    @DisplayName("Test that the compression level must be from 0 to 9 or the default level")
+    public void testCompressionLevel()
+    {
+        // Arrange
+        CSVHandler csvHandler = new CSVHandler();
+
+
+        // Act
+        csvHandler.setCompressionLevel(9);
+
+
+        // Assert
+        assertEquals(9, csvHandler.getCompressionLevel());
+        assertThrows(IllegalArgumentException.class, () -> csvHandler.setCompressionLevel(10));
+        assertThrows(IllegalArgumentException.class, () -> csvHandler.setCompressionLevel(-2));
+        assertTrue(CSVHandler.isCompressed(new File("patients.CSV.GZ")));
+        assertTrue(!CSVHandler.isCompressed(testFileToWrite1));
+    }
+
+    @Test
+    @DisplayName("Test that an import reports its progress in bytes and ends with the whole file")
+    public void testImportProgress()
+    {
+        // Arrange
+        CSVHandler csvHandler = new CSVHandler();
+        List<Progress> reports = new ArrayList<>();
+
+
+        // Act
+        try {
+            csvHandler.importPatients(testFileToWrite1, 1, batch -> { }, reports::add);
+        }
+        catch (IOException | InterruptedException e) {
+            fail();
+        }
+
+
+        // Assert
+        assertFalse(reports.isEmpty());
+        Progress lastReport = reports.get(reports.size() - 1);
+        assertEquals(2, lastReport.getRecordsProcessed());
+        assertEquals(testFileToWrite1.length(), lastReport.getBytesProcessed());
+        assertEquals(testFileToWrite1.length(), lastReport.getTotalBytes());
+        assertEquals(1, lastReport.getFractionDone());
+        assertEquals(0, lastReport.getEstimatedSecondsRemaining());
+    }
+
+    @Test
+    @DisplayName("Test that a listener stops an import after the batch that was being handled")
+    public void testCancellingImport()
+    {
+        // Arrange
+        CSVHandler csvHandler = new CSVHandler();
+        List<List<Patient>> batches = new ArrayList<>();
+        // Handling a batch takes longer than the interval between the reports, so every batch is reported
+        Consumer<List<Patient>> slowConsumer = batch -> {
+            try {
+                Thread.sleep(150);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            batches.add(batch);
+        };
+
+
+        // Act and assert
+        assertThrows(CancellationException.class, () -> csvHandler.importPatients(testFileToWrite1, 1, slowConsumer,
+                progress -> {
+                    throw new CancellationException("Cancelled by the test");
+                }));
+        assertEquals(List.of(List.of(patient1)), batches);
+    }
+
+    @Test
+    @DisplayName("Test that an export reports its progress in records and deletes the file when it is cancelled")
+    public void testExportProgressAndCancellation()
+    {
+        // Arrange
+        CSVHandler csvHandler = new CSVHandler();
+        List<Progress> reports = new ArrayList<>();
+        // Writing the first 1000 patients takes longer than the interval between the reports
+        Stream<Patient> slowPatients = IntStream.range(0, 3000).mapToObj(i -> {
+            if (i == 999) {
+                try {
+                    Thread.sleep(150);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return new Patient.PatientBuilder("Name" + i, "LastName" + i, "ID" + i).build();
+        });
+
+
+        // Act
+        try {
+            csvHandler.writePatients(testFileToWrite2, Stream.of(patient1, patient2), 2, reports::add);
+        }
+        catch (IOException e) {
+            fail();
+        }
+        assertThrows(CancellationException.class, () -> csvHandler.writePatients(compressedTestFile, slowPatients,
+                3000, progress -> {
+                    throw new CancellationException("Cancelled by the test");
+                }));
+
+
+        // Assert
+        Progress lastReport = reports.get(reports.size() - 1);
+        assertEquals(2, lastReport.getRecordsProcessed());
+        assertEquals(2, lastReport.getTotalRecords());
+        assertEquals(testFileToWrite2.length(), lastReport.getBytesProcessed());
+        assertEquals(1, lastReport.getFractionDone());
+        assertFalse(compressedTestFile.exists());
+    }
 }
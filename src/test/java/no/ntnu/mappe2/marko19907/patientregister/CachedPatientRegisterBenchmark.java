@@ -0,0 +1,50 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.CachedPatientRegister;
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientField;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmarks for the CachedPatientRegister, only run with the benchmark profile: mvn test -P benchmark
+ */
+public class CachedPatientRegisterBenchmark
+{
+    private static final int NUMBER_OF_PATIENTS = Integer.getInteger("benchmark.patients", 100_000);
+    private static final int LOOKUPS = 100_000;
+
+    @Test
+    @DisplayName("Benchmark reading the patient list and looking patients up, cold against warm")
+    public void benchmarkReads()
+    {
+        List<Patient> patients = PatientRegisterDBBenchmark.generatePatients(NUMBER_OF_PATIENTS);
+        CachedPatientRegister register = new CachedPatientRegister(PatientRegisterDBBenchmark.createRegister("cached"));
+        register.addPatients(patients);
+
+        long start = System.nanoTime();
+        assertEquals(NUMBER_OF_PATIENTS, register.getPatientList().size());
+        long coldTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        assertEquals(NUMBER_OF_PATIENTS, register.getPatientList().size());
+        long warmTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            String socialSecurityNumber = patients.get(i % patients.size()).getSocialSecurityNumber();
+            assertEquals(1, register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, socialSecurityNumber).size());
+        }
+        long lookupTime = System.nanoTime() - start;
+        register.close();
+
+        System.out.printf("getPatientList() of %d patients: cold %d ms, warm %.2f ms%n",
+                NUMBER_OF_PATIENTS, coldTime / 1_000_000, warmTime / 1e6);
+        System.out.printf("%d warm lookups by social security number in %d ms, hit rate %.3f%n",
+                LOOKUPS, lookupTime / 1_000_000, register.getHitRate());
+    }
+}
@@ -0,0 +1,190 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.exception.DuplicateKeyException;
+import no.ntnu.mappe2.marko19907.patientregister.model.CachedPatientRegister;
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientField;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterDB;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterPlain;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CachedPatientRegisterTest
+{
+    private final Patient patient1 = new Patient.PatientBuilder("Ola", "Nordmann", "01019012345")
+            .withDiagnosis("Asthma")
+            .build();
+    private final Patient patient2 = new Patient("Kari", "Nordmann", "02029054321");
+    private final Patient patient3 = new Patient("Per", "Hansen", "03039011111");
+
+    private PatientRegisterPlain plainRegister;
+    private CachedPatientRegister register;
+
+    @BeforeEach
+    public void setUp()
+    {
+        this.plainRegister = new PatientRegisterPlain();
+        this.plainRegister.addPatients(List.of(this.patient1, this.patient2, this.patient3));
+        this.register = new CachedPatientRegister(this.plainRegister, 3);
+    }
+
+    @Test
+    @DisplayName("Test that a complete cache answers the list, the count and the lookups from memory")
+    public void testCompleteCache()
+    {
+        // Act
+        List<Patient> coldList = this.register.getPatientList();
+        List<Patient> warmList = this.register.getPatientList();
+        List<Patient> found = this.register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "02029054321");
+        List<Patient> missing = this.register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "404");
+
+        // Assert
+        assertTrue(this.register.isComplete());
+        assertEquals(3, coldList.size());
+        assertEquals(3, warmList.size());
+        assertTrue(warmList.containsAll(coldList));
+        assertEquals(List.of(this.patient2), found);
+        assertTrue(missing.isEmpty());
+        assertEquals(3, this.register.getNumberOfPatients());
+        assertEquals(1, this.register.getMissCount());
+        assertEquals(3, this.register.getHitCount());
+        assertEquals(0.75, this.register.getHitRate());
+    }
+
+    @Test
+    @DisplayName("Test that the searches are answered from the cache once it is complete")
+    public void testSearchPatients()
+    {
+        // Act
+        List<Patient> coldSearch = this.register.searchPatients("nordmann", 10);
+        this.register.getPatientList();
+        List<Patient> warmSearch = this.register.searchPatients("nordmann", 10);
+        List<Patient> limitedSearch = this.register.searchPatients("o n", 1);
+
+        // Assert
+        assertEquals(List.of(this.patient2, this.patient1), coldSearch);
+        assertEquals(coldSearch, warmSearch);
+        assertEquals(List.of(this.patient1), limitedSearch);
+        assertEquals(2, this.register.getMissCount());
+        assertEquals(2, this.register.getHitCount());
+    }
+
+    @Test
+    @DisplayName("Test that the search index of a complete cache follows the writes")
+    public void testSearchFollowsWrites()
+    {
+        // Arrange
+        this.register.getPatientList();
+        this.register.searchPatients("nordmann", 10);
+        Patient changedPatient = new Patient("Ola", "Hansen", "01019012345");
+        Patient newPatient = new Patient("Nils", "Nordmann", "04049022222");
+
+        // Act
+        this.register.updatePatient(changedPatient, this.patient1);
+        this.register.removePatient(this.patient3);
+        this.register.addPatient(newPatient);
+
+        // Assert
+        assertTrue(this.register.isComplete());
+        assertEquals(List.of(this.patient2, newPatient), this.register.searchPatients("nordmann", 10));
+        assertEquals(List.of(changedPatient), this.register.searchPatients("hansen", 10));
+        assertTrue(this.register.searchPatients("per", 10).isEmpty());
+        assertEquals(0, this.register.getEvictionCount());
+    }
+
+    @Test
+    @DisplayName("Test that the writes go through to the other register and are seen by the cache")
+    public void testWriteThrough()
+    {
+        // Arrange
+        this.register.getPatientList();
+        Patient newPatient = new Patient("Nils", "Nilsen", "04049022222");
+        Patient changedPatient = new Patient.PatientBuilder("Ola", "Nordmann", "01019012345")
+                .withDiagnosis("Migraine")
+                .build();
+
+        // Act
+        this.register.removePatient(this.patient3);
+        this.register.addPatient(newPatient);
+        this.register.updatePatient(changedPatient, this.patient1);
+
+        // Assert
+        assertEquals(3, this.plainRegister.getNumberOfPatients());
+        assertTrue(this.plainRegister.getPatientList().contains(newPatient));
+        assertTrue(this.register.isComplete());
+        assertEquals(3, this.register.getNumberOfPatients());
+        assertTrue(this.register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "03039011111").isEmpty());
+        assertEquals(List.of(changedPatient),
+                this.register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "01019012345"));
+        assertThrows(DuplicateKeyException.class, () -> this.register.addPatient(this.patient2));
+        assertEquals(3, this.register.getPatientList().size());
+    }
+
+    @Test
+    @DisplayName("Test that the least recently used patient is evicted and the cache is no longer complete")
+    public void testEviction()
+    {
+        // Arrange
+        this.register.getPatientList();
+        this.register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "01019012345");
+        this.register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "03039011111");
+
+        // Act
+        this.register.addPatient(new Patient("Nils", "Nilsen", "04049022222"));
+
+        // Assert
+        assertFalse(this.register.isComplete());
+        assertEquals(1, this.register.getEvictionCount());
+        assertEquals(3, this.register.getCacheSize());
+        assertEquals(4, this.register.getNumberOfPatients());
+        long missesBefore = this.register.getMissCount();
+        assertEquals(List.of(this.patient2),
+                this.register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "02029054321"));
+        assertEquals(missesBefore + 1, this.register.getMissCount());
+        assertEquals(4, this.register.getPatientList().size());
+        assertFalse(this.register.isComplete());
+    }
+
+    @Test
+    @DisplayName("Test that the cached patients of a database register can be updated and removed")
+    public void testDatabaseRegister()
+    {
+        // Arrange
+        Map<String, String> properties = new HashMap<>();
+        properties.put("jakarta.persistence.jdbc.url",
+                "jdbc:derby:memory:cached-test-" + System.nanoTime() + ";create=true");
+        CachedPatientRegister cachedRegister = new CachedPatientRegister(new PatientRegisterDB(properties));
+        cachedRegister.addPatients(List.of(this.patient1, this.patient2));
+        Patient changedPatient = new Patient("Ola", "Nordmann", "05059033333");
+
+        try {
+            // Act
+            Patient cachedPatient = cachedRegister.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "01019012345")
+                    .get(0);
+            boolean updated = cachedRegister.updatePatient(changedPatient, cachedPatient);
+            boolean removed = cachedRegister.removePatient(cachedRegister.getPatientList().stream()
+                    .filter(patient -> patient.getSocialSecurityNumber().equals("02029054321"))
+                    .findFirst().orElseThrow());
+            cachedRegister.invalidate();
+
+            // Assert
+            assertTrue(updated);
+            assertTrue(removed);
+            assertEquals(List.of(changedPatient), cachedRegister.getPatientList());
+            assertEquals(1, cachedRegister.getNumberOfPatients());
+        }
+        finally {
+            cachedRegister.close();
+        }
+    }
+}
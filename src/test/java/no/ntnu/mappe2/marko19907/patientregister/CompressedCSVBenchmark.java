@@ -0,0 +1,82 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.utility.CSVHandler;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Benchmarks for the compressed CSV files of the CSVHandler, only run with the benchmark profile: mvn test -P benchmark
+ */
+public class CompressedCSVBenchmark
+{
+    private static final int NUMBER_OF_PATIENTS = Integer.getInteger("benchmark.patients", 1_000_000);
+    private static final int ROUNDS = Integer.getInteger("benchmark.rounds", 3);
+    private static final int[] COMPRESSION_LEVELS = {1, 6};
+    private static final File plainFile = new File("target/compressedBenchmark.csv");
+    private static final File compressedFile = new File("target/compressedBenchmark.csv.gz");
+
+    @Test
+    @DisplayName("Benchmark writing and reading a plain file against compressed files at different levels")
+    public void benchmarkCompressedFiles() throws IOException
+    {
+        CSVHandler csvHandler = new CSVHandler();
+        List<Patient> patients = PatientRegisterDBBenchmark.generatePatients(NUMBER_OF_PATIENTS);
+
+        try {
+            // The first round warms up the JIT compiler and is not printed
+            for (int round = 0; round <= ROUNDS; round++) {
+                long start = System.nanoTime();
+                csvHandler.writePatientList(plainFile, patients);
+                long writeTime = System.nanoTime() - start;
+                start = System.nanoTime();
+                assertEquals(NUMBER_OF_PATIENTS, csvHandler.readPatientList(plainFile).size());
+                long readTime = System.nanoTime() - start;
+                if (round > 0) {
+                    this.printRound(round, "plain", plainFile.length(), plainFile.length(), writeTime, readTime);
+                }
+
+                for (int level : COMPRESSION_LEVELS) {
+                    csvHandler.setCompressionLevel(level);
+                    start = System.nanoTime();
+                    csvHandler.writePatientList(compressedFile, patients);
+                    writeTime = System.nanoTime() - start;
+                    start = System.nanoTime();
+                    assertEquals(NUMBER_OF_PATIENTS, csvHandler.readPatientList(compressedFile).size());
+                    readTime = System.nanoTime() - start;
+                    if (round > 0) {
+                        this.printRound(round, "level " + level, compressedFile.length(), plainFile.length(),
+                                writeTime, readTime);
+                    }
+                }
+            }
+        }
+        finally {
+            assertTrue(plainFile.delete());
+            assertTrue(!compressedFile.exists() || compressedFile.delete());
+        }
+    }
+
+    /**
+     * Prints the results of a round
+     * @param round The number of the round
+     * @param name The name of the format
+     * @param fileSize The size of the file of the format
+     * @param plainFileSize The size of the plain file
+     * @param writeTime The time it took to write the file in nanoseconds
+     * @param readTime The time it took to read the file in nanoseconds
+     */
+    private void printRound(int round, String name, long fileSize, long plainFileSize, long writeTime, long readTime)
+    {
+        System.out.printf("Round %d, %s: %d MB (%.1fx smaller), write %.0f rows/s, read %.0f rows/s%n",
+                round, name, fileSize / (1024 * 1024), (double) plainFileSize / fileSize,
+                NUMBER_OF_PATIENTS / (writeTime / 1e9), NUMBER_OF_PATIENTS / (readTime / 1e9));
+    }
+}
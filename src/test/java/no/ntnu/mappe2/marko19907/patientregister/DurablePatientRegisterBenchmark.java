@@ -0,0 +1,95 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.DurablePatientRegister;
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmarks for the DurablePatientRegister, only run with the benchmark profile: mvn test -P benchmark
+ */
+public class DurablePatientRegisterBenchmark
+{
+    private static final int NUMBER_OF_WRITES = Integer.getInteger("benchmark.patients", 100_000);
+    private static final int NUMBER_OF_RECOVERED_PATIENTS = Integer.getInteger("benchmark.recovered", 200_000);
+    private static final int THREADS = 16;
+
+    @Test
+    @DisplayName("Benchmark durable single writes, with and without waiting for each fsync, and from many threads")
+    public void benchmarkWrites() throws Exception
+    {
+        List<Patient> patients = PatientRegisterDBBenchmark.generatePatients(NUMBER_OF_WRITES);
+
+        for (boolean synchronousCommit : new boolean[]{true, false}) {
+            DurablePatientRegister register = DurablePatientRegisterBenchmark.createRegister("single");
+            register.setSynchronousCommit(synchronousCommit);
+            long start = System.nanoTime();
+            patients.forEach(register::addPatient);
+            register.close();
+            long time = System.nanoTime() - start;
+            System.out.printf("1 thread, synchronous commit %b: %d writes in %d ms, %.0f writes/s%n",
+                    synchronousCommit, NUMBER_OF_WRITES, time / 1_000_000, NUMBER_OF_WRITES / (time / 1e9));
+        }
+
+        DurablePatientRegister register = DurablePatientRegisterBenchmark.createRegister("threads");
+        List<Callable<Void>> writers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            List<Patient> share = patients.subList(t * patients.size() / THREADS, (t + 1) * patients.size() / THREADS);
+            writers.add(() -> {
+                share.forEach(register::addPatient);
+                return null;
+            });
+        }
+        long start = System.nanoTime();
+        PatientRegisterConcurrentTest.runConcurrently(writers);
+        register.close();
+        long time = System.nanoTime() - start;
+        System.out.printf("%d threads, synchronous commit true: %d writes in %d ms, %.0f writes/s%n",
+                THREADS, NUMBER_OF_WRITES, time / 1_000_000, NUMBER_OF_WRITES / (time / 1e9));
+    }
+
+    @Test
+    @DisplayName("Benchmark recovering a large register from the log and from a snapshot")
+    public void benchmarkRecovery() throws Exception
+    {
+        List<Patient> patients = PatientRegisterDBBenchmark.generatePatients(NUMBER_OF_RECOVERED_PATIENTS);
+        File directory = new File("target/benchmark-durable/recovery-" + System.nanoTime());
+        DurablePatientRegister register = new DurablePatientRegister(directory);
+        register.setSnapshotThreshold(Long.MAX_VALUE);
+        register.addPatients(patients);
+        register.close();
+
+        long start = System.nanoTime();
+        register = new DurablePatientRegister(directory);
+        long logTime = System.nanoTime() - start;
+        assertEquals(NUMBER_OF_RECOVERED_PATIENTS, register.getNumberOfPatients());
+        register.snapshot();
+        register.close();
+
+        start = System.nanoTime();
+        register = new DurablePatientRegister(directory);
+        long snapshotTime = System.nanoTime() - start;
+        assertEquals(NUMBER_OF_RECOVERED_PATIENTS, register.getNumberOfPatients());
+        register.close();
+
+        System.out.printf("Recovering %d patients: from the log %d ms, from a snapshot %d ms%n",
+                NUMBER_OF_RECOVERED_PATIENTS, logTime / 1_000_000, snapshotTime / 1_000_000);
+    }
+
+    /**
+     * Returns a new DurablePatientRegister in a fresh directory in the target directory
+     * @param name The name to give the directory
+     * @return A new, empty DurablePatientRegister
+     */
+    private static DurablePatientRegister createRegister(String name) throws Exception
+    {
+        return new DurablePatientRegister(new File("target/benchmark-durable/" + name + "-" + System.nanoTime()));
+    }
+}
@@ -0,0 +1,340 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.DurablePatientRegister;
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientField;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DurablePatientRegisterTest
+{
+    private final Patient patient1 = new Patient.PatientBuilder("Ola", "Nordmann", "01019012345")
+            .withGeneralPractitioner("Dr. Hansen")
+            .withDiagnosis("Asthma")
+            .build();
+    private final Patient patient2 = new Patient("Kari", "Nordmann", "02029054321");
+    private final Patient patient3 = new Patient("Per", "Hansen", "03039011111");
+
+    private File directory;
+
+    @BeforeEach
+    public void setUp(@TempDir File directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the files in the test directory whose names start with the given prefix
+     * @param prefix The start of the names
+     * @return The names of the files, sorted
+     */
+    private List<String> listFiles(String prefix)
+    {
+        String[] names = this.directory.list((dir, name) -> name.startsWith(prefix));
+        Arrays.sort(names);
+        return Arrays.asList(names);
+    }
+
+    @Test
+    @DisplayName("Test that a change the log can not take is rolled back and not recovered")
+    public void testFailedAppendIsRolledBack() throws IOException
+    {
+        // Arrange
+        Patient unloggablePatient = new Patient("Å".repeat(40_000), "Nordmann", "05059033333");
+        Patient changedPatient = new Patient("Å".repeat(40_000), "Nordmann", "01019012345");
+        DurablePatientRegister register = new DurablePatientRegister(this.directory);
+        register.addPatient(this.patient1);
+
+        // Act
+        assertThrows(UncheckedIOException.class, () -> register.addPatient(unloggablePatient));
+        assertThrows(UncheckedIOException.class, () -> register.updatePatient(changedPatient, this.patient1));
+        register.addPatient(this.patient2);
+        register.close();
+        DurablePatientRegister recoveredRegister = new DurablePatientRegister(this.directory);
+
+        // Assert
+        assertEquals(Set.of(this.patient1, this.patient2), new HashSet<>(register.getPatientList()));
+        assertEquals(Set.of(this.patient1, this.patient2), new HashSet<>(recoveredRegister.getPatientList()));
+        recoveredRegister.close();
+    }
+
+    @Test
+    @DisplayName("Test that the changes are rolled back and the register is read-only once the log can not be forced")
+    public void testFailedForceIsRolledBack() throws IOException
+    {
+        // Arrange
+        AtomicBoolean failForce = new AtomicBoolean(false);
+        DurablePatientRegister register = new DurablePatientRegister(this.directory,
+                channel -> new FailingChannel(channel, failForce));
+        List<PatientRegisterEvent> events = new ArrayList<>();
+        register.addPatient(this.patient1);
+        register.addListener(events::add);
+        failForce.set(true);
+
+        // Act
+        assertThrows(UncheckedIOException.class, () -> register.addPatient(this.patient2));
+        assertThrows(UncheckedIOException.class, () -> register.removePatient(this.patient1));
+        assertThrows(UncheckedIOException.class, register::close);
+        DurablePatientRegister recoveredRegister = new DurablePatientRegister(this.directory);
+
+        // Assert
+        assertEquals(List.of(this.patient1), register.getPatientList());
+        assertEquals(2, events.size());
+        assertEquals(List.of(this.patient2), events.get(1).getOldPatients());
+        assertEquals(List.of(this.patient1), recoveredRegister.getPatientList());
+        recoveredRegister.close();
+    }
+
+    @Test
+    @DisplayName("Test that every kind of change is recovered after a restart")
+    public void testRecovery() throws IOException
+    {
+        // Arrange
+        Patient changedPatient = new Patient.PatientBuilder("Ola", "Nordmann", "01019099999")
+                .withDiagnosis("Migraine")
+                .build();
+        Patient upsertedPatient = new Patient.PatientBuilder("Kari", "Nordmann", "02029054321")
+                .withDiagnosis("Asthma")
+                .build();
+        DurablePatientRegister register = new DurablePatientRegister(this.directory);
+        register.addPatient(this.patient1);
+        register.addPatients(List.of(this.patient2, this.patient3));
+        register.updatePatient(changedPatient, this.patient1);
+        register.removePatient(this.patient3);
+        register.upsertPatients(List.of(upsertedPatient, new Patient("Nils", "Nilsen", "04049022222")));
+        Set<Patient> expectedPatients = new HashSet<>(register.getPatientList());
+        register.close();
+
+        // Act
+        DurablePatientRegister recoveredRegister = new DurablePatientRegister(this.directory);
+
+        // Assert
+        assertEquals(expectedPatients, new HashSet<>(recoveredRegister.getPatientList()));
+        assertEquals(3, recoveredRegister.getNumberOfPatients());
+        assertEquals("Asthma", recoveredRegister.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "02029054321")
+                .get(0).getDiagnosis());
+        assertTrue(recoveredRegister.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "01019012345").isEmpty());
+        recoveredRegister.close();
+    }
+
+    @Test
+    @DisplayName("Test that a snapshot replaces the log before it and is recovered with the log after it")
+    public void testSnapshot() throws IOException, InterruptedException
+    {
+        // Arrange
+        DurablePatientRegister register = new DurablePatientRegister(this.directory);
+        register.addPatients(List.of(this.patient1, this.patient2));
+
+        // Act
+        register.snapshot();
+        register.addPatient(this.patient3);
+        register.removePatient(this.patient1);
+        register.close();
+        DurablePatientRegister recoveredRegister = new DurablePatientRegister(this.directory);
+
+        // Assert
+        assertEquals(List.of("snapshot-00000000000000000001.dat"), this.listFiles("snapshot-"));
+        assertEquals("wal-00000000000000000001.log", this.listFiles("wal-").get(0));
+        assertEquals(Set.of(this.patient2, this.patient3), new HashSet<>(recoveredRegister.getPatientList()));
+        recoveredRegister.close();
+    }
+
+    @Test
+    @DisplayName("Test that snapshots are written in the background once the log grows past the threshold")
+    public void testBackgroundSnapshots() throws IOException
+    {
+        // Arrange
+        List<Patient> patients = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            patients.add(new Patient("First" + i, "Last" + i, String.format("%011d", i)));
+        }
+        DurablePatientRegister register = new DurablePatientRegister(this.directory);
+        register.setSnapshotThreshold(1000);
+
+        // Act
+        patients.forEach(register::addPatient);
+        register.close();
+        DurablePatientRegister recoveredRegister = new DurablePatientRegister(this.directory);
+
+        // Assert
+        assertEquals(1, this.listFiles("snapshot-").size());
+        assertTrue(this.listFiles("wal-").size() < 10);
+        assertEquals(new HashSet<>(patients), new HashSet<>(recoveredRegister.getPatientList()));
+        recoveredRegister.close();
+    }
+
+    @Test
+    @DisplayName("Test that a record cut short by a crash is left out and the log can be written after it")
+    public void testTornRecord() throws IOException
+    {
+        // Arrange
+        DurablePatientRegister register = new DurablePatientRegister(this.directory);
+        register.setSynchronousCommit(false);
+        register.addPatient(this.patient1);
+        register.addPatient(this.patient2);
+        register.close();
+        File segment = new File(this.directory, this.listFiles("wal-").get(0));
+        long validLength = segment.length();
+        try (FileOutputStream output = new FileOutputStream(segment, true)) {
+            output.write(new byte[]{0, 0, 0, 100, 1, 2, 3, 4, 0, 0, 0});
+        }
+
+        // Act
+        DurablePatientRegister recoveredRegister = new DurablePatientRegister(this.directory);
+        recoveredRegister.addPatient(this.patient3);
+        recoveredRegister.close();
+        DurablePatientRegister reopenedRegister = new DurablePatientRegister(this.directory);
+
+        // Assert
+        assertEquals(validLength, segment.length());
+        assertEquals(Set.of(this.patient1, this.patient2, this.patient3),
+                new HashSet<>(reopenedRegister.getPatientList()));
+        reopenedRegister.close();
+    }
+
+    /**
+     * A FileChannel that passes everything on to another channel, but fails to force it once told to
+     */
+    private static final class FailingChannel extends FileChannel
+    {
+        private final FileChannel channel;
+        private final AtomicBoolean failForce;
+
+        private FailingChannel(FileChannel channel, AtomicBoolean failForce)
+        {
+            this.channel = channel;
+            this.failForce = failForce;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException
+        {
+            if (this.failForce.get()) {
+                throw new IOException("The disk is gone");
+            }
+            this.channel.force(metaData);
+        }
+
+        @Override
+        public int read(ByteBuffer destination) throws IOException
+        {
+            return this.channel.read(destination);
+        }
+
+        @Override
+        public long read(ByteBuffer[] destinations, int offset, int length) throws IOException
+        {
+            return this.channel.read(destinations, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException
+        {
+            return this.channel.write(source);
+        }
+
+        @Override
+        public long write(ByteBuffer[] sources, int offset, int length) throws IOException
+        {
+            return this.channel.write(sources, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException
+        {
+            return this.channel.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException
+        {
+            this.channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException
+        {
+            return this.channel.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException
+        {
+            this.channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException
+        {
+            return this.channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel source, long position, long count) throws IOException
+        {
+            return this.channel.transferFrom(source, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer destination, long position) throws IOException
+        {
+            return this.channel.read(destination, position);
+        }
+
+        @Override
+        public int write(ByteBuffer source, long position) throws IOException
+        {
+            return this.channel.write(source, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException
+        {
+            return this.channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException
+        {
+            return this.channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException
+        {
+            return this.channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException
+        {
+            this.channel.close();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.utility.CSVHandler;
+import no.ntnu.mappe2.marko19907.patientregister.utility.MappedCSVReader;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Benchmarks for the MappedCSVReader, only run with the benchmark profile: mvn test -P benchmark
+ */
+public class MappedCSVReaderBenchmark
+{
+    private static final int NUMBER_OF_PATIENTS = Integer.getInteger("benchmark.patients", 2_000_000);
+    private static final int ROUNDS = Integer.getInteger("benchmark.rounds", 5);
+    private static final File benchmarkFile = new File("target/mappedBenchmark.csv");
+
+    @Test
+    @DisplayName("Benchmark reading a file with commons-csv against reading it from a mapped buffer")
+    public void benchmarkMappedReading() throws IOException
+    {
+        CSVHandler csvHandler = new CSVHandler();
+        MappedCSVReader mappedReader = new MappedCSVReader();
+        csvHandler.writePatientList(benchmarkFile, PatientRegisterDBBenchmark.generatePatients(NUMBER_OF_PATIENTS));
+        System.out.printf("Reading %d patients, %d MB%n", NUMBER_OF_PATIENTS, benchmarkFile.length() / (1024 * 1024));
+
+        try {
+            // The first round warms up the JIT compiler and is not printed
+            for (int round = 0; round <= ROUNDS; round++) {
+                long start = System.nanoTime();
+                int numberOfPatients = csvHandler.readPatientList(benchmarkFile).size();
+                long commonsTime = System.nanoTime() - start;
+                assertEquals(NUMBER_OF_PATIENTS, numberOfPatients);
+
+                start = System.nanoTime();
+                numberOfPatients = mappedReader.readPatientList(benchmarkFile).size();
+                long mappedTime = System.nanoTime() - start;
+                assertEquals(NUMBER_OF_PATIENTS, numberOfPatients);
+
+                if (round > 0) {
+                    System.out.printf("Round %d: commons-csv %d ms, %.0f rows/s, mapped %d ms, %.0f rows/s%n",
+                            round, commonsTime / 1_000_000, NUMBER_OF_PATIENTS / (commonsTime / 1e9),
+                            mappedTime / 1_000_000, NUMBER_OF_PATIENTS / (mappedTime / 1e9));
+                }
+            }
+        }
+        finally {
+            assertTrue(benchmarkFile.delete());
+        }
+    }
+}
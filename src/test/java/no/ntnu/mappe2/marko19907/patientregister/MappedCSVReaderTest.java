@@ -0,0 +1,103 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.utility.CSVHandler;
+import no.ntnu.mappe2.marko19907.patientregister.utility.MappedCSVReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MappedCSVReaderTest
+{
+    private static final File testFile = new File("target/mappedTestFile.csv");
+
+    @AfterEach
+    @DisplayName("Cleaning up the file that was written")
+    public void cleanup()
+    {
+        assertTrue(MappedCSVReaderTest.testFile.delete());
+    }
+
+    @Test
+    @DisplayName("Test reading what the CSVHandler writes, with quoting and across mapping windows")
+    public void testReadingWrittenFile() throws IOException
+    {
+        // Arrange
+        CSVHandler csvHandler = new CSVHandler();
+        List<Patient> patientListToWrite = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            patientListToWrite.add(new Patient.PatientBuilder("Åse Ærlig Øst " + i, "Last;Name \"" + i + "\"",
+                    "ID" + i)
+                    .withGeneralPractitioner((i % 3 == 0) ? "Doc\r\n\"Who\"" : " Doc ")
+                    .withDiagnosis((i % 2 == 0) ? "" : "Diag\n" + i)
+                    .build());
+        }
+        csvHandler.writePatientList(testFile, patientListToWrite);
+        List<Patient> expectedList = csvHandler.readPatientList(testFile);
+
+        for (long windowSize : new long[]{100, 101, 157, 1024, 1024 * 1024}) {
+            // Act
+            List<Patient> patientList = new MappedCSVReader(windowSize).readPatientList(testFile);
+
+            // Assert
+            assertEquals(expectedList, patientList);
+            for (int i = 0; i < patientList.size(); i++) {
+                assertEquals(expectedList.get(i).getFullName(), patientList.get(i).getFullName());
+                assertEquals(expectedList.get(i).getGeneralPractitioner(),
+                        patientList.get(i).getGeneralPractitioner());
+                assertEquals(expectedList.get(i).getDiagnosis(), patientList.get(i).getDiagnosis());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Test reading in batches a file with reordered columns, empty lines and LF line endings")
+    public void testReadingReorderedColumns() throws IOException
+    {
+        Files.writeString(testFile.toPath(), "extra;socialSecurityNumber;LASTNAME;firstName;generalPractitioner\n"
+                + "x;123;Nordmann;Ola;Doc1\n"
+                + "\n"
+                + "y;321;Hansen;Kari;\"Doc2\"");
+        List<List<Patient>> batches = new ArrayList<>();
+
+        long numberOfPatients = new MappedCSVReader().readPatients(testFile, 1, batches::add);
+
+        assertEquals(2, numberOfPatients);
+        assertEquals(2, batches.size());
+        assertEquals("Ola Nordmann", batches.get(0).get(0).getFullName());
+        assertEquals("321", batches.get(1).get(0).getSocialSecurityNumber());
+        assertEquals("Doc2", batches.get(1).get(0).getGeneralPractitioner());
+        assertEquals("", batches.get(1).get(0).getDiagnosis());
+    }
+
+    @Test
+    @DisplayName("Test reading invalid, malformed and empty files")
+    public void testReadingInvalidFiles() throws IOException
+    {
+        MappedCSVReader reader = new MappedCSVReader();
+
+        Files.writeString(testFile.toPath(), "a;b;c\n1;2;3\n");
+        assertThrows(IllegalArgumentException.class, () -> reader.readPatientList(testFile));
+
+        Files.writeString(testFile.toPath(), "firstName;lastName;generalPractitioner;socialSecurityNumber\n"
+                + "Ola;Nordmann;Doc\n");
+        assertThrows(IllegalArgumentException.class, () -> reader.readPatientList(testFile));
+
+        Files.writeString(testFile.toPath(), "firstName;lastName;generalPractitioner;socialSecurityNumber\n"
+                + "Ola;\"Nordmann;Doc;123\n");
+        assertThrows(IOException.class, () -> reader.readPatientList(testFile));
+
+        Files.writeString(testFile.toPath(), "");
+        assertTrue(reader.readPatientList(testFile).isEmpty());
+    }
+}
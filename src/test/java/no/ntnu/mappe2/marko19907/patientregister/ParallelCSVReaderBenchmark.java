@@ -0,0 +1,72 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.utility.CSVHandler;
+import no.ntnu.mappe2.marko19907.patientregister.utility.ParallelCSVReader;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Benchmarks for the ParallelCSVReader, only run with the benchmark profile: mvn test -P benchmark
+ */
+public class ParallelCSVReaderBenchmark
+{
+    private static final int NUMBER_OF_PATIENTS = Integer.getInteger("benchmark.patients", 2_000_000);
+    private static final int[] PARALLELISMS = {1, 2, 4, 8};
+    private static final File benchmarkFile = new File("target/parallelBenchmark.csv");
+
+    @Test
+    @DisplayName("Benchmark parsing a file on one thread against parsing it in parallel")
+    public void benchmarkParallelParsing() throws IOException, InterruptedException
+    {
+        CSVHandler csvHandler = new CSVHandler();
+        csvHandler.writePatientList(benchmarkFile, PatientRegisterDBBenchmark.generatePatients(NUMBER_OF_PATIENTS));
+        System.out.printf("Parsing %d patients, %d MB, on %d available processors%n", NUMBER_OF_PATIENTS,
+                benchmarkFile.length() / (1024 * 1024), Runtime.getRuntime().availableProcessors());
+
+        try {
+            for (int round = 0; round < 2; round++) {
+                AtomicLong count = new AtomicLong();
+                long start = System.nanoTime();
+                csvHandler.importPatients(benchmarkFile, 1000, batch -> count.addAndGet(batch.size()));
+                this.printResult("CSVHandler, 1 thread", count.get(), System.nanoTime() - start);
+
+                for (int parallelism : PARALLELISMS) {
+                    ForkJoinPool pool = new ForkJoinPool(parallelism);
+                    ParallelCSVReader reader = new ParallelCSVReader(pool, 4 * 1024 * 1024);
+                    for (boolean ordered : new boolean[]{true, false}) {
+                        AtomicLong parallelCount = new AtomicLong();
+                        start = System.nanoTime();
+                        reader.readPatients(benchmarkFile, ordered, chunk -> parallelCount.addAndGet(chunk.size()));
+                        this.printResult("ParallelCSVReader, " + parallelism + " threads, "
+                                + (ordered ? "ordered" : "unordered"), parallelCount.get(), System.nanoTime() - start);
+                        assertEquals(NUMBER_OF_PATIENTS, parallelCount.get());
+                    }
+                    pool.shutdown();
+                }
+            }
+        }
+        finally {
+            assertTrue(benchmarkFile.delete());
+        }
+    }
+
+    /**
+     * Prints the throughput of a benchmark run
+     * @param name The name of the run
+     * @param numberOfPatients The number of patients that were parsed
+     * @param time The time the run took in nanoseconds
+     */
+    private void printResult(String name, long numberOfPatients, long time)
+    {
+        System.out.printf("%s: %d patients in %d ms, %.0f rows/s%n",
+                name, numberOfPatients, time / 1_000_000, numberOfPatients / (time / 1e9));
+    }
+}
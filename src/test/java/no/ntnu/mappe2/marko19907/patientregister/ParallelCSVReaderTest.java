@@ -0,0 +1,135 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.utility.CSVHandler;
+import no.ntnu.mappe2.marko19907.patientregister.utility.ParallelCSVReader;
+import no.ntnu.mappe2.marko19907.patientregister.utility.Progress;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParallelCSVReaderTest
+{
+    private static final File testFile = new File("target/parallelTestFile.csv");
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    public static void createPool()
+    {
+        ParallelCSVReaderTest.pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    public static void shutdownPool()
+    {
+        ParallelCSVReaderTest.pool.shutdown();
+    }
+
+    @AfterEach
+    @DisplayName("Cleaning up the file that was written")
+    public void cleanup()
+    {
+        assertTrue(ParallelCSVReaderTest.testFile.delete());
+    }
+
+    @Test
+    @DisplayName("Test that the chunks are aligned to records, also with quoted newlines, delimiters and quotes")
+    public void testReadingQuotedFields() throws IOException, InterruptedException
+    {
+        // Arrange
+        List<Patient> patientListToWrite = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            patientListToWrite.add(new Patient.PatientBuilder("Name\n" + i, "Last;Name \"" + i + "\"", "ID" + i)
+                    .withGeneralPractitioner((i % 3 == 0) ? "Doc\r\n\"Who\"" : "Doc")
+                    .withDiagnosis("Diag" + i)
+                    .build());
+        }
+        new CSVHandler().writePatientList(testFile, patientListToWrite);
+
+        for (int chunkSize = 1; chunkSize < 200; chunkSize += 7) {
+            ParallelCSVReader reader = new ParallelCSVReader(pool, chunkSize);
+
+            // Act
+            List<Patient> orderedList = reader.readPatientList(testFile, true);
+            List<Patient> unorderedList = reader.readPatientList(testFile, false);
+
+            // Assert
+            assertEquals(patientListToWrite, orderedList);
+            unorderedList.sort(Comparator.comparing(patient -> Integer.parseInt(
+                    patient.getSocialSecurityNumber().substring(2))));
+            assertEquals(patientListToWrite, unorderedList);
+            assertEquals("Doc\r\n\"Who\"", orderedList.get(0).getGeneralPractitioner());
+        }
+    }
+
+    @Test
+    @DisplayName("Test reading a file with the columns in a different order and without the diagnosis")
+    public void testReadingReorderedColumns() throws IOException, InterruptedException
+    {
+        Files.writeString(testFile.toPath(), "socialSecurityNumber;LASTNAME;firstName;generalPractitioner\r\n"
+                + "123;Nordmann;Ola;Doc1\r\n"
+                + "321;Hansen;Kari;Doc2");
+        ParallelCSVReader reader = new ParallelCSVReader(pool, 5);
+
+        List<Patient> patientList = reader.readPatientList(testFile, true);
+
+        assertEquals(2, patientList.size());
+        assertEquals("Ola Nordmann", patientList.get(0).getFullName());
+        assertEquals("321", patientList.get(1).getSocialSecurityNumber());
+        assertEquals("", patientList.get(1).getDiagnosis());
+    }
+
+    @Test
+    @DisplayName("Test reading files with an invalid header, only a header and no content")
+    public void testReadingInvalidAndEmptyFiles() throws IOException, InterruptedException
+    {
+        ParallelCSVReader reader = new ParallelCSVReader(pool, 16);
+
+        Files.writeString(testFile.toPath(), "a;b;c\n1;2;3\n");
+        assertThrows(IllegalArgumentException.class, () -> reader.readPatientList(testFile, true));
+
+        Files.writeString(testFile.toPath(), "firstName;lastName;generalPractitioner;socialSecurityNumber\n");
+        assertTrue(reader.readPatientList(testFile, true).isEmpty());
+
+        Files.writeString(testFile.toPath(), "");
+        assertTrue(reader.readPatientList(testFile, false).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test that reading a file reports its progress in bytes and ends with the whole file")
+    public void testReadingProgress() throws IOException, InterruptedException
+    {
+        // Arrange
+        List<Patient> patientListToWrite = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            patientListToWrite.add(new Patient.PatientBuilder("Name" + i, "LastName" + i, "ID" + i).build());
+        }
+        new CSVHandler().writePatientList(testFile, patientListToWrite);
+        ParallelCSVReader reader = new ParallelCSVReader(pool, 64);
+        List<Progress> reports = new ArrayList<>();
+
+        // Act
+        reader.readPatients(testFile, true, batch -> { }, reports::add);
+
+        // Assert
+        Progress lastReport = reports.get(reports.size() - 1);
+        assertEquals(50, lastReport.getRecordsProcessed());
+        assertEquals(testFile.length(), lastReport.getBytesProcessed());
+        assertEquals(1, lastReport.getFractionDone());
+    }
+}
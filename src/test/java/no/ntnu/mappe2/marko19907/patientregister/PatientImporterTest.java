@@ -0,0 +1,208 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterPlain;
+import no.ntnu.mappe2.marko19907.patientregister.utility.ImportReport;
+import no.ntnu.mappe2.marko19907.patientregister.utility.PatientImporter;
+import no.ntnu.mappe2.marko19907.patientregister.utility.Progress;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PatientImporterTest
+{
+    private static final File importFile = new File("target/importTest.csv");
+    private static final File errorReportFile = new File("target/importTest.errors.csv");
+    private static final String HEADER = "firstName;lastName;generalPractitioner;socialSecurityNumber;diagnosis\r\n";
+
+    @AfterEach
+    @DisplayName("Cleaning up the files that were written")
+    public void cleanup() throws IOException
+    {
+        Files.deleteIfExists(importFile.toPath());
+        Files.deleteIfExists(errorReportFile.toPath());
+        Files.deleteIfExists(new PatientImporter().getCheckpointFile(errorReportFile).toPath());
+    }
+
+    @Test
+    @DisplayName("Test that invalid and duplicate records are skipped and reported with their line numbers")
+    public void testSkippingInvalidAndDuplicateRecords() throws IOException, InterruptedException
+    {
+        // Arrange
+        Files.writeString(importFile.toPath(), HEADER
+                + "Ola;Nordmann;Dr. Hansen;1;Asthma\r\n"
+                + "Kari;Nordmann;Dr. Berg;2\r\n"
+                + "Per;;Dr. Berg;3;Flu\r\n"
+                + "Ola;Hansen;Dr. Hansen;1;Flu\r\n"
+                + "Nils;Nilsen;Dr. Berg;4;\r\n"
+                + "Old;Patient;Dr. Berg;5;\r\n", StandardCharsets.UTF_8);
+        PatientRegisterPlain register = new PatientRegisterPlain();
+        register.addPatient(new Patient("Old", "Patient", "5"));
+        PatientImporter importer = new PatientImporter(2);
+
+        // Act
+        ImportReport report = importer.importPatients(importFile, register, errorReportFile);
+
+        // Assert
+        assertEquals(2, report.getImportedPatients());
+        assertEquals(2, report.getInvalidRecords());
+        assertEquals(2, report.getDuplicateRecords());
+        assertEquals(3, register.getNumberOfPatients());
+        assertFalse(importer.hasCheckpoint(errorReportFile));
+
+        List<String> lines = Files.readAllLines(errorReportFile.toPath(), StandardCharsets.UTF_8);
+        assertEquals(5, lines.size());
+        assertEquals("lineNumber;recordNumber;socialSecurityNumber;reason;message", lines.get(0));
+        assertTrue(lines.get(1).startsWith("3;2;2;INVALID_RECORD;"));
+        assertTrue(lines.get(2).startsWith("4;3;3;INVALID_RECORD;"));
+        assertTrue(lines.get(3).startsWith("5;4;1;DUPLICATE_SOCIAL_SECURITY_NUMBER;"));
+        assertTrue(lines.get(4).startsWith("7;6;5;DUPLICATE_SOCIAL_SECURITY_NUMBER;"));
+    }
+
+    @Test
+    @DisplayName("Test that a failed import is resumed after its last checkpoint")
+    public void testResumingFromCheckpoint() throws IOException, InterruptedException
+    {
+        // Arrange
+        StringBuilder contents = new StringBuilder(HEADER);
+        for (int i = 1; i <= 10; i++) {
+            contents.append("First").append(i).append(";Last;Doctor;").append(i).append(";\r\n");
+        }
+        contents.append("Broken;;Doctor;11;\r\n");
+        Files.writeString(importFile.toPath(), contents.toString(), StandardCharsets.UTF_8);
+        FailingRegister register = new FailingRegister(2);
+        PatientImporter importer = new PatientImporter(4);
+
+        // Act
+        assertThrows(IllegalStateException.class,
+                () -> importer.importPatients(importFile, register, errorReportFile));
+        boolean hadCheckpoint = importer.hasCheckpoint(errorReportFile);
+        int patientsBeforeResume = register.getNumberOfPatients();
+        ImportReport report = importer.importPatients(importFile, register, errorReportFile);
+
+        // Assert
+        assertTrue(hadCheckpoint);
+        assertEquals(4, patientsBeforeResume);
+        assertEquals(4, report.getResumedAfterRecord());
+        assertEquals(10, report.getImportedPatients());
+        assertEquals(1, report.getInvalidRecords());
+        assertEquals(0, report.getDuplicateRecords());
+        assertEquals(10, register.getNumberOfPatients());
+        assertFalse(importer.hasCheckpoint(errorReportFile));
+        List<String> lines = Files.readAllLines(errorReportFile.toPath(), StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(1).startsWith("12;11;11;INVALID_RECORD;"));
+    }
+
+    @Test
+    @DisplayName("Test that an import stopped by its progress listener is resumed after its last checkpoint")
+    public void testStoppingFromProgressListener() throws IOException, InterruptedException
+    {
+        // Arrange
+        StringBuilder contents = new StringBuilder(HEADER);
+        for (int i = 1; i <= 10; i++) {
+            contents.append("First").append(i).append(";Last;Doctor;").append(i).append(";\r\n");
+        }
+        Files.writeString(importFile.toPath(), contents.toString(), StandardCharsets.UTF_8);
+        PatientRegisterPlain register = new PatientRegisterPlain();
+        PatientImporter importer = new PatientImporter(4);
+        List<Progress> reports = new ArrayList<>();
+
+        // Act
+        assertThrows(CancellationException.class, () -> importer.importPatients(importFile, register,
+                errorReportFile, progress -> {
+                    reports.add(progress);
+                    throw new CancellationException("Stopped");
+                }));
+        boolean hadCheckpoint = importer.hasCheckpoint(errorReportFile);
+        ImportReport report = importer.importPatients(importFile, register, errorReportFile);
+
+        // Assert
+        assertTrue(hadCheckpoint);
+        assertEquals(1, reports.size());
+        assertTrue(reports.get(0).getBytesProcessed() > 0);
+        assertEquals(10, report.getImportedPatients());
+        assertEquals(0, report.getDuplicateRecords());
+        assertEquals(10, register.getNumberOfPatients());
+        assertFalse(importer.hasCheckpoint(errorReportFile));
+    }
+
+    @Test
+    @DisplayName("Test that the records skipped after the last checkpoint are only reported once after resuming")
+    public void testResumedErrorReport() throws IOException, InterruptedException
+    {
+        // Arrange
+        Files.writeString(importFile.toPath(), HEADER
+                + "Broken;;Doctor;1;\r\n"
+                + "First2;Last;Doctor;2;\r\n"
+                + "First3;Last;Doctor;3;\r\n"
+                + "Broken;;Doctor;4;\r\n"
+                + "First5;Last;Doctor;5;\r\n"
+                + "First6;Last;Doctor;6;\r\n", StandardCharsets.UTF_8);
+        FailingRegister register = new FailingRegister(2);
+        PatientImporter importer = new PatientImporter(2);
+
+        // Act
+        assertThrows(IllegalStateException.class,
+                () -> importer.importPatients(importFile, register, errorReportFile));
+        List<String> linesBeforeResume = Files.readAllLines(errorReportFile.toPath(), StandardCharsets.UTF_8);
+        ImportReport report = importer.importPatients(importFile, register, errorReportFile);
+
+        // Assert
+        assertEquals(3, linesBeforeResume.size());
+        assertEquals(2, report.getInvalidRecords());
+        assertEquals(4, report.getImportedPatients());
+        List<String> lines = Files.readAllLines(errorReportFile.toPath(), StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        assertEquals("lineNumber;recordNumber;socialSecurityNumber;reason;message", lines.get(0));
+        assertTrue(lines.get(1).startsWith("2;1;1;INVALID_RECORD;"));
+        assertTrue(lines.get(2).startsWith("5;4;4;INVALID_RECORD;"));
+    }
+
+    @Test
+    @DisplayName("Test that an invalid header still stops the import")
+    public void testInvalidHeader() throws IOException
+    {
+        Files.writeString(importFile.toPath(), "firstName;lastName\r\nOla;Nordmann\r\n", StandardCharsets.UTF_8);
+        PatientImporter importer = new PatientImporter();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> importer.importPatients(importFile, new PatientRegisterPlain(), errorReportFile));
+        assertThrows(IllegalArgumentException.class, () -> new PatientImporter(0));
+    }
+
+    /**
+     * A register that fails to add the batch with the given number once, as a database connection could
+     */
+    private static class FailingRegister extends PatientRegisterPlain
+    {
+        private int batchesBeforeFailure;
+
+        private FailingRegister(int failingBatch)
+        {
+            this.batchesBeforeFailure = failingBatch - 1;
+        }
+
+        @Override
+        public List<Patient> addNewPatients(List<Patient> patients)
+        {
+            if (this.batchesBeforeFailure-- == 0) {
+                throw new IllegalStateException("The register is unavailable");
+            }
+            return super.addNewPatients(patients);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.cli.PatientRegisterCLI;
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.utility.CSVHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PatientRegisterCLITest
+{
+    private static final File inputFile = new File("target/cliInput.csv");
+    private static final File outputFile = new File("target/cliOutput.csv");
+
+    private final Patient patient1 = new Patient.PatientBuilder("Ola", "Nordmann", "01019012345")
+            .withGeneralPractitioner("Dr. Hansen")
+            .withDiagnosis("Asthma")
+            .build();
+    private final Patient patient2 = new Patient.PatientBuilder("Kari", "Nordmann", "02029054321")
+            .withGeneralPractitioner("Dr. Berg")
+            .withDiagnosis("Asthma")
+            .build();
+
+    private String database;
+    private ByteArrayOutputStream out;
+    private PatientRegisterCLI cli;
+
+    @BeforeEach
+    public void setUp() throws IOException
+    {
+        this.database = "jdbc:derby:memory:cli-" + System.nanoTime() + ";create=true";
+        this.out = new ByteArrayOutputStream();
+        this.cli = new PatientRegisterCLI(new PrintStream(this.out, true, StandardCharsets.UTF_8),
+                new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+        new CSVHandler().writePatientList(inputFile, List.of(this.patient1, this.patient2));
+    }
+
+    @AfterEach
+    @DisplayName("Cleaning up the files that were written")
+    public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(inputFile.toPath());
+        Files.deleteIfExists(outputFile.toPath());
+    }
+
+    @Test
+    @DisplayName("Test that invalid arguments are rejected with the usage exit code")
+    public void testInvalidArguments()
+    {
+        assertEquals(PatientRegisterCLI.EXIT_USAGE, this.cli.run(new String[0]));
+        assertEquals(PatientRegisterCLI.EXIT_USAGE, this.cli.run(new String[] {"unknown"}));
+        assertEquals(PatientRegisterCLI.EXIT_USAGE, this.cli.run(new String[] {"import"}));
+        assertEquals(PatientRegisterCLI.EXIT_USAGE, this.cli.run(new String[] {"count", "--verbose"}));
+        assertEquals(PatientRegisterCLI.EXIT_USAGE, this.cli.run(new String[] {"--skip-errors", "count"}));
+        assertEquals(PatientRegisterCLI.EXIT_USAGE,
+                this.cli.run(new String[] {"dedupe", inputFile.getPath(), inputFile.getPath()}));
+    }
+
+    @Test
+    @DisplayName("Test importing a file, counting the patients and exporting them again")
+    public void testImportCountAndExport() throws IOException
+    {
+        // Act
+        int importExitCode = this.cli.run(new String[] {"import", inputFile.getPath(), "--database", this.database});
+        this.out.reset();
+        int countExitCode = this.cli.run(new String[] {"count", "--database", this.database});
+        String count = this.out.toString(StandardCharsets.UTF_8).trim();
+        int exportExitCode = this.cli.run(new String[] {"export", outputFile.getPath(), "--database", this.database});
+
+        // Assert
+        assertEquals(PatientRegisterCLI.EXIT_OK, importExitCode);
+        assertEquals(PatientRegisterCLI.EXIT_OK, countExitCode);
+        assertEquals("2", count);
+        assertEquals(PatientRegisterCLI.EXIT_OK, exportExitCode);
+        List<Patient> exportedPatients = new ArrayList<>(new CSVHandler().readPatientList(outputFile));
+        assertEquals(2, exportedPatients.size());
+        assertTrue(exportedPatients.containsAll(List.of(this.patient1, this.patient2)));
+    }
+
+    @Test
+    @DisplayName("Test that importing a patient that is already in the register fails with the invalid data exit code")
+    public void testImportingDuplicates()
+    {
+        // Arrange
+        this.cli.run(new String[] {"import", inputFile.getPath(), "--database", this.database});
+
+        // Act
+        int exitCode = this.cli.run(new String[] {"import", inputFile.getPath(), "--database", this.database});
+        int skippingExitCode = this.cli.run(
+                new String[] {"import", "--skip-errors", inputFile.getPath(), "--database", this.database});
+
+        // Assert
+        assertEquals(PatientRegisterCLI.EXIT_INVALID_DATA, exitCode);
+        assertEquals(PatientRegisterCLI.EXIT_INVALID_DATA, skippingExitCode);
+        assertTrue(new File(inputFile.getPath() + ".errors.csv").delete());
+    }
+
+    @Test
+    @DisplayName("Test that dedupe keeps the first record of each social security number")
+    public void testDedupe() throws IOException
+    {
+        // Arrange
+        Patient changedPatient1 = new Patient.PatientBuilder("Ola", "Hansen", this.patient1.getSocialSecurityNumber())
+                .build();
+        new CSVHandler().writePatientList(inputFile, List.of(this.patient1, this.patient2, changedPatient1));
+
+        // Act
+        int exitCode = this.cli.run(new String[] {"dedupe", inputFile.getPath(), outputFile.getPath()});
+
+        // Assert
+        assertEquals(PatientRegisterCLI.EXIT_OK, exitCode);
+        assertEquals(List.of(this.patient1, this.patient2), new CSVHandler().readPatientList(outputFile));
+    }
+
+    @Test
+    @DisplayName("Test converting a CSV file to a snapshot and back")
+    public void testConvert() throws IOException
+    {
+        // Arrange
+        File snapshotFile = new File("target/cliSnapshot.psnap");
+
+        // Act
+        int toSnapshotExitCode = this.cli.run(new String[] {"convert", inputFile.getPath(), snapshotFile.getPath()});
+        int toCSVExitCode = this.cli.run(new String[] {"convert", snapshotFile.getPath(), outputFile.getPath()});
+
+        // Assert
+        assertEquals(PatientRegisterCLI.EXIT_OK, toSnapshotExitCode);
+        assertEquals(PatientRegisterCLI.EXIT_OK, toCSVExitCode);
+        assertEquals(List.of(this.patient1, this.patient2), new CSVHandler().readPatientList(outputFile));
+        assertTrue(snapshotFile.delete());
+    }
+
+    @Test
+    @DisplayName("Test counting a snapshot and importing it into the database")
+    public void testSnapshot()
+    {
+        // Arrange
+        File snapshotFile = new File("target/cliSnapshot.psnap");
+        this.cli.run(new String[] {"convert", inputFile.getPath(), snapshotFile.getPath()});
+        this.out.reset();
+
+        // Act
+        int countExitCode = this.cli.run(new String[] {"count", "--snapshot", snapshotFile.getPath()});
+        int importExitCode = this.cli.run(new String[] {"import", snapshotFile.getPath(),
+                "--database", this.database});
+        int invalidExitCode = this.cli.run(new String[] {"import", inputFile.getPath(),
+                "--snapshot", snapshotFile.getPath()});
+
+        // Assert
+        assertEquals(PatientRegisterCLI.EXIT_OK, countExitCode);
+        assertEquals(PatientRegisterCLI.EXIT_OK, importExitCode);
+        assertEquals(PatientRegisterCLI.EXIT_USAGE, invalidExitCode);
+        assertTrue(this.out.toString(StandardCharsets.UTF_8).startsWith("2" + System.lineSeparator()
+                + "Imported 2 patients"));
+        assertTrue(snapshotFile.delete());
+    }
+
+    @Test
+    @DisplayName("Test compacting the register")
+    public void testCompact()
+    {
+        // Arrange
+        this.cli.run(new String[] {"import", inputFile.getPath(), "--database", this.database});
+
+        // Act
+        int exitCode = this.cli.run(new String[] {"compact", "--database", this.database});
+
+        // Assert
+        assertEquals(PatientRegisterCLI.EXIT_OK, exitCode);
+        assertTrue(this.out.toString(StandardCharsets.UTF_8).contains("Compacted"));
+    }
+}
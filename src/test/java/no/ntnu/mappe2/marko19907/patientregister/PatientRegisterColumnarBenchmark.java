@@ -0,0 +1,122 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientField;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegister;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterColumnar;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterPlain;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmarks for the PatientRegisterColumnar, only run with the benchmark profile: mvn test -P benchmark
+ */
+public class PatientRegisterColumnarBenchmark
+{
+    private static final int NUMBER_OF_PATIENTS = Integer.getInteger("benchmark.patients", 500_000);
+    private static final int NUMBER_OF_COLUMNAR_PATIENTS = Integer.getInteger("benchmark.columnar", 5_000_000);
+    private static final int BATCH_SIZE = 100_000;
+    private static final int NUMBER_OF_LOOKUPS = 100_000;
+
+    @Test
+    @DisplayName("Benchmark the memory per patient and the scans of the columnar register against the plain register")
+    public void benchmarkAgainstPlainRegister()
+    {
+        PatientRegisterColumnarBenchmark.measure("Columnar", new PatientRegisterColumnar(), NUMBER_OF_PATIENTS);
+        PatientRegisterColumnarBenchmark.measure("Plain", new PatientRegisterPlain(), NUMBER_OF_PATIENTS);
+    }
+
+    @Test
+    @DisplayName("Benchmark the memory per patient and the scans of a columnar register of millions of patients")
+    public void benchmarkLargeColumnarRegister()
+    {
+        PatientRegisterColumnarBenchmark.measure("Columnar", new PatientRegisterColumnar(),
+                NUMBER_OF_COLUMNAR_PATIENTS);
+    }
+
+    /**
+     * Fills the given register a batch at a time, so that only the register holds the patients,
+     * and prints the memory it takes and the time of lookups and scans
+     * @param name The name of the register to print
+     * @param register The empty register to fill
+     * @param numberOfPatients The number of patients to add
+     */
+    private static void measure(String name, PatientRegister register, int numberOfPatients)
+    {
+        long heapBefore = PatientRegisterColumnarBenchmark.usedHeap();
+        long start = System.nanoTime();
+        for (int first = 0; first < numberOfPatients; first += BATCH_SIZE) {
+            List<Patient> batch = new ArrayList<>(BATCH_SIZE);
+            for (int i = first; i < Math.min(first + BATCH_SIZE, numberOfPatients); i++) {
+                batch.add(PatientRegisterColumnarBenchmark.createPatient(i));
+            }
+            register.addPatients(batch);
+        }
+        long loadTime = System.nanoTime() - start;
+        long heapSize = PatientRegisterColumnarBenchmark.usedHeap() - heapBefore;
+        long offHeapSize = (register instanceof PatientRegisterColumnar)
+                ? ((PatientRegisterColumnar) register).getOffHeapSize() : 0;
+
+        start = System.nanoTime();
+        for (int i = 0; i < NUMBER_OF_LOOKUPS; i++) {
+            Patient patient = PatientRegisterColumnarBenchmark.createPatient((int) ((i * 7_919L) % numberOfPatients));
+            assertEquals(List.of(patient),
+                    register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, patient.getSocialSecurityNumber()));
+        }
+        long lookupTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long matchingPatients;
+        try (Stream<Patient> patients = register.streamPatients()) {
+            matchingPatients = patients.filter(patient -> patient.getLastName().equals("LastName7")).count();
+        }
+        long scanTime = System.nanoTime() - start;
+        assertEquals(numberOfPatients / 1000, matchingPatients);
+
+        start = System.nanoTime();
+        int patientsWithDiagnosis = register.findPatients(PatientField.DIAGNOSIS, "Diagnosis7").size();
+        long diagnosisTime = System.nanoTime() - start;
+        assertEquals(numberOfPatients / 2000, patientsWithDiagnosis);
+
+        System.out.printf("%s, %d patients: loaded in %d ms, %.1f bytes per patient on the heap"
+                        + " and %.1f outside it%n", name, numberOfPatients, loadTime / 1_000_000,
+                heapSize / (double) numberOfPatients, offHeapSize / (double) numberOfPatients);
+        System.out.printf("%s: %d lookups by social security number in %d ms, scanned every patient in %d ms"
+                        + " (%.0f patients/s), found a diagnosis in %d ms%n", name, NUMBER_OF_LOOKUPS,
+                lookupTime / 1_000_000, scanTime / 1_000_000, numberOfPatients / (scanTime / 1e9),
+                diagnosisTime / 1_000_000);
+        register.close();
+    }
+
+    /**
+     * Returns the patient with the given number, with the values of PatientRegisterDBBenchmark.generatePatients()
+     * @param i The number of the patient
+     * @return The patient with the given number
+     */
+    private static Patient createPatient(int i)
+    {
+        return new Patient.PatientBuilder("FirstName" + i, "LastName" + (i % 1000), String.format("%011d", i))
+                .withGeneralPractitioner("Doctor" + (i % 300))
+                .withDiagnosis("Diagnosis" + (i % 2000))
+                .build();
+    }
+
+    /**
+     * Returns the heap in use after collecting the garbage
+     * @return The number of bytes of the heap in use
+     */
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,223 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.exception.DuplicateKeyException;
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientField;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterColumnar;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterEvent;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterPlain;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientSearchIndex;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PatientRegisterColumnarTest
+{
+    private static final int NUMBER_OF_THREADS = 8;
+
+    /**
+     * Returns patients with repeating last names, general practitioners and diagnoses
+     * @param numberOfPatients The number of patients to return
+     * @return A List of patients with unique social security numbers
+     */
+    private static List<Patient> createPatients(int numberOfPatients)
+    {
+        List<Patient> patients = new ArrayList<>(numberOfPatients);
+        for (int i = 0; i < numberOfPatients; i++) {
+            patients.add(new Patient.PatientBuilder("Name" + i, "Last" + (i % 7), String.format("%011d", i * 37L))
+                    .withGeneralPractitioner("Dr. " + (i % 5))
+                    .withDiagnosis((i % 3 == 0) ? "" : "Diagnosis" + (i % 11))
+                    .build());
+        }
+        return patients;
+    }
+
+    @Test
+    @DisplayName("Test adding, updating and removing a patient, and the events of the changes")
+    public void testAddingUpdatingAndRemovingPatient()
+    {
+        // Arrange
+        PatientRegisterColumnar register = new PatientRegisterColumnar();
+        List<PatientRegisterEvent> events = new ArrayList<>();
+        register.addListener(events::add);
+        Patient patient = new Patient.PatientBuilder("Åse", "Lie", "123").withDiagnosis("Asthma").build();
+        Patient updatedPatient = new Patient("Åse", "Lie", "321");
+
+        // Act
+        register.addPatient(patient);
+        boolean updated = register.updatePatient(updatedPatient, patient);
+        boolean removedOld = register.removePatient(patient);
+
+        // Assert
+        assertTrue(updated);
+        assertFalse(removedOld);
+        assertEquals(List.of(updatedPatient), register.getPatientList());
+        assertThrows(DuplicateKeyException.class, () -> register.addPatient(new Patient("Name3", "LastName3", "321")));
+        assertFalse(register.removePatient(new Patient("Other", "Name", "321")));
+        assertTrue(register.removePatient(updatedPatient));
+        assertEquals(0, register.getNumberOfPatients());
+        assertEquals(3, events.size());
+    }
+
+    @Test
+    @DisplayName("Test that the patients stay readable as the register grows and rows are removed and reused")
+    public void testGrowingAndReusingRows()
+    {
+        // Arrange
+        PatientRegisterColumnar register = new PatientRegisterColumnar();
+        List<Patient> patients = PatientRegisterColumnarTest.createPatients(20_000);
+        Patient longPatient = new Patient("Ø".repeat(300), "Last", "99999999999");
+        register.addPatients(patients);
+        register.addPatient(longPatient);
+
+        // Act
+        for (int i = 0; i < patients.size(); i += 2) {
+            assertTrue(register.removePatient(patients.get(i)));
+        }
+        List<Patient> newPatients = new ArrayList<>();
+        for (int i = 0; i < patients.size(); i += 2) {
+            newPatients.add(new Patient("New" + i, "Last", "N" + i));
+        }
+        List<Patient> duplicatePatients = register.addNewPatients(newPatients);
+
+        // Assert
+        assertTrue(duplicatePatients.isEmpty());
+        assertEquals(patients.size() + 1, register.getNumberOfPatients());
+        for (int i = 0; i < patients.size(); i++) {
+            List<Patient> expectedPatients = (i % 2 == 0) ? List.of() : List.of(patients.get(i));
+            assertEquals(expectedPatients, register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER,
+                    patients.get(i).getSocialSecurityNumber()));
+        }
+        assertEquals(List.of(newPatients.get(7)), register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "N14"));
+        assertEquals(List.of(longPatient), register.findPatients(PatientField.FIRST_NAME, "Ø".repeat(300)));
+    }
+
+    @Test
+    @DisplayName("Test that the removed values are compacted away without losing the other patients")
+    public void testCompaction()
+    {
+        // Arrange
+        PatientRegisterColumnar register = new PatientRegisterColumnar();
+        List<Patient> patients = new ArrayList<>();
+        for (int i = 0; i < 40_000; i++) {
+            patients.add(new Patient("A first name long enough to waste space " + i, "Last", "SSN" + i));
+        }
+        register.addPatients(patients);
+        long sizeBeforeRemoving = register.getOffHeapSize();
+
+        // Act
+        for (int i = 0; i < patients.size(); i++) {
+            if (i % 100 != 0) {
+                register.removePatient(patients.get(i));
+            }
+        }
+
+        // Assert
+        assertTrue(register.getOffHeapSize() < sizeBeforeRemoving);
+        assertEquals(400, register.getNumberOfPatients());
+        assertEquals(new HashSet<>(patients.subList(0, 1)),
+                new HashSet<>(register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "SSN0")));
+        assertEquals(IntStream.range(0, patients.size()).filter(i -> i % 100 == 0).mapToObj(patients::get)
+                .collect(Collectors.toSet()), new HashSet<>(register.getPatientList()));
+    }
+
+    @Test
+    @DisplayName("Test that the queries return the same patients as the plain register")
+    public void testQueriesMatchPlainRegister()
+    {
+        // Arrange
+        List<Patient> patients = PatientRegisterColumnarTest.createPatients(500);
+        PatientRegisterColumnar register = new PatientRegisterColumnar();
+        PatientRegisterPlain plainRegister = new PatientRegisterPlain();
+        register.addPatients(patients);
+        plainRegister.addPatients(patients);
+        Patient updatedPatient = new Patient.PatientBuilder("Changed", "Last3",
+                patients.get(3).getSocialSecurityNumber())
+                .withDiagnosis("Diagnosis1")
+                .build();
+        List<Patient> upserts = List.of(updatedPatient, new Patient("Added", "Last1", "1"));
+
+        // Act
+        assertEquals(plainRegister.upsertPatients(upserts).toString(), register.upsertPatients(upserts).toString());
+
+        // Assert
+        for (PatientField field : PatientField.values()) {
+            String value = field.getValue(patients.get(10));
+            assertEquals(new HashSet<>(plainRegister.findPatients(field, value)),
+                    new HashSet<>(register.findPatients(field, value)));
+            assertEquals(plainRegister.findPatientsByPrefix(field, value.substring(0, value.length() / 2)),
+                    register.findPatientsByPrefix(field, value.substring(0, value.length() / 2)));
+            assertEquals(plainRegister.findPatientsInRange(field, "D", "M"),
+                    register.findPatientsInRange(field, "D", "M"));
+            assertEquals(plainRegister.getPatientPage(field, 20, 30), register.getPatientPage(field, 20, 30));
+            assertEquals(plainRegister.getPatientPageAfter(field, patients.get(42), 25),
+                    register.getPatientPageAfter(field, patients.get(42), 25));
+        }
+        // The search index of the plain register stops at the first good candidates, so the full ranking is expected
+        for (String query : List.of("name1", "last3 name", "0000", "NAME42 last0", "x")) {
+            assertEquals(plainRegister.getPatientList().stream()
+                            .filter(patient -> PatientSearchIndex.matches(patient, query))
+                            .sorted(PatientSearchIndex.getRanking(query))
+                            .limit(15)
+                            .collect(Collectors.toList()),
+                    register.searchPatients(query, 15));
+        }
+        List<Patient> firstPage = register.getPatientPageAfter(PatientField.LAST_NAME, null, 7);
+        assertEquals(plainRegister.getPatientPageAfter(PatientField.LAST_NAME, firstPage.get(6), 7),
+                register.getPatientPageAfter(PatientField.LAST_NAME, firstPage.get(6), 7));
+        assertEquals(plainRegister.getPatientPage(PatientField.DIAGNOSIS, 495, 30),
+                register.getPatientPage(PatientField.DIAGNOSIS, 495, 30));
+        Map<PatientField, String> prefixes = Map.of(PatientField.LAST_NAME, "Last2", PatientField.DIAGNOSIS, "Diag");
+        assertEquals(plainRegister.filterPatients(prefixes), register.filterPatients(prefixes));
+        assertEquals(new HashSet<>(plainRegister.getPatientList()), new HashSet<>(register.getPatientList()));
+        try (Stream<Patient> streamedPatients = register.streamPatients()) {
+            assertEquals(plainRegister.getNumberOfPatients(), streamedPatients.count());
+        }
+    }
+
+    @Test
+    @DisplayName("Test that concurrent adds of the same patients only add each patient once")
+    public void testConcurrentAdds() throws Exception
+    {
+        // Arrange
+        PatientRegisterColumnar register = new PatientRegisterColumnar();
+        int numberOfPatients = 2000;
+        AtomicInteger duplicates = new AtomicInteger();
+        List<Callable<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+            workers.add(() -> {
+                for (int j = 0; j < numberOfPatients; j++) {
+                    try {
+                        register.addPatient(new Patient("Name" + j, "LastName" + j, String.valueOf(j)));
+                    }
+                    catch (DuplicateKeyException e) {
+                        duplicates.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+
+        // Act
+        PatientRegisterConcurrentTest.runConcurrently(workers);
+
+        // Assert
+        assertEquals(numberOfPatients, register.getNumberOfPatients());
+        assertEquals(numberOfPatients * (NUMBER_OF_THREADS - 1), duplicates.get());
+        assertEquals(numberOfPatients, register.getPatientList().size());
+    }
+}
@@ -0,0 +1,77 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientField;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterConcurrent;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Benchmarks for the PatientRegisterConcurrent, only run with the benchmark profile: mvn test -P benchmark
+ */
+public class PatientRegisterConcurrentBenchmark
+{
+    private static final int NUMBER_OF_PATIENTS = Integer.getInteger("benchmark.patients", 100_000);
+    private static final int OPERATIONS_PER_THREAD = 200_000;
+
+    @Test
+    @DisplayName("Benchmark the throughput of a mix of reads and writes with a growing number of threads")
+    public void benchmarkThroughput() throws Exception
+    {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            PatientRegisterConcurrent register = new PatientRegisterConcurrent();
+            register.addPatients(PatientRegisterDBBenchmark.generatePatients(NUMBER_OF_PATIENTS));
+
+            List<Callable<Void>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                workers.add(() -> {
+                    PatientRegisterConcurrentBenchmark.runOperations(register, thread);
+                    return null;
+                });
+            }
+
+            long start = System.nanoTime();
+            PatientRegisterConcurrentTest.runConcurrently(workers);
+            long time = System.nanoTime() - start;
+
+            long operations = (long) threads * OPERATIONS_PER_THREAD;
+            System.out.printf("%d threads: %d operations in %d ms, %.0f operations/s%n",
+                    threads, operations, time / 1_000_000, operations / (time / 1e9));
+        }
+    }
+
+    /**
+     * Runs a mix of 80% page reads and 20% adds and updates against the register
+     * @param register The register to run the operations against
+     * @param thread The number of the thread, used to keep the added patients of each thread apart
+     */
+    private static void runOperations(PatientRegisterConcurrent register, int thread)
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Patient lastAdded = null;
+        for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+            int operation = random.nextInt(10);
+            if (operation < 8) {
+                Patient after = new Patient("Name", "LastName", String.format("%011d",
+                        random.nextInt(NUMBER_OF_PATIENTS)));
+                register.getPatientPageAfter(PatientField.SOCIAL_SECURITY_NUMBER, after, 10);
+            }
+            else if (operation == 8 || lastAdded == null) {
+                lastAdded = new Patient("Name", "LastName", "T" + thread + "-" + i);
+                register.addPatient(lastAdded);
+            }
+            else {
+                Patient updated = new Patient("Updated", "LastName", lastAdded.getSocialSecurityNumber());
+                register.updatePatient(updated, lastAdded);
+                lastAdded = updated;
+            }
+        }
+    }
+}
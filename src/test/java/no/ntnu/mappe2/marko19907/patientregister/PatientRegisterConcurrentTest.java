@@ -0,0 +1,195 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.exception.DuplicateKeyException;
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientField;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterConcurrent;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PatientRegisterConcurrentTest
+{
+    private static final int NUMBER_OF_THREADS = 8;
+
+    @Test
+    @DisplayName("Test adding, updating and removing a patient")
+    public void testAddingUpdatingAndRemovingPatient()
+    {
+        // Arrange
+        PatientRegisterConcurrent register = new PatientRegisterConcurrent();
+        Patient patient = new Patient("Name1", "LastName1", "123");
+        Patient updatedPatient = new Patient("Name2", "LastName2", "321");
+
+        // Act
+        register.addPatient(patient);
+        boolean updated = register.updatePatient(updatedPatient, patient);
+        boolean removedOld = register.removePatient(patient);
+
+        // Assert
+        assertTrue(updated);
+        assertFalse(removedOld);
+        assertEquals(List.of(updatedPatient), register.getPatientList());
+        assertThrows(DuplicateKeyException.class, () -> register.addPatient(new Patient("Name3", "LastName3", "321")));
+        assertTrue(register.removePatient(updatedPatient));
+        assertEquals(0, register.getNumberOfPatients());
+    }
+
+    @Test
+    @DisplayName("Test that concurrent adds of the same patients only add each patient once")
+    public void testConcurrentAdds() throws Exception
+    {
+        // Arrange
+        PatientRegisterConcurrent register = new PatientRegisterConcurrent();
+        int numberOfPatients = 2000;
+        AtomicInteger duplicates = new AtomicInteger();
+        List<Callable<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+            workers.add(() -> {
+                for (int j = 0; j < numberOfPatients; j++) {
+                    try {
+                        register.addPatient(new Patient("Name" + j, "LastName" + j, String.valueOf(j)));
+                    }
+                    catch (DuplicateKeyException e) {
+                        duplicates.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+
+        // Act
+        PatientRegisterConcurrentTest.runConcurrently(workers);
+
+        // Assert
+        assertEquals(numberOfPatients, register.getNumberOfPatients());
+        assertEquals(numberOfPatients * (NUMBER_OF_THREADS - 1), duplicates.get());
+        assertEquals(numberOfPatients,
+                register.getPatientPage(PatientField.LAST_NAME, 0, numberOfPatients * 2).size());
+    }
+
+    @Test
+    @DisplayName("Test that concurrent updates that change the social security number never lose a patient")
+    public void testConcurrentMoves() throws Exception
+    {
+        // Arrange
+        PatientRegisterConcurrent register = new PatientRegisterConcurrent();
+        int numberOfPatients = 500;
+        int rounds = 50;
+        for (int i = 0; i < numberOfPatients; i++) {
+            register.addPatient(new Patient("Name" + i, "LastName", i + "-0"));
+        }
+        register.getPatientPage(PatientField.FIRST_NAME, 0, 1);
+
+        // Each thread moves its own share of the patients back and forth, while another reads pages
+        List<Callable<Void>> workers = new ArrayList<>();
+        for (int t = 0; t < NUMBER_OF_THREADS; t++) {
+            int thread = t;
+            workers.add(() -> {
+                for (int round = 1; round <= rounds; round++) {
+                    for (int i = thread; i < numberOfPatients; i += NUMBER_OF_THREADS) {
+                        Patient oldPatient = new Patient("Name" + i, "LastName", i + "-" + (round - 1));
+                        Patient newPatient = new Patient("Name" + i, "LastName", i + "-" + round);
+                        assertTrue(register.updatePatient(newPatient, oldPatient));
+                    }
+                }
+                return null;
+            });
+        }
+        workers.add(() -> {
+            for (int round = 0; round < rounds; round++) {
+                assertTrue(register.getPatientPage(PatientField.FIRST_NAME, 0, numberOfPatients * 2).size()
+                        >= numberOfPatients - NUMBER_OF_THREADS);
+            }
+            return null;
+        });
+
+        // Act
+        PatientRegisterConcurrentTest.runConcurrently(workers);
+
+        // Assert
+        assertEquals(numberOfPatients, register.getNumberOfPatients());
+        Set<String> socialSecurityNumbers = new HashSet<>();
+        register.getPatientList().forEach(patient -> socialSecurityNumbers.add(patient.getSocialSecurityNumber()));
+        for (int i = 0; i < numberOfPatients; i++) {
+            assertTrue(socialSecurityNumbers.contains(i + "-" + rounds));
+        }
+        assertEquals(numberOfPatients,
+                register.getPatientPage(PatientField.FIRST_NAME, 0, numberOfPatients * 2).size());
+        assertEquals(numberOfPatients,
+                register.getPatientPage(PatientField.SOCIAL_SECURITY_NUMBER, 0, numberOfPatients * 2).size());
+    }
+
+    @Test
+    @DisplayName("Test that a patient is always found by its social security number while it is being updated")
+    public void testLookupsDuringUpdates() throws Exception
+    {
+        // Arrange
+        PatientRegisterConcurrent register = new PatientRegisterConcurrent();
+        int rounds = 20000;
+        register.addPatient(new Patient.PatientBuilder("Ola", "Nordmann", "123").withDiagnosis("0").build());
+        register.getPatientPage(PatientField.DIAGNOSIS, 0, 1);
+        AtomicInteger misses = new AtomicInteger();
+        List<Callable<Void>> workers = new ArrayList<>();
+        workers.add(() -> {
+            for (int round = 1; round <= rounds; round++) {
+                Patient oldPatient = new Patient.PatientBuilder("Ola", "Nordmann", "123")
+                        .withDiagnosis(String.valueOf(round - 1)).build();
+                Patient newPatient = new Patient.PatientBuilder("Ola", "Nordmann", "123")
+                        .withDiagnosis(String.valueOf(round)).build();
+                assertTrue(register.updatePatient(newPatient, oldPatient));
+            }
+            return null;
+        });
+        workers.add(() -> {
+            for (int round = 0; round < rounds; round++) {
+                if (register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "123").size() != 1) {
+                    misses.incrementAndGet();
+                }
+            }
+            return null;
+        });
+
+        // Act
+        PatientRegisterConcurrentTest.runConcurrently(workers);
+
+        // Assert
+        assertEquals(0, misses.get());
+        assertEquals(1, register.getNumberOfPatients());
+        assertEquals(String.valueOf(rounds), register.getPatientPage(PatientField.DIAGNOSIS, 0, 10).get(0)
+                .getDiagnosis());
+        assertEquals(1, register.getPatientPage(PatientField.DIAGNOSIS, 0, 10).size());
+    }
+
+    /**
+     * Runs the given workers on their own threads, all at once, and rethrows the first failure
+     * @param workers The workers to run
+     * @throws Exception If one of the workers failed
+     */
+    static void runConcurrently(List<Callable<Void>> workers) throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(workers.size());
+        try {
+            for (Future<Void> future : executor.invokeAll(workers)) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
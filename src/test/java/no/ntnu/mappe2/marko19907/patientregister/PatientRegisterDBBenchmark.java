@@ -0,0 +1,78 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterDB;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmarks for the PatientRegisterDB, only run with the benchmark profile: mvn test -P benchmark
+ */
+public class PatientRegisterDBBenchmark
+{
+    private static final int NUMBER_OF_PATIENTS = Integer.getInteger("benchmark.patients", 20_000);
+
+    @Test
+    @DisplayName("Benchmark adding patients one by one against adding them as a batch")
+    public void benchmarkAddPatients()
+    {
+        List<Patient> patients = PatientRegisterDBBenchmark.generatePatients(NUMBER_OF_PATIENTS);
+
+        PatientRegisterDB singleRegister = PatientRegisterDBBenchmark.createRegister("single");
+        long start = System.nanoTime();
+        patients.forEach(singleRegister::addPatient);
+        long singleTime = System.nanoTime() - start;
+        assertEquals(NUMBER_OF_PATIENTS, singleRegister.getNumberOfPatients());
+        singleRegister.close();
+
+        PatientRegisterDB batchRegister = PatientRegisterDBBenchmark.createRegister("batch");
+        start = System.nanoTime();
+        batchRegister.addPatients(patients);
+        long batchTime = System.nanoTime() - start;
+        assertEquals(NUMBER_OF_PATIENTS, batchRegister.getNumberOfPatients());
+        batchRegister.close();
+
+        System.out.printf("addPatient one by one: %d patients in %d ms, %.0f rows/s%n",
+                NUMBER_OF_PATIENTS, singleTime / 1_000_000, NUMBER_OF_PATIENTS / (singleTime / 1e9));
+        System.out.printf("addPatients as a batch: %d patients in %d ms, %.0f rows/s%n",
+                NUMBER_OF_PATIENTS, batchTime / 1_000_000, NUMBER_OF_PATIENTS / (batchTime / 1e9));
+    }
+
+    /**
+     * Returns a new PatientRegisterDB backed by a fresh database in the target directory
+     * @param name The name to give the database
+     * @return A new PatientRegisterDB backed by a fresh database
+     */
+    static PatientRegisterDB createRegister(String name)
+    {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("jakarta.persistence.jdbc.url",
+                "jdbc:derby:target/benchmark-db/" + name + "-" + System.nanoTime() + ";create=true");
+        return new PatientRegisterDB(properties);
+    }
+
+    /**
+     * Returns a List of generated patients with unique social security numbers
+     * @param numberOfPatients The number of patients to generate
+     * @return A List of generated patients
+     */
+    static List<Patient> generatePatients(int numberOfPatients)
+    {
+        List<Patient> patients = new ArrayList<>(numberOfPatients);
+        for (int i = 0; i < numberOfPatients; i++) {
+            patients.add(new Patient.PatientBuilder("FirstName" + i, "LastName" + (i % 1000),
+                    String.format("%011d", i))
+                    .withGeneralPractitioner("Doctor" + (i % 300))
+                    .withDiagnosis("Diagnosis" + (i % 2000))
+                    .build());
+        }
+        return patients;
+    }
+}
@@ -0,0 +1,427 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import no.ntnu.mappe2.marko19907.patientregister.exception.DuplicateKeyException;
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientField;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterDB;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterEvent;
+import no.ntnu.mappe2.marko19907.patientregister.model.UpsertResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PatientRegisterDBTest
+{
+    private static final String PERSISTENCE_UNIT_NAME = "st-olavs-register";
+
+    private final Patient patient1 = new Patient.PatientBuilder("Ola", "Nordmann", "01019012345")
+            .withGeneralPractitioner("Dr. Hansen")
+            .withDiagnosis("Asthma")
+            .build();
+    private final Patient patient2 = new Patient.PatientBuilder("Kari", "Nordmann", "02029054321")
+            .withGeneralPractitioner("Dr. Berg")
+            .withDiagnosis("Asthma")
+            .build();
+    private final Patient patient3 = new Patient.PatientBuilder("Per", "Nord_berg", "03039011111")
+            .withGeneralPractitioner("Dr. Hansen")
+            .withDiagnosis("Migraine")
+            .build();
+
+    private Map<String, String> properties;
+    private PatientRegisterDB register;
+
+    /**
+     * Returns patients whose social security numbers all sort before the ones of the fixed patients
+     * @param numberOfPatients The number of patients to return
+     * @return A List of patients with unique social security numbers
+     */
+    private static List<Patient> createPatients(int numberOfPatients)
+    {
+        List<Patient> patients = new ArrayList<>(numberOfPatients);
+        for (int i = 0; i < numberOfPatients; i++) {
+            patients.add(new Patient.PatientBuilder("Name" + i, "Last" + (i % 7), String.format("%011d", i))
+                    .withGeneralPractitioner("Dr. " + (i % 5))
+                    .withDiagnosis("Diagnosis" + (i % 11))
+                    .build());
+        }
+        return patients;
+    }
+
+    @BeforeEach
+    public void setUp()
+    {
+        this.properties = new HashMap<>();
+        this.properties.put("jakarta.persistence.jdbc.url",
+                "jdbc:derby:memory:test-" + System.nanoTime() + ";create=true");
+        this.register = new PatientRegisterDB(this.properties);
+        this.register.addPatients(List.of(this.patient1, this.patient2, this.patient3));
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        this.register.close();
+    }
+
+    @Test
+    @DisplayName("Test looking up patients by the exact value of a field")
+    public void testFindPatients()
+    {
+        assertEquals(List.of(this.patient1),
+                this.register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "01019012345"));
+        assertEquals(2, this.register.findPatients(PatientField.DIAGNOSIS, "Asthma").size());
+        assertEquals(List.of(this.patient2), this.register.findPatients(PatientField.FIRST_NAME, "Kari"));
+        assertTrue(this.register.findPatients(PatientField.LAST_NAME, "Nord").isEmpty());
+        assertTrue(this.register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "123").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test updating patients that were added in a batch or read from a page, and are no longer managed")
+    public void testUpdateDetachedPatients()
+    {
+        // Arrange
+        Patient pagedPatient = this.register.getPatientPage(PatientField.SOCIAL_SECURITY_NUMBER, 1, 1).get(0);
+        Patient updatedPatient1 = new Patient("Ola", "Hansen", this.patient1.getSocialSecurityNumber());
+        Patient updatedPatient2 = new Patient("Kari", "Berg", "05059033333");
+
+        // Act
+        boolean updated1 = this.register.updatePatient(updatedPatient1, this.patient1);
+        boolean updated2 = this.register.updatePatient(updatedPatient2, pagedPatient);
+
+        // Assert
+        assertEquals(this.patient2, pagedPatient);
+        assertTrue(updated1);
+        assertTrue(updated2);
+        assertFalse(this.register.updatePatient(updatedPatient1, this.patient1));
+        assertEquals(List.of(updatedPatient1), this.register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER,
+                this.patient1.getSocialSecurityNumber()));
+        assertEquals(List.of(updatedPatient2), this.register.findPatients(PatientField.LAST_NAME, "Berg"));
+        assertEquals(3, this.register.getNumberOfPatients());
+    }
+
+    @Test
+    @DisplayName("Test that removing a patient that is not in the register leaves the number of patients as it is")
+    public void testRemoveMissingPatient()
+    {
+        // Arrange
+        Patient missingPatient = new Patient("Nils", "Nordmann", "04049022222");
+        Patient changedPatient = new Patient("Ola", "Nordmann", this.patient1.getSocialSecurityNumber());
+
+        // Act
+        boolean removedMissing = this.register.removePatient(missingPatient);
+        boolean removedChanged = this.register.removePatient(changedPatient);
+        boolean removedExisting = this.register.removePatient(this.patient3);
+        boolean removedTwice = this.register.removePatient(this.patient3);
+
+        // Assert
+        assertFalse(removedMissing);
+        assertFalse(removedChanged);
+        assertTrue(removedExisting);
+        assertFalse(removedTwice);
+        assertEquals(2, this.register.getNumberOfPatients());
+        assertEquals(2, this.register.getPatientList().size());
+    }
+
+    @Test
+    @DisplayName("Test that a batch with a patient that is already in the database is not added at all")
+    public void testAddPatientsWithDuplicateInDatabase()
+    {
+        // Arrange
+        List<Patient> patients = PatientRegisterDBTest.createPatients(250);
+        // Placed after the first query of existing social security numbers
+        patients.add(new Patient("Kari", "Berg", this.patient2.getSocialSecurityNumber()));
+        List<PatientRegisterEvent> events = new ArrayList<>();
+        this.register.addListener(events::add);
+
+        // Act and assert
+        assertThrows(DuplicateKeyException.class, () -> this.register.addPatients(patients));
+        assertEquals(3, this.register.getNumberOfPatients());
+        assertEquals(3, this.register.getPatientList().size());
+        try (Stream<Patient> storedPatients = this.register.streamPatients()) {
+            assertEquals(3, storedPatients.count());
+        }
+        assertTrue(this.register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "00000000000").isEmpty());
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test that a batch with the same social security number twice is not added at all")
+    public void testAddPatientsWithDuplicateInList()
+    {
+        // Arrange
+        List<Patient> patients = PatientRegisterDBTest.createPatients(250);
+        patients.add(new Patient("Other", "Name", patients.get(10).getSocialSecurityNumber()));
+        List<PatientRegisterEvent> events = new ArrayList<>();
+        this.register.addListener(events::add);
+
+        // Act and assert
+        assertThrows(DuplicateKeyException.class, () -> this.register.addPatients(patients));
+        assertEquals(3, this.register.getNumberOfPatients());
+        assertEquals(3, this.register.getPatientList().size());
+        try (Stream<Patient> storedPatients = this.register.streamPatients()) {
+            assertEquals(3, storedPatients.count());
+        }
+        assertTrue(events.isEmpty());
+
+        // The batch is added once the duplicate is taken out
+        patients.remove(patients.size() - 1);
+        this.register.addPatients(patients);
+        assertEquals(253, this.register.getNumberOfPatients());
+        assertEquals(253, this.register.getPatientList().size());
+    }
+
+    @Test
+    @DisplayName("Test that adding new patients skips the duplicates of the register and of the List")
+    public void testAddNewPatients()
+    {
+        Patient newPatient = new Patient("Nils", "Nilsen", "04049022222");
+        Patient sameAsNewPatient = new Patient("Nora", "Nilsen", "04049022222");
+
+        List<Patient> duplicates = this.register.addNewPatients(
+                List.of(newPatient, this.patient1, sameAsNewPatient));
+
+        assertEquals(2, duplicates.size());
+        assertTrue(duplicates.contains(this.patient1));
+        assertTrue(duplicates.contains(sameAsNewPatient));
+        assertEquals(4, this.register.getNumberOfPatients());
+        assertEquals(List.of(newPatient),
+                this.register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "04049022222"));
+        assertEquals("Nils", this.register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "04049022222")
+                .get(0).getFirstName());
+    }
+
+    @Test
+    @DisplayName("Test that upserting only writes the new and changed patients, by their stored content hash")
+    public void testUpsertPatients()
+    {
+        Patient changedPatient2 = new Patient.PatientBuilder("Kari", "Nordmann", "02029054321")
+                .withGeneralPractitioner("Dr. Hansen")
+                .withDiagnosis("Asthma")
+                .build();
+        Patient newPatient = new Patient("Nils", "Nilsen", "04049022222");
+        List<Patient> extract = List.of(this.patient1, changedPatient2, newPatient);
+
+        UpsertResult firstResult = this.register.upsertPatients(extract);
+        UpsertResult secondResult = this.register.upsertPatients(extract);
+
+        assertEquals(1, firstResult.getInsertedPatients());
+        assertEquals(1, firstResult.getUpdatedPatients());
+        assertEquals(1, firstResult.getUnchangedPatients());
+        assertEquals(0, secondResult.getInsertedPatients());
+        assertEquals(0, secondResult.getUpdatedPatients());
+        assertEquals(3, secondResult.getUnchangedPatients());
+        assertEquals(4, this.register.getNumberOfPatients());
+        assertEquals(List.of(changedPatient2),
+                this.register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "02029054321"));
+    }
+
+    @Test
+    @DisplayName("Test that upserting replaces the stored patients instead of changing the instances others hold")
+    public void testUpsertDoesNotChangeSharedPatients()
+    {
+        // Arrange
+        Patient storedPatient = this.register.getPatientList().stream()
+                .filter(patient -> patient.getSocialSecurityNumber().equals("02029054321"))
+                .findFirst()
+                .orElseThrow();
+        Patient changedPatient2 = new Patient.PatientBuilder("Kari", "Nordmann", "02029054321")
+                .withGeneralPractitioner("Dr. Hansen")
+                .withDiagnosis("Asthma")
+                .build();
+        List<PatientRegisterEvent> events = new ArrayList<>();
+        this.register.addListener(events::add);
+
+        // Act
+        UpsertResult result = this.register.upsertPatients(List.of(changedPatient2));
+
+        // Assert
+        assertEquals(1, result.getUpdatedPatients());
+        assertEquals(this.patient2, storedPatient);
+        assertEquals(1, events.size());
+        assertSame(storedPatient, events.get(0).getOldPatients().get(0));
+        assertSame(changedPatient2, events.get(0).getNewPatients().get(0));
+        assertEquals(List.of(changedPatient2),
+                this.register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "02029054321"));
+        assertEquals(3, this.register.getNumberOfPatients());
+    }
+
+    @Test
+    @DisplayName("Test that patients stored without a content hash are updated once and then left unchanged")
+    public void testUpsertPatientsWithoutContentHash()
+    {
+        // Arrange
+        this.register.close();
+        EntityManagerFactory entityManagerFactory =
+                Persistence.createEntityManagerFactory(PERSISTENCE_UNIT_NAME, this.properties);
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            // The first patient only lacks its hash, the second one also has a NULL column
+            entityManager.createNativeQuery("UPDATE PATIENT SET CONTENTHASH = NULL").executeUpdate();
+            entityManager.createNativeQuery("UPDATE PATIENT SET DIAGNOSIS = NULL"
+                    + " WHERE SOCIALSECURITYNUMBER = '02029054321'").executeUpdate();
+            entityManager.getTransaction().commit();
+        }
+        finally {
+            entityManager.close();
+            entityManagerFactory.close();
+        }
+        this.register = new PatientRegisterDB(this.properties);
+
+        // Act
+        UpsertResult firstResult = this.register.upsertPatients(List.of(this.patient1, this.patient2));
+        UpsertResult secondResult = this.register.upsertPatients(List.of(this.patient1, this.patient2));
+        this.register.close();
+        this.register = new PatientRegisterDB(this.properties);
+        UpsertResult thirdResult = this.register.upsertPatients(List.of(this.patient1, this.patient2));
+
+        // Assert
+        assertEquals(2, firstResult.getUpdatedPatients());
+        assertEquals(0, secondResult.getUpdatedPatients());
+        assertEquals(0, thirdResult.getUpdatedPatients());
+        assertEquals(2, thirdResult.getUnchangedPatients());
+        assertEquals(List.of(this.patient2),
+                this.register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "02029054321"));
+    }
+
+    @Test
+    @DisplayName("Test looking up patients by prefix and by range, LIKE wildcards only match themselves")
+    public void testFindPatientsByPrefixAndRange()
+    {
+        assertEquals(List.of(this.patient3, this.patient1, this.patient2),
+                this.register.findPatientsByPrefix(PatientField.LAST_NAME, "Nord"));
+        assertEquals(List.of(this.patient3), this.register.findPatientsByPrefix(PatientField.LAST_NAME, "Nord_"));
+        assertTrue(this.register.findPatientsByPrefix(PatientField.LAST_NAME, "Nord%").isEmpty());
+        assertTrue(this.register.findPatientsByPrefix(PatientField.LAST_NAME, "O'N").isEmpty());
+        assertEquals(List.of(this.patient1, this.patient2, this.patient3),
+                this.register.findPatientsByPrefix(PatientField.SOCIAL_SECURITY_NUMBER, "0"));
+        assertEquals(List.of(this.patient2, this.patient1, this.patient3),
+                this.register.findPatientsInRange(PatientField.GENERAL_PRACTITIONER, "Dr. B", "Dr. I"));
+    }
+
+    @Test
+    @DisplayName("Test that the type-ahead search only matches the start of words and ranks the best match first")
+    public void testSearchPatients()
+    {
+        assertEquals(List.of(this.patient2, this.patient1, this.patient3), this.register.searchPatients("nord", 10));
+        assertEquals(List.of(this.patient2), this.register.searchPatients("nord", 1));
+        assertEquals(List.of(this.patient1), this.register.searchPatients("OLA 0101", 10));
+        assertTrue(this.register.searchPatients("berg", 10).isEmpty());
+        assertTrue(this.register.searchPatients("n%", 10).isEmpty());
+        assertTrue(this.register.searchPatients(" ", 10).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test filtering patients by several fields at once")
+    public void testFilterPatients()
+    {
+        Map<PatientField, String> prefixes = Map.of(
+                PatientField.LAST_NAME, "Nord",
+                PatientField.GENERAL_PRACTITIONER, "Dr. H");
+
+        assertEquals(List.of(this.patient1, this.patient3), this.register.filterPatients(prefixes));
+        assertEquals(3, this.register.filterPatients(Map.of()).size());
+    }
+
+    @Test
+    @DisplayName("Test streaming the patients a page at a time, sorted by social security number")
+    public void testStreamPatients()
+    {
+        // Arrange
+        this.register.addPatients(PatientRegisterDBTest.createPatients(2500));
+        List<Patient> streamedPatients;
+
+        // Act
+        try (Stream<Patient> patients = this.register.streamPatients()) {
+            streamedPatients = patients.collect(Collectors.toList());
+        }
+
+        // Assert
+        assertEquals(2503, streamedPatients.size());
+        for (int i = 1; i < streamedPatients.size(); i++) {
+            assertTrue(streamedPatients.get(i - 1).getSocialSecurityNumber()
+                    .compareTo(streamedPatients.get(i).getSocialSecurityNumber()) < 0);
+        }
+        assertEquals(this.patient1, streamedPatients.get(2500));
+        assertEquals(this.register.getPatientList().size(), streamedPatients.size());
+    }
+
+    @Test
+    @DisplayName("Test that the patients loaded from the database share their general practitioner and diagnosis")
+    public void testLoadedPatientsShareValues()
+    {
+        // Arrange
+        this.register.close();
+
+        // Act
+        this.register = new PatientRegisterDB(this.properties);
+        List<Patient> loadedPatients = this.register.findPatients(PatientField.DIAGNOSIS, "Asthma");
+
+        // Assert
+        assertEquals(2, loadedPatients.size());
+        assertSame(loadedPatients.get(0).getDiagnosis(), loadedPatients.get(1).getDiagnosis());
+        assertSame(Patient.getValueDictionary().intern(new String("Asthma")), loadedPatients.get(0).getDiagnosis());
+    }
+
+    @Test
+    @DisplayName("Test that the database uses the index of the field to look up patients")
+    public void testLookupsUseIndexes()
+    {
+        EntityManagerFactory entityManagerFactory =
+                Persistence.createEntityManagerFactory(PERSISTENCE_UNIT_NAME, this.properties);
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            // Runtime statistics are kept per connection, the transaction keeps the same connection
+            entityManager.getTransaction().begin();
+            entityManager.createNativeQuery("CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(1)").executeUpdate();
+
+            entityManager.createNamedQuery("Patient.findByLastNamePrefix", Patient.class)
+                    .setParameter("prefix", "Nord%")
+                    .getResultList();
+            String prefixPlan = this.getLastQueryPlan(entityManager);
+
+            entityManager.createNamedQuery("Patient.findByDiagnosis", Patient.class)
+                    .setParameter("value", "Asthma")
+                    .getResultList();
+            String exactPlan = this.getLastQueryPlan(entityManager);
+
+            entityManager.getTransaction().rollback();
+
+            assertTrue(prefixPlan.contains("PATIENT_LAST_NAME_IDX"), prefixPlan);
+            assertTrue(exactPlan.contains("PATIENT_DIAGNOSIS_IDX"), exactPlan);
+        }
+        finally {
+            entityManager.close();
+            entityManagerFactory.close();
+        }
+    }
+
+    /**
+     * Returns the query plan of the last statement run on the connection of the given entity manager
+     * @param entityManager The entity manager with runtime statistics turned on
+     * @return The query plan as a String
+     */
+    private String getLastQueryPlan(EntityManager entityManager)
+    {
+        return entityManager.createNativeQuery("VALUES SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS()")
+                .getSingleResult()
+                .toString();
+    }
+}
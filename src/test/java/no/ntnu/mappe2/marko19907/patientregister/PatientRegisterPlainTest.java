@@ -2,7 +2,11 @@ package no.ntnu.mappe2.marko19907.patientregister;
 
 import no.ntnu.mappe2.marko19907.patientregister.exception.DuplicateKeyException;
 import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientField;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterEvent;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterListener;
 import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterPlain;
+import no.ntnu.mappe2.marko19907.patientregister.model.UpsertResult;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
@@ -11,6 +15,7 @@ import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -72,6 +77,60 @@ public class PatientRegisterPlainTest
         assertEquals(0, register.getNumberOfPatients());
     }
 
+    @Test
+    @DisplayName("Test that adding new patients skips the duplicates and notifies the listeners once")
+    public void testAddingNewPatients()
+    {
+        // Arrange
+        PatientRegisterPlain register = new PatientRegisterPlain();
+        Patient patient1 = new Patient("Name1", "LastName1", "123");
+        Patient patient2 = new Patient("Name2", "LastName2", "321");
+        Patient samePatient2 = new Patient("Name3", "LastName3", "321");
+        register.addPatient(patient1);
+        List<PatientRegisterEvent> events = new ArrayList<>();
+        register.addListener(events::add);
+
+        // Act
+        List<Patient> duplicates = register.addNewPatients(List.of(patient1, patient2, samePatient2));
+
+        // Assert
+        assertEquals(List.of(patient1, samePatient2), duplicates);
+        assertEquals(2, register.getNumberOfPatients());
+        assertEquals(1, events.size());
+        assertEquals(List.of(patient2), events.get(0).getNewPatients());
+        assertThrows(IllegalArgumentException.class, () -> register.addNewPatients(null));
+    }
+
+    @Test
+    @DisplayName("Test that upserting inserts new patients, replaces changed patients and skips the others")
+    public void testUpsertingPatients()
+    {
+        // Arrange
+        PatientRegisterPlain register = new PatientRegisterPlain();
+        Patient patient1 = new Patient("Name1", "LastName1", "123");
+        Patient patient2 = new Patient("Name2", "LastName2", "321");
+        Patient changedPatient2 = new Patient("Name2", "NewLastName2", "321");
+        Patient patient3 = new Patient("Name3", "LastName3", "456");
+        register.addPatients(List.of(patient1, patient2));
+        List<PatientRegisterEvent> events = new ArrayList<>();
+        register.addListener(events::add);
+
+        // Act
+        UpsertResult result = register.upsertPatients(List.of(new Patient("Name1", "LastName1", "123"),
+                changedPatient2, patient3));
+
+        // Assert
+        assertEquals(1, result.getInsertedPatients());
+        assertEquals(1, result.getUpdatedPatients());
+        assertEquals(1, result.getUnchangedPatients());
+        assertEquals(3, register.getNumberOfPatients());
+        assertEquals(List.of(changedPatient2), register.findPatients(PatientField.LAST_NAME, "NewLastName2"));
+        assertTrue(register.findPatients(PatientField.LAST_NAME, "LastName2").isEmpty());
+        assertEquals(2, events.size());
+        assertEquals(List.of(patient3), events.get(0).getNewPatients());
+        assertEquals(List.of(patient2), events.get(1).getOldPatients());
+    }
+
     @Test
     @DisplayName("Test removing a patient from the register")
     public void testRemovingPatient()
@@ -157,4 +216,243 @@ public class PatientRegisterPlainTest
         assertTrue(exceptionThrown);
         assertTrue(register.getPatientList().stream().anyMatch(patient -> patient.equals(patient1)));
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Test updating a patient in the register")
+    public void testUpdatingPatient()
+    {
+        // Arrange
+        PatientRegisterPlain register = new PatientRegisterPlain();
+        Patient oldPatient = new Patient("Name1", "LastName1", "123");
+        Patient newPatient = new Patient("Name2", "LastName2", "321");
+        register.addPatient(oldPatient);
+
+        // Act
+        boolean updated = register.updatePatient(newPatient, oldPatient);
+        boolean updatedAgain = register.updatePatient(newPatient, oldPatient);
+
+        // Assert
+        assertTrue(updated);
+        assertFalse(updatedAgain);
+        assertEquals(List.of(newPatient), register.getPatientList());
+    }
+
+    @Test
+    @DisplayName("Test getting a page of patients sorted by last name")
+    public void testGettingPatientPage()
+    {
+        // Arrange
+        PatientRegisterPlain register = new PatientRegisterPlain();
+        Patient patient1 = new Patient("Name1", "LastNameB", "300");
+        Patient patient2 = new Patient("Name2", "LastNameA", "200");
+        Patient patient3 = new Patient("Name3", "LastNameA", "100");
+        Patient patient4 = new Patient("Name4", "LastNameC", "400");
+        register.addPatients(List.of(patient1, patient2, patient3, patient4));
+
+        // Act
+        List<Patient> firstPage = register.getPatientPage(PatientField.LAST_NAME, 0, 3);
+        List<Patient> secondPage = register.getPatientPage(PatientField.LAST_NAME, 3, 3);
+
+        // Assert
+        assertEquals(List.of(patient3, patient2, patient1), firstPage);
+        assertEquals(List.of(patient4), secondPage);
+    }
+
+    @Test
+    @DisplayName("Test getting the page of patients after a given patient")
+    public void testGettingPatientPageAfter()
+    {
+        // Arrange
+        PatientRegisterPlain register = new PatientRegisterPlain();
+        Patient patient1 = new Patient("Name1", "LastNameB", "300");
+        Patient patient2 = new Patient("Name2", "LastNameA", "200");
+        Patient patient3 = new Patient("Name3", "LastNameA", "100");
+        Patient patient4 = new Patient("Name4", "LastNameC", "400");
+        register.addPatients(List.of(patient1, patient2, patient3, patient4));
+
+        // Act
+        List<Patient> firstPage = register.getPatientPageAfter(PatientField.LAST_NAME, null, 2);
+        List<Patient> secondPage = register.getPatientPageAfter(PatientField.LAST_NAME, firstPage.get(1), 2);
+        List<Patient> bySocialSecurityNumber = register.getPatientPageAfter(
+                PatientField.SOCIAL_SECURITY_NUMBER, patient2, 5);
+
+        // Assert
+        assertEquals(List.of(patient3, patient2), firstPage);
+        assertEquals(List.of(patient1, patient4), secondPage);
+        assertEquals(List.of(patient1, patient4), bySocialSecurityNumber);
+    }
+
+    @Test
+    @DisplayName("Test that the pages reflect patients that are removed and updated")
+    public void testPatientPageAfterChanges()
+    {
+        // Arrange
+        PatientRegisterPlain register = new PatientRegisterPlain();
+        Patient patient1 = new Patient("Name1", "LastNameA", "100");
+        Patient patient2 = new Patient("Name2", "LastNameB", "200");
+        Patient patient3 = new Patient("Name3", "LastNameC", "300");
+        Patient updatedPatient = new Patient("Name3", "LastNameD", "050");
+        register.addPatients(List.of(patient1, patient2, patient3));
+        register.getPatientPage(PatientField.LAST_NAME, 0, 1);
+
+        // Act
+        register.removePatient(patient1);
+        register.updatePatient(updatedPatient, patient3);
+
+        // Assert
+        assertEquals(List.of(patient2, updatedPatient), register.getPatientPage(PatientField.LAST_NAME, 0, 5));
+        assertEquals(List.of(updatedPatient, patient2),
+                register.getPatientPage(PatientField.SOCIAL_SECURITY_NUMBER, 0, 5));
+    }
+
+    @Test
+    @DisplayName("Test getting a page with invalid arguments")
+    public void testGettingPatientPageWithInvalidArguments()
+    {
+        PatientRegisterPlain register = new PatientRegisterPlain();
+
+        assertThrows(IllegalArgumentException.class, () -> register.getPatientPage(null, 0, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> register.getPatientPage(PatientField.LAST_NAME, -1, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> register.getPatientPageAfter(PatientField.LAST_NAME, null, 0));
+    }
+
+    @Test
+    @DisplayName("Test that the listeners are notified of the changes to the register")
+    public void testListenerEvents()
+    {
+        // Arrange
+        PatientRegisterPlain register = new PatientRegisterPlain();
+        List<PatientRegisterEvent> events = new ArrayList<>();
+        register.addListener(events::add);
+        Patient patient1 = new Patient("Name1", "LastName1", "123");
+        Patient patient2 = new Patient("Name2", "LastName2", "321");
+        Patient updatedPatient = new Patient("Name3", "LastName3", "321");
+
+        // Act
+        register.addPatient(patient1);
+        register.updatePatient(updatedPatient, patient1);
+        register.removePatient(updatedPatient);
+        register.removePatient(patient2);
+
+        // Assert
+        assertEquals(3, events.size());
+        assertEquals(PatientRegisterEvent.Type.ADDED, events.get(0).getType());
+        assertEquals(List.of(patient1), events.get(0).getNewPatients());
+        assertEquals(PatientRegisterEvent.Type.UPDATED, events.get(1).getType());
+        assertEquals(List.of(patient1), events.get(1).getOldPatients());
+        assertEquals(List.of(updatedPatient), events.get(1).getNewPatients());
+        assertEquals(PatientRegisterEvent.Type.REMOVED, events.get(2).getType());
+        assertEquals(List.of(updatedPatient), events.get(2).getOldPatients());
+    }
+
+    @Test
+    @DisplayName("Test that adding a List of patients results in a single event, even if it fails")
+    public void testBulkListenerEvent()
+    {
+        // Arrange
+        PatientRegisterPlain register = new PatientRegisterPlain();
+        List<PatientRegisterEvent> events = new ArrayList<>();
+        register.addListener(events::add);
+        Patient patient1 = new Patient("Name1", "LastName1", "123");
+        Patient patient2 = new Patient("Name2", "LastName2", "321");
+        Patient duplicatePatient = new Patient("Name3", "LastName3", "123");
+
+        // Act
+        assertThrows(DuplicateKeyException.class,
+                () -> register.addPatients(List.of(patient1, patient2, duplicatePatient)));
+
+        // Assert
+        assertEquals(1, events.size());
+        assertEquals(PatientRegisterEvent.Type.BULK_LOADED, events.get(0).getType());
+        assertEquals(List.of(patient1, patient2), events.get(0).getNewPatients());
+    }
+
+    @Test
+    @DisplayName("Test that a removed listener is no longer notified")
+    public void testRemovingListener()
+    {
+        PatientRegisterPlain register = new PatientRegisterPlain();
+        List<PatientRegisterEvent> events = new ArrayList<>();
+        PatientRegisterListener listener = events::add;
+        register.addListener(listener);
+
+        register.removeListener(listener);
+        register.addPatient(new Patient("Name1", "LastName1", "123"));
+
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test finding patients by an exact value of an indexed field")
+    public void testFindingPatients()
+    {
+        // Arrange
+        PatientRegisterPlain register = new PatientRegisterPlain();
+        Patient patient1 = new Patient.PatientBuilder("Name1", "LastName1", "100")
+                .withGeneralPractitioner("Doc1").build();
+        Patient patient2 = new Patient.PatientBuilder("Name2", "LastName2", "200")
+                .withGeneralPractitioner("Doc1").build();
+        Patient patient3 = new Patient.PatientBuilder("Name3", "LastName3", "300")
+                .withGeneralPractitioner("Doc2").build();
+        register.addPatients(List.of(patient1, patient2, patient3));
+
+        // Act
+        register.removePatient(patient2);
+        List<Patient> patientsOfDoc1 = register.findPatients(PatientField.GENERAL_PRACTITIONER, "Doc1");
+        List<Patient> patientsOfDoc3 = register.findPatients(PatientField.GENERAL_PRACTITIONER, "Doc3");
+        List<Patient> patientsNamedName3 = register.findPatients(PatientField.FIRST_NAME, "Name3");
+
+        // Assert
+        assertEquals(List.of(patient1), patientsOfDoc1);
+        assertTrue(patientsOfDoc3.isEmpty());
+        assertEquals(List.of(patient3), patientsNamedName3);
+        assertEquals(List.of(patient3), register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "300"));
+    }
+
+    @Test
+    @DisplayName("Test finding patients by a prefix and a range of an indexed field")
+    public void testFindingPatientsByPrefixAndRange()
+    {
+        // Arrange
+        PatientRegisterPlain register = new PatientRegisterPlain();
+        Patient patient1 = new Patient("Name1", "Hansen", "100");
+        Patient patient2 = new Patient("Name2", "Hanssen", "200");
+        Patient patient3 = new Patient("Name3", "Olsen", "300");
+        Patient patient4 = new Patient("Name4", "Han", "400");
+        register.addPatients(List.of(patient1, patient2, patient3, patient4));
+        Patient updatedPatient = new Patient("Name3", "Hansa", "300");
+
+        // Act
+        register.updatePatient(updatedPatient, patient3);
+        List<Patient> prefixMatches = register.findPatientsByPrefix(PatientField.LAST_NAME, "Hans");
+        List<Patient> rangeMatches = register.findPatientsInRange(PatientField.LAST_NAME, "Han", "Hansen");
+
+        // Assert
+        assertEquals(List.of(updatedPatient, patient1, patient2), prefixMatches);
+        assertEquals(List.of(patient4, updatedPatient), rangeMatches);
+        assertTrue(register.findPatientsByPrefix(PatientField.LAST_NAME, "Olsen").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test that a blank prefix or range bound is used as it is and not ignored")
+    public void testFindingPatientsByBlankBounds()
+    {
+        // Arrange
+        PatientRegisterPlain register = new PatientRegisterPlain();
+        Patient tabPatient = new Patient("\tAnne", "Hansen", "100");
+        Patient spacePatient = new Patient(" Berit", "Olsen", "200");
+        Patient plainPatient = new Patient("Cecilie", "Berg", "300");
+        register.addPatients(List.of(tabPatient, spacePatient, plainPatient));
+
+        // Act
+        List<Patient> prefixMatches = register.findPatientsByPrefix(PatientField.FIRST_NAME, " ");
+        List<Patient> rangeMatches = register.findPatientsInRange(PatientField.FIRST_NAME, " ", "D");
+
+        // Assert
+        assertEquals(List.of(spacePatient), prefixMatches);
+        assertEquals(List.of(spacePatient, plainPatient), rangeMatches);
+        assertEquals(List.of(tabPatient), register.findPatientsInRange(PatientField.FIRST_NAME, "", " "));
+    }
+}
@@ -0,0 +1,49 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterPlain;
+import no.ntnu.mappe2.marko19907.patientregister.server.LoadTestResult;
+import no.ntnu.mappe2.marko19907.patientregister.server.PatientRegisterLoadClient;
+import no.ntnu.mappe2.marko19907.patientregister.server.PatientRegisterServer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmarks for the PatientRegisterServer, only run with the benchmark profile: mvn test -P benchmark.
+ * A PatientRegisterPlain is served, as a PatientRegisterConcurrent has no search index and scans
+ * every patient for each search
+ */
+public class PatientRegisterServerBenchmark
+{
+    private static final int NUMBER_OF_PATIENTS = Integer.getInteger("benchmark.patients", 100_000);
+    private static final int THREADS = Integer.getInteger("benchmark.threads", 32);
+    private static final int SECONDS = Integer.getInteger("benchmark.seconds", 10);
+
+    @Test
+    @DisplayName("Benchmark the throughput and latency of lookups and searches over HTTP")
+    public void benchmarkLoad() throws Exception
+    {
+        // Turns off Nagle's algorithm of the JDK server, as PatientRegisterCLI does when it serves the register
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        PatientRegisterPlain register = new PatientRegisterPlain();
+        register.addPatients(PatientRegisterDBBenchmark.generatePatients(NUMBER_OF_PATIENTS));
+        PatientRegisterServer server = new PatientRegisterServer(register, 0);
+        server.start();
+        try {
+            PatientRegisterLoadClient client = new PatientRegisterLoadClient(
+                    URI.create("http://127.0.0.1:" + server.getPort()));
+            client.run(THREADS, Duration.ofSeconds(Math.max(1, SECONDS / 5)));
+            LoadTestResult result = client.run(THREADS, Duration.ofSeconds(SECONDS));
+
+            System.out.printf("PatientRegisterPlain with %d threads: %s%n", THREADS, result);
+            assertEquals(0, result.getErrors());
+        }
+        finally {
+            server.stop();
+        }
+    }
+}
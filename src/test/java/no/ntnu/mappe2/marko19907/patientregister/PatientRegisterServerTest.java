@@ -0,0 +1,146 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterPlain;
+import no.ntnu.mappe2.marko19907.patientregister.server.PatientRegisterServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PatientRegisterServerTest
+{
+    private static final String OLA_JSON = "{\"firstName\":\"Ola\",\"lastName\":\"Nordmann\","
+            + "\"generalPractitioner\":\"Dr. Hansen\",\"socialSecurityNumber\":\"01019012345\","
+            + "\"diagnosis\":\"Asthma\"}";
+
+    private PatientRegisterPlain register;
+    private PatientRegisterServer server;
+    private HttpClient client;
+
+    @BeforeEach
+    public void setUp() throws IOException
+    {
+        this.register = new PatientRegisterPlain();
+        this.server = new PatientRegisterServer(this.register, 0);
+        this.server.start();
+        this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        this.server.stop();
+    }
+
+    /**
+     * Sends a request to the server and returns the response
+     * @param method The HTTP method of the request
+     * @param path The path and query of the request
+     * @param body The body of the request, or null for none
+     * @return The response to the request
+     */
+    private HttpResponse<String> send(String method, String path, String body)
+            throws IOException, InterruptedException
+    {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + this.server.getPort() + path))
+                .method(method, (body == null) ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return this.client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    @DisplayName("Test adding, reading, replacing and removing a patient")
+    public void testCrud() throws IOException, InterruptedException
+    {
+        // Add
+        HttpResponse<String> added = this.send("POST", "/patients", OLA_JSON);
+        assertEquals(201, added.statusCode());
+        assertEquals("/patients/01019012345", added.headers().firstValue("Location").orElse(""));
+        assertEquals(OLA_JSON, added.body());
+        assertEquals(1, this.register.getNumberOfPatients());
+
+        // Read
+        HttpResponse<String> read = this.send("GET", "/patients/01019012345", null);
+        assertEquals(200, read.statusCode());
+        assertEquals(OLA_JSON, read.body());
+        assertEquals("{\"count\":1}", this.send("GET", "/count", null).body());
+
+        // Replace
+        String changedJson = OLA_JSON.replace("Asthma", "Migraine");
+        HttpResponse<String> replaced = this.send("PUT", "/patients/01019012345", changedJson);
+        assertEquals(200, replaced.statusCode());
+        assertEquals(changedJson, this.send("GET", "/patients/01019012345", null).body());
+        assertEquals("Migraine", this.register.getPatientList().get(0).getDiagnosis());
+
+        // Remove
+        assertEquals(204, this.send("DELETE", "/patients/01019012345", null).statusCode());
+        assertEquals(404, this.send("DELETE", "/patients/01019012345", null).statusCode());
+        assertEquals(0, this.register.getNumberOfPatients());
+    }
+
+    @Test
+    @DisplayName("Test that invalid requests get a 4xx status code and leave the register as it was")
+    public void testInvalidRequests() throws IOException, InterruptedException
+    {
+        this.send("POST", "/patients", OLA_JSON);
+
+        assertEquals(409, this.send("POST", "/patients", OLA_JSON).statusCode());
+        assertEquals(400, this.send("POST", "/patients", "{\"firstName\":\"Ola\"").statusCode());
+        assertEquals(400, this.send("POST", "/patients", "{\"firstName\":\"Ola\",\"lastName\":\" \","
+                + "\"socialSecurityNumber\":\"1\"}").statusCode());
+        assertEquals(404, this.send("PUT", "/patients/404", OLA_JSON.replace("01019012345", "404")).statusCode());
+        assertEquals(400, this.send("PUT", "/patients/01019012345",
+                OLA_JSON.replace("01019012345", "01019099999")).statusCode());
+        assertEquals(405, this.send("PATCH", "/patients/01019012345", OLA_JSON).statusCode());
+        assertEquals(404, this.send("GET", "/patientsX", null).statusCode());
+        assertEquals(400, this.send("GET", "/patients?limit=-1", null).statusCode());
+        assertEquals(400, this.send("GET", "/patients?limit=5&sort=age", null).statusCode());
+        assertEquals(400, this.send("GET", "/search", null).statusCode());
+        assertEquals(1, this.register.getNumberOfPatients());
+        assertEquals(OLA_JSON, this.send("GET", "/patients/01019012345", null).body());
+    }
+
+    @Test
+    @DisplayName("Test listing the patients in pages and all at once, with characters that must be escaped")
+    public void testListing() throws IOException, InterruptedException
+    {
+        // Arrange
+        List<Patient> patients = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            patients.add(new Patient.PatientBuilder("Name \"" + i + "\"", "Last\nNameæ" + i,
+                    String.format("%05d", i))
+                    .withDiagnosis("Diag\\" + i)
+                    .build());
+        }
+        this.register.addPatients(patients);
+
+        // Act
+        HttpResponse<String> all = this.send("GET", "/patients", null);
+        HttpResponse<String> page = this.send("GET", "/patients?offset=10&limit=5", null);
+        HttpResponse<String> search = this.send("GET", "/search?q=name%20%2212%22&limit=3", null);
+
+        // Assert
+        assertEquals(200, all.statusCode());
+        assertTrue(all.body().startsWith("[{\"firstName\":\"Name \\\"0\\\"\",\"lastName\":\"Last\\nNameæ0\""));
+        assertEquals(2500, all.body().split("\"socialSecurityNumber\"").length - 1);
+        assertTrue(all.body().endsWith("\"socialSecurityNumber\":\"02499\",\"diagnosis\":\"Diag\\\\2499\"}]"));
+        assertEquals(200, page.statusCode());
+        assertEquals(5, page.body().split("\"socialSecurityNumber\"").length - 1);
+        assertTrue(page.body().contains("\"socialSecurityNumber\":\"00010\""));
+        assertEquals(200, search.statusCode());
+        assertTrue(search.body().contains("\"socialSecurityNumber\":\"00012\""));
+    }
+}
@@ -0,0 +1,43 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientSearchIndex;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * Benchmarks for the PatientSearchIndex, only run with the benchmark profile: mvn test -P benchmark
+ */
+public class PatientSearchIndexBenchmark
+{
+    private static final int NUMBER_OF_PATIENTS = Integer.getInteger("benchmark.patients", 1_000_000);
+    private static final String[] KEY_STROKES = {"f", "fi", "fir", "firs", "first", "firstn", "firstname1",
+            "firstname12", "firstname123", "firstname123 l", "firstname123 lastname1", "0", "000", "00000012"};
+
+    @Test
+    @DisplayName("Benchmark the type-ahead search, one search per key stroke")
+    public void benchmarkSearch()
+    {
+        List<Patient> patients = PatientRegisterDBBenchmark.generatePatients(NUMBER_OF_PATIENTS);
+        PatientSearchIndex index = new PatientSearchIndex();
+
+        long start = System.nanoTime();
+        patients.forEach(index::add);
+        System.out.printf("Indexed %d patients in %d ms%n", NUMBER_OF_PATIENTS, (System.nanoTime() - start) / 1_000_000);
+
+        // Warm up, then measure
+        for (int i = 0; i < 20; i++) {
+            for (String query : KEY_STROKES) {
+                index.search(query, 100);
+            }
+        }
+        for (String query : KEY_STROKES) {
+            start = System.nanoTime();
+            int results = index.search(query, 100).size();
+            System.out.printf("Search for \"%s\": %d results in %.3f ms%n",
+                    query, results, (System.nanoTime() - start) / 1e6);
+        }
+    }
+}
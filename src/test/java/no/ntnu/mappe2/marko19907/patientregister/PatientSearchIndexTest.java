@@ -0,0 +1,83 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterPlain;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientSearchIndex;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PatientSearchIndexTest
+{
+    private static final Patient patient1 = new Patient("Ola", "Nordmann", "01019012345");
+    private static final Patient patient2 = new Patient("Olav", "Hansen", "02029054321");
+    private static final Patient patient3 = new Patient("Kari", "Olsen-Nordmann", "01019099999");
+
+    @Test
+    @DisplayName("Test searching by the start of a first name, last name and social security number")
+    public void testSearchingByPrefix()
+    {
+        PatientSearchIndex index = new PatientSearchIndex();
+        List.of(patient1, patient2, patient3).forEach(index::add);
+
+        assertEquals(List.of(patient1, patient2), index.search("ol", 10).subList(0, 2));
+        assertEquals(List.of(patient2), index.search("HAN", 10));
+        assertEquals(List.of(patient1, patient3), index.search("010190", 10));
+        assertTrue(index.search("xyz", 10).isEmpty());
+        assertTrue(index.search("  ", 10).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test that whole words and shorter completions are ranked first")
+    public void testRanking()
+    {
+        PatientSearchIndex index = new PatientSearchIndex();
+        List.of(patient1, patient2, patient3).forEach(index::add);
+
+        List<Patient> results = index.search("ola", 10);
+
+        assertEquals(List.of(patient1, patient2), results);
+    }
+
+    @Test
+    @DisplayName("Test that every term of the query has to match")
+    public void testSearchingWithSeveralTerms()
+    {
+        PatientSearchIndex index = new PatientSearchIndex();
+        List.of(patient1, patient2, patient3).forEach(index::add);
+
+        assertEquals(List.of(patient3), index.search("nord kar", 10));
+        assertEquals(List.of(patient1, patient3), index.search("nordmann", 10));
+    }
+
+    @Test
+    @DisplayName("Test that removed patients are no longer found and the limit is respected")
+    public void testRemovingAndLimit()
+    {
+        PatientSearchIndex index = new PatientSearchIndex();
+        List.of(patient1, patient2, patient3).forEach(index::add);
+
+        index.remove(patient1);
+
+        assertEquals(List.of(patient3), index.search("nordmann", 10));
+        assertEquals(1, index.search("o", 1).size());
+    }
+
+    @Test
+    @DisplayName("Test that the register search uses the index and follows the changes to the register")
+    public void testRegisterSearch()
+    {
+        PatientRegisterPlain register = new PatientRegisterPlain();
+        register.addPatients(List.of(patient1, patient2, patient3));
+        Patient updatedPatient = new Patient("Ola", "Berg", "01019012345");
+
+        register.updatePatient(updatedPatient, patient1);
+
+        assertEquals(List.of(patient3), register.searchPatients("nordmann", 10));
+        assertEquals(List.of(updatedPatient), register.searchPatients("ola b", 10));
+    }
+}
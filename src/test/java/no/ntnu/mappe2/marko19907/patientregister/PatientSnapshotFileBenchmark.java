@@ -0,0 +1,73 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.utility.CSVHandler;
+import no.ntnu.mappe2.marko19907.patientregister.utility.PatientSnapshotFile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Benchmarks for the PatientSnapshotFile, only run with the benchmark profile: mvn test -P benchmark
+ */
+public class PatientSnapshotFileBenchmark
+{
+    private static final int NUMBER_OF_PATIENTS = Integer.getInteger("benchmark.patients", 1_000_000);
+    private static final int NUMBER_OF_LOOKUPS = 100_000;
+    private static final File snapshotFile = new File("target/snapshotBenchmark.psnap");
+    private static final File csvFile = new File("target/snapshotBenchmark.csv");
+
+    @Test
+    @DisplayName("Benchmark opening a snapshot and reading from it against reading the same patients from CSV")
+    public void benchmarkSnapshot() throws IOException
+    {
+        List<Patient> patients = PatientRegisterDBBenchmark.generatePatients(NUMBER_OF_PATIENTS);
+        CSVHandler csvHandler = new CSVHandler();
+
+        try {
+            csvHandler.writePatientList(csvFile, patients);
+            long start = System.nanoTime();
+            assertEquals(NUMBER_OF_PATIENTS, csvHandler.readPatientList(csvFile).size());
+            long csvTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            PatientSnapshotFile.write(snapshotFile, patients);
+            long writeTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            PatientSnapshotFile snapshot = new PatientSnapshotFile(snapshotFile);
+            long openTime = System.nanoTime() - start;
+            assertEquals(NUMBER_OF_PATIENTS, snapshot.getNumberOfPatients());
+
+            start = System.nanoTime();
+            for (int i = 0; i < NUMBER_OF_LOOKUPS; i++) {
+                Patient patient = patients.get((int) ((i * 7_919L) % NUMBER_OF_PATIENTS));
+                assertEquals(patient, snapshot.findPatient(patient.getSocialSecurityNumber()));
+            }
+            long lookupTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            // count() of a sized stream would skip the patients, so every patient is mapped to be decoded
+            assertEquals(NUMBER_OF_PATIENTS, snapshot.stream().mapToInt(patient -> 1).sum());
+            long decodeTime = System.nanoTime() - start;
+
+            System.out.printf("%d patients, CSV %d KB, snapshot %d KB%n", NUMBER_OF_PATIENTS,
+                    csvFile.length() / 1024, snapshotFile.length() / 1024);
+            System.out.printf("Reading the CSV file: %d ms%n", csvTime / 1_000_000);
+            System.out.printf("Writing the snapshot: %d ms, opening it: %.2f ms%n",
+                    writeTime / 1_000_000, openTime / 1e6);
+            System.out.printf("%d lookups by social security number: %d ms, decoding all patients: %d ms%n",
+                    NUMBER_OF_LOOKUPS, lookupTime / 1_000_000, decodeTime / 1_000_000);
+        }
+        finally {
+            assertTrue(csvFile.delete());
+            assertTrue(!snapshotFile.exists() || snapshotFile.delete());
+        }
+    }
+}
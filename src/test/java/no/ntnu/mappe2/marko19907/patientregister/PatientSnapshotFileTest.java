@@ -0,0 +1,159 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.exception.DuplicateKeyException;
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientField;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegister;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterColumnar;
+import no.ntnu.mappe2.marko19907.patientregister.utility.CSVHandler;
+import no.ntnu.mappe2.marko19907.patientregister.utility.PatientSnapshotFile;
+import no.ntnu.mappe2.marko19907.patientregister.utility.Progress;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PatientSnapshotFileTest
+{
+    private static final File snapshotFile = new File("target/testSnapshot.psnap");
+    private static final File csvFile = new File("target/testSnapshot.csv");
+
+    private final Patient patient1 = new Patient.PatientBuilder("Ola", "Nordmann", "03039011111")
+            .withGeneralPractitioner("Dr. Hansen")
+            .withDiagnosis("Asthma")
+            .build();
+    private final Patient patient2 = new Patient.PatientBuilder("Kari", "Ødegård", "01019012345")
+            .withGeneralPractitioner("Dr. Hansen")
+            .withDiagnosis("Asthma")
+            .build();
+    private final Patient patient3 = new Patient("Per", "Hansen", "02029054321");
+
+    @AfterEach
+    @DisplayName("Cleaning up the files that were written")
+    public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(snapshotFile.toPath());
+        Files.deleteIfExists(csvFile.toPath());
+    }
+
+    @Test
+    @DisplayName("Test that the patients are read back sorted by social security number")
+    public void testWriteAndRead() throws IOException
+    {
+        // Act
+        long writtenPatients = PatientSnapshotFile.write(snapshotFile, List.of(this.patient1, this.patient2,
+                this.patient3));
+        PatientSnapshotFile snapshot = new PatientSnapshotFile(snapshotFile);
+
+        // Assert
+        assertEquals(3, writtenPatients);
+        assertEquals(3, snapshot.getNumberOfPatients());
+        assertEquals(List.of(this.patient2, this.patient3, this.patient1), snapshot.asList());
+        assertEquals("Ødegård", snapshot.getPatient(0).getLastName());
+        assertEquals("Asthma", snapshot.getPatient(2).getDiagnosis());
+        assertSame(snapshot.getPatient(1), snapshot.getPatient(1));
+        assertSame(snapshot.getPatient(0).getGeneralPractitioner(), snapshot.getPatient(2).getGeneralPractitioner());
+        assertThrows(IndexOutOfBoundsException.class, () -> snapshot.getPatient(3));
+    }
+
+    @Test
+    @DisplayName("Test finding patients by their social security number")
+    public void testFindPatient() throws IOException
+    {
+        // Arrange
+        PatientSnapshotFile.write(snapshotFile, List.of(this.patient1, this.patient2, this.patient3));
+        PatientSnapshotFile snapshot = new PatientSnapshotFile(snapshotFile);
+
+        // Act and assert
+        assertEquals(this.patient1, snapshot.findPatient("03039011111"));
+        assertEquals(this.patient2, snapshot.findPatient("01019012345"));
+        assertEquals(this.patient3, snapshot.findPatient("02029054321"));
+        assertNull(snapshot.findPatient("00000000000"));
+        assertNull(snapshot.findPatient("99999999999"));
+        assertThrows(IllegalArgumentException.class, () -> snapshot.findPatient(null));
+    }
+
+    @Test
+    @DisplayName("Test converting a CSV file to a snapshot and the snapshot back to a CSV file")
+    public void testConvertCSV() throws IOException
+    {
+        // Arrange
+        new CSVHandler().writePatientList(csvFile, List.of(this.patient1, this.patient2, this.patient3));
+
+        // Act
+        long convertedPatients = PatientSnapshotFile.convertFromCSV(csvFile, snapshotFile);
+        PatientSnapshotFile snapshot = new PatientSnapshotFile(snapshotFile);
+        long writtenPatients = snapshot.convertToCSV(csvFile);
+
+        // Assert
+        assertEquals(this.patient3, snapshot.findPatient("02029054321"));
+        assertEquals(3, convertedPatients);
+        assertEquals(3, writtenPatients);
+        assertEquals(List.of(this.patient2, this.patient3, this.patient1), new CSVHandler().readPatientList(csvFile));
+    }
+
+    @Test
+    @DisplayName("Test that patients with the same social security number can not be written")
+    public void testDuplicatePatients() throws IOException
+    {
+        // Arrange
+        Patient copyOfPatient1 = new Patient("Other", "Name", this.patient1.getSocialSecurityNumber());
+        PatientSnapshotFile.write(snapshotFile, List.of(this.patient2));
+
+        // Act and assert
+        assertThrows(DuplicateKeyException.class,
+                () -> PatientSnapshotFile.write(snapshotFile, List.of(this.patient1, copyOfPatient1)));
+        assertThrows(IllegalArgumentException.class, () -> PatientSnapshotFile.write(null, List.of()));
+        assertEquals(List.of(this.patient2), new PatientSnapshotFile(snapshotFile).asList());
+        assertFalse(new File(snapshotFile.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    @DisplayName("Test filling a register from a snapshot in batches")
+    public void testAddPatientsTo() throws IOException
+    {
+        // Arrange
+        PatientSnapshotFile.write(snapshotFile, List.of(this.patient1, this.patient2, this.patient3));
+        PatientSnapshotFile snapshot = new PatientSnapshotFile(snapshotFile);
+        PatientRegister register = new PatientRegisterColumnar();
+        List<Progress> reports = new ArrayList<>();
+
+        // Act
+        long addedPatients = snapshot.addPatientsTo(register, 2, reports::add);
+
+        // Assert
+        assertEquals(3, addedPatients);
+        assertEquals(3, register.getNumberOfPatients());
+        assertEquals(this.patient1, register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "03039011111").get(0));
+        assertEquals(3, reports.get(reports.size() - 1).getRecordsProcessed());
+        assertThrows(DuplicateKeyException.class, () -> snapshot.addPatientsTo(register, 2, progress -> { }));
+    }
+
+    @Test
+    @DisplayName("Test that files that are not complete snapshots are rejected")
+    public void testInvalidFiles() throws IOException
+    {
+        // Arrange
+        new CSVHandler().writePatientList(csvFile, List.of(this.patient1));
+        PatientSnapshotFile.write(snapshotFile, List.of(this.patient1, this.patient2));
+        try (RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw")) {
+            file.setLength(file.length() - 1);
+        }
+
+        // Act and assert
+        assertThrows(IOException.class, () -> new PatientSnapshotFile(csvFile));
+        assertThrows(IOException.class, () -> new PatientSnapshotFile(snapshotFile));
+    }
+}
@@ -0,0 +1,74 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterDB;
+import no.ntnu.mappe2.marko19907.patientregister.model.UpsertResult;
+import no.ntnu.mappe2.marko19907.patientregister.utility.CSVHandler;
+import no.ntnu.mappe2.marko19907.patientregister.utility.PatientSynchronizer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Benchmarks for the PatientSynchronizer, only run with the benchmark profile: mvn test -P benchmark
+ */
+public class PatientSynchronizerBenchmark
+{
+    private static final int NUMBER_OF_PATIENTS = Integer.getInteger("benchmark.patients", 200_000);
+    private static final int CHANGED_PERCENT = Integer.getInteger("benchmark.changedPercent", 2);
+    private static final File extractFile = new File("target/synchronizeBenchmark.csv");
+
+    @Test
+    @DisplayName("Benchmark synchronizing a database with an extract with a few changes against a full import")
+    public void benchmarkSynchronize() throws IOException, InterruptedException
+    {
+        List<Patient> patients = PatientRegisterDBBenchmark.generatePatients(NUMBER_OF_PATIENTS);
+        int numberOfChanges = NUMBER_OF_PATIENTS / 100 * CHANGED_PERCENT;
+        PatientRegisterDB register = PatientRegisterDBBenchmark.createRegister("synchronize");
+
+        try {
+            long start = System.nanoTime();
+            register.addPatients(patients);
+            long importTime = System.nanoTime() - start;
+
+            // Every 100 / CHANGED_PERCENT patient gets a new diagnosis
+            int step = NUMBER_OF_PATIENTS / numberOfChanges;
+            for (int i = 0; i < NUMBER_OF_PATIENTS; i += step) {
+                Patient patient = patients.get(i);
+                patients.set(i, new Patient.PatientBuilder(patient.getFirstName(), patient.getLastName(),
+                        patient.getSocialSecurityNumber())
+                        .withGeneralPractitioner(patient.getGeneralPractitioner())
+                        .withDiagnosis("Changed")
+                        .build());
+            }
+            new CSVHandler().writePatientList(extractFile, patients);
+
+            PatientSynchronizer synchronizer = new PatientSynchronizer();
+            start = System.nanoTime();
+            UpsertResult result = synchronizer.synchronize(extractFile, register, true);
+            long synchronizeTime = System.nanoTime() - start;
+            assertEquals(NUMBER_OF_PATIENTS / step + ((NUMBER_OF_PATIENTS % step == 0) ? 0 : 1),
+                    result.getUpdatedPatients());
+
+            start = System.nanoTime();
+            UpsertResult unchangedResult = synchronizer.synchronize(extractFile, register, false);
+            long unchangedTime = System.nanoTime() - start;
+            assertEquals(NUMBER_OF_PATIENTS, unchangedResult.getUnchangedPatients());
+
+            System.out.printf("Full import of %d patients: %d ms%n", NUMBER_OF_PATIENTS, importTime / 1_000_000);
+            System.out.printf("Synchronize with %d changes, deleting missing: %d ms (%s)%n",
+                    result.getUpdatedPatients(), synchronizeTime / 1_000_000, result);
+            System.out.printf("Synchronize without changes: %d ms%n", unchangedTime / 1_000_000);
+        }
+        finally {
+            register.close();
+            assertTrue(extractFile.delete());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientField;
+import no.ntnu.mappe2.marko19907.patientregister.model.PatientRegisterPlain;
+import no.ntnu.mappe2.marko19907.patientregister.model.UpsertResult;
+import no.ntnu.mappe2.marko19907.patientregister.utility.PatientSynchronizer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PatientSynchronizerTest
+{
+    private static final File extractFile = new File("target/synchronizeTest.csv");
+
+    private PatientRegisterPlain register;
+
+    @BeforeEach
+    @DisplayName("Filling the register and writing the extract to synchronize with")
+    public void setup() throws IOException
+    {
+        this.register = new PatientRegisterPlain();
+        this.register.addPatients(List.of(
+                new Patient("Ola", "Nordmann", "1"),
+                new Patient("Kari", "Nordmann", "2"),
+                new Patient("Per", "Hansen", "3")));
+        Files.writeString(extractFile.toPath(),
+                "firstName;lastName;generalPractitioner;socialSecurityNumber;diagnosis\r\n"
+                        + "Ola;Nordmann;;1;\r\n"
+                        + "Kari;Berg;;2;\r\n"
+                        + "Nils;Nilsen;;4;\r\n", StandardCharsets.UTF_8);
+    }
+
+    @AfterEach
+    @DisplayName("Cleaning up the extract")
+    public void cleanup()
+    {
+        assertTrue(extractFile.delete());
+    }
+
+    @Test
+    @DisplayName("Test synchronizing with an extract, keeping the patients that are not in it")
+    public void testSynchronizeKeepingMissing() throws IOException, InterruptedException
+    {
+        UpsertResult result = new PatientSynchronizer(2).synchronize(extractFile, this.register, false);
+
+        assertEquals(1, result.getInsertedPatients());
+        assertEquals(1, result.getUpdatedPatients());
+        assertEquals(1, result.getUnchangedPatients());
+        assertEquals(0, result.getDeletedPatients());
+        assertEquals(4, this.register.getNumberOfPatients());
+        assertEquals("Berg", this.register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "2")
+                .get(0).getLastName());
+    }
+
+    @Test
+    @DisplayName("Test synchronizing with an extract, deleting the patients that are not in it")
+    public void testSynchronizeDeletingMissing() throws IOException, InterruptedException
+    {
+        UpsertResult result = new PatientSynchronizer(2).synchronize(extractFile, this.register, true);
+
+        assertEquals(1, result.getDeletedPatients());
+        assertEquals(3, this.register.getNumberOfPatients());
+        assertTrue(this.register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "3").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test that nothing is deleted if the synchronization is stopped by its progress listener")
+    public void testStoppingFromProgressListener()
+    {
+        assertThrows(CancellationException.class, () -> new PatientSynchronizer(2).synchronize(extractFile,
+                this.register, true, progress -> {
+                    throw new CancellationException("Stopped");
+                }));
+        assertEquals(1, this.register.findPatients(PatientField.SOCIAL_SECURITY_NUMBER, "3").size());
+    }
+
+    @Test
+    @DisplayName("Test that nothing is deleted if the extract has an invalid header")
+    public void testInvalidExtractDeletesNothing() throws IOException
+    {
+        Files.writeString(extractFile.toPath(), "firstName;lastName\r\nOla;Nordmann\r\n", StandardCharsets.UTF_8);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new PatientSynchronizer().synchronize(extractFile, this.register, true));
+        assertEquals(3, this.register.getNumberOfPatients());
+    }
+}
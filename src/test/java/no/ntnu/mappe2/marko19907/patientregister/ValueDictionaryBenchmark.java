@@ -0,0 +1,65 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.ValueDictionary;
+import no.ntnu.mappe2.marko19907.patientregister.utility.CSVHandler;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Benchmarks for the ValueDictionary of the patients, only run with the benchmark profile: mvn test -P benchmark
+ */
+public class ValueDictionaryBenchmark
+{
+    private static final int NUMBER_OF_PATIENTS = Integer.getInteger("benchmark.patients", 1_000_000);
+    private static final File csvFile = new File("target/valueDictionaryBenchmark.csv");
+
+    @Test
+    @DisplayName("Benchmark the heap used per patient read from CSV with and without the shared values")
+    public void benchmarkHeapPerPatient() throws IOException
+    {
+        CSVHandler csvHandler = new CSVHandler();
+        csvHandler.writePatientList(csvFile, PatientRegisterDBBenchmark.generatePatients(NUMBER_OF_PATIENTS));
+        ValueDictionary dictionary = Patient.getValueDictionary();
+
+        try {
+            for (boolean enabled : new boolean[]{false, true}) {
+                dictionary.setEnabled(enabled);
+                long heapBefore = ValueDictionaryBenchmark.usedHeap();
+                long start = System.nanoTime();
+                List<Patient> patients = csvHandler.readPatientList(csvFile);
+                long readTime = System.nanoTime() - start;
+                long heapAfter = ValueDictionaryBenchmark.usedHeap();
+                assertEquals(NUMBER_OF_PATIENTS, patients.size());
+
+                System.out.printf("Shared values %b: %.1f bytes per patient, read in %d ms, %d values shared%n",
+                        enabled, (heapAfter - heapBefore) / (double) NUMBER_OF_PATIENTS, readTime / 1_000_000,
+                        dictionary.size());
+            }
+        }
+        finally {
+            dictionary.setEnabled(true);
+            assertTrue(csvFile.delete());
+        }
+    }
+
+    /**
+     * Returns the heap in use after collecting the garbage
+     * @return The number of bytes of the heap in use
+     */
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
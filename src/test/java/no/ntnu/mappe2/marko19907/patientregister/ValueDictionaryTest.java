@@ -0,0 +1,70 @@
+package no.ntnu.mappe2.marko19907.patientregister;
+
+import no.ntnu.mappe2.marko19907.patientregister.model.Patient;
+import no.ntnu.mappe2.marko19907.patientregister.model.ValueDictionary;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class ValueDictionaryTest
+{
+    @Test
+    @DisplayName("Test that equal values share the String that was interned first")
+    public void testIntern()
+    {
+        // Arrange
+        ValueDictionary dictionary = new ValueDictionary();
+        String firstValue = new String("Dr. Hansen");
+        String secondValue = new String("Dr. Hansen");
+
+        // Act
+        String firstResult = dictionary.intern(firstValue);
+        String secondResult = dictionary.intern(secondValue);
+
+        // Assert
+        assertSame(firstValue, firstResult);
+        assertSame(firstValue, secondResult);
+        assertEquals(1, dictionary.size());
+        assertNull(dictionary.intern(null));
+    }
+
+    @Test
+    @DisplayName("Test that a disabled dictionary returns the values unchanged")
+    public void testDisabled()
+    {
+        // Arrange
+        ValueDictionary dictionary = new ValueDictionary();
+        dictionary.setEnabled(false);
+        String firstValue = new String("Asthma");
+        String secondValue = new String("Asthma");
+
+        // Act
+        dictionary.intern(firstValue);
+        String result = dictionary.intern(secondValue);
+
+        // Assert
+        assertSame(secondValue, result);
+        assertEquals(0, dictionary.size());
+    }
+
+    @Test
+    @DisplayName("Test that patients built from separate Strings share their general practitioner and diagnosis")
+    public void testPatientsShareValues()
+    {
+        // Act
+        Patient patient1 = new Patient.PatientBuilder("Ola", "Nordmann", "01019012345")
+                .withGeneralPractitioner(new String("Dr. Berg"))
+                .withDiagnosis(new String("Migraine"))
+                .build();
+        Patient patient2 = new Patient("Kari", "Nordmann", "02029054321");
+        patient2.setGeneralPractitioner(new String("Dr. Berg"));
+        patient2.setDiagnosis(new String("Migraine"));
+
+        // Assert
+        assertSame(patient1.getGeneralPractitioner(), patient2.getGeneralPractitioner());
+        assertSame(patient1.getDiagnosis(), patient2.getDiagnosis());
+    }
+}